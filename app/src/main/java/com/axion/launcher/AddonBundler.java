@@ -0,0 +1,148 @@
+package com.axion.launcher;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Builds one .mcaddon from several packs so Minecraft imports all of them in
+ * a single launch.
+ *
+ * Nothing is recompressed: a .mcpack or .mctemplate becomes a STORED entry
+ * holding the file as-is, and the entries of a .mcaddon are copied with
+ * their compressed bytes through the source's central directory. Bundles are
+ * cached by the selected files' paths, sizes and mtimes, so importing the
+ * same selection again reuses the earlier bundle.
+ */
+public class AddonBundler {
+
+    private static final String TAG = "AddonBundler";
+    private static final String BUNDLE_DIR = "addon_bundles";
+    private static final int MAX_CACHED_BUNDLES = 4;
+
+    private static AddonBundler instance;
+
+    private final File bundleDir;
+    private final ExecutorService executorService = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    public interface Callback {
+        /**
+         * Called on the main thread with the bundle, or null if it could not be built
+         */
+        void onBundleReady(File bundle);
+    }
+
+    private AddonBundler(Context context) {
+        bundleDir = new File(context.getCacheDir(), BUNDLE_DIR);
+    }
+
+    public static synchronized AddonBundler getInstance(Context context) {
+        if (instance == null) {
+            instance = new AddonBundler(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    public void bundle(List<ResourceFile> files, Callback callback) {
+        List<ResourceFile> selection = new ArrayList<>(files);
+        executorService.execute(() -> {
+            File bundle = null;
+            try {
+                bundle = bundleBlocking(selection);
+            } catch (IOException e) {
+                Log.e(TAG, "Could not bundle " + selection.size() + " packs", e);
+            }
+            File result = bundle;
+            mainHandler.post(() -> callback.onBundleReady(result));
+        });
+    }
+
+    private File bundleBlocking(List<ResourceFile> files) throws IOException {
+        File bundle = new File(bundleDir, cacheKey(files) + ".mcaddon");
+        if (bundle.isFile()) {
+            // Touch it so pruning keeps recently used bundles
+            bundle.setLastModified(System.currentTimeMillis());
+            return bundle;
+        }
+        bundleDir.mkdirs();
+        File temp = new File(bundleDir, bundle.getName() + ".tmp");
+        try (ZipArchiveWriter writer = new ZipArchiveWriter(temp)) {
+            for (ResourceFile file : files) {
+                if (file.getMinecraftExtension().equals(".mcaddon")) {
+                    addAddonEntries(writer, file);
+                } else {
+                    writer.addFile(baseName(file) + file.getMinecraftExtension(), file.getFile());
+                }
+            }
+            writer.finish();
+        } catch (IOException e) {
+            temp.delete();
+            throw e;
+        }
+        if (!temp.renameTo(bundle)) {
+            temp.delete();
+            throw new IOException("Could not move bundle into place");
+        }
+        pruneCache();
+        return bundle;
+    }
+
+    /**
+     * Copies an addon's entries raw. Nested packs stay at the root; loose pack
+     * folders go under a folder named after the addon so two addons' "BP/" do
+     * not collide.
+     */
+    private static void addAddonEntries(ZipArchiveWriter writer, ResourceFile file) throws IOException {
+        String prefix = writer.uniqueName(baseName(file)) + "/";
+        try (RandomAccessFile source = new RandomAccessFile(file.getFile(), "r")) {
+            ZipCentralDirectory zip = ZipCentralDirectory.open(source);
+            for (ZipCentralDirectory.Entry entry : zip.getEntries()) {
+                String name = entry.getName();
+                String lower = name.toLowerCase();
+                if (name.indexOf('/') == -1 && (lower.endsWith(".mcpack") || lower.endsWith(".mctemplate"))) {
+                    writer.addRawEntry(writer.uniqueName(name), zip, entry);
+                } else {
+                    writer.addRawEntry(prefix + name, zip, entry);
+                }
+            }
+        }
+    }
+
+    private void pruneCache() {
+        File[] bundles = bundleDir.listFiles((dir, name) -> name.endsWith(".mcaddon"));
+        if (bundles == null || bundles.length <= MAX_CACHED_BUNDLES) {
+            return;
+        }
+        Arrays.sort(bundles, (a, b) -> Long.compare(b.lastModified(), a.lastModified()));
+        for (int i = MAX_CACHED_BUNDLES; i < bundles.length; i++) {
+            bundles[i].delete();
+        }
+    }
+
+    private static String cacheKey(List<ResourceFile> files) {
+        List<String> parts = new ArrayList<>(files.size());
+        for (ResourceFile file : files) {
+            parts.add(file.getKey() + "@" + file.getLastModified() + "@" + file.getSize());
+        }
+        // The same selection in a different order is the same bundle
+        Collections.sort(parts);
+        return Long.toHexString(StableIds.of(String.join("\n", parts)));
+    }
+
+    private static String baseName(ResourceFile file) {
+        String name = file.getName();
+        return name.substring(0, name.length() - file.getExtension().length());
+    }
+}
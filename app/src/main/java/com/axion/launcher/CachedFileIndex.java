@@ -0,0 +1,215 @@
+package com.axion.launcher;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * One value read from each archive of a section, such as its texture
+ * footprint or world details, kept in memory for the rows and in a
+ * FileCache across runs.
+ *
+ * indexSection reads only archives that are new or changed and not in the
+ * cache. Archives are read in parallel on readers shared by every index,
+ * while one coordinator thread per index does the bookkeeping. Listeners
+ * are called on the main thread, once per burst of results.
+ */
+public abstract class CachedFileIndex<T> {
+
+    // Shared so indexes reading at the same time do not each take every core
+    private static final ExecutorService readers =
+            Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()));
+
+    public interface Listener {
+        void onIndexChanged();
+    }
+
+    private static class Entry<T> {
+        final long lastModified;
+        final long size;
+        final T value;
+
+        Entry(long lastModified, long size, T value) {
+            this.lastModified = lastModified;
+            this.size = size;
+            this.value = value;
+        }
+    }
+
+    private final FileCache<T> cache;
+    private final ExecutorService coordinator = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final Map<String, Entry<T>> entries = new ConcurrentHashMap<>();
+    // Files of the indexed sections and archives being read; coordinator thread only
+    private final Map<String, ResourceFile> indexedFiles = new HashMap<>();
+    private final Set<String> reading = new HashSet<>();
+    // Set while a notification is posted, so a burst of results notifies once
+    private final AtomicBoolean notifyPending = new AtomicBoolean();
+
+    protected CachedFileIndex(FileCache<T> cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Whether the file is one this index reads
+     */
+    protected abstract boolean accepts(ResourceFile file);
+
+    /**
+     * Reads the value of an archive on a reader thread, or returns null if it cannot be read
+     */
+    protected abstract T read(File archive);
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Brings the index in line with a section, reading only archives that
+     * are new or changed and not in the cache
+     */
+    public void indexSection(String section, List<ResourceFile> files) {
+        List<ResourceFile> snapshot = new ArrayList<>(files);
+        coordinator.execute(() -> {
+            boolean changed = false;
+            Set<String> present = new HashSet<>();
+            for (ResourceFile file : snapshot) {
+                if (accepts(file)) {
+                    present.add(file.getKey());
+                    changed |= put(file);
+                }
+            }
+
+            List<String> removed = new ArrayList<>();
+            for (Iterator<Map.Entry<String, ResourceFile>> it = indexedFiles.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<String, ResourceFile> indexed = it.next();
+                if (indexed.getValue().getSection().equals(section) && !present.contains(indexed.getKey())) {
+                    it.remove();
+                    removed.add(indexed.getKey());
+                    changed |= entries.remove(indexed.getKey()) != null;
+                }
+            }
+            cache.remove(removed);
+            if (changed) {
+                notifyListeners();
+            }
+        });
+    }
+
+    /**
+     * Applies changes to some files of a section, for sections too large
+     * to pass whole to indexSection on every change
+     */
+    public void updateFiles(String section, List<ResourceFile> changedFiles, List<String> removedKeys) {
+        List<ResourceFile> snapshot = new ArrayList<>(changedFiles);
+        List<String> removedSnapshot = new ArrayList<>(removedKeys);
+        coordinator.execute(() -> {
+            boolean changed = false;
+            for (ResourceFile file : snapshot) {
+                if (accepts(file)) {
+                    changed |= put(file);
+                }
+            }
+            List<String> removed = new ArrayList<>();
+            for (String key : removedSnapshot) {
+                if (indexedFiles.remove(key) != null) {
+                    removed.add(key);
+                    changed |= entries.remove(key) != null;
+                }
+            }
+            cache.remove(removed);
+            if (changed) {
+                notifyListeners();
+            }
+        });
+    }
+
+    /**
+     * Tracks a file, taking its value from the cache or starting to read it
+     * if it is new or changed; true if a value became available right away.
+     * Coordinator thread only.
+     */
+    private boolean put(ResourceFile file) {
+        String key = file.getKey();
+        indexedFiles.put(key, file);
+        if (isCurrent(entries.get(key), file) || reading.contains(key)) {
+            return false;
+        }
+        T cached = cache.get(key, file.getLastModified(), file.getSize());
+        if (cached != null) {
+            entries.put(key, new Entry<>(file.getLastModified(), file.getSize(), cached));
+            return true;
+        }
+        startReading(file);
+        return false;
+    }
+
+    /**
+     * The value of an indexed archive, or null if it has not been read yet or could not be
+     */
+    protected T get(ResourceFile file) {
+        Entry<T> entry = entries.get(file.getKey());
+        return isCurrent(entry, file) ? entry.value : null;
+    }
+
+    private void startReading(ResourceFile file) {
+        reading.add(file.getKey());
+        readers.execute(() -> {
+            T value = read(file.getFile());
+            coordinator.execute(() -> onRead(file, value));
+        });
+    }
+
+    private void onRead(ResourceFile file, T value) {
+        String key = file.getKey();
+        reading.remove(key);
+        ResourceFile current = indexedFiles.get(key);
+        if (current == null) {
+            return;
+        }
+        if (current.getLastModified() != file.getLastModified() || current.getSize() != file.getSize()) {
+            // Replaced while it was read
+            startReading(current);
+            return;
+        }
+        if (value == null) {
+            return;
+        }
+        cache.put(key, file.getLastModified(), file.getSize(), value);
+        entries.put(key, new Entry<>(file.getLastModified(), file.getSize(), value));
+        notifyListeners();
+    }
+
+    private static boolean isCurrent(Entry<?> entry, ResourceFile file) {
+        return entry != null && entry.lastModified == file.getLastModified() && entry.size == file.getSize();
+    }
+
+    private void notifyListeners() {
+        if (notifyPending.compareAndSet(false, true)) {
+            mainHandler.post(() -> {
+                notifyPending.set(false);
+                for (Listener listener : listeners) {
+                    listener.onIndexChanged();
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.axion.launcher;
+
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.RequiresApi;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Lists a resource section directory; meant to be called off the main thread.
+ *
+ * Size and mtime come from a single attribute read per entry, and sorted,
+ * immutable snapshots are handed to the callback in batches while the scan
+ * is still running, so large folders fill in progressively.
+ */
+public class DirectoryScanner {
+
+    private static final String TAG = "DirectoryScanner";
+
+    // Publish a partial snapshot after this many new files or this much time
+    private static final int BATCH_SIZE = 64;
+    private static final long BATCH_INTERVAL_MS = 100;
+
+    public static final Comparator<ResourceFile> NEWEST_FIRST =
+            (f1, f2) -> Long.compare(f2.getLastModified(), f1.getLastModified());
+
+    public interface Callback {
+        /**
+         * Called on the scanning thread with everything found so far, newest first.
+         * The list is immutable; complete is true for the final snapshot.
+         */
+        void onSnapshot(List<ResourceFile> files, boolean complete);
+    }
+
+    private DirectoryScanner() {}
+
+    /**
+     * Scans the directory on the calling thread. Stops early, without a final
+     * snapshot, if the thread is interrupted.
+     */
+    public static void scan(File sectionDir, String section, Callback callback) {
+        ScanState state = new ScanState(callback);
+        try {
+            if (sectionDir.isDirectory()) {
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                    scanWithDirectoryStream(sectionDir, section, state);
+                } else {
+                    scanWithListFiles(sectionDir, section, state);
+                }
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error scanning " + sectionDir, e);
+        }
+        if (!Thread.currentThread().isInterrupted()) {
+            state.publish(true);
+        }
+    }
+
+    @RequiresApi(Build.VERSION_CODES.O)
+    private static void scanWithDirectoryStream(File sectionDir, String section, ScanState state) throws IOException {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(sectionDir.toPath())) {
+            for (Path path : stream) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+                BasicFileAttributes attributes;
+                try {
+                    attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                } catch (IOException e) {
+                    // Removed between listing and stat
+                    continue;
+                }
+                if (attributes.isRegularFile()) {
+                    state.add(new ResourceFile(path.toFile(), section,
+                            attributes.size(), attributes.lastModifiedTime().toMillis()));
+                }
+            }
+        }
+    }
+
+    private static void scanWithListFiles(File sectionDir, String section, ScanState state) {
+        File[] fileArray = sectionDir.listFiles();
+        if (fileArray == null) {
+            return;
+        }
+        for (File file : fileArray) {
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+            if (file.isFile()) {
+                state.add(new ResourceFile(file, section));
+            }
+        }
+    }
+
+    private static class ScanState {
+        private final Callback callback;
+        private final List<ResourceFile> sorted = new ArrayList<>();
+        private final List<ResourceFile> pending = new ArrayList<>();
+        private long lastPublishMs = SystemClock.uptimeMillis();
+
+        ScanState(Callback callback) {
+            this.callback = callback;
+        }
+
+        void add(ResourceFile file) {
+            pending.add(file);
+            if (pending.size() >= BATCH_SIZE || SystemClock.uptimeMillis() - lastPublishMs >= BATCH_INTERVAL_MS) {
+                publish(false);
+            }
+        }
+
+        void publish(boolean complete) {
+            // Merge the sorted batch into the sorted result instead of re-sorting everything
+            Collections.sort(pending, NEWEST_FIRST);
+            List<ResourceFile> merged = new ArrayList<>(sorted.size() + pending.size());
+            int i = 0;
+            int j = 0;
+            while (i < sorted.size() && j < pending.size()) {
+                if (NEWEST_FIRST.compare(pending.get(j), sorted.get(i)) < 0) {
+                    merged.add(pending.get(j++));
+                } else {
+                    merged.add(sorted.get(i++));
+                }
+            }
+            merged.addAll(sorted.subList(i, sorted.size()));
+            merged.addAll(pending.subList(j, pending.size()));
+            pending.clear();
+            sorted.clear();
+            sorted.addAll(merged);
+            lastPublishMs = SystemClock.uptimeMillis();
+
+            callback.onSnapshot(Collections.unmodifiableList(merged), complete);
+        }
+    }
+}
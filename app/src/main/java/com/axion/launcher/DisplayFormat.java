@@ -0,0 +1,58 @@
+package com.axion.launcher;
+
+import java.text.DecimalFormatSymbols;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Date and size formatting for resource rows, safe to call from any thread.
+ * One date formatter is shared instead of building a SimpleDateFormat per call.
+ */
+final class DisplayFormat {
+
+    private static final String DATE_PATTERN = "MMM dd, yyyy";
+
+    private static Locale locale;
+    private static SimpleDateFormat dateFormat;
+    private static char decimalSeparator;
+
+    private DisplayFormat() {}
+
+    static String formatDate(long millis) {
+        synchronized (DisplayFormat.class) {
+            updateLocale();
+            return dateFormat.format(new Date(millis));
+        }
+    }
+
+    /**
+     * "512 B", "1.5 KB" or "12.3 MB", rounded to one decimal like "%.1f"
+     */
+    static String formatSize(long size) {
+        if (size < 1024) {
+            return size + " B";
+        }
+        char separator;
+        synchronized (DisplayFormat.class) {
+            updateLocale();
+            separator = decimalSeparator;
+        }
+        boolean megabytes = size >= 1024 * 1024;
+        long tenths = Math.round(size * 10 / (megabytes ? 1024.0 * 1024.0 : 1024.0));
+        return new StringBuilder(12)
+                .append(tenths / 10).append(separator).append(tenths % 10)
+                .append(megabytes ? " MB" : " KB")
+                .toString();
+    }
+
+    // Follows a change of the system language without a restart
+    private static void updateLocale() {
+        Locale current = Locale.getDefault();
+        if (!current.equals(locale)) {
+            locale = current;
+            dateFormat = new SimpleDateFormat(DATE_PATTERN, current);
+            decimalSeparator = DecimalFormatSymbols.getInstance(current).getDecimalSeparator();
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package com.axion.launcher;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turns finished downloads into listed resources.
+ *
+ * Downloads land in a folder per section under resources/.incoming, out of
+ * the file watch's sight. Each one PackDownloader completes goes through four
+ * stages: its contents are classified to pick its section and fix its
+ * extension, the archive is checked like PackValidator does before an
+ * import, its manifest summary is read, and finally it is moved into its
+ * section and handed to ResourceIndex with that metadata, so the listing
+ * shows it at once without reading it again. Files that are not Minecraft
+ * content or fail the check are deleted instead, as MainActivity does with
+ * files it cannot import, and the problem is reported in the Result.
+ *
+ * All stages share two workers, as many as PackDownloader runs downloads
+ * at once, so a large pack being checked does not hold back the next
+ * download. The workers exit while there is nothing to process.
+ */
+public class DownloadPipeline implements PackDownloader.Listener {
+
+    private static final String TAG = "DownloadPipeline";
+    private static final String INCOMING_DIR = ".incoming";
+    // Width of file_icon in item_file_card, so the warmed thumbnail is the one rows ask for
+    private static final int ICON_SIZE_DP = 48;
+
+    private static DownloadPipeline instance;
+
+    private final File incomingDir;
+    private final ResourceIndex resourceIndex;
+    private final PackIconLoader iconLoader;
+    private final int iconSizePx;
+
+    private static final int WORKERS = 2;
+    private static final long IDLE_TIMEOUT_S = 30;
+
+    private final ThreadPoolExecutor workers = new ThreadPoolExecutor(WORKERS, WORKERS,
+            IDLE_TIMEOUT_S, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    // Files between arrival and publishing, so a file is never processed twice
+    private final Set<String> inFlight = Collections.synchronizedSet(new HashSet<>());
+
+    public interface Listener {
+        /**
+         * Called on the main thread once a download has been processed
+         */
+        void onDownloadProcessed(Result result);
+    }
+
+    /**
+     * What became of a download
+     */
+    public static class Result {
+        private final String downloadedName;
+        private final String requestedSection;
+        private final ResourceFile file;
+        private final String problem;
+
+        Result(String downloadedName, String requestedSection, ResourceFile file, String problem) {
+            this.downloadedName = downloadedName;
+            this.requestedSection = requestedSection;
+            this.file = file;
+            this.problem = problem;
+        }
+
+        /**
+         * Name the file was downloaded under, before its extension was fixed
+         */
+        public String getDownloadedName() {
+            return downloadedName;
+        }
+
+        /**
+         * Section the download was started from; the file may belong to another one
+         */
+        public String getRequestedSection() {
+            return requestedSection;
+        }
+
+        /**
+         * The listed file, or null if it was refused or could not be moved into its section
+         */
+        public ResourceFile getFile() {
+            return file;
+        }
+
+        /**
+         * What is wrong with the file, or null if it is fine
+         */
+        public String getProblem() {
+            return problem;
+        }
+    }
+
+    /**
+     * State of one file as it moves through the stages
+     */
+    private static class Job {
+        final File source;
+        final String requestedSection;
+        String section;
+        String fileName;
+        boolean checkArchive;
+        String problem;
+        // Deleted instead of listed
+        boolean refused;
+        PackManifest packInfo;
+
+        Job(File source, String requestedSection) {
+            this.source = source;
+            this.requestedSection = requestedSection;
+        }
+    }
+
+    private DownloadPipeline(Context context) {
+        resourceIndex = ResourceIndex.getInstance(context);
+        incomingDir = new File(resourceIndex.getSectionDir(ResourceIndex.SECTIONS[0]).getParentFile(), INCOMING_DIR);
+        iconLoader = PackIconLoader.getInstance(context);
+        iconSizePx = Math.round(ICON_SIZE_DP * context.getResources().getDisplayMetrics().density);
+        workers.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Call from the main thread; MainActivity does so on start. Also picks
+     * up downloads that finished while the app was last stopped before they
+     * were processed.
+     */
+    public static synchronized DownloadPipeline getInstance(Context context) {
+        if (instance == null) {
+            instance = new DownloadPipeline(context.getApplicationContext());
+            PackDownloader.getInstance(context).subscribe(instance);
+            instance.workers.execute(instance::processLeftovers);
+        }
+        return instance;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Where downloads for a section should be saved to be processed on completion
+     */
+    public File getIncomingDir(String section) {
+        return new File(incomingDir, section);
+    }
+
+    @Override
+    public void onDownloadChanged(PackDownloader.Download download) {
+        if (download.getState() != PackDownloader.STATE_COMPLETED) {
+            return;
+        }
+        File file = download.getFile();
+        File parent = file.getParentFile();
+        if (parent != null && incomingDir.equals(parent.getParentFile())) {
+            process(file, parent.getName());
+        }
+    }
+
+    private void processLeftovers() {
+        for (String section : ResourceIndex.SECTIONS) {
+            File[] files = getIncomingDir(section).listFiles();
+            if (files == null) {
+                continue;
+            }
+            for (File file : files) {
+                if (file.isFile()) {
+                    process(file, section);
+                }
+            }
+        }
+    }
+
+    private void process(File source, String requestedSection) {
+        if (inFlight.add(source.getAbsolutePath())) {
+            Job job = new Job(source, requestedSection);
+            workers.execute(() -> classify(job));
+        }
+    }
+
+    /**
+     * Picks section and name from the contents, which win over the page the file came from
+     */
+    private void classify(Job job) {
+        if (!job.source.isFile()) {
+            // Already processed through another path
+            inFlight.remove(job.source.getAbsolutePath());
+            return;
+        }
+        ResourceClassifier.Classification classification = ResourceClassifier.getInstance().classify(job.source);
+        job.fileName = classification.fixFileName(job.source.getName());
+        if (!classification.isMinecraftContent()) {
+            // Often an error page saved under the pack's name
+            job.problem = "Not a Minecraft pack";
+            job.refused = true;
+            publish(job);
+            return;
+        }
+        job.section = classification.getSection();
+        // Worlds carry no manifest of their own; finding level.dat already proved the archive readable
+        job.checkArchive = classification.getKind() != ResourceClassifier.KIND_WORLD;
+        workers.execute(() -> validate(job));
+    }
+
+    private void validate(Job job) {
+        if (job.checkArchive) {
+            try {
+                job.problem = PackValidator.checkFile(new ResourceFile(job.source, job.section),
+                        new PackValidator.Request());
+                job.refused = job.problem != null;
+            } catch (RuntimeException e) {
+                // A fault in the check, not in the file; listed with a warning
+                Log.e(TAG, "Error checking " + job.source.getName(), e);
+                job.checkArchive = false;
+                job.problem = "The file could not be checked";
+            }
+            if (job.refused) {
+                publish(job);
+                return;
+            }
+        }
+        workers.execute(() -> readMetadata(job));
+    }
+
+    private void readMetadata(Job job) {
+        job.packInfo = PackManifestReader.readSummary(job.source);
+        publish(job);
+    }
+
+    /**
+     * Moves the file into its section and lists it with the metadata read
+     * above; the file watch then finds it already known. Refused files are
+     * deleted instead.
+     */
+    private void publish(Job job) {
+        String downloadedName = job.source.getName();
+        if (job.refused) {
+            if (!job.source.delete()) {
+                Log.w(TAG, "Could not delete refused download " + downloadedName);
+            }
+            inFlight.remove(job.source.getAbsolutePath());
+            deliver(new Result(downloadedName, job.requestedSection, null, job.problem));
+            return;
+        }
+        try {
+            File target = PackDownloader.moveToDestination(job.source,
+                    new File(resourceIndex.getSectionDir(job.section), job.fileName));
+            ResourceFile placed = new ResourceFile(target, job.section).withPackInfo(job.packInfo);
+            if (job.checkArchive) {
+                PackValidator.getInstance().remember(placed, job.problem);
+            }
+            resourceIndex.applyBatch(Collections.emptyList(), Collections.singletonList(placed));
+            deliver(new Result(downloadedName, job.requestedSection, placed, job.problem));
+        } catch (IOException e) {
+            Log.e(TAG, "Could not move " + downloadedName, e);
+            deliver(new Result(downloadedName, job.requestedSection, null, e.getMessage()));
+        } finally {
+            inFlight.remove(job.source.getAbsolutePath());
+        }
+    }
+
+    private void deliver(Result result) {
+        mainHandler.post(() -> {
+            if (result.file != null && result.file.isMinecraftFile()) {
+                // Warms the thumbnail caches so the new row shows its icon on first bind
+                iconLoader.load(result.file, iconSizePx, icon -> {});
+            }
+            for (Listener listener : listeners) {
+                listener.onDownloadProcessed(result);
+            }
+        });
+    }
+}
@@ -0,0 +1,259 @@
+package com.axion.launcher;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Finds files that were saved or downloaded more than once across all
+ * resource sections.
+ *
+ * Files are grouped by size first; only sizes shared by two or more files are
+ * hashed, with xxHash64 on a pool sized to the CPU count. Hashes are stored
+ * on the ResourceFile and in ResourceDatabase, keyed by path and mtime, so an
+ * unchanged file is never read twice. Before a copy is deleted it is compared
+ * byte for byte with the copy that is kept.
+ */
+public class DuplicateFinder {
+
+    private static final String TAG = "DuplicateFinder";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static DuplicateFinder instance;
+
+    private final ResourceIndex resourceIndex;
+    // Scans and deletions run one at a time and wait on the hashing pool
+    private final ExecutorService coordinator = Executors.newSingleThreadExecutor();
+    private final ExecutorService hashPool = Executors.newFixedThreadPool(
+            Math.max(2, Runtime.getRuntime().availableProcessors()));
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ThreadLocal<byte[]> buffers = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[BUFFER_SIZE];
+        }
+    };
+
+    /**
+     * Identical files; the first one is the copy that is kept
+     */
+    public static class DuplicateGroup {
+        private final List<ResourceFile> files;
+
+        DuplicateGroup(List<ResourceFile> files) {
+            this.files = files;
+        }
+
+        public ResourceFile getKept() {
+            return files.get(0);
+        }
+
+        public List<ResourceFile> getExtraCopies() {
+            return files.subList(1, files.size());
+        }
+
+        public long getWastedBytes() {
+            return getKept().getSize() * (files.size() - 1);
+        }
+    }
+
+    public interface FindCallback {
+        void onDuplicatesFound(List<DuplicateGroup> groups);
+    }
+
+    public interface ReclaimCallback {
+        /**
+         * Called on the main thread with the number of copies deleted and the bytes freed
+         */
+        void onReclaimed(int deletedCount, long bytesFreed);
+    }
+
+    // Keep the plainest name, e.g. "pack.mcaddon" over "pack-1.mcaddon", then the oldest copy
+    private static final Comparator<ResourceFile> KEEP_ORDER = (a, b) -> {
+        int byName = Integer.compare(a.getName().length(), b.getName().length());
+        return byName != 0 ? byName : Long.compare(a.getLastModified(), b.getLastModified());
+    };
+
+    private DuplicateFinder(Context context) {
+        resourceIndex = ResourceIndex.getInstance(context);
+    }
+
+    public static synchronized DuplicateFinder getInstance(Context context) {
+        if (instance == null) {
+            instance = new DuplicateFinder(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Scans all sections; the callback runs on the main thread, largest waste first
+     */
+    public void find(FindCallback callback) {
+        resourceIndex.requestAllFiles(files -> coordinator.execute(() -> {
+            List<DuplicateGroup> groups = findDuplicates(files);
+            mainHandler.post(() -> callback.onDuplicatesFound(groups));
+        }));
+    }
+
+    public static long getWastedBytes(List<DuplicateGroup> groups) {
+        long total = 0;
+        for (DuplicateGroup group : groups) {
+            total += group.getWastedBytes();
+        }
+        return total;
+    }
+
+    /**
+     * Deletes every extra copy that still matches its kept copy byte for byte
+     */
+    public void reclaim(List<DuplicateGroup> groups, ReclaimCallback callback) {
+        coordinator.execute(() -> {
+            int deleted = 0;
+            long freed = 0;
+            for (DuplicateGroup group : groups) {
+                File kept = group.getKept().getFile();
+                for (ResourceFile copy : group.getExtraCopies()) {
+                    File file = copy.getFile();
+                    try {
+                        if (file.length() == kept.length() && contentEquals(kept, file) && file.delete()) {
+                            deleted++;
+                            freed += copy.getSize();
+                            resourceIndex.notifyChanged(file);
+                        }
+                    } catch (IOException e) {
+                        Log.w(TAG, "Could not compare " + file.getName(), e);
+                    }
+                }
+            }
+            int deletedCount = deleted;
+            long bytesFreed = freed;
+            mainHandler.post(() -> callback.onReclaimed(deletedCount, bytesFreed));
+        });
+    }
+
+    private List<DuplicateGroup> findDuplicates(List<ResourceFile> files) {
+        Map<Long, List<ResourceFile>> bySize = new HashMap<>();
+        for (ResourceFile file : files) {
+            if (file.getSize() == 0) {
+                continue;
+            }
+            List<ResourceFile> sameSize = bySize.get(file.getSize());
+            if (sameSize == null) {
+                sameSize = new ArrayList<>(2);
+                bySize.put(file.getSize(), sameSize);
+            }
+            sameSize.add(file);
+        }
+
+        // Hash only files that share their size with another one and have no cached hash
+        List<ResourceFile> candidates = new ArrayList<>();
+        List<Future<ResourceFile>> pending = new ArrayList<>();
+        for (List<ResourceFile> sameSize : bySize.values()) {
+            if (sameSize.size() < 2) {
+                continue;
+            }
+            for (ResourceFile file : sameSize) {
+                if (file.getContentHash() != null) {
+                    candidates.add(file);
+                } else {
+                    pending.add(hashPool.submit(() -> hash(file)));
+                }
+            }
+        }
+        List<ResourceFile> hashed = new ArrayList<>(pending.size());
+        for (Future<ResourceFile> future : pending) {
+            try {
+                ResourceFile file = future.get();
+                if (file != null) {
+                    hashed.add(file);
+                }
+            } catch (Exception e) {
+                Log.w(TAG, "Hashing failed", e);
+            }
+        }
+        if (!hashed.isEmpty()) {
+            resourceIndex.storeContentHashes(hashed);
+            candidates.addAll(hashed);
+        }
+
+        Map<String, List<ResourceFile>> byHash = new HashMap<>();
+        for (ResourceFile file : candidates) {
+            String key = file.getSize() + ":" + file.getContentHash();
+            List<ResourceFile> same = byHash.get(key);
+            if (same == null) {
+                same = new ArrayList<>(2);
+                byHash.put(key, same);
+            }
+            same.add(file);
+        }
+        List<DuplicateGroup> groups = new ArrayList<>();
+        for (List<ResourceFile> same : byHash.values()) {
+            if (same.size() > 1) {
+                Collections.sort(same, KEEP_ORDER);
+                groups.add(new DuplicateGroup(same));
+            }
+        }
+        Collections.sort(groups, (a, b) -> Long.compare(b.getWastedBytes(), a.getWastedBytes()));
+        return groups;
+    }
+
+    private ResourceFile hash(ResourceFile file) {
+        try {
+            long hash = XxHash64.hash(file.getFile(), buffers.get());
+            return file.withContentHash(String.format(Locale.ROOT, "%016x", hash));
+        } catch (IOException e) {
+            // Deleted or unreadable since the listing was taken
+            Log.w(TAG, "Could not hash " + file.getName(), e);
+            return null;
+        }
+    }
+
+    private boolean contentEquals(File first, File second) throws IOException {
+        byte[] firstBuffer = buffers.get();
+        byte[] secondBuffer = new byte[BUFFER_SIZE];
+        try (InputStream a = new FileInputStream(first); InputStream b = new FileInputStream(second)) {
+            while (true) {
+                int read = readBlock(a, firstBuffer);
+                if (read != readBlock(b, secondBuffer)) {
+                    return false;
+                }
+                if (read <= 0) {
+                    return true;
+                }
+                for (int i = 0; i < read; i++) {
+                    if (firstBuffer[i] != secondBuffer[i]) {
+                        return false;
+                    }
+                }
+            }
+        }
+    }
+
+    private static int readBlock(InputStream in, byte[] buffer) throws IOException {
+        int total = 0;
+        while (total < buffer.length) {
+            int read = in.read(buffer, total, buffer.length - total);
+            if (read == -1) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+}
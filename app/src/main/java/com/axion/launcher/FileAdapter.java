@@ -2,28 +2,60 @@ package com.axion.launcher;
 
 import android.view.LayoutInflater;
 import android.view.View;
+import android.content.res.ColorStateList;
+import android.graphics.Bitmap;
 import android.view.ViewGroup;
+import android.widget.ImageView;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.google.android.material.button.MaterialButton;
 
 import java.util.List;
+import java.util.concurrent.Future;
 
-public class FileAdapter extends RecyclerView.Adapter<FileAdapter.FileViewHolder> {
+public class FileAdapter extends RecyclerView.Adapter<FileAdapter.FileViewHolder>
+        implements PagedFileList.Listener {
 
-    private List<ResourceFile> files;
+    private static final DiffUtil.ItemCallback<ResourceFile> DIFF_CALLBACK = new DiffUtil.ItemCallback<ResourceFile>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull ResourceFile oldItem, @NonNull ResourceFile newItem) {
+            return oldItem.getKey().equals(newItem.getKey());
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull ResourceFile oldItem, @NonNull ResourceFile newItem) {
+            return oldItem.hasSameContents(newItem);
+        }
+    };
+
+    // Diffs run on a background thread; only changed rows are rebound
+    private final AsyncListDiffer<ResourceFile> differ = new AsyncListDiffer<>(this, DIFF_CALLBACK);
     private OnFileActionListener actionListener;
+    private OnFileOptionsListener optionsListener;
+    private MCPEVersion selectedVersion;
+    private final FileRowText rowText = new FileRowText();
+    // Set for very large sections; rows then come from the database page by page
+    private PagedFileList pagedList;
 
     public interface OnFileActionListener {
         void onFileAction(ResourceFile resourceFile);
     }
 
-    public FileAdapter(List<ResourceFile> files, OnFileActionListener actionListener) {
-        this.files = files;
+    public interface OnFileOptionsListener {
+        void onFileOptions(ResourceFile resourceFile);
+    }
+
+    public FileAdapter(List<ResourceFile> files, OnFileActionListener actionListener,
+                       OnFileOptionsListener optionsListener) {
         this.actionListener = actionListener;
+        this.optionsListener = optionsListener;
+        setHasStableIds(true);
+        differ.submitList(files);
     }
 
     @NonNull
@@ -36,47 +68,241 @@ public class FileAdapter extends RecyclerView.Adapter<FileAdapter.FileViewHolder
 
     @Override
     public void onBindViewHolder(@NonNull FileViewHolder holder, int position) {
-        ResourceFile resourceFile = files.get(position);
-        holder.bind(resourceFile);
+        ResourceFile resourceFile = getFile(position);
+        if (resourceFile != null) {
+            holder.bind(resourceFile);
+        } else {
+            holder.bindPlaceholder();
+        }
     }
 
     @Override
     public int getItemCount() {
-        return files.size();
+        return pagedList != null ? pagedList.size() : differ.getCurrentList().size();
     }
 
-    public void updateFiles(List<ResourceFile> newFiles) {
-        this.files = newFiles;
+    @Override
+    public long getItemId(int position) {
+        ResourceFile resourceFile = getFile(position);
+        // Placeholders get negative ids, which no file's id can be
+        return resourceFile != null ? resourceFile.getStableId() : -2 - position;
+    }
+
+    private ResourceFile getFile(int position) {
+        return pagedList != null ? pagedList.get(position) : differ.getCurrentList().get(position);
+    }
+
+    /**
+     * Switches between binding a whole list and reading pages from the
+     * database; pass null to go back to updateFiles.
+     */
+    public void setPagedList(PagedFileList list) {
+        if (pagedList == list) {
+            return;
+        }
+        if (pagedList != null) {
+            pagedList.setListener(null);
+        }
+        pagedList = list;
+        rowText.invalidate();
+        if (list != null) {
+            list.setListener(this);
+            // The whole list is no longer needed
+            differ.submitList(null);
+        }
+        notifyDataSetChanged();
+    }
+
+    @Override
+    public void onPageLoaded(int start, int count) {
+        notifyItemRangeChanged(start, count);
+    }
+
+    @Override
+    public void onReset() {
+        rowText.invalidate();
         notifyDataSetChanged();
     }
 
-    class FileViewHolder extends RecyclerView.ViewHolder {
+    /**
+     * Submits a new list; the list must not be modified afterwards.
+     * Ignored while a paged list is set.
+     */
+    public void updateFiles(List<ResourceFile> newFiles) {
+        if (pagedList != null) {
+            return;
+        }
+        rowText.invalidate();
+        differ.submitList(newFiles);
+    }
+
+    /**
+     * Shows a reordered or refiltered list right away. Diffing two orders of
+     * the same files would cost far more than rebinding the visible rows.
+     */
+    public void replaceFiles(List<ResourceFile> newFiles) {
+        if (pagedList != null) {
+            return;
+        }
+        rowText.invalidate();
+        differ.submitList(null);
+        differ.submitList(newFiles);
+    }
+
+    /**
+     * Sets the version packs are checked against and rebinds the visible rows
+     */
+    public void setSelectedVersion(MCPEVersion version) {
+        if (selectedVersion == version) {
+            return;
+        }
+        selectedVersion = version;
+        notifyCompatibilityChanged();
+    }
+
+    @Override
+    public void onViewRecycled(@NonNull FileViewHolder holder) {
+        super.onViewRecycled(holder);
+        // Rows that scroll off screen stop decoding their icon
+        holder.cancelIconLoad();
+    }
+
+    /**
+     * Rebinds all rows after compatibility, dependency, footprint or world state changed
+     */
+    public void notifyCompatibilityChanged() {
+        rowText.invalidate();
+        notifyItemRangeChanged(0, getItemCount());
+    }
+
+    class FileViewHolder extends RecyclerView.ViewHolder
+            implements View.OnClickListener, View.OnLongClickListener, PackIconLoader.Target {
+        private ImageView fileIcon;
         private TextView fileName;
+        private TextView packInfo;
         private TextView fileDetails;
         private MaterialButton shareButton;
+        private ColorStateList defaultDetailsColor;
+        private ColorStateList errorColor;
+        private ColorStateList defaultIconTint;
+        private int iconSizePx;
+        private Future<?> iconLoad;
+        private ResourceFile boundFile;
+        private final TextureFootprintIndex footprints;
+        private final WorldIndex worlds;
 
         public FileViewHolder(@NonNull View itemView) {
             super(itemView);
+            footprints = TextureFootprintIndex.getInstance(itemView.getContext());
+            worlds = WorldIndex.getInstance(itemView.getContext());
+            fileIcon = itemView.findViewById(R.id.file_icon);
             fileName = itemView.findViewById(R.id.file_name);
+            packInfo = itemView.findViewById(R.id.pack_info);
             fileDetails = itemView.findViewById(R.id.file_details);
             shareButton = itemView.findViewById(R.id.share_button);
+            defaultDetailsColor = fileDetails.getTextColors();
+            errorColor = itemView.getContext().getColorStateList(R.color.error_color);
+            defaultIconTint = fileIcon.getImageTintList();
+            iconSizePx = fileIcon.getLayoutParams().width;
+
+            // One listener per holder for its lifetime; it acts on whatever file is bound
+            shareButton.setOnClickListener(this);
+            // Long press opens rename, move, share and delete
+            itemView.setOnLongClickListener(this);
         }
 
         public void bind(ResourceFile resourceFile) {
+            boundFile = resourceFile;
             fileName.setText(resourceFile.getName());
-            
-            String details = "Downloaded on " + resourceFile.getFormattedDate() + 
-                           " • " + resourceFile.getFormattedSize();
-            fileDetails.setText(details);
+            // Worlds show what their level.dat says instead of the template manifest
+            WorldIndex.WorldInfo world = worlds.getWorld(resourceFile);
+            bindPackInfo(world != null ? world.getSummary() : resourceFile.getPackInfoText());
+            bindIcon(resourceFile);
+
+            // Flag packs that need a newer game than the selected version, or packs that are not here
+            boolean incompatible = PackCompatibilityIndex.getInstance().isIncompatible(resourceFile, selectedVersion);
+            int missingCount = PackDependencyGraph.getInstance().getMissingCount(resourceFile);
+            TextureFootprintIndex.Footprint footprint = footprints.getFootprint(resourceFile);
+            fileDetails.setText(rowText.details(resourceFile, incompatible, missingCount,
+                    footprint != null ? footprint.getBytes() : -1));
+            fileDetails.setTextColor(incompatible || missingCount > 0 ? errorColor : defaultDetailsColor);
 
             // Set button enabled/disabled based on file type
             shareButton.setEnabled(resourceFile.isMinecraftFile());
+        }
+
+        /**
+         * Row whose page is still being read from the database
+         */
+        void bindPlaceholder() {
+            boundFile = null;
+            cancelIconLoad();
+            fileName.setText("Loading…");
+            packInfo.setVisibility(View.GONE);
+            fileDetails.setText(null);
+            fileDetails.setTextColor(defaultDetailsColor);
+            showIcon(null);
+            shareButton.setEnabled(false);
+        }
+
+        @Override
+        public void onClick(View v) {
+            if (actionListener != null && boundFile != null) {
+                actionListener.onFileAction(boundFile);
+            }
+        }
+
+        @Override
+        public boolean onLongClick(View v) {
+            if (optionsListener != null && boundFile != null) {
+                optionsListener.onFileOptions(boundFile);
+            }
+            return true;
+        }
+
+        private void bindIcon(ResourceFile resourceFile) {
+            cancelIconLoad();
+            PackIconLoader iconLoader = PackIconLoader.getInstance(itemView.getContext());
+            Bitmap cached = iconLoader.getCached(resourceFile, iconSizePx);
+            if (cached != null) {
+                showIcon(cached);
+                return;
+            }
+            showIcon(null);
+            if (resourceFile.isMinecraftFile()) {
+                iconLoad = iconLoader.load(resourceFile, iconSizePx, this);
+            }
+        }
+
+        @Override
+        public void onIconLoaded(Bitmap icon) {
+            showIcon(icon);
+        }
+
+        private void showIcon(Bitmap icon) {
+            if (icon != null) {
+                fileIcon.setImageTintList(null);
+                fileIcon.setImageBitmap(icon);
+            } else {
+                fileIcon.setImageTintList(defaultIconTint);
+                fileIcon.setImageResource(R.drawable.ic_file);
+            }
+        }
+
+        void cancelIconLoad() {
+            if (iconLoad != null) {
+                iconLoad.cancel(true);
+                iconLoad = null;
+            }
+        }
 
-            shareButton.setOnClickListener(v -> {
-                if (actionListener != null) {
-                    actionListener.onFileAction(resourceFile);
-                }
-            });
+        private void bindPackInfo(String text) {
+            if (text == null) {
+                packInfo.setVisibility(View.GONE);
+                return;
+            }
+            packInfo.setText(text);
+            packInfo.setVisibility(View.VISIBLE);
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,108 @@
+package com.axion.launcher;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.util.Log;
+
+import java.util.List;
+
+/**
+ * Values read from files, stored per path, mtime and size so a file is
+ * read again only after it changes. Each cache is one table in its own
+ * database; the table is a cache, so a schema change only drops it.
+ */
+public class FileCache<T> extends SQLiteOpenHelper {
+
+    private static final String TAG = "FileCache";
+    private static final String KEY = "path = ? AND mtime = ? AND size = ?";
+
+    public interface Codec<T> {
+        /**
+         * Builds a value from the cursor's columns, in the order they were declared
+         */
+        T read(Cursor cursor);
+
+        void write(T value, ContentValues values);
+    }
+
+    private final String table;
+    private final String[] columns;
+    private final String[] columnNames;
+    private final Codec<T> codec;
+
+    /**
+     * @param columns column definitions for the value, such as "bytes INTEGER NOT NULL"
+     */
+    public FileCache(Context context, String databaseName, int version, String table, String[] columns,
+                     Codec<T> codec) {
+        super(context, databaseName, null, version);
+        this.table = table;
+        this.columns = columns;
+        this.codec = codec;
+        columnNames = new String[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            columnNames[i] = columns[i].substring(0, columns[i].indexOf(' '));
+        }
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + table + " (path TEXT PRIMARY KEY, mtime INTEGER NOT NULL, "
+                + "size INTEGER NOT NULL, " + String.join(", ", columns) + ")");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        db.execSQL("DROP TABLE IF EXISTS " + table);
+        onCreate(db);
+    }
+
+    /**
+     * The value stored for the file in this state, or null
+     */
+    public T get(String path, long lastModified, long size) {
+        try (Cursor cursor = getReadableDatabase().query(table, columnNames, KEY,
+                new String[]{path, String.valueOf(lastModified), String.valueOf(size)}, null, null, null)) {
+            if (cursor.moveToNext()) {
+                return codec.read(cursor);
+            }
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Could not read cached " + table, e);
+        }
+        return null;
+    }
+
+    public void put(String path, long lastModified, long size, T value) {
+        ContentValues values = new ContentValues();
+        values.put("path", path);
+        values.put("mtime", lastModified);
+        values.put("size", size);
+        codec.write(value, values);
+        try {
+            getWritableDatabase().insertWithOnConflict(table, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Could not cache " + table, e);
+        }
+    }
+
+    public void remove(List<String> paths) {
+        if (paths.isEmpty()) {
+            return;
+        }
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            String[] path = new String[1];
+            for (String removed : paths) {
+                path[0] = removed;
+                db.delete(table, "path = ?", path);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+}
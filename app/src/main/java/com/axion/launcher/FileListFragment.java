@@ -1,17 +1,24 @@
 package com.axion.launcher;
 
+import android.content.Context;
 import android.content.Intent;
+import android.content.SharedPreferences;
 import android.net.Uri;
 import android.os.Bundle;
 import android.os.Environment;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.EditText;
+import android.widget.FrameLayout;
 import android.widget.LinearLayout;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.appcompat.app.AlertDialog;
 import androidx.fragment.app.Fragment;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
@@ -24,17 +31,36 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.function.Consumer;
 
-public class FileListFragment extends Fragment {
+public class FileListFragment extends Fragment implements PackCompatibilityIndex.Listener, ResourceIndex.Listener,
+        PackDependencyGraph.Listener, PackSearchIndex.Listener, CachedFileIndex.Listener {
 
     private static final String TAG = "FileListFragment";
     
     private RecyclerView recyclerView;
     private LinearLayout emptyState;
     private MaterialButton universalOpenButton;
+    private EditText searchInput;
+    private MaterialButton sortButton;
+    private MaterialButton filterButton;
     private FileAdapter adapter;
+    private PagedFileList pagedList;
+    // Whether the indexes were given a paged section's files; later changes arrive as deltas
+    private boolean pagedIndexRequested;
+    private boolean pagedIndexed;
+    private final FileOrdering ordering = new FileOrdering();
+    private int sortMode = FileOrdering.SORT_NEWEST;
+    private int filterMode = FileOrdering.FILTER_ALL;
+    private String query = "";
+    private PackValidator.Request validation;
+    private AlertDialog validationDialog;
+    // Shown only if checking takes long enough to notice, so cached results don't flash a dialog
+    private final Runnable showValidationDialog = this::showValidationDialog;
     private String section; // "mods", "textures", or "maps"
+    // Null while the section is paged; its rows then stay in the database
     private List<ResourceFile> allFiles = new ArrayList<>();
+    private int fileCount;
 
     public static FileListFragment newInstance(String section) {
         FileListFragment fragment = new FileListFragment();
@@ -65,15 +91,71 @@ public class FileListFragment extends Fragment {
         recyclerView = view.findViewById(R.id.file_recycler_view);
         emptyState = view.findViewById(R.id.empty_state);
         universalOpenButton = view.findViewById(R.id.universal_open_button);
+        searchInput = view.findViewById(R.id.file_search_input);
+        sortButton = view.findViewById(R.id.sort_button);
+        filterButton = view.findViewById(R.id.filter_button);
         
         setupRecyclerView();
         setupUniversalOpenButton();
-        loadFiles();
+        setupSortAndFilter();
+        setupSearch();
+        PackCompatibilityIndex.getInstance().addListener(this);
+        PackDependencyGraph.getInstance().addListener(this);
+        PackSearchIndex.getInstance(requireContext()).addListener(this);
+        TextureFootprintIndex.getInstance(requireContext()).addListener(this);
+        WorldIndex.getInstance(requireContext()).addListener(this);
+        // Delivers the current listing right away and every change after that
+        ResourceIndex.getInstance(requireContext()).subscribe(section, this);
+    }
+
+    @Override
+    public void onDestroyView() {
+        PackCompatibilityIndex.getInstance().removeListener(this);
+        PackDependencyGraph.getInstance().removeListener(this);
+        PackSearchIndex.getInstance(requireContext()).removeListener(this);
+        TextureFootprintIndex.getInstance(requireContext()).removeListener(this);
+        WorldIndex.getInstance(requireContext()).removeListener(this);
+        ResourceIndex.getInstance(requireContext()).unsubscribe(section, this);
+        cancelValidation();
+        adapter.setPagedList(null);
+        pagedList = null;
+        pagedIndexRequested = false;
+        pagedIndexed = false;
+        super.onDestroyView();
+    }
+
+    @Override
+    public void onCompatibilityChanged() {
+        if (adapter != null) {
+            adapter.notifyCompatibilityChanged();
+        }
+    }
+
+    @Override
+    public void onDependenciesChanged() {
+        if (adapter != null) {
+            adapter.notifyCompatibilityChanged();
+        }
+    }
+
+    @Override
+    public void onIndexChanged() {
+        if (adapter != null) {
+            adapter.notifyCompatibilityChanged();
+        }
+    }
+
+    @Override
+    public void onSearchIndexChanged() {
+        // Packs indexed since the last query may match it
+        if (adapter != null && !query.isEmpty()) {
+            runSearch(false);
+        }
     }
 
     private void setupRecyclerView() {
         recyclerView.setLayoutManager(new LinearLayoutManager(requireContext()));
-        adapter = new FileAdapter(new ArrayList<>(), this::onFileAction);
+        adapter = new FileAdapter(new ArrayList<>(), this::onFileAction, this::showFileOptions);
         recyclerView.setAdapter(adapter);
     }
 
@@ -81,34 +163,198 @@ public class FileListFragment extends Fragment {
         universalOpenButton.setOnClickListener(v -> openAllFilesInMinecraft());
     }
 
-    private void loadFiles() {
-        try {
-            File baseDir = new File(requireContext().getExternalFilesDir(null), "resources");
-            File sectionDir = new File(baseDir, section);
-            
-            allFiles = new ArrayList<>();
-            
-            if (sectionDir.exists() && sectionDir.isDirectory()) {
-                File[] fileArray = sectionDir.listFiles();
-                if (fileArray != null) {
-                    for (File file : fileArray) {
-                        if (file.isFile()) {
-                            allFiles.add(new ResourceFile(file, section));
-                        }
-                    }
+    private void setupSortAndFilter() {
+        SharedPreferences prefs = getPreferences();
+        sortMode = prefs.getInt("sort_" + section, FileOrdering.SORT_NEWEST);
+        filterMode = prefs.getInt("filter_" + section, FileOrdering.FILTER_ALL);
+        updateSortAndFilterButtons();
+
+        sortButton.setOnClickListener(v -> new MaterialAlertDialogBuilder(requireContext())
+            .setTitle("Sort By")
+            .setSingleChoiceItems(FileOrdering.SORT_LABELS, sortMode, (dialog, which) -> {
+                dialog.dismiss();
+                if (which != sortMode) {
+                    sortMode = which;
+                    getPreferences().edit().putInt("sort_" + section, which).apply();
+                    onOrderingChanged();
+                }
+            })
+            .show());
+        filterButton.setOnClickListener(v -> new MaterialAlertDialogBuilder(requireContext())
+            .setTitle("Show")
+            .setSingleChoiceItems(FileOrdering.FILTER_LABELS, filterMode, (dialog, which) -> {
+                dialog.dismiss();
+                if (which != filterMode) {
+                    filterMode = which;
+                    getPreferences().edit().putInt("filter_" + section, which).apply();
+                    onOrderingChanged();
+                }
+            })
+            .show());
+    }
+
+    private void setupSearch() {
+        searchInput.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {}
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {}
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                String newQuery = s.toString().trim();
+                if (!newQuery.equals(query)) {
+                    query = newQuery;
+                    updateListMode(true);
                 }
             }
-            
-            // Sort files by last modified date (newest first)
-            Collections.sort(allFiles, (f1, f2) -> Long.compare(f2.getLastModified(), f1.getLastModified()));
-            
-            adapter.updateFiles(allFiles);
-            updateEmptyState(allFiles.isEmpty());
-            updateUniversalOpenButton();
-            
-        } catch (Exception e) {
-            Log.e(TAG, "Error loading files", e);
-            updateEmptyState(true);
+        });
+    }
+
+    /**
+     * Shows the files matching the query, best match first, within the selected filter
+     */
+    private void runSearch(boolean replace) {
+        String searchedQuery = query;
+        PackSearchIndex.getInstance(requireContext()).search(section, searchedQuery, results -> {
+            if (getView() == null || !searchedQuery.equals(query)) {
+                return;
+            }
+            List<ResourceFile> filtered = new ArrayList<>(results.size());
+            for (ResourceFile file : results) {
+                if (FileOrdering.accepts(filterMode, file)) {
+                    filtered.add(file);
+                }
+            }
+            if (replace) {
+                adapter.replaceFiles(filtered);
+            } else {
+                adapter.updateFiles(filtered);
+            }
+        });
+    }
+
+    private SharedPreferences getPreferences() {
+        return requireContext().getSharedPreferences("app_preferences", Context.MODE_PRIVATE);
+    }
+
+    private void updateSortAndFilterButtons() {
+        sortButton.setText("Sort: " + FileOrdering.SORT_LABELS[sortMode]);
+        filterButton.setText("Show: " + FileOrdering.FILTER_LABELS[filterMode]);
+    }
+
+    private void onOrderingChanged() {
+        updateSortAndFilterButtons();
+        updateListMode(true);
+        recyclerView.scrollToPosition(0);
+    }
+
+    @Override
+    public void onResourcesChanged(String section, @Nullable List<ResourceFile> files, int count, boolean complete) {
+        if (adapter == null) {
+            return;
+        }
+        allFiles = files;
+        fileCount = count;
+        updateListMode(false);
+        updateUniversalOpenButton();
+        
+        // Keep the existing rows visible until the scan knows the folder is empty
+        if (complete || count > 0) {
+            updateEmptyState(count == 0);
+        }
+        if (files != null) {
+            pagedIndexRequested = false;
+            pagedIndexed = false;
+        }
+        if (complete) {
+            if (files != null) {
+                indexSection(files);
+            } else if (!pagedIndexRequested) {
+                // Paged sections are read once for the indexes; onPagedFilesChanged feeds them after that
+                pagedIndexRequested = true;
+                ResourceIndex.getInstance(requireContext()).loadFiles(section, loaded -> {
+                    if (getView() != null && pagedIndexRequested) {
+                        pagedIndexed = true;
+                        indexSection(loaded);
+                    }
+                });
+            }
+        }
+    }
+
+    @Override
+    public void onPagedFilesChanged(String section, List<ResourceFile> changed, List<String> removedKeys) {
+        // Changes before the first load are already part of it
+        if (adapter == null || !pagedIndexed) {
+            return;
+        }
+        PackCompatibilityIndex.getInstance().updateFiles(section, changed, removedKeys);
+        PackDependencyGraph.getInstance().updateFiles(section, changed, removedKeys);
+        PackSearchIndex.getInstance(requireContext()).updateFiles(section, changed, removedKeys);
+        if (section.equals("textures")) {
+            TextureFootprintIndex.getInstance(requireContext()).updateFiles(section, changed, removedKeys);
+        } else if (section.equals("maps")) {
+            WorldIndex.getInstance(requireContext()).updateFiles(section, changed, removedKeys);
+        }
+    }
+
+    /**
+     * Reads manifests of new or changed packs in the background
+     */
+    private void indexSection(List<ResourceFile> files) {
+        PackCompatibilityIndex.getInstance().indexSection(section, files);
+        PackDependencyGraph.getInstance().indexSection(section, files);
+        PackSearchIndex.getInstance(requireContext()).indexSection(section, files);
+        if (section.equals("textures")) {
+            // Lets users see which resource packs a low-memory device can hold
+            TextureFootprintIndex.getInstance(requireContext()).indexSection(section, files);
+        } else if (section.equals("maps")) {
+            WorldIndex.getInstance(requireContext()).indexSection(section, files);
+        }
+    }
+
+    /**
+     * Shows the files in the selected order, or the search results while
+     * there is a query. Paged sections are read from the database page by
+     * page instead, sorted and filtered by the query itself.
+     *
+     * @param reordered whether the sort or filter changed, so the rows are replaced without a diff
+     */
+    private void updateListMode(boolean reordered) {
+        if (!query.isEmpty()) {
+            closePagedList();
+            runSearch(reordered);
+            return;
+        }
+        if (allFiles != null) {
+            closePagedList();
+            showOrdered(allFiles, reordered);
+            return;
+        }
+        if (pagedList == null || pagedList.getSort() != sortMode || pagedList.getFilter() != filterMode) {
+            pagedList = ResourceIndex.getInstance(requireContext()).openPagedList(section, sortMode, filterMode);
+            adapter.setPagedList(pagedList);
+        } else {
+            pagedList.refresh();
+        }
+    }
+
+    private void showOrdered(List<ResourceFile> files, boolean reordered) {
+        ordering.update(files);
+        List<ResourceFile> ordered = ordering.get(sortMode, filterMode);
+        if (reordered) {
+            adapter.replaceFiles(ordered);
+        } else {
+            adapter.updateFiles(ordered);
+        }
+    }
+
+    private void closePagedList() {
+        if (pagedList != null) {
+            adapter.setPagedList(null);
+            pagedList = null;
         }
     }
 
@@ -123,25 +369,33 @@ public class FileListFragment extends Fragment {
     }
 
     private void updateUniversalOpenButton() {
-        boolean hasMinecraftFiles = allFiles.stream().anyMatch(ResourceFile::isMinecraftFile);
+        // Paged sections are not walked here; opening reports it if none are Minecraft files
+        boolean hasMinecraftFiles = allFiles != null
+                ? allFiles.stream().anyMatch(ResourceFile::isMinecraftFile) : fileCount > 0;
         universalOpenButton.setEnabled(hasMinecraftFiles);
     }
 
     private void openAllFilesInMinecraft() {
-        List<ResourceFile> minecraftFiles = new ArrayList<>();
-        List<ResourceFile> zipFiles = new ArrayList<>();
-        
-        for (ResourceFile file : allFiles) {
-            if (file.isMinecraftFile()) {
-                if (file.needsZipRemoval()) {
-                    zipFiles.add(file);
-                } else {
-                    minecraftFiles.add(file);
+        if (allFiles == null) {
+            ResourceIndex.getInstance(requireContext()).loadFiles(section, files -> {
+                if (getView() != null) {
+                    openAllFilesInMinecraft(files);
                 }
+            });
+        } else {
+            openAllFilesInMinecraft(allFiles);
+        }
+    }
+
+    private void openAllFilesInMinecraft(List<ResourceFile> sectionFiles) {
+        List<ResourceFile> files = new ArrayList<>();
+        for (ResourceFile file : sectionFiles) {
+            if (file.isMinecraftFile()) {
+                files.add(file);
             }
         }
         
-        if (zipFiles.isEmpty() && minecraftFiles.isEmpty()) {
+        if (files.isEmpty()) {
             new MaterialAlertDialogBuilder(requireContext())
                 .setTitle("No Minecraft Files")
                 .setMessage("No Minecraft files found in this folder.")
@@ -150,6 +404,89 @@ public class FileListFragment extends Fragment {
             return;
         }
         
+        // Dependencies are imported before the packs that need them
+        List<ResourceFile> closure = PackDependencyGraph.getInstance().getInstallClosure(files);
+        validateThen(closure, () -> openFilesWithZipCheck(closure));
+    }
+
+    /**
+     * Runs the action once the files pass PackValidator; otherwise lists
+     * what is wrong and lets the user import anyway
+     */
+    private void validateThen(List<ResourceFile> files, Runnable action) {
+        cancelValidation();
+        validation = PackValidator.getInstance().validate(files, problems -> {
+            validation = null;
+            dismissValidationDialog();
+            if (getView() == null) {
+                return;
+            }
+            if (problems.isEmpty()) {
+                action.run();
+            } else {
+                showValidationProblems(problems, action);
+            }
+        });
+        recyclerView.postDelayed(showValidationDialog, 300);
+    }
+
+    private void showValidationDialog() {
+        if (validation == null || getView() == null) {
+            return;
+        }
+        validationDialog = new MaterialAlertDialogBuilder(requireContext())
+            .setTitle("Checking Files")
+            .setMessage("Making sure the files are complete…")
+            .setNegativeButton("Cancel", (dialog, which) -> cancelValidation())
+            .setCancelable(false)
+            .show();
+    }
+
+    private void cancelValidation() {
+        if (validation != null) {
+            validation.cancel();
+            validation = null;
+        }
+        dismissValidationDialog();
+    }
+
+    private void dismissValidationDialog() {
+        recyclerView.removeCallbacks(showValidationDialog);
+        if (validationDialog != null) {
+            validationDialog.dismiss();
+            validationDialog = null;
+        }
+    }
+
+    private void showValidationProblems(List<PackValidator.Problem> problems, Runnable action) {
+        StringBuilder message = new StringBuilder();
+        for (PackValidator.Problem problem : problems) {
+            message.append("• ").append(problem.getFile().getName()).append(": ")
+                .append(problem.getMessage()).append("\n");
+        }
+        message.append("\nMinecraft will probably fail to import ")
+            .append(problems.size() == 1 ? "this file" : "these files")
+            .append(". Download ").append(problems.size() == 1 ? "it" : "them").append(" again if you can.");
+
+        new MaterialAlertDialogBuilder(requireContext())
+            .setTitle(problems.size() == 1 ? "Damaged File" : "Damaged Files")
+            .setMessage(message.toString())
+            .setPositiveButton("Import Anyway", (dialog, which) -> action.run())
+            .setNegativeButton("Cancel", (dialog, which) -> dialog.dismiss())
+            .show();
+    }
+
+    private void openFilesWithZipCheck(List<ResourceFile> files) {
+        List<ResourceFile> minecraftFiles = new ArrayList<>();
+        List<ResourceFile> zipFiles = new ArrayList<>();
+        for (ResourceFile file : files) {
+            if (file.needsZipRemoval()) {
+                zipFiles.add(file);
+            } else {
+                minecraftFiles.add(file);
+            }
+        }
+        
         if (!zipFiles.isEmpty()) {
             showZipRemovalDialogForAll(zipFiles, minecraftFiles);
         } else {
@@ -173,54 +510,48 @@ public class FileListFragment extends Fragment {
     }
 
     private void removeZipExtensionsForAll(List<ResourceFile> zipFiles, List<ResourceFile> normalFiles) {
-        List<ResourceFile> allFilesToOpen = new ArrayList<>(normalFiles);
-        
+        List<FileOperations.Operation> renames = new ArrayList<>();
         for (ResourceFile zipFile : zipFiles) {
-            try {
-                File originalFile = zipFile.getFile();
-                String newName = originalFile.getName().replace(".zip", "");
-                File newFile = new File(originalFile.getParent(), newName);
-                
-                if (originalFile.renameTo(newFile)) {
-                    allFilesToOpen.add(new ResourceFile(newFile, section));
-                }
-            } catch (Exception e) {
-                Log.e(TAG, "Error removing zip extension for: " + zipFile.getName(), e);
-            }
+            renames.add(FileOperations.Operation.rename(zipFile, FileOperations.stripZipSuffix(zipFile.getName())));
         }
-        
-        // Refresh the file list
-        loadFiles();
-        
-        // Open all files
-        openFilesInMinecraft(allFilesToOpen);
+        runOperations(renames, "Removing .zip Extensions", result -> {
+            List<ResourceFile> allFilesToOpen = new ArrayList<>(normalFiles);
+            allFilesToOpen.addAll(result.getCreated());
+            openFilesInMinecraft(allFilesToOpen);
+        });
     }
 
     private void openFilesInMinecraft(List<ResourceFile> files) {
         if (files.isEmpty()) {
             return;
         }
-        
-        // Open the first file, which will trigger Minecraft PE
-        openInMinecraft(files.get(0));
-        
-        // Show a message about the other files
-        if (files.size() > 1) {
-            new MaterialAlertDialogBuilder(requireContext())
-                .setTitle("Files Opened")
-                .setMessage(files.size() + " files are being opened in Minecraft PE.")
-                .setPositiveButton("OK", (dialog, which) -> dialog.dismiss())
-                .show();
+        if (files.size() == 1) {
+            openInMinecraft(files.get(0));
+            return;
         }
+        
+        // Minecraft imports one file per launch, so hand it a single .mcaddon holding every pack
+        universalOpenButton.setEnabled(false);
+        AddonBundler.getInstance(requireContext()).bundle(files, bundle -> {
+            if (getView() == null) {
+                return;
+            }
+            updateUniversalOpenButton();
+            if (bundle != null) {
+                openInMinecraft(new ResourceFile(bundle, section));
+            } else {
+                new MaterialAlertDialogBuilder(requireContext())
+                    .setTitle("Error")
+                    .setMessage("Failed to combine the files into one addon. Please try again.")
+                    .setPositiveButton("OK", (dialog, which) -> dialog.dismiss())
+                    .show();
+            }
+        });
     }
 
     private void onFileAction(ResourceFile resourceFile) {
         if (resourceFile.isMinecraftFile()) {
-            if (resourceFile.needsZipRemoval()) {
-                showZipRemovalDialog(resourceFile);
-            } else {
-                openInMinecraft(resourceFile);
-            }
+            validateThen(Collections.singletonList(resourceFile), () -> openWithDependencies(resourceFile));
         } else {
             // For non-Minecraft files, just show a message
             new MaterialAlertDialogBuilder(requireContext())
@@ -231,6 +562,68 @@ public class FileListFragment extends Fragment {
         }
     }
 
+    private void openWithDependencies(ResourceFile resourceFile) {
+        PackDependencyGraph graph = PackDependencyGraph.getInstance();
+        List<ResourceFile> closure = graph.getInstallClosure(Collections.singletonList(resourceFile));
+        List<PackManifest.Dependency> missing = new ArrayList<>();
+        for (ResourceFile file : closure) {
+            missing.addAll(graph.getMissing(file));
+        }
+        if (closure.size() > 1 || !missing.isEmpty()) {
+            showDependencyDialog(resourceFile, closure, missing);
+        } else {
+            openSingleFile(resourceFile);
+        }
+    }
+
+    private void showDependencyDialog(ResourceFile resourceFile, List<ResourceFile> closure,
+                                      List<PackManifest.Dependency> missing) {
+        StringBuilder message = new StringBuilder();
+        if (closure.size() > 1) {
+            message.append("This pack needs:\n");
+            for (ResourceFile file : closure) {
+                if (!file.getKey().equals(resourceFile.getKey())) {
+                    message.append("• ").append(file.getName()).append("\n");
+                }
+            }
+        }
+        if (!missing.isEmpty()) {
+            if (message.length() > 0) {
+                message.append("\n");
+            }
+            message.append("Not found in your files:\n");
+            for (PackManifest.Dependency dependency : missing) {
+                message.append("• ").append(dependency.getUuid());
+                if (dependency.getVersion() != null) {
+                    message.append(" v").append(PackCompatibilityIndex.formatVersion(dependency.getVersion()));
+                }
+                message.append("\n");
+            }
+            message.append("\nThe pack may not work until these are imported.");
+        }
+
+        MaterialAlertDialogBuilder builder = new MaterialAlertDialogBuilder(requireContext())
+            .setTitle("Pack Dependencies")
+            .setMessage(message.toString().trim())
+            .setNegativeButton("Cancel", (dialog, which) -> dialog.dismiss());
+        if (closure.size() > 1) {
+            builder.setPositiveButton("Import All",
+                    (dialog, which) -> validateThen(closure, () -> openFilesWithZipCheck(closure)))
+                .setNeutralButton("Only This", (dialog, which) -> openSingleFile(resourceFile));
+        } else {
+            builder.setPositiveButton("Import Anyway", (dialog, which) -> openSingleFile(resourceFile));
+        }
+        builder.show();
+    }
+
+    private void openSingleFile(ResourceFile resourceFile) {
+        if (resourceFile.needsZipRemoval()) {
+            showZipRemovalDialog(resourceFile);
+        } else {
+            openInMinecraft(resourceFile);
+        }
+    }
+
     private void showZipRemovalDialog(ResourceFile resourceFile) {
         new MaterialAlertDialogBuilder(requireContext())
             .setTitle("Remove .zip Extension?")
@@ -243,30 +636,239 @@ public class FileListFragment extends Fragment {
     }
 
     private void removeZipExtension(ResourceFile resourceFile) {
-        try {
-            File originalFile = resourceFile.getFile();
-            String newName = originalFile.getName().replace(".zip", "");
-            File newFile = new File(originalFile.getParent(), newName);
-            
-            if (originalFile.renameTo(newFile)) {
-                // Refresh the file list
-                loadFiles();
-                // Open the renamed file
-                openInMinecraft(new ResourceFile(newFile, section));
-            } else {
-                new MaterialAlertDialogBuilder(requireContext())
-                    .setTitle("Error")
-                    .setMessage("Failed to remove .zip extension. Please try again.")
-                    .setPositiveButton("OK", (dialog, which) -> dialog.dismiss())
-                    .show();
+        String newName = FileOperations.stripZipSuffix(resourceFile.getName());
+        runOperations(Collections.singletonList(FileOperations.Operation.rename(resourceFile, newName)),
+            "Removing .zip Extension", result -> {
+                if (!result.getCreated().isEmpty()) {
+                    openInMinecraft(result.getCreated().get(0));
+                }
+            });
+    }
+
+    private void showFileOptions(ResourceFile resourceFile) {
+        List<String> labels = new ArrayList<>();
+        List<Runnable> actions = new ArrayList<>();
+        labels.add("Rename");
+        actions.add(() -> showRenameDialog(resourceFile));
+        for (String target : ResourceIndex.SECTIONS) {
+            if (!target.equals(section)) {
+                labels.add("Move to " + getSectionLabel(target));
+                actions.add(() -> runOperations(
+                    Collections.singletonList(FileOperations.Operation.move(resourceFile, target)), "Moving", null));
             }
-        } catch (Exception e) {
-            Log.e(TAG, "Error removing zip extension", e);
-            new MaterialAlertDialogBuilder(requireContext())
-                .setTitle("Error")
-                .setMessage("An error occurred while processing the file.")
-                .setPositiveButton("OK", (dialog, which) -> dialog.dismiss())
-                .show();
+        }
+        labels.add("Share");
+        actions.add(() -> startActivity(FileOperations.buildShareIntent(requireContext(),
+            Collections.singletonList(resourceFile))));
+        if (resourceFile.isMinecraftFile()) {
+            labels.add("Optimize");
+            actions.add(() -> optimize(resourceFile));
+        }
+        if (section.equals("textures") && TextureDownscaler.canDownscale(resourceFile)) {
+            labels.add("Downscale textures");
+            actions.add(() -> showDownscaleDialog(resourceFile));
+        }
+        labels.add("Delete");
+        actions.add(() -> confirmDelete(resourceFile));
+
+        new MaterialAlertDialogBuilder(requireContext())
+            .setTitle(resourceFile.getName())
+            .setItems(labels.toArray(new String[0]), (dialog, which) -> actions.get(which).run())
+            .show();
+    }
+
+    private void optimize(ResourceFile resourceFile) {
+        AlertDialog progressDialog = new MaterialAlertDialogBuilder(requireContext())
+            .setTitle("Optimizing")
+            .setMessage("Recompressing " + resourceFile.getName() + "…")
+            .setCancelable(false)
+            .show();
+
+        PackOptimizer.getInstance(requireContext()).optimize(Collections.singletonList(resourceFile),
+            new PackOptimizer.ProgressListener() {
+                @Override
+                public void onProgress(int done, int total) {
+                }
+
+                @Override
+                public void onFinished(List<PackOptimizer.Result> results) {
+                    progressDialog.dismiss();
+                    if (getView() == null) {
+                        return;
+                    }
+                    PackOptimizer.Result result = results.get(0);
+                    String message;
+                    if (result.getError() != null) {
+                        message = result.getError() + ".";
+                    } else if (result.getBytesSaved() > 0) {
+                        message = "Saved " + DisplayFormat.formatSize(result.getBytesSaved())
+                            + ". The pack's content is unchanged.";
+                    } else {
+                        message = "This pack is already as small as it can be made.";
+                    }
+                    new MaterialAlertDialogBuilder(requireContext())
+                        .setTitle(resourceFile.getName())
+                        .setMessage(message)
+                        .setPositiveButton("OK", (dialog, which) -> dialog.dismiss())
+                        .show();
+                }
+            });
+    }
+
+    private void showDownscaleDialog(ResourceFile resourceFile) {
+        int[] factors = {2, 4};
+        new MaterialAlertDialogBuilder(requireContext())
+            .setTitle("Downscale Textures")
+            .setItems(new String[] {"2× smaller (¼ of the memory)", "4× smaller (1/16 of the memory)"},
+                (dialog, which) -> downscale(resourceFile, factors[which]))
+            .setNegativeButton("Cancel", (dialog, which) -> dialog.dismiss())
+            .show();
+    }
+
+    private void downscale(ResourceFile resourceFile, int factor) {
+        AlertDialog progressDialog = new MaterialAlertDialogBuilder(requireContext())
+            .setTitle("Downscaling")
+            .setMessage("Reading " + resourceFile.getName() + "…")
+            .setCancelable(false)
+            .show();
+
+        TextureDownscaler.getInstance(requireContext()).downscale(resourceFile, factor,
+            new TextureDownscaler.ProgressListener() {
+                @Override
+                public void onProgress(int done, int total) {
+                    progressDialog.setMessage("Scaled " + done + " of " + total + " textures…");
+                }
+
+                @Override
+                public void onFinished(File output, String error) {
+                    progressDialog.dismiss();
+                    if (getView() == null) {
+                        return;
+                    }
+                    new MaterialAlertDialogBuilder(requireContext())
+                        .setTitle(output != null ? "Textures Downscaled" : "Error")
+                        .setMessage(output != null
+                            ? "Saved as " + output.getName() + ". It can be imported next to the original pack."
+                            : error + ".")
+                        .setPositiveButton("OK", (dialog, which) -> dialog.dismiss())
+                        .show();
+                }
+            });
+    }
+
+    private void showRenameDialog(ResourceFile resourceFile) {
+        EditText input = new EditText(requireContext());
+        input.setSingleLine(true);
+        input.setText(resourceFile.getName());
+        // Preselect the name without its extension
+        int extensionStart = resourceFile.getName().length() - resourceFile.getExtension().length();
+        input.setSelection(0, Math.max(0, extensionStart));
+
+        FrameLayout container = new FrameLayout(requireContext());
+        int padding = Math.round(20 * getResources().getDisplayMetrics().density);
+        container.setPadding(padding, padding / 2, padding, 0);
+        container.addView(input);
+
+        new MaterialAlertDialogBuilder(requireContext())
+            .setTitle("Rename")
+            .setView(container)
+            .setPositiveButton("Rename", (dialog, which) -> {
+                String newName = input.getText().toString().trim();
+                if (!newName.isEmpty() && newName.indexOf('/') == -1 && !newName.equals(resourceFile.getName())) {
+                    runOperations(Collections.singletonList(FileOperations.Operation.rename(resourceFile, newName)),
+                        "Renaming", null);
+                }
+            })
+            .setNegativeButton("Cancel", (dialog, which) -> dialog.dismiss())
+            .show();
+    }
+
+    private void confirmDelete(ResourceFile resourceFile) {
+        // Packs that only work with this one would be left broken
+        List<ResourceFile> closure = PackDependencyGraph.getInstance()
+            .getDeleteClosure(Collections.singletonList(resourceFile));
+        MaterialAlertDialogBuilder builder = new MaterialAlertDialogBuilder(requireContext())
+            .setTitle("Delete File?")
+            .setNegativeButton("Cancel", (dialog, which) -> dialog.dismiss());
+        if (closure.size() > 1) {
+            StringBuilder message = new StringBuilder();
+            message.append(resourceFile.getName()).append(" is needed by:\n");
+            for (ResourceFile file : closure) {
+                if (!file.getKey().equals(resourceFile.getKey())) {
+                    message.append("• ").append(file.getName()).append("\n");
+                }
+            }
+            builder.setMessage(message.toString().trim())
+                .setPositiveButton("Delete All", (dialog, which) -> deleteFiles(closure))
+                .setNeutralButton("Only This", (dialog, which) ->
+                    deleteFiles(Collections.singletonList(resourceFile)));
+        } else {
+            builder.setMessage("Delete " + resourceFile.getName() + "? This cannot be undone.")
+                .setPositiveButton("Delete", (dialog, which) ->
+                    deleteFiles(Collections.singletonList(resourceFile)));
+        }
+        builder.show();
+    }
+
+    private void deleteFiles(List<ResourceFile> files) {
+        List<FileOperations.Operation> deletes = new ArrayList<>();
+        for (ResourceFile file : files) {
+            deletes.add(FileOperations.Operation.delete(file));
+        }
+        runOperations(deletes, "Deleting", null);
+    }
+
+    /**
+     * Runs a batch in the background, showing its progress when it has more than one file
+     */
+    private void runOperations(List<FileOperations.Operation> operations, String title,
+                               @Nullable Consumer<FileOperations.Result> onDone) {
+        AlertDialog progressDialog = operations.size() > 1
+            ? new MaterialAlertDialogBuilder(requireContext())
+                .setTitle(title)
+                .setMessage("Processing " + operations.size() + " files…")
+                .setCancelable(false)
+                .show()
+            : null;
+
+        FileOperations.getInstance(requireContext()).run(operations, new FileOperations.ProgressListener() {
+            @Override
+            public void onProgress(int done, int total) {
+                if (progressDialog != null) {
+                    progressDialog.setMessage("Processed " + done + " of " + total + " files…");
+                }
+            }
+
+            @Override
+            public void onFinished(FileOperations.Result result) {
+                if (progressDialog != null) {
+                    progressDialog.dismiss();
+                }
+                if (getView() == null) {
+                    return;
+                }
+                if (!result.getFailures().isEmpty()) {
+                    new MaterialAlertDialogBuilder(requireContext())
+                        .setTitle("Error")
+                        .setMessage(String.join("\n", result.getFailures()))
+                        .setPositiveButton("OK", (dialog, which) -> dialog.dismiss())
+                        .show();
+                }
+                if (onDone != null) {
+                    onDone.accept(result);
+                }
+            }
+        });
+    }
+
+    private static String getSectionLabel(String section) {
+        switch (section) {
+            case "mods":
+                return "Addons";
+            case "textures":
+                return "Textures";
+            default:
+                return "Maps";
         }
     }
 
@@ -281,8 +883,8 @@ public class FileListFragment extends Fragment {
                 file
             );
             
-            // Determine MIME type based on file extension
-            String mimeType = getMimeTypeForFile(resourceFile.getExtension());
+            // Determine MIME type from the extension, or from the contents if it says nothing
+            String mimeType = getMimeTypeForFile(resourceFile);
             
             // Try multiple approaches to open the file
             
@@ -336,8 +938,8 @@ public class FileListFragment extends Fragment {
         }
     }
 
-    private String getMimeTypeForFile(String extension) {
-        switch (extension.toLowerCase()) {
+    private String getMimeTypeForFile(ResourceFile resourceFile) {
+        switch (resourceFile.getExtension()) {
             case ".mcaddon":
                 return "application/minecraft-addon";
             case ".mcpack":
@@ -351,14 +953,17 @@ public class FileListFragment extends Fragment {
             case ".mctemplate.zip":
                 return "application/zip";
             default:
-                return "application/octet-stream";
+                // Cached per path and mtime; one read of the central directory the first time
+                return ResourceClassifier.getInstance().classify(resourceFile).getMimeType();
         }
     }
 
     @Override
     public void onResume() {
         super.onResume();
-        // Refresh the file list when returning to the fragment
-        loadFiles();
+        // Pick up a version selected in the Version Manager
+        if (getActivity() instanceof MainActivity) {
+            adapter.setSelectedVersion(((MainActivity) getActivity()).getSelectedVersion());
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,316 @@
+package com.axion.launcher;
+
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.core.content.FileProvider;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs renames, deletes and moves between sections on background threads.
+ *
+ * Target names are resolved up front on the batch thread, so the operations
+ * themselves touch distinct files and run concurrently. When a batch is done
+ * its results are handed to ResourceIndex as one update instead of waiting
+ * for a rescan, and the caller gets a single progress count for the batch.
+ */
+public class FileOperations {
+
+    private static final String TAG = "FileOperations";
+    private static final int WORKER_COUNT = 4;
+
+    private static FileOperations instance;
+
+    private final ResourceIndex resourceIndex;
+    // Batches run one after another so their target names cannot collide
+    private final ExecutorService batchExecutor = Executors.newSingleThreadExecutor();
+    private final ExecutorService workers = Executors.newFixedThreadPool(WORKER_COUNT);
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    public static class Operation {
+        static final int RENAME = 0;
+        static final int DELETE = 1;
+        static final int MOVE = 2;
+
+        final int kind;
+        final ResourceFile file;
+        final String newName;
+        final String targetSection;
+
+        private Operation(int kind, ResourceFile file, String newName, String targetSection) {
+            this.kind = kind;
+            this.file = file;
+            this.newName = newName;
+            this.targetSection = targetSection;
+        }
+
+        public static Operation rename(ResourceFile file, String newName) {
+            return new Operation(RENAME, file, newName, file.getSection());
+        }
+
+        public static Operation delete(ResourceFile file) {
+            return new Operation(DELETE, file, null, null);
+        }
+
+        public static Operation move(ResourceFile file, String targetSection) {
+            return new Operation(MOVE, file, file.getName(), targetSection);
+        }
+    }
+
+    public static class Result {
+        private final List<ResourceFile> created = new ArrayList<>();
+        private final List<ResourceFile> removed = new ArrayList<>();
+        private final List<String> failures = new ArrayList<>();
+
+        /**
+         * Files as they are after renames and moves, in operation order
+         */
+        public List<ResourceFile> getCreated() {
+            return created;
+        }
+
+        public int getSucceededCount() {
+            return removed.size();
+        }
+
+        public List<String> getFailures() {
+            return failures;
+        }
+    }
+
+    public interface ProgressListener {
+        /**
+         * Called on the main thread each time an operation of the batch finishes
+         */
+        void onProgress(int done, int total);
+
+        /**
+         * Called on the main thread once the whole batch is done
+         */
+        void onFinished(Result result);
+    }
+
+    private static class Outcome {
+        final int index;
+        final Operation operation;
+        final ResourceFile created;
+        final String failure;
+
+        Outcome(int index, Operation operation, ResourceFile created, String failure) {
+            this.index = index;
+            this.operation = operation;
+            this.created = created;
+            this.failure = failure;
+        }
+    }
+
+    private FileOperations(Context context) {
+        resourceIndex = ResourceIndex.getInstance(context);
+    }
+
+    public static synchronized FileOperations getInstance(Context context) {
+        if (instance == null) {
+            instance = new FileOperations(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    public void run(List<Operation> operations, ProgressListener listener) {
+        List<Operation> batch = new ArrayList<>(operations);
+        batchExecutor.execute(() -> runBatch(batch, listener));
+    }
+
+    private void runBatch(List<Operation> batch, ProgressListener listener) {
+        ExecutorCompletionService<Outcome> completion = new ExecutorCompletionService<>(workers);
+        Set<File> reserved = new HashSet<>();
+        List<Outcome> outcomes = new ArrayList<>();
+        // Index of each submitted operation, so one that throws still gets its outcome
+        Map<Future<Outcome>, Integer> submitted = new HashMap<>();
+        for (int i = 0; i < batch.size(); i++) {
+            int index = i;
+            Operation operation = batch.get(i);
+            if (operation.kind == Operation.DELETE) {
+                submitted.put(completion.submit(() -> delete(index, operation)), index);
+                continue;
+            }
+            File target = new File(resourceIndex.getSectionDir(operation.targetSection), operation.newName);
+            if (target.equals(operation.file.getFile())) {
+                outcomes.add(new Outcome(index, operation, null, operation.kind == Operation.MOVE
+                        ? operation.file.getName() + " is already in " + operation.targetSection
+                        : operation.file.getName() + " already has that name"));
+                continue;
+            }
+            target = resolveTarget(operation, target, reserved);
+            if (target == null) {
+                outcomes.add(new Outcome(index, operation, null, operation.newName + " already exists"));
+                continue;
+            }
+            File resolved = target;
+            submitted.put(completion.submit(() -> move(index, operation, resolved)), index);
+        }
+
+        int total = batch.size();
+        postProgress(listener, outcomes.size(), total);
+        for (int i = 0; i < submitted.size(); i++) {
+            Future<Outcome> future = null;
+            try {
+                future = completion.take();
+                outcomes.add(future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e) {
+                int index = submitted.get(future);
+                Operation operation = batch.get(index);
+                Log.e(TAG, "File operation failed on " + operation.file.getName(), e);
+                outcomes.add(new Outcome(index, operation, null,
+                        "Could not " + verbOf(operation) + " " + operation.file.getName()));
+            }
+            postProgress(listener, outcomes.size(), total);
+        }
+
+        // Keep results in the order the operations were given
+        outcomes.sort((a, b) -> Integer.compare(a.index, b.index));
+        Result result = new Result();
+        for (Outcome outcome : outcomes) {
+            if (outcome.failure != null) {
+                result.failures.add(outcome.failure);
+                continue;
+            }
+            result.removed.add(outcome.operation.file);
+            if (outcome.created != null) {
+                result.created.add(outcome.created);
+            }
+        }
+        resourceIndex.applyBatch(result.removed, result.created);
+        mainHandler.post(() -> listener.onFinished(result));
+    }
+
+    /**
+     * Picks the destination of a rename or move other than the file itself.
+     * A rename onto an existing name fails; a move picks a free name in the
+     * target section.
+     */
+    private File resolveTarget(Operation operation, File target, Set<File> reserved) {
+        File dir = target.getParentFile();
+        if (operation.kind == Operation.MOVE) {
+            String name = operation.newName;
+            int dot = name.indexOf('.');
+            String stem = dot > 0 ? name.substring(0, dot) : name;
+            String extensions = dot > 0 ? name.substring(dot) : "";
+            for (int i = 2; target.exists() || reserved.contains(target); i++) {
+                target = new File(dir, stem + " (" + i + ")" + extensions);
+            }
+        } else if (target.exists() || reserved.contains(target)) {
+            return null;
+        }
+        reserved.add(target);
+        return target;
+    }
+
+    private Outcome delete(int index, Operation operation) {
+        File file = operation.file.getFile();
+        if (file.delete() || !file.exists()) {
+            return new Outcome(index, operation, null, null);
+        }
+        return new Outcome(index, operation, null, "Could not delete " + operation.file.getName());
+    }
+
+    private Outcome move(int index, Operation operation, File target) {
+        File source = operation.file.getFile();
+        target.getParentFile().mkdirs();
+        // Sections share one volume, so this is normally a rename; copy only if that fails
+        if (!source.renameTo(target)) {
+            try {
+                copy(source, target);
+                target.setLastModified(source.lastModified());
+                if (!source.delete()) {
+                    target.delete();
+                    return new Outcome(index, operation, null, "Could not move " + operation.file.getName());
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "Error moving " + source.getName(), e);
+                target.delete();
+                return new Outcome(index, operation, null, "Could not move " + operation.file.getName());
+            }
+        }
+        return new Outcome(index, operation, operation.file.movedTo(target, operation.targetSection), null);
+    }
+
+    private static void copy(File source, File target) throws IOException {
+        try (InputStream in = new FileInputStream(source); OutputStream out = new FileOutputStream(target)) {
+            byte[] buffer = new byte[64 * 1024];
+            int bytesRead;
+            while ((bytesRead = in.read(buffer)) != -1) {
+                out.write(buffer, 0, bytesRead);
+            }
+        }
+    }
+
+    private static String verbOf(Operation operation) {
+        switch (operation.kind) {
+            case Operation.DELETE:
+                return "delete";
+            case Operation.MOVE:
+                return "move";
+            default:
+                return "rename";
+        }
+    }
+
+    private void postProgress(ProgressListener listener, int done, int total) {
+        mainHandler.post(() -> listener.onProgress(done, total));
+    }
+
+    /**
+     * Removes a trailing ".zip" only, e.g. "pack.zip.mcpack.zip" becomes "pack.zip.mcpack"
+     */
+    public static String stripZipSuffix(String name) {
+        if (name.toLowerCase().endsWith(".zip")) {
+            return name.substring(0, name.length() - 4);
+        }
+        return name;
+    }
+
+    /**
+     * Intent that shares the given files with any app, through the FileProvider
+     */
+    public static Intent buildShareIntent(Context context, List<ResourceFile> files) {
+        ArrayList<Uri> uris = new ArrayList<>(files.size());
+        for (ResourceFile file : files) {
+            uris.add(FileProvider.getUriForFile(context, context.getPackageName() + ".fileprovider", file.getFile()));
+        }
+        Intent intent;
+        if (uris.size() == 1) {
+            intent = new Intent(Intent.ACTION_SEND);
+            intent.putExtra(Intent.EXTRA_STREAM, uris.get(0));
+        } else {
+            intent = new Intent(Intent.ACTION_SEND_MULTIPLE);
+            intent.putParcelableArrayListExtra(Intent.EXTRA_STREAM, uris);
+        }
+        intent.setType("application/octet-stream");
+        intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+        return Intent.createChooser(intent, "Share");
+    }
+}
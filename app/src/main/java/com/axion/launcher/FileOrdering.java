@@ -0,0 +1,237 @@
+package com.axion.launcher;
+
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Sorted and filtered views of one section's files.
+ *
+ * Every file gets its sort keys computed once, as longs: negated dates and
+ * sizes, packed pack versions and the first bytes of the name's collation
+ * key. One ordering per sort mode is built the first time that mode is used
+ * and afterwards kept up to date by merging in changed files, so switching
+ * modes only walks an existing ordering. Used from the main thread.
+ */
+public class FileOrdering {
+
+    public static final int SORT_NEWEST = 0;
+    public static final int SORT_NAME = 1;
+    public static final int SORT_SIZE = 2;
+    public static final int SORT_TYPE = 3;
+    public static final int SORT_PACK_VERSION = 4;
+    static final String[] SORT_LABELS = {"Newest first", "Name", "Size", "Type", "Pack version"};
+
+    public static final int FILTER_ALL = 0;
+    public static final int FILTER_ADDONS = 1;
+    public static final int FILTER_PACKS = 2;
+    public static final int FILTER_TEMPLATES = 3;
+    public static final int FILTER_OTHER = 4;
+    static final String[] FILTER_LABELS = {"All files", "Addons", "Packs", "World templates", "Other files"};
+
+    private static final class Entry {
+        // Replaced by newer objects for the same contents, which keep the keys
+        ResourceFile file;
+        // Ascending order of each key is the order of its sort mode
+        final long[] keys = new long[SORT_LABELS.length];
+        final byte[] collation;
+        final int type;
+        boolean removed;
+
+        Entry(ResourceFile file, byte[] collation) {
+            this.file = file;
+            this.collation = collation;
+            this.type = typeOf(file);
+            long namePrefix = prefixOf(collation);
+            keys[SORT_NEWEST] = -file.getLastModified();
+            keys[SORT_NAME] = namePrefix;
+            keys[SORT_SIZE] = -file.getSize();
+            // Type first, then the name prefix without its last byte
+            keys[SORT_TYPE] = ((long) type << 56) | ((namePrefix ^ Long.MIN_VALUE) >>> 8);
+            keys[SORT_PACK_VERSION] = packVersionKey(file.getPackInfo());
+        }
+    }
+
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final Entry[][] orders = new Entry[SORT_LABELS.length][];
+    private Collator collator;
+    private Locale locale;
+
+    /**
+     * Takes the section's current files. Files with the same size, date and
+     * pack metadata state as before keep their keys; the others are merged
+     * into every ordering built so far.
+     */
+    public void update(List<ResourceFile> files) {
+        if (!Locale.getDefault().equals(locale)) {
+            // Names collate differently now, so every key is stale
+            locale = Locale.getDefault();
+            collator = Collator.getInstance(locale);
+            collator.setStrength(Collator.SECONDARY);
+            entries.clear();
+            Arrays.fill(orders, null);
+        }
+
+        Map<String, Entry> previous = new HashMap<>(entries);
+        List<Entry> added = new ArrayList<>();
+        entries.clear();
+        for (ResourceFile file : files) {
+            Entry entry = previous.remove(file.getKey());
+            if (entry != null && entry.file.hasSameContents(file)) {
+                // Listings are rebuilt with new objects; only a changed stamp moves the file
+                entry.file = file;
+            } else {
+                byte[] collation = entry != null
+                        ? entry.collation
+                        : collator.getCollationKey(file.getName()).toByteArray();
+                if (entry != null) {
+                    entry.removed = true;
+                }
+                entry = new Entry(file, collation);
+                added.add(entry);
+            }
+            entries.put(file.getKey(), entry);
+        }
+        for (Entry gone : previous.values()) {
+            gone.removed = true;
+        }
+
+        if (added.isEmpty() && previous.isEmpty()) {
+            return;
+        }
+        for (int mode = 0; mode < orders.length; mode++) {
+            if (orders[mode] != null) {
+                orders[mode] = merge(mode, orders[mode], added);
+            }
+        }
+    }
+
+    /**
+     * The files in the given order, keeping only those the filter accepts
+     */
+    public List<ResourceFile> get(int sort, int filter) {
+        Entry[] order = orders[sort];
+        if (order == null) {
+            order = entries.values().toArray(new Entry[0]);
+            int mode = sort;
+            Arrays.sort(order, (a, b) -> compare(mode, a, b));
+            orders[sort] = order;
+        }
+        List<ResourceFile> result = new ArrayList<>(order.length);
+        for (Entry entry : order) {
+            if (accepts(filter, entry.type)) {
+                result.add(entry.file);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Drops removed entries from an ordering and merges the added ones in
+     */
+    private static Entry[] merge(int mode, Entry[] order, List<Entry> added) {
+        Entry[] sortedAdded = added.toArray(new Entry[0]);
+        Arrays.sort(sortedAdded, (a, b) -> compare(mode, a, b));
+        int kept = 0;
+        for (Entry entry : order) {
+            if (!entry.removed) {
+                kept++;
+            }
+        }
+        Entry[] merged = new Entry[kept + sortedAdded.length];
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (k < merged.length) {
+            while (i < order.length && order[i].removed) {
+                i++;
+            }
+            if (j == sortedAdded.length
+                    || (i < order.length && compare(mode, order[i], sortedAdded[j]) <= 0)) {
+                merged[k++] = order[i++];
+            } else {
+                merged[k++] = sortedAdded[j++];
+            }
+        }
+        return merged;
+    }
+
+    private static int compare(int mode, Entry a, Entry b) {
+        int result = Long.compare(a.keys[mode], b.keys[mode]);
+        if (result != 0) {
+            return result;
+        }
+        // Equal keys fall back to the name, then the path, so the order is total
+        result = Long.compare(a.keys[SORT_NAME], b.keys[SORT_NAME]);
+        if (result == 0) {
+            result = compareBytes(a.collation, b.collation);
+        }
+        if (result == 0) {
+            result = a.file.getKey().compareTo(b.file.getKey());
+        }
+        return result;
+    }
+
+    private static int compareBytes(byte[] a, byte[] b) {
+        int length = Math.min(a.length, b.length);
+        for (int i = 0; i < length; i++) {
+            int result = Integer.compare(a[i] & 0xff, b[i] & 0xff);
+            if (result != 0) {
+                return result;
+            }
+        }
+        return Integer.compare(a.length, b.length);
+    }
+
+    /**
+     * First eight bytes of a collation key as a signed long that sorts like the bytes
+     */
+    private static long prefixOf(byte[] collation) {
+        long prefix = 0;
+        for (int i = 0; i < 8; i++) {
+            prefix = (prefix << 8) | (i < collation.length ? collation[i] & 0xff : 0);
+        }
+        return prefix ^ Long.MIN_VALUE;
+    }
+
+    /**
+     * Highest version first; files without a pack version go last
+     */
+    static long packVersionKey(PackManifest packInfo) {
+        int[] version = packInfo != null ? packInfo.getVersion() : null;
+        if (version == null || version.length == 0) {
+            return Long.MAX_VALUE;
+        }
+        long packed = 0;
+        for (int i = 0; i < 3; i++) {
+            int part = i < version.length ? Math.max(0, Math.min(version[i], 0xfffff)) : 0;
+            packed = (packed << 20) | part;
+        }
+        return -packed;
+    }
+
+    static int typeOf(ResourceFile file) {
+        switch (file.getMinecraftExtension()) {
+            case ".mcaddon":
+                return FILTER_ADDONS;
+            case ".mcpack":
+                return FILTER_PACKS;
+            case ".mctemplate":
+                return FILTER_TEMPLATES;
+            default:
+                return FILTER_OTHER;
+        }
+    }
+
+    private static boolean accepts(int filter, int type) {
+        return filter == FILTER_ALL || filter == type;
+    }
+
+    static boolean accepts(int filter, ResourceFile file) {
+        return accepts(filter, typeOf(file));
+    }
+}
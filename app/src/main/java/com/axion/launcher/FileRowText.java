@@ -0,0 +1,58 @@
+package com.axion.launcher;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Details line of a resource row. Plain rows show the text precomputed on
+ * ResourceFile; rows with a warning or a texture footprint build their text
+ * once and reuse it until it is invalidated, so rebinding a row allocates
+ * nothing.
+ */
+final class FileRowText {
+
+    // Keyed by instance: ResourceIndex hands out a new ResourceFile whenever a file changes
+    private final Map<ResourceFile, String> extendedDetails = new IdentityHashMap<>();
+
+    CharSequence details(ResourceFile file, boolean incompatible, int missingCount) {
+        return details(file, incompatible, missingCount, -1);
+    }
+
+    /**
+     * @param incompatible whether the pack needs a newer game than the selected version
+     * @param missingCount number of dependencies not found in the resource folders
+     * @param textureBytes memory the pack's textures take once loaded, or -1 if not known
+     */
+    CharSequence details(ResourceFile file, boolean incompatible, int missingCount, long textureBytes) {
+        if (!incompatible && missingCount == 0 && textureBytes < 0) {
+            return file.getDetails();
+        }
+        String text = extendedDetails.get(file);
+        if (text == null) {
+            StringBuilder builder = new StringBuilder(file.getDetails());
+            if (textureBytes >= 0) {
+                builder.append(" • ").append(DisplayFormat.formatSize(textureBytes)).append(" of textures");
+            }
+            PackManifest packInfo = file.getPackInfo();
+            if (incompatible && packInfo != null && packInfo.getMinEngineVersion() != null) {
+                builder.append(" • Requires ")
+                        .append(PackCompatibilityIndex.formatVersion(packInfo.getMinEngineVersion()))
+                        .append('+');
+            }
+            if (missingCount > 0) {
+                builder.append(" • Missing ").append(missingCount)
+                        .append(missingCount == 1 ? " dependency" : " dependencies");
+            }
+            text = builder.toString();
+            extendedDetails.put(file, text);
+        }
+        return text;
+    }
+
+    /**
+     * Drops cached texts after the selected version, compatibility, dependencies or footprints changed
+     */
+    void invalidate() {
+        extendedDetails.clear();
+    }
+}
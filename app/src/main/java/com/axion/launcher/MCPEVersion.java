@@ -6,6 +6,7 @@ public class MCPEVersion {
     private String description;
     private String filterType;
     private boolean isInstalled;
+    private String key; // Built on first use; rows ask for it on every bind
 
     public MCPEVersion(String versionNumber, String type, String description, String filterType, boolean isInstalled) {
         this.versionNumber = versionNumber;
@@ -21,6 +22,7 @@ public class MCPEVersion {
 
     public void setVersionNumber(String versionNumber) {
         this.versionNumber = versionNumber;
+        key = null;
     }
 
     public String getType() {
@@ -45,6 +47,7 @@ public class MCPEVersion {
 
     public void setFilterType(String filterType) {
         this.filterType = filterType;
+        key = null;
     }
 
     public boolean isInstalled() {
@@ -54,4 +57,14 @@ public class MCPEVersion {
     public void setInstalled(boolean installed) {
         isInstalled = installed;
     }
+
+    /**
+     * Identity of this version in the catalog, stable across list refreshes
+     */
+    public String getKey() {
+        if (key == null) {
+            key = filterType + ":" + versionNumber;
+        }
+        return key;
+    }
 }
\ No newline at end of file
@@ -9,6 +9,7 @@ import android.view.View;
 import android.widget.Toast;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.FileOutputStream;
@@ -43,6 +44,9 @@ public class MainActivity extends AppCompatActivity implements NavigationView.On
         
         // Initialize ApkModifier
         apkModifier = new ApkModifier(this);
+
+        // Continues interrupted downloads and lists ones that finished while the app was stopped
+        DownloadPipeline.getInstance(this);
         
         setContentView(R.layout.activity_main);
 
@@ -156,42 +160,32 @@ public class MainActivity extends AppCompatActivity implements NavigationView.On
         if (intent != null && Intent.ACTION_VIEW.equals(intent.getAction())) {
             Uri data = intent.getData();
             if (data != null) {
-                String mimeType = intent.getType();
-                if (mimeType != null) {
-                    saveMinecraftFile(data, mimeType);
-                }
+                // Without a type the archive's contents still tell what it is
+                saveMinecraftFile(data, intent.getType());
             }
         }
     }
 
     private void saveMinecraftFile(Uri fileUri, String mimeType) {
+        File incoming = null;
         try {
-            // Determine the target folder based on MIME type
-            String targetFolder = getTargetFolderForMimeType(mimeType);
-            if (targetFolder == null) {
-                Log.w(TAG, "Unsupported MIME type: " + mimeType);
-                return;
-            }
-
             // Get the file name from the URI
             String fileName = getFileNameFromUri(fileUri);
             if (fileName == null) {
                 fileName = "minecraft_file_" + System.currentTimeMillis();
             }
 
-            // Create target directory
+            // Copy next to the sections first, so the contents can decide where the file goes
             File baseDir = new File(getExternalFilesDir(null), "resources");
-            File targetDir = new File(baseDir, targetFolder);
-            if (!targetDir.exists()) {
-                targetDir.mkdirs();
+            File incomingDir = new File(baseDir, ".incoming");
+            if (!incomingDir.exists()) {
+                incomingDir.mkdirs();
             }
-
-            // Create target file
-            File targetFile = new File(targetDir, fileName);
+            incoming = new File(incomingDir, System.currentTimeMillis() + ".tmp");
 
             // Copy the file
             try (InputStream inputStream = getContentResolver().openInputStream(fileUri);
-                 OutputStream outputStream = new FileOutputStream(targetFile)) {
+                 OutputStream outputStream = new FileOutputStream(incoming)) {
                 
                 if (inputStream == null) {
                     Log.e(TAG, "Failed to open input stream for URI: " + fileUri);
@@ -205,6 +199,36 @@ public class MainActivity extends AppCompatActivity implements NavigationView.On
                 }
             }
 
+            // The archive's contents win over the MIME type, which senders often get wrong
+            ResourceClassifier.Classification classification = ResourceClassifier.getInstance().classify(incoming);
+            String targetFolder = classification.getSection();
+            if (targetFolder == null) {
+                targetFolder = mimeType != null ? getTargetFolderForMimeType(mimeType) : null;
+            } else {
+                fileName = classification.fixFileName(fileName);
+            }
+            if (targetFolder == null) {
+                Log.w(TAG, "Unsupported file: " + fileName + " (" + mimeType + ")");
+                Toast.makeText(this, fileName + " is not a Minecraft pack", Toast.LENGTH_LONG).show();
+                return;
+            }
+
+            // Create target directory
+            File targetDir = new File(baseDir, targetFolder);
+            if (!targetDir.exists()) {
+                targetDir.mkdirs();
+            }
+
+            // Create target file
+            File targetFile = new File(targetDir, fileName);
+            if ((targetFile.exists() && !targetFile.delete()) || !incoming.renameTo(targetFile)) {
+                throw new IOException("Could not move the file into " + targetFolder);
+            }
+            incoming = null;
+
+            // Update the Resource Manager listing without waiting for the file watch
+            ResourceIndex.getInstance(this).notifyChanged(targetFile);
+
             // Show success message
             String message = "File saved to " + targetFolder + " folder";
             Toast.makeText(this, message, Toast.LENGTH_LONG).show();
@@ -213,6 +237,10 @@ public class MainActivity extends AppCompatActivity implements NavigationView.On
         } catch (Exception e) {
             Log.e(TAG, "Error saving Minecraft file", e);
             Toast.makeText(this, "Error saving file: " + e.getMessage(), Toast.LENGTH_LONG).show();
+        } finally {
+            if (incoming != null) {
+                incoming.delete();
+            }
         }
     }
 
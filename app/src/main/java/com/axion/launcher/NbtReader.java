@@ -0,0 +1,447 @@
+package com.axion.launcher;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Pull reader for little-endian NBT, the format of Bedrock's level.dat.
+ *
+ * Works like JsonReader: the caller walks compounds and lists and reads
+ * only the values it wants, and skipValue() passes over everything else
+ * without building it. Tag names can be matched against preset Options
+ * straight from the read buffer, so walking a compound allocates nothing
+ * beyond the values actually read.
+ */
+public class NbtReader implements Closeable {
+
+    public static final int TAG_END = 0;
+    public static final int TAG_BYTE = 1;
+    public static final int TAG_SHORT = 2;
+    public static final int TAG_INT = 3;
+    public static final int TAG_LONG = 4;
+    public static final int TAG_FLOAT = 5;
+    public static final int TAG_DOUBLE = 6;
+    public static final int TAG_BYTE_ARRAY = 7;
+    public static final int TAG_STRING = 8;
+    public static final int TAG_LIST = 9;
+    public static final int TAG_COMPOUND = 10;
+    public static final int TAG_INT_ARRAY = 11;
+    public static final int TAG_LONG_ARRAY = 12;
+
+    // Nesting limit of the format; deeper data is corrupt or hostile
+    private static final int MAX_DEPTH = 512;
+    private static final int NO_TYPE = -1;
+
+    /**
+     * Tag names encoded once, for selectName()
+     */
+    public static final class Options {
+        final byte[][] names;
+
+        private Options(byte[][] names) {
+            this.names = names;
+        }
+
+        public static Options of(String... names) {
+            byte[][] encoded = new byte[names.length][];
+            for (int i = 0; i < names.length; i++) {
+                encoded[i] = names[i].getBytes(StandardCharsets.UTF_8);
+            }
+            return new Options(encoded);
+        }
+    }
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[8192];
+    private int position;
+    private int limit;
+
+    // Element type of each open list, or NO_TYPE for a compound; index 0 is the top level
+    private final int[] listTypes = new int[MAX_DEPTH + 1];
+    private final int[] listRemaining = new int[MAX_DEPTH + 1];
+    private int depth;
+    // Type of the next tag in a compound, read ahead by peek()
+    private int peekedType = NO_TYPE;
+    private boolean namePending;
+
+    public NbtReader(InputStream in) {
+        this.in = in;
+        listTypes[0] = NO_TYPE;
+    }
+
+    /**
+     * Type of the next value, or TAG_END at the end of a compound or list or of the input
+     */
+    public int peek() throws IOException {
+        if (listTypes[depth] != NO_TYPE) {
+            return listRemaining[depth] > 0 ? listTypes[depth] : TAG_END;
+        }
+        if (peekedType == NO_TYPE) {
+            if (depth == 0 && !fill(1)) {
+                // The top level holds one named tag and no end tag
+                return TAG_END;
+            }
+            peekedType = readUnsignedByte();
+            if (peekedType > TAG_LONG_ARRAY) {
+                throw new IOException("Unknown NBT tag type " + peekedType);
+            }
+            namePending = peekedType != TAG_END;
+        }
+        return peekedType;
+    }
+
+    public boolean hasNext() throws IOException {
+        return peek() != TAG_END;
+    }
+
+    /**
+     * Name of the next tag in a compound
+     */
+    public String nextName() throws IOException {
+        expectName();
+        int length = readUnsignedShort();
+        namePending = false;
+        return readString(length);
+    }
+
+    /**
+     * Consumes the next tag name and returns its index in the options, or -1
+     * if it is none of them; the value still has to be read or skipped
+     */
+    public int selectName(Options options) throws IOException {
+        expectName();
+        int length = readUnsignedShort();
+        namePending = false;
+        if (length > buffer.length) {
+            skip(length);
+            return -1;
+        }
+        require(length);
+        int match = -1;
+        for (int i = 0; i < options.names.length && match == -1; i++) {
+            if (regionEquals(options.names[i], length)) {
+                match = i;
+            }
+        }
+        position += length;
+        return match;
+    }
+
+    public void beginCompound() throws IOException {
+        beginValue(TAG_COMPOUND);
+        push(NO_TYPE, 0);
+    }
+
+    public void endCompound() throws IOException {
+        if (listTypes[depth] != NO_TYPE || depth == 0 || peek() != TAG_END) {
+            throw new IOException("Not at the end of a compound");
+        }
+        peekedType = NO_TYPE;
+        depth--;
+    }
+
+    /**
+     * Opens a list and returns its length; its values all have the type peek() reports
+     */
+    public int beginList() throws IOException {
+        beginValue(TAG_LIST);
+        int elementType = readUnsignedByte();
+        int length = readInt();
+        if (length < 0 || elementType > TAG_LONG_ARRAY) {
+            throw new IOException("Corrupt NBT list");
+        }
+        push(length > 0 ? elementType : TAG_END, length);
+        return length;
+    }
+
+    public void endList() throws IOException {
+        if (listTypes[depth] == NO_TYPE || listRemaining[depth] > 0) {
+            throw new IOException("Not at the end of a list");
+        }
+        depth--;
+    }
+
+    public byte nextByte() throws IOException {
+        beginValue(TAG_BYTE);
+        return (byte) readUnsignedByte();
+    }
+
+    public short nextShort() throws IOException {
+        beginValue(TAG_SHORT);
+        return (short) readUnsignedShort();
+    }
+
+    public int nextInt() throws IOException {
+        beginValue(TAG_INT);
+        return readInt();
+    }
+
+    public long nextLong() throws IOException {
+        beginValue(TAG_LONG);
+        return readLong();
+    }
+
+    public float nextFloat() throws IOException {
+        beginValue(TAG_FLOAT);
+        return Float.intBitsToFloat(readInt());
+    }
+
+    public double nextDouble() throws IOException {
+        beginValue(TAG_DOUBLE);
+        return Double.longBitsToDouble(readLong());
+    }
+
+    public String nextString() throws IOException {
+        beginValue(TAG_STRING);
+        return readString(readUnsignedShort());
+    }
+
+    /**
+     * Reads a byte, short, int or long as a long, for fields whose width
+     * differs between game versions
+     */
+    public long nextIntegral() throws IOException {
+        switch (peek()) {
+            case TAG_BYTE:
+                return nextByte();
+            case TAG_SHORT:
+                return nextShort();
+            case TAG_INT:
+                return nextInt();
+            case TAG_LONG:
+                return nextLong();
+            default:
+                throw new IOException("Expected a number but was tag type " + peek());
+        }
+    }
+
+    /**
+     * Skips the next value, and its name if that was not read, without materializing it
+     */
+    public void skipValue() throws IOException {
+        int type = peek();
+        if (type == TAG_END) {
+            throw new IOException("No value to skip");
+        }
+        beginValue(type);
+        skipPayload(type, depth);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private void expectName() throws IOException {
+        if (peek() == TAG_END || !namePending) {
+            throw new IOException("No tag name to read");
+        }
+    }
+
+    /**
+     * Checks the next value's type and moves past its name or list slot
+     */
+    private void beginValue(int type) throws IOException {
+        int actual = peek();
+        if (actual != type) {
+            throw new IOException("Expected tag type " + type + " but was " + actual);
+        }
+        if (listTypes[depth] != NO_TYPE) {
+            listRemaining[depth]--;
+            return;
+        }
+        if (namePending) {
+            skip(readUnsignedShort());
+            namePending = false;
+        }
+        peekedType = NO_TYPE;
+    }
+
+    private void push(int listType, int remaining) throws IOException {
+        if (depth == MAX_DEPTH) {
+            throw new IOException("NBT nested too deeply");
+        }
+        depth++;
+        listTypes[depth] = listType;
+        listRemaining[depth] = remaining;
+    }
+
+    private void skipPayload(int type, int level) throws IOException {
+        if (level > MAX_DEPTH) {
+            throw new IOException("NBT nested too deeply");
+        }
+        switch (type) {
+            case TAG_BYTE_ARRAY:
+                skip(readLength(1));
+                return;
+            case TAG_INT_ARRAY:
+                skip(readLength(4));
+                return;
+            case TAG_LONG_ARRAY:
+                skip(readLength(8));
+                return;
+            case TAG_STRING:
+                skip(readUnsignedShort());
+                return;
+            case TAG_LIST: {
+                int elementType = readUnsignedByte();
+                int length = readInt();
+                if (length < 0 || elementType > TAG_LONG_ARRAY) {
+                    throw new IOException("Corrupt NBT list");
+                }
+                int fixedSize = fixedSize(elementType);
+                if (fixedSize >= 0) {
+                    skip((long) length * fixedSize);
+                } else {
+                    for (int i = 0; i < length; i++) {
+                        skipPayload(elementType, level + 1);
+                    }
+                }
+                return;
+            }
+            case TAG_COMPOUND:
+                for (int child = readUnsignedByte(); child != TAG_END; child = readUnsignedByte()) {
+                    if (child > TAG_LONG_ARRAY) {
+                        throw new IOException("Unknown NBT tag type " + child);
+                    }
+                    skip(readUnsignedShort());
+                    skipPayload(child, level + 1);
+                }
+                return;
+            default:
+                skip(fixedSize(type));
+        }
+    }
+
+    /**
+     * Payload size of types that have one, or -1
+     */
+    private static int fixedSize(int type) {
+        switch (type) {
+            case TAG_END:
+                return 0;
+            case TAG_BYTE:
+                return 1;
+            case TAG_SHORT:
+                return 2;
+            case TAG_INT:
+            case TAG_FLOAT:
+                return 4;
+            case TAG_LONG:
+            case TAG_DOUBLE:
+                return 8;
+            default:
+                return -1;
+        }
+    }
+
+    private long readLength(int elementSize) throws IOException {
+        int length = readInt();
+        if (length < 0) {
+            throw new IOException("Corrupt NBT array");
+        }
+        return (long) length * elementSize;
+    }
+
+    private String readString(int length) throws IOException {
+        if (length <= buffer.length) {
+            require(length);
+            String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+        byte[] bytes = new byte[length];
+        for (int copied = 0; copied < length; ) {
+            require(1);
+            int chunk = Math.min(length - copied, limit - position);
+            System.arraycopy(buffer, position, bytes, copied, chunk);
+            position += chunk;
+            copied += chunk;
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private boolean regionEquals(byte[] name, int length) {
+        if (name.length != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (buffer[position + i] != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int readUnsignedByte() throws IOException {
+        require(1);
+        return buffer[position++] & 0xff;
+    }
+
+    private int readUnsignedShort() throws IOException {
+        require(2);
+        int value = (buffer[position] & 0xff) | (buffer[position + 1] & 0xff) << 8;
+        position += 2;
+        return value;
+    }
+
+    private int readInt() throws IOException {
+        require(4);
+        int value = (buffer[position] & 0xff) | (buffer[position + 1] & 0xff) << 8
+                | (buffer[position + 2] & 0xff) << 16 | (buffer[position + 3] & 0xff) << 24;
+        position += 4;
+        return value;
+    }
+
+    private long readLong() throws IOException {
+        long low = readInt() & 0xffffffffL;
+        long high = readInt() & 0xffffffffL;
+        return high << 32 | low;
+    }
+
+    private void require(int count) throws IOException {
+        if (!fill(count)) {
+            throw new EOFException("NBT data ends early");
+        }
+    }
+
+    /**
+     * Makes at least count bytes available in the buffer; false at the end of the input
+     */
+    private boolean fill(int count) throws IOException {
+        if (limit - position >= count) {
+            return true;
+        }
+        System.arraycopy(buffer, position, buffer, 0, limit - position);
+        limit -= position;
+        position = 0;
+        while (limit < count) {
+            int read = in.read(buffer, limit, buffer.length - limit);
+            if (read == -1) {
+                return false;
+            }
+            limit += read;
+        }
+        return true;
+    }
+
+    private void skip(long count) throws IOException {
+        long buffered = Math.min(count, limit - position);
+        position += (int) buffered;
+        count -= buffered;
+        while (count > 0) {
+            long skipped = in.skip(count);
+            if (skipped <= 0) {
+                // skip() may stop early without reaching the end; read to tell the two apart
+                if (in.read() == -1) {
+                    throw new EOFException("NBT data ends early");
+                }
+                skipped = 1;
+            }
+            count -= skipped;
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package com.axion.launcher;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Maps each pack's supported engine range onto the version catalog.
+ *
+ * Engine versions come from the pack metadata ResourceIndex keeps for each
+ * file, so building the index never opens an archive. Every pack is reduced
+ * to the rank of the first catalog version it supports, so checking a pack
+ * against the selected version is a single integer comparison.
+ */
+public class PackCompatibilityIndex {
+
+    public interface Listener {
+        void onCompatibilityChanged();
+    }
+
+    private static PackCompatibilityIndex instance;
+
+    private final ExecutorService executorService = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final Map<String, PackEntry> packs = new ConcurrentHashMap<>();
+
+    // Catalog versions in ascending order, and each catalog key's position in it
+    private volatile List<int[]> catalogVersions = Collections.emptyList();
+    private volatile Map<String, Integer> rankByVersionKey = Collections.emptyMap();
+
+    private static class PackEntry {
+        final String section;
+        final long lastModified;
+        final int[] minEngineVersion;
+        volatile int firstCompatibleRank;
+
+        PackEntry(String section, long lastModified, int[] minEngineVersion) {
+            this.section = section;
+            this.lastModified = lastModified;
+            this.minEngineVersion = minEngineVersion;
+        }
+    }
+
+    private PackCompatibilityIndex() {}
+
+    public static synchronized PackCompatibilityIndex getInstance() {
+        if (instance == null) {
+            instance = new PackCompatibilityIndex();
+        }
+        return instance;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Registers the version catalog that pack ranges are mapped onto
+     */
+    public void setCatalog(List<MCPEVersion> versions) {
+        List<MCPEVersion> ascending = new ArrayList<>(versions);
+        executorService.execute(() -> {
+            Collections.sort(ascending, (v1, v2) ->
+                    VersionSearchIndex.compareVersionsDescending(v2.getVersionNumber(), v1.getVersionNumber()));
+
+            List<int[]> parsed = new ArrayList<>(ascending.size());
+            Map<String, Integer> ranks = new HashMap<>();
+            for (int i = 0; i < ascending.size(); i++) {
+                parsed.add(parseVersion(ascending.get(i).getVersionNumber()));
+                ranks.put(ascending.get(i).getKey(), i);
+            }
+            catalogVersions = parsed;
+            rankByVersionKey = ranks;
+
+            for (PackEntry entry : packs.values()) {
+                entry.firstCompatibleRank = firstCompatibleRank(entry.minEngineVersion);
+            }
+            notifyListeners();
+        });
+    }
+
+    /**
+     * Brings the index in line with the current contents of a section,
+     * updating only packs whose file or metadata changed since the last call.
+     */
+    public void indexSection(String section, List<ResourceFile> files) {
+        List<ResourceFile> snapshot = new ArrayList<>(files);
+        executorService.execute(() -> {
+            boolean changed = false;
+            Set<String> present = new HashSet<>();
+            for (ResourceFile file : snapshot) {
+                if (file.isMinecraftFile()) {
+                    present.add(file.getKey());
+                    changed |= put(section, file);
+                }
+            }
+            changed |= packs.entrySet().removeIf(e -> e.getValue().section.equals(section) && !present.contains(e.getKey()));
+            if (changed) {
+                notifyListeners();
+            }
+        });
+    }
+
+    /**
+     * Applies changes to some files of a section, for sections too large
+     * to pass whole to indexSection on every change
+     */
+    public void updateFiles(String section, List<ResourceFile> changedFiles, List<String> removedKeys) {
+        List<ResourceFile> snapshot = new ArrayList<>(changedFiles);
+        List<String> removed = new ArrayList<>(removedKeys);
+        executorService.execute(() -> {
+            boolean changed = false;
+            for (ResourceFile file : snapshot) {
+                if (file.isMinecraftFile()) {
+                    changed |= put(section, file);
+                }
+            }
+            for (String key : removed) {
+                changed |= packs.remove(key) != null;
+            }
+            if (changed) {
+                notifyListeners();
+            }
+        });
+    }
+
+    /**
+     * Adds or refreshes a pack's entry; false if its file and metadata are unchanged
+     */
+    private boolean put(String section, ResourceFile file) {
+        PackManifest packInfo = file.getPackInfo();
+        int[] minEngineVersion = packInfo != null ? packInfo.getMinEngineVersion() : null;
+        PackEntry existing = packs.get(file.getKey());
+        if (existing != null && existing.lastModified == file.getLastModified()
+                && existing.minEngineVersion == minEngineVersion) {
+            return false;
+        }
+        PackEntry entry = new PackEntry(section, file.getLastModified(), minEngineVersion);
+        entry.firstCompatibleRank = firstCompatibleRank(entry.minEngineVersion);
+        packs.put(file.getKey(), entry);
+        return true;
+    }
+
+    /**
+     * True if the pack declares a minimum engine version newer than the given version.
+     * Packs that have not been indexed yet are treated as compatible.
+     */
+    public boolean isIncompatible(ResourceFile file, MCPEVersion version) {
+        if (version == null) {
+            return false;
+        }
+        PackEntry entry = packs.get(file.getKey());
+        if (entry == null || entry.minEngineVersion == null) {
+            return false;
+        }
+        Integer rank = rankByVersionKey.get(version.getKey());
+        if (rank != null) {
+            return rank < entry.firstCompatibleRank;
+        }
+        return compareVersions(parseVersion(version.getVersionNumber()), entry.minEngineVersion) < 0;
+    }
+
+    /**
+     * Minimum engine version of an indexed pack formatted as "1.20.0", or null
+     */
+    public String getMinEngineVersion(ResourceFile file) {
+        PackEntry entry = packs.get(file.getKey());
+        if (entry == null || entry.minEngineVersion == null) {
+            return null;
+        }
+        return formatVersion(entry.minEngineVersion);
+    }
+
+    private int firstCompatibleRank(int[] minEngineVersion) {
+        List<int[]> catalog = catalogVersions;
+        if (minEngineVersion == null) {
+            return 0;
+        }
+        // Binary search for the first catalog version >= the pack's minimum
+        int low = 0;
+        int high = catalog.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compareVersions(catalog.get(mid), minEngineVersion) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    static int[] parseVersion(String version) {
+        String[] parts = version.split("\\.");
+        int[] parsed = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            try {
+                parsed[i] = Integer.parseInt(parts[i]);
+            } catch (NumberFormatException e) {
+                parsed[i] = 0;
+            }
+        }
+        return parsed;
+    }
+
+    static String formatVersion(int[] version) {
+        if (version == null) {
+            return null;
+        }
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < version.length; i++) {
+            if (i > 0) {
+                builder.append('.');
+            }
+            builder.append(version[i]);
+        }
+        return builder.toString();
+    }
+
+    static int compareVersions(int[] version1, int[] version2) {
+        int maxLength = Math.max(version1.length, version2.length);
+        for (int i = 0; i < maxLength; i++) {
+            int num1 = i < version1.length ? version1[i] : 0;
+            int num2 = i < version2.length ? version2[i] : 0;
+            if (num1 != num2) {
+                return Integer.compare(num1, num2);
+            }
+        }
+        return 0;
+    }
+
+    private void notifyListeners() {
+        mainHandler.post(() -> {
+            for (Listener listener : listeners) {
+                listener.onCompatibilityChanged();
+            }
+        });
+    }
+}
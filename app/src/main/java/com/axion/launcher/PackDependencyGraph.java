@@ -0,0 +1,391 @@
+package com.axion.launcher;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Dependency graph between the packs in the resource folders, built from the
+ * UUIDs and dependencies in each file's manifest summary.
+ *
+ * Packs are indexed by the UUIDs they provide and the UUIDs they need, and
+ * every pack keeps its set of unresolved dependencies. Adding or removing a
+ * pack only revisits the packs that need one of its UUIDs, so "what's
+ * missing" and "what depends on this" are answered from stored sets without
+ * walking the graph.
+ */
+public class PackDependencyGraph {
+
+    public interface Listener {
+        void onDependenciesChanged();
+    }
+
+    private static PackDependencyGraph instance;
+
+    private final ExecutorService executorService = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    // Guarded by this; written on the executor, read from the main thread
+    private final Map<String, Node> nodes = new HashMap<>();
+    private final Map<String, List<Node>> providersByUuid = new HashMap<>();
+    private final Map<String, List<Node>> dependentsByUuid = new HashMap<>();
+
+    private static class Node {
+        final ResourceFile file;
+        final PackManifest manifest;
+        // Unresolved dependencies by UUID
+        final Map<String, PackManifest.Dependency> missing = new LinkedHashMap<>();
+
+        Node(ResourceFile file) {
+            this.file = file;
+            this.manifest = file.getPackInfo();
+        }
+    }
+
+    private PackDependencyGraph() {}
+
+    public static synchronized PackDependencyGraph getInstance() {
+        if (instance == null) {
+            instance = new PackDependencyGraph();
+        }
+        return instance;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Brings the graph in line with the current contents of a section,
+     * touching only packs whose file or metadata changed since the last call.
+     */
+    public void indexSection(String section, List<ResourceFile> files) {
+        List<ResourceFile> snapshot = new ArrayList<>(files);
+        executorService.execute(() -> {
+            boolean changed = false;
+            synchronized (this) {
+                Set<String> present = new HashSet<>();
+                for (ResourceFile file : snapshot) {
+                    if (file.isMinecraftFile() && file.getPackInfo() != null) {
+                        present.add(file.getKey());
+                        changed |= put(file);
+                    }
+                }
+                List<Node> gone = new ArrayList<>();
+                for (Node node : nodes.values()) {
+                    if (node.file.getSection().equals(section) && !present.contains(node.file.getKey())) {
+                        gone.add(node);
+                    }
+                }
+                for (Node node : gone) {
+                    removeNode(node);
+                    changed = true;
+                }
+            }
+            if (changed) {
+                notifyListeners();
+            }
+        });
+    }
+
+    /**
+     * Applies changes to some files of a section, for sections too large
+     * to pass whole to indexSection on every change
+     */
+    public void updateFiles(String section, List<ResourceFile> changedFiles, List<String> removedKeys) {
+        List<ResourceFile> snapshot = new ArrayList<>(changedFiles);
+        List<String> removed = new ArrayList<>(removedKeys);
+        executorService.execute(() -> {
+            boolean changed = false;
+            synchronized (this) {
+                for (ResourceFile file : snapshot) {
+                    if (file.isMinecraftFile() && file.getPackInfo() != null) {
+                        changed |= put(file);
+                    } else {
+                        removed.add(file.getKey());
+                    }
+                }
+                for (String key : removed) {
+                    Node node = nodes.get(key);
+                    if (node != null) {
+                        removeNode(node);
+                        changed = true;
+                    }
+                }
+            }
+            if (changed) {
+                notifyListeners();
+            }
+        });
+    }
+
+    /**
+     * Adds or replaces the node of a pack; false if its file and manifest
+     * are unchanged. Called with the lock held.
+     */
+    private boolean put(ResourceFile file) {
+        Node existing = nodes.get(file.getKey());
+        if (existing != null && existing.file.getLastModified() == file.getLastModified()
+                && existing.manifest == file.getPackInfo()) {
+            return false;
+        }
+        if (existing != null) {
+            removeNode(existing);
+        }
+        addNode(new Node(file));
+        return true;
+    }
+
+    /**
+     * Dependencies of the file that no pack in the resource folders provides
+     */
+    public synchronized List<PackManifest.Dependency> getMissing(ResourceFile file) {
+        Node node = nodes.get(file.getKey());
+        if (node == null || node.missing.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return new ArrayList<>(node.missing.values());
+    }
+
+    public synchronized int getMissingCount(ResourceFile file) {
+        Node node = nodes.get(file.getKey());
+        return node != null ? node.missing.size() : 0;
+    }
+
+    /**
+     * Files that declare a dependency on one of the packs in the given file
+     */
+    public synchronized List<ResourceFile> getDependents(ResourceFile file) {
+        Node node = nodes.get(file.getKey());
+        if (node == null) {
+            return Collections.emptyList();
+        }
+        Set<ResourceFile> dependents = new LinkedHashSet<>();
+        for (String uuid : node.manifest.getPackUuids()) {
+            List<Node> needing = dependentsByUuid.get(uuid);
+            if (needing != null) {
+                for (Node dependent : needing) {
+                    if (dependent != node) {
+                        dependents.add(dependent.file);
+                    }
+                }
+            }
+        }
+        return new ArrayList<>(dependents);
+    }
+
+    /**
+     * The given files plus every pack they need, transitively, with
+     * dependencies ordered before the packs that need them. Where several
+     * files provide a pack, the one with the highest version is chosen.
+     */
+    public synchronized List<ResourceFile> getInstallClosure(Collection<ResourceFile> files) {
+        Set<Node> visited = new HashSet<>();
+        List<ResourceFile> ordered = new ArrayList<>();
+        for (ResourceFile file : files) {
+            Node node = nodes.get(file.getKey());
+            if (node == null) {
+                if (!containsKey(ordered, file)) {
+                    ordered.add(file);
+                }
+            } else {
+                addWithDependencies(node, visited, ordered);
+            }
+        }
+        return ordered;
+    }
+
+    /**
+     * The given files plus every pack that would be left with an unresolved
+     * dependency once they are gone, transitively, dependents first
+     */
+    public synchronized List<ResourceFile> getDeleteClosure(Collection<ResourceFile> files) {
+        Set<Node> removed = new LinkedHashSet<>();
+        List<ResourceFile> untracked = new ArrayList<>();
+        Deque<Node> queue = new ArrayDeque<>();
+        for (ResourceFile file : files) {
+            Node node = nodes.get(file.getKey());
+            if (node == null) {
+                untracked.add(file);
+            } else if (removed.add(node)) {
+                queue.add(node);
+            }
+        }
+        while (!queue.isEmpty()) {
+            Node node = queue.poll();
+            for (String uuid : node.manifest.getPackUuids()) {
+                List<Node> needing = dependentsByUuid.get(uuid);
+                if (needing == null) {
+                    continue;
+                }
+                for (Node dependent : needing) {
+                    if (removed.contains(dependent)) {
+                        continue;
+                    }
+                    PackManifest.Dependency dependency = findDependency(dependent, uuid);
+                    if (dependency != null && findProvider(dependency, removed) == null) {
+                        removed.add(dependent);
+                        queue.add(dependent);
+                    }
+                }
+            }
+        }
+        List<ResourceFile> ordered = new ArrayList<>(removed.size() + untracked.size());
+        for (Node node : removed) {
+            ordered.add(node.file);
+        }
+        Collections.reverse(ordered);
+        ordered.addAll(untracked);
+        return ordered;
+    }
+
+    private void addWithDependencies(Node node, Set<Node> visited, List<ResourceFile> ordered) {
+        if (!visited.add(node)) {
+            return;
+        }
+        for (PackManifest.Dependency dependency : node.manifest.getDependencies()) {
+            Node provider = findProvider(dependency, Collections.emptySet());
+            if (provider != null) {
+                addWithDependencies(provider, visited, ordered);
+            }
+        }
+        ordered.add(node.file);
+    }
+
+    private void addNode(Node node) {
+        nodes.put(node.file.getKey(), node);
+        for (String uuid : node.manifest.getPackUuids()) {
+            listFor(providersByUuid, uuid).add(node);
+            refreshDependents(uuid);
+        }
+        for (PackManifest.Dependency dependency : node.manifest.getDependencies()) {
+            listFor(dependentsByUuid, dependency.getUuid()).add(node);
+            if (findProvider(dependency, Collections.emptySet()) == null) {
+                node.missing.put(dependency.getUuid(), dependency);
+            }
+        }
+    }
+
+    private void removeNode(Node node) {
+        nodes.remove(node.file.getKey());
+        for (PackManifest.Dependency dependency : node.manifest.getDependencies()) {
+            removeFrom(dependentsByUuid, dependency.getUuid(), node);
+        }
+        for (String uuid : node.manifest.getPackUuids()) {
+            removeFrom(providersByUuid, uuid, node);
+            refreshDependents(uuid);
+        }
+    }
+
+    /**
+     * Re-evaluates the packs that need the given UUID after its providers changed
+     */
+    private void refreshDependents(String uuid) {
+        List<Node> needing = dependentsByUuid.get(uuid);
+        if (needing == null) {
+            return;
+        }
+        for (Node dependent : needing) {
+            PackManifest.Dependency dependency = findDependency(dependent, uuid);
+            if (dependency == null) {
+                continue;
+            }
+            if (findProvider(dependency, Collections.emptySet()) == null) {
+                dependent.missing.put(uuid, dependency);
+            } else {
+                dependent.missing.remove(uuid);
+            }
+        }
+    }
+
+    /**
+     * Highest-versioned pack providing the dependency at or above its version, ignoring excluded packs
+     */
+    private Node findProvider(PackManifest.Dependency dependency, Set<Node> excluded) {
+        List<Node> providers = providersByUuid.get(dependency.getUuid());
+        if (providers == null) {
+            return null;
+        }
+        Node best = null;
+        for (Node provider : providers) {
+            if (excluded.contains(provider)) {
+                continue;
+            }
+            int[] version = provider.manifest.getVersion();
+            if (dependency.getVersion() != null && version != null
+                    && PackCompatibilityIndex.compareVersions(version, dependency.getVersion()) < 0) {
+                continue;
+            }
+            if (best == null || (version != null && (best.manifest.getVersion() == null
+                    || PackCompatibilityIndex.compareVersions(version, best.manifest.getVersion()) > 0))) {
+                best = provider;
+            }
+        }
+        return best;
+    }
+
+    private static PackManifest.Dependency findDependency(Node node, String uuid) {
+        for (PackManifest.Dependency dependency : node.manifest.getDependencies()) {
+            if (dependency.getUuid().equals(uuid)) {
+                return dependency;
+            }
+        }
+        return null;
+    }
+
+    private static boolean containsKey(List<ResourceFile> files, ResourceFile file) {
+        for (ResourceFile existing : files) {
+            if (existing.getKey().equals(file.getKey())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<Node> listFor(Map<String, List<Node>> map, String uuid) {
+        List<Node> list = map.get(uuid);
+        if (list == null) {
+            list = new ArrayList<>(1);
+            map.put(uuid, list);
+        }
+        return list;
+    }
+
+    private static void removeFrom(Map<String, List<Node>> map, String uuid, Node node) {
+        List<Node> list = map.get(uuid);
+        if (list != null) {
+            list.remove(node);
+            if (list.isEmpty()) {
+                map.remove(uuid);
+            }
+        }
+    }
+
+    private void notifyListeners() {
+        mainHandler.post(() -> {
+            for (Listener listener : listeners) {
+                listener.onDependenciesChanged();
+            }
+        });
+    }
+}
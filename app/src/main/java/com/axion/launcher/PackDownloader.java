@@ -0,0 +1,986 @@
+package com.axion.launcher;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Downloads packs inside the app instead of through DownloadManager, so
+ * progress, completion and failures show up where the download started.
+ *
+ * Large files from servers that accept ranges are split into chunks that
+ * are fetched over parallel connections and written in place into a .part
+ * file; smaller files use one connection. How far each chunk got is saved
+ * in a journal next to the .part file, so a dropped connection, a pause or
+ * a restart of the app continues where it stopped instead of starting
+ * over. The SHA-256 of the file is computed while it downloads: bytes are
+ * hashed as soon as everything before them has arrived. Downloads the
+ * user paused, and ones that failed after their retries, are marked in the
+ * journal and stay paused or failed across restarts until resumed. Observers
+ * hear about every change on the callback executor, the main thread in the app.
+ */
+public class PackDownloader {
+
+    public static final int STATE_QUEUED = 0;
+    public static final int STATE_RUNNING = 1;
+    public static final int STATE_PAUSED = 2;
+    public static final int STATE_COMPLETED = 3;
+    public static final int STATE_FAILED = 4;
+    public static final int STATE_CANCELLED = 5;
+
+    private static final String WORK_DIR = ".downloads";
+    private static final String PART_SUFFIX = ".part";
+    private static final String JOURNAL_SUFFIX = ".journal";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // Attempts per chunk without progress, and full restarts per download
+    private static final int MAX_ATTEMPTS = 5;
+    private static final int CONNECT_TIMEOUT_MS = 15000;
+    private static final int READ_TIMEOUT_MS = 30000;
+    private static final long PROGRESS_INTERVAL_MS = 100;
+    private static final long JOURNAL_INTERVAL_MS = 500;
+
+    // Files smaller than this, or from servers without ranges, use one connection
+    long parallelThreshold = 4 * 1024 * 1024;
+    long minChunkSize = 1024 * 1024;
+    long retryDelayMs = 500;
+
+    public interface Listener {
+        /**
+         * Called on the callback executor whenever a download changes state
+         * or makes progress
+         */
+        void onDownloadChanged(Download download);
+    }
+
+    public static class Download {
+        private final String id;
+        private final String url;
+        private final String userAgent;
+        private final File destination;
+        private final String expectedSha256;
+        private volatile int state = STATE_QUEUED;
+        private volatile long downloadedBytes;
+        private volatile long totalBytes = -1;
+        private volatile File file;
+        private volatile String sha256;
+        private volatile String error;
+        // Checked by the connections between reads
+        private volatile boolean pauseRequested;
+        // Set by pause() only; pauses made by shutdown() continue on the next start
+        private volatile boolean pausedByUser;
+        private volatile boolean cancelRequested;
+
+        Download(String url, String userAgent, File destination, String expectedSha256) {
+            this.id = Long.toHexString(StableIds.of(url + "\n" + destination.getAbsolutePath()));
+            this.url = url;
+            this.userAgent = userAgent;
+            this.destination = destination;
+            this.expectedSha256 = expectedSha256;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        /**
+         * Where the file was asked to go; the finished file may carry a
+         * " (2)" suffix if that name was taken by then
+         */
+        public File getDestination() {
+            return destination;
+        }
+
+        public int getState() {
+            return state;
+        }
+
+        public boolean isFinished() {
+            return state >= STATE_COMPLETED;
+        }
+
+        public long getDownloadedBytes() {
+            return downloadedBytes;
+        }
+
+        /**
+         * Size of the file, or -1 while the server has not said
+         */
+        public long getTotalBytes() {
+            return totalBytes;
+        }
+
+        /**
+         * Percent done, or -1 if the size is not known
+         */
+        public int getProgress() {
+            long total = totalBytes;
+            return total > 0 ? (int) Math.min(100, downloadedBytes * 100 / total) : -1;
+        }
+
+        /**
+         * The finished file; null until the download completed
+         */
+        public File getFile() {
+            return file;
+        }
+
+        /**
+         * Lower-case hex SHA-256 of the finished file
+         */
+        public String getSha256() {
+            return sha256;
+        }
+
+        public String getError() {
+            return error;
+        }
+    }
+
+    /**
+     * A connection answered in a way that makes the bytes on disk useless:
+     * the file changed on the server, or a server without ranges dropped
+     * the connection
+     */
+    private static class RestartException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        RestartException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * The server refused the request; asking again will not help
+     */
+    private static class RefusedException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        RefusedException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Where every chunk starts and ends and how much of it is on disk
+     */
+    private static class Journal {
+        String validator;
+        boolean ranges;
+        long total;
+        long[] starts;
+        // Exclusive; -1 while the end of a file of unknown length has not been reached
+        long[] ends;
+        AtomicLongArray done;
+
+        static Journal create(String validator, boolean ranges, long total, int chunks) {
+            Journal journal = new Journal();
+            journal.validator = validator;
+            journal.ranges = ranges;
+            journal.total = total;
+            journal.starts = new long[chunks];
+            journal.ends = new long[chunks];
+            journal.done = new AtomicLongArray(chunks);
+            long chunkSize = total > 0 ? (total + chunks - 1) / chunks : 0;
+            for (int i = 0; i < chunks; i++) {
+                journal.starts[i] = i * chunkSize;
+                journal.ends[i] = total > 0 ? Math.min(total, (i + 1) * chunkSize) : -1;
+            }
+            return journal;
+        }
+
+        boolean isComplete(int chunk) {
+            return ends[chunk] >= 0 && starts[chunk] + done.get(chunk) >= ends[chunk];
+        }
+
+        /**
+         * End of the bytes that have all arrived, counted from the start of the file
+         */
+        long completedPrefix() {
+            for (int i = 0; i < starts.length; i++) {
+                if (!isComplete(i)) {
+                    return starts[i] + done.get(i);
+                }
+            }
+            return starts.length > 0 ? ends[starts.length - 1] : 0;
+        }
+
+        long downloaded() {
+            long sum = 0;
+            for (int i = 0; i < starts.length; i++) {
+                sum += done.get(i);
+            }
+            return sum;
+        }
+
+        void save(File file, Download download) throws IOException {
+            Properties properties = new Properties();
+            properties.setProperty("url", download.url);
+            properties.setProperty("destination", download.destination.getAbsolutePath());
+            if (download.userAgent != null) {
+                properties.setProperty("userAgent", download.userAgent);
+            }
+            if (download.expectedSha256 != null) {
+                properties.setProperty("sha256", download.expectedSha256);
+            }
+            if (validator != null) {
+                properties.setProperty("validator", validator);
+            }
+            properties.setProperty("ranges", String.valueOf(ranges));
+            properties.setProperty("total", String.valueOf(total));
+            StringBuilder chunks = new StringBuilder();
+            for (int i = 0; i < starts.length; i++) {
+                if (i > 0) {
+                    chunks.append(',');
+                }
+                chunks.append(starts[i]).append(':').append(ends[i]).append(':').append(done.get(i));
+            }
+            properties.setProperty("chunks", chunks.toString());
+            write(properties, file);
+        }
+
+        static void write(Properties properties, File file) throws IOException {
+            // Replaced in one rename, so a crash leaves the old journal or the new one
+            File temp = new File(file.getPath() + ".tmp");
+            try (OutputStream out = new FileOutputStream(temp)) {
+                properties.store(out, null);
+            }
+            if (!temp.renameTo(file)) {
+                throw new IOException("Could not save download journal");
+            }
+        }
+
+        static Properties read(File file) {
+            Properties properties = new Properties();
+            try (InputStream in = new FileInputStream(file)) {
+                properties.load(in);
+                return properties;
+            } catch (IOException e) {
+                return null;
+            }
+        }
+
+        /**
+         * The journal's chunks, or null if it is missing or unreadable
+         */
+        static Journal load(File file) {
+            Properties properties = file.exists() ? read(file) : null;
+            if (properties == null) {
+                return null;
+            }
+            try {
+                String[] chunks = properties.getProperty("chunks", "").split(",");
+                Journal journal = new Journal();
+                journal.validator = properties.getProperty("validator");
+                journal.ranges = Boolean.parseBoolean(properties.getProperty("ranges"));
+                journal.total = Long.parseLong(properties.getProperty("total"));
+                journal.starts = new long[chunks.length];
+                journal.ends = new long[chunks.length];
+                journal.done = new AtomicLongArray(chunks.length);
+                for (int i = 0; i < chunks.length; i++) {
+                    String[] parts = chunks[i].split(":");
+                    journal.starts[i] = Long.parseLong(parts[0]);
+                    journal.ends[i] = Long.parseLong(parts[1]);
+                    journal.done.set(i, Long.parseLong(parts[2]));
+                }
+                return journal;
+            } catch (RuntimeException e) {
+                return null;
+            }
+        }
+    }
+
+    private static PackDownloader instance;
+
+    private final File workDir;
+    private final Executor callbackExecutor;
+    private final int connectionsPerDownload;
+    private final ExecutorService coordinators;
+    private final ExecutorService connections;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    // Downloads that have not completed or been cancelled, in the order they were started
+    private final List<Download> downloads = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param maxDownloads downloads that run at the same time; later ones wait
+     * @param connectionsPerDownload connections one large download may use
+     */
+    PackDownloader(File workDir, Executor callbackExecutor, int maxDownloads, int connectionsPerDownload) {
+        this.workDir = workDir;
+        this.callbackExecutor = callbackExecutor;
+        this.connectionsPerDownload = connectionsPerDownload;
+        coordinators = Executors.newFixedThreadPool(maxDownloads);
+        connections = Executors.newFixedThreadPool(maxDownloads * connectionsPerDownload);
+    }
+
+    /**
+     * The app's downloader; downloads interrupted by the last run continue right away
+     */
+    public static synchronized PackDownloader getInstance(Context context) {
+        if (instance == null) {
+            File workDir = new File(new File(context.getApplicationContext().getExternalFilesDir(null), "resources"),
+                    WORK_DIR);
+            Handler mainHandler = new Handler(Looper.getMainLooper());
+            instance = new PackDownloader(workDir, mainHandler::post, 2, 4);
+            instance.restorePending();
+        }
+        return instance;
+    }
+
+    /**
+     * Delivers every listed download right away and every change after that
+     */
+    public void subscribe(Listener listener) {
+        listeners.add(listener);
+        List<Download> current = new ArrayList<>(downloads);
+        callbackExecutor.execute(() -> {
+            if (listeners.contains(listener)) {
+                for (Download download : current) {
+                    listener.onDownloadChanged(download);
+                }
+            }
+        });
+    }
+
+    public void unsubscribe(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Downloads that are queued, running, paused or failed
+     */
+    public List<Download> getDownloads() {
+        return new ArrayList<>(downloads);
+    }
+
+    public Download enqueue(String url, String userAgent, File destination) {
+        return enqueue(url, userAgent, destination, null);
+    }
+
+    /**
+     * Starts a download, or returns the listed one for the same URL and
+     * destination, resuming it if it was paused or failed
+     *
+     * @param expectedSha256 hex digest the file must have, or null to accept any
+     */
+    public Download enqueue(String url, String userAgent, File destination, String expectedSha256) {
+        Download download = new Download(url, userAgent, destination, expectedSha256);
+        synchronized (downloads) {
+            for (Download listed : downloads) {
+                if (listed.id.equals(download.id)) {
+                    resume(listed);
+                    return listed;
+                }
+            }
+            downloads.add(download);
+        }
+        notifyChanged(download);
+        coordinators.execute(() -> run(download));
+        return download;
+    }
+
+    /**
+     * Stops after the current reads; the journal keeps what has arrived
+     */
+    public void pause(Download download) {
+        if (!download.isFinished()) {
+            download.pausedByUser = true;
+            download.pauseRequested = true;
+        }
+    }
+
+    /**
+     * Continues a paused or failed download from its journal; false if it is not stopped
+     */
+    public boolean resume(Download download) {
+        synchronized (download) {
+            if (download.state != STATE_PAUSED && download.state != STATE_FAILED) {
+                return false;
+            }
+            download.pauseRequested = false;
+            download.pausedByUser = false;
+            download.error = null;
+            download.state = STATE_QUEUED;
+        }
+        if (!downloads.contains(download)) {
+            downloads.add(download);
+        }
+        saveStopped(download, STATE_QUEUED);
+        notifyChanged(download);
+        coordinators.execute(() -> run(download));
+        return true;
+    }
+
+    /**
+     * Stops the download and deletes what it wrote
+     */
+    public void cancel(Download download) {
+        synchronized (download) {
+            if (download.state == STATE_PAUSED || download.state == STATE_FAILED) {
+                discard(download);
+                finish(download, STATE_CANCELLED);
+                return;
+            }
+        }
+        download.cancelRequested = true;
+    }
+
+    /**
+     * Lists the downloads whose journals a previous run left behind. Those
+     * that were interrupted continue; paused and failed ones wait for resume().
+     */
+    void restorePending() {
+        File[] journals = workDir.listFiles((dir, name) -> name.endsWith(JOURNAL_SUFFIX));
+        if (journals == null) {
+            return;
+        }
+        for (File journal : journals) {
+            Properties properties = Journal.read(journal);
+            String url = properties != null ? properties.getProperty("url") : null;
+            String destination = properties != null ? properties.getProperty("destination") : null;
+            if (url == null || destination == null) {
+                journal.delete();
+                continue;
+            }
+            String stopped = properties.getProperty("stopped");
+            if (stopped == null) {
+                enqueue(url, properties.getProperty("userAgent"), new File(destination),
+                        properties.getProperty("sha256"));
+                continue;
+            }
+            Download download = new Download(url, properties.getProperty("userAgent"), new File(destination),
+                    properties.getProperty("sha256"));
+            download.state = String.valueOf(STATE_FAILED).equals(stopped) ? STATE_FAILED : STATE_PAUSED;
+            download.error = properties.getProperty("error");
+            Journal chunks = Journal.load(journal);
+            if (chunks != null) {
+                download.downloadedBytes = chunks.downloaded();
+                download.totalBytes = chunks.total;
+            }
+            downloads.add(download);
+            notifyChanged(download);
+        }
+    }
+
+    /**
+     * Stops the worker threads; running downloads keep their journals
+     */
+    void shutdown() {
+        for (Download download : downloads) {
+            download.pauseRequested = true;
+        }
+        coordinators.shutdown();
+        connections.shutdown();
+    }
+
+    private void run(Download download) {
+        if (download.cancelRequested) {
+            discard(download);
+            finish(download, STATE_CANCELLED);
+            return;
+        }
+        if (download.pauseRequested) {
+            // Paused, or shut down, while it was queued
+            finish(download, STATE_PAUSED);
+            return;
+        }
+        setState(download, STATE_RUNNING);
+        workDir.mkdirs();
+        File part = partFile(download);
+        File journalFile = journalFile(download);
+        for (int attempt = 0; ; attempt++) {
+            boolean probing = false;
+            try {
+                Journal journal = part.exists() ? Journal.load(journalFile) : null;
+                HttpURLConnection opened = null;
+                if (journal == null) {
+                    probing = true;
+                    opened = connect(download, 0, -1, null);
+                    journal = createJournal(download, opened);
+                    if (journal.starts.length > 1) {
+                        // The chunks open their own ranges
+                        opened.disconnect();
+                        opened = null;
+                    }
+                    try (RandomAccessFile file = new RandomAccessFile(part, "rw")) {
+                        file.setLength(journal.ranges && journal.total > 0 ? journal.total : 0);
+                    }
+                    journal.save(journalFile, download);
+                    probing = false;
+                }
+                transfer(download, journal, part, journalFile, opened);
+                return;
+            } catch (RefusedException e) {
+                discard(download);
+                fail(download, e.getMessage());
+                return;
+            } catch (IOException e) {
+                boolean restart = e instanceof RestartException;
+                if (restart) {
+                    discard(download);
+                }
+                if (!(restart || probing) || attempt + 1 >= MAX_ATTEMPTS) {
+                    // A journal left behind lets resume() continue from here
+                    fail(download, e.getMessage() != null ? e.getMessage() : e.toString());
+                    return;
+                }
+                if (!sleep(download, attempt)) {
+                    if (download.cancelRequested) {
+                        discard(download);
+                        finish(download, STATE_CANCELLED);
+                    } else {
+                        finish(download, STATE_PAUSED);
+                    }
+                    return;
+                }
+            }
+        }
+    }
+
+    private Journal createJournal(Download download, HttpURLConnection connection) throws IOException {
+        int code = connection.getResponseCode();
+        if (code != HttpURLConnection.HTTP_OK && code != HttpURLConnection.HTTP_PARTIAL) {
+            connection.disconnect();
+            throw statusError(code);
+        }
+        boolean ranges = code == HttpURLConnection.HTTP_PARTIAL
+                || "bytes".equalsIgnoreCase(connection.getHeaderField("Accept-Ranges"));
+        long total = code == HttpURLConnection.HTTP_PARTIAL
+                ? totalOfContentRange(connection.getHeaderField("Content-Range"))
+                : connection.getContentLengthLong();
+        int chunks = 1;
+        if (ranges && total >= parallelThreshold) {
+            chunks = (int) Math.max(1, Math.min(connectionsPerDownload, total / minChunkSize));
+        }
+        return Journal.create(validatorOf(connection), ranges && total > 0, total, chunks);
+    }
+
+    private void transfer(Download download, Journal journal, File part, File journalFile,
+                          HttpURLConnection opened) throws IOException {
+        download.totalBytes = journal.total;
+        MessageDigest digest = newDigest();
+        byte[] hashBuffer = new byte[BUFFER_SIZE];
+        long hashed = 0;
+        boolean cancelled;
+        try (RandomAccessFile file = new RandomAccessFile(part, "rw")) {
+            FileChannel channel = file.getChannel();
+            int count = journal.starts.length;
+            CountDownLatch finished = new CountDownLatch(count);
+            AtomicReference<IOException> failure = new AtomicReference<>();
+            for (int i = 0; i < count; i++) {
+                if (journal.isComplete(i)) {
+                    finished.countDown();
+                    continue;
+                }
+                int chunk = i;
+                HttpURLConnection first = chunk == 0 ? opened : null;
+                try {
+                    connections.execute(() -> {
+                        try {
+                            fetchChunk(download, journal, chunk, channel, first, failure);
+                        } catch (IOException e) {
+                            failure.compareAndSet(null, e);
+                        } finally {
+                            finished.countDown();
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    // shutdown() stopped the connections before this queued download got to them
+                    download.pauseRequested = true;
+                    finished.countDown();
+                }
+            }
+
+            long lastJournal = System.currentTimeMillis();
+            while (!awaitQuietly(finished)) {
+                hashed = advanceHash(channel, digest, hashed, journal.completedPrefix(), hashBuffer);
+                download.downloadedBytes = journal.downloaded();
+                download.totalBytes = journal.total;
+                notifyChanged(download);
+                long now = System.currentTimeMillis();
+                if (now - lastJournal >= JOURNAL_INTERVAL_MS) {
+                    saveJournal(channel, journal, journalFile, download);
+                    lastJournal = now;
+                }
+            }
+            download.downloadedBytes = journal.downloaded();
+            download.totalBytes = journal.total;
+
+            cancelled = download.cancelRequested;
+            if (!cancelled) {
+                IOException error = failure.get();
+                if (error != null) {
+                    if (!(error instanceof RestartException)) {
+                        saveJournal(channel, journal, journalFile, download);
+                    }
+                    throw error;
+                }
+                if (download.pauseRequested) {
+                    saveJournal(channel, journal, journalFile, download);
+                    finish(download, STATE_PAUSED);
+                    return;
+                }
+                advanceHash(channel, digest, hashed, journal.completedPrefix(), hashBuffer);
+                channel.force(false);
+            }
+        }
+        // Only once the part file is closed can it be deleted
+        if (cancelled) {
+            discard(download);
+            finish(download, STATE_CANCELLED);
+            return;
+        }
+
+        String sha256 = toHex(digest.digest());
+        if (download.expectedSha256 != null && !download.expectedSha256.equalsIgnoreCase(sha256)) {
+            discard(download);
+            fail(download, "Checksum mismatch: expected " + download.expectedSha256 + " but got " + sha256);
+            return;
+        }
+        File target = moveToDestination(part, download.destination);
+        journalFile.delete();
+        download.file = target;
+        download.sha256 = sha256;
+        finish(download, STATE_COMPLETED);
+    }
+
+    /**
+     * Fetches one chunk from where it stopped, retrying dropped connections.
+     * Attempts only run out when several in a row bring nothing new.
+     */
+    private void fetchChunk(Download download, Journal journal, int chunk, FileChannel channel,
+                            HttpURLConnection connection, AtomicReference<IOException> failure) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        for (int attempt = 0; ; attempt++) {
+            long start = journal.starts[chunk] + journal.done.get(chunk);
+            long end = journal.ends[chunk];
+            long before = journal.done.get(chunk);
+            try {
+                if (connection == null) {
+                    connection = connect(download, start, end, journal.ranges ? journal.validator : null);
+                }
+                checkResponse(connection, journal, start);
+                try (InputStream in = connection.getInputStream()) {
+                    long position = start;
+                    while (end < 0 || position < end) {
+                        if (download.pauseRequested || download.cancelRequested || failure.get() != null) {
+                            return;
+                        }
+                        int wanted = end < 0 ? buffer.length : (int) Math.min(buffer.length, end - position);
+                        int read = in.read(buffer, 0, wanted);
+                        if (read == -1) {
+                            if (end < 0) {
+                                // The length was not announced; this is the end of the file
+                                journal.ends[chunk] = position;
+                                journal.total = position;
+                                return;
+                            }
+                            throw new IOException("Connection closed early");
+                        }
+                        ByteBuffer data = ByteBuffer.wrap(buffer, 0, read);
+                        while (data.hasRemaining()) {
+                            channel.write(data, position + data.position());
+                        }
+                        position += read;
+                        journal.done.addAndGet(chunk, read);
+                    }
+                }
+                return;
+            } catch (RestartException | RefusedException e) {
+                throw e;
+            } catch (IOException e) {
+                if (!journal.ranges) {
+                    // Without ranges the bytes so far cannot be continued
+                    throw new RestartException(e.getMessage());
+                }
+                if (journal.done.get(chunk) > before) {
+                    attempt = 0;
+                }
+                if (attempt + 1 >= MAX_ATTEMPTS || !sleep(download, attempt)) {
+                    throw e;
+                }
+            } finally {
+                if (connection != null) {
+                    connection.disconnect();
+                    connection = null;
+                }
+            }
+        }
+    }
+
+    private void checkResponse(HttpURLConnection connection, Journal journal, long start) throws IOException {
+        int code = connection.getResponseCode();
+        if (code == HttpURLConnection.HTTP_PARTIAL) {
+            String range = connection.getHeaderField("Content-Range");
+            if (startOfContentRange(range) != start
+                    || (journal.total > 0 && totalOfContentRange(range) != journal.total)) {
+                throw new RestartException("The server sent a different part of the file");
+            }
+            return;
+        }
+        if (code == HttpURLConnection.HTTP_OK) {
+            if (start > 0 || journal.starts.length > 1) {
+                // If-Range did not match: the file changed since the other bytes arrived
+                throw new RestartException("The file changed on the server");
+            }
+            return;
+        }
+        throw statusError(code);
+    }
+
+    private static IOException statusError(int code) {
+        String message = "Server answered " + code;
+        if (code >= 400 && code < 500 && code != 408 && code != 429) {
+            return new RefusedException(message);
+        }
+        return new IOException(message);
+    }
+
+    private HttpURLConnection connect(Download download, long start, long end, String validator) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(download.url).openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+        connection.setReadTimeout(READ_TIMEOUT_MS);
+        // Compressed responses would make byte ranges and lengths meaningless
+        connection.setRequestProperty("Accept-Encoding", "identity");
+        if (download.userAgent != null) {
+            connection.setRequestProperty("User-Agent", download.userAgent);
+        }
+        connection.setRequestProperty("Range", "bytes=" + start + "-" + (end > 0 ? String.valueOf(end - 1) : ""));
+        if (validator != null) {
+            connection.setRequestProperty("If-Range", validator);
+        }
+        return connection;
+    }
+
+    /**
+     * Hashes the bytes between the hashed position and the end of the
+     * contiguous download; they are still in the page cache
+     */
+    private static long advanceHash(FileChannel channel, MessageDigest digest, long hashed, long prefix,
+                                    byte[] buffer) throws IOException {
+        while (hashed < prefix) {
+            ByteBuffer target = ByteBuffer.wrap(buffer, 0, (int) Math.min(buffer.length, prefix - hashed));
+            int read = channel.read(target, hashed);
+            if (read <= 0) {
+                throw new IOException("Download file is shorter than its journal");
+            }
+            digest.update(buffer, 0, read);
+            hashed += read;
+        }
+        return hashed;
+    }
+
+    /**
+     * Saves the journal after the bytes it describes are on disk
+     */
+    private static void saveJournal(FileChannel channel, Journal journal, File journalFile,
+                                    Download download) throws IOException {
+        Journal snapshot = new Journal();
+        snapshot.validator = journal.validator;
+        snapshot.ranges = journal.ranges;
+        snapshot.total = journal.total;
+        snapshot.starts = journal.starts;
+        snapshot.ends = journal.ends.clone();
+        snapshot.done = new AtomicLongArray(journal.starts.length);
+        for (int i = 0; i < journal.starts.length; i++) {
+            snapshot.done.set(i, journal.done.get(i));
+        }
+        channel.force(false);
+        snapshot.save(journalFile, download);
+    }
+
+    private boolean awaitQuietly(CountDownLatch latch) {
+        try {
+            return latch.await(PROGRESS_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return latch.getCount() == 0;
+        }
+    }
+
+    /**
+     * Waits before the next attempt, longer each time; false if the download was stopped meanwhile
+     */
+    private boolean sleep(Download download, int attempt) {
+        try {
+            Thread.sleep(retryDelayMs << Math.min(attempt, 4));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return !download.pauseRequested && !download.cancelRequested;
+    }
+
+    /**
+     * Moves the finished file to its destination, or next to it with a
+     * " (2)" suffix if that name is taken
+     */
+    static File moveToDestination(File part, File destination) throws IOException {
+        synchronized (PackDownloader.class) {
+            File parent = destination.getParentFile();
+            if (parent != null) {
+                parent.mkdirs();
+            }
+            String name = destination.getName();
+            String extension = ResourceFile.getFileExtension(name);
+            String stem = name.substring(0, name.length() - extension.length());
+            File target = destination;
+            for (int i = 2; target.exists(); i++) {
+                target = new File(parent, stem + " (" + i + ")" + extension);
+            }
+            if (!part.renameTo(target)) {
+                throw new IOException("Could not move the download to " + target.getName());
+            }
+            return target;
+        }
+    }
+
+    private File partFile(Download download) {
+        return new File(workDir, download.id + PART_SUFFIX);
+    }
+
+    private File journalFile(Download download) {
+        return new File(workDir, download.id + JOURNAL_SUFFIX);
+    }
+
+    private void discard(Download download) {
+        partFile(download).delete();
+        journalFile(download).delete();
+    }
+
+    private void setState(Download download, int state) {
+        download.state = state;
+        notifyChanged(download);
+    }
+
+    private void fail(Download download, String error) {
+        download.error = error;
+        finish(download, STATE_FAILED);
+    }
+
+    private void finish(Download download, int state) {
+        // Written before the state is published, so anyone who sees the download stopped finds the mark
+        if (state == STATE_FAILED || (state == STATE_PAUSED && download.pausedByUser)) {
+            saveStopped(download, state);
+        }
+        synchronized (download) {
+            download.state = state;
+            download.pauseRequested = false;
+            download.pausedByUser = false;
+            download.cancelRequested = false;
+        }
+        if (state == STATE_COMPLETED || state == STATE_CANCELLED) {
+            downloads.remove(download);
+        }
+        notifyChanged(download);
+    }
+
+    /**
+     * Marks in the journal that the download was paused or failed, so the
+     * next start lists it stopped instead of continuing it; STATE_QUEUED
+     * clears the mark. Downloads whose journal was discarded have nothing
+     * to continue from anyway.
+     */
+    private void saveStopped(Download download, int state) {
+        File journalFile = journalFile(download);
+        Properties properties = journalFile.exists() ? Journal.read(journalFile) : null;
+        if (properties == null) {
+            return;
+        }
+        if (state != STATE_QUEUED) {
+            properties.setProperty("stopped", String.valueOf(state));
+            if (download.error != null) {
+                properties.setProperty("error", download.error);
+            }
+        } else {
+            properties.remove("stopped");
+            properties.remove("error");
+        }
+        try {
+            Journal.write(properties, journalFile);
+        } catch (IOException e) {
+            // The download then continues on the next start instead of waiting
+        }
+    }
+
+    private void notifyChanged(Download download) {
+        callbackExecutor.execute(() -> {
+            for (Listener listener : listeners) {
+                listener.onDownloadChanged(download);
+            }
+        });
+    }
+
+    private static String validatorOf(HttpURLConnection connection) {
+        String etag = connection.getHeaderField("ETag");
+        // Weak validators are not allowed in If-Range
+        if (etag != null && !etag.startsWith("W/")) {
+            return etag;
+        }
+        return connection.getHeaderField("Last-Modified");
+    }
+
+    /**
+     * "bytes 0-99/1000" → 0
+     */
+    private static long startOfContentRange(String contentRange) {
+        try {
+            int space = contentRange.indexOf(' ');
+            return Long.parseLong(contentRange.substring(space + 1, contentRange.indexOf('-', space)).trim());
+        } catch (RuntimeException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * "bytes 0-99/1000" → 1000, or -1 if the length is "*" or the header is missing
+     */
+    private static long totalOfContentRange(String contentRange) {
+        try {
+            return Long.parseLong(contentRange.substring(contentRange.indexOf('/') + 1).trim());
+        } catch (RuntimeException e) {
+            return -1;
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+}
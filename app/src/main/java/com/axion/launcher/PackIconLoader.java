@@ -0,0 +1,341 @@
+package com.axion.launcher;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Loads pack_icon.png thumbnails for resource rows.
+ *
+ * The icon entry is read straight from the archive through its central
+ * directory and decoded with inSampleSize close to the row size into a
+ * reusable per-thread bitmap, then scaled to fit the row size with its
+ * aspect ratio kept. Thumbnails are
+ * kept in a byte-bounded memory LRU on top of a disk cache keyed by path,
+ * mtime and thumbnail size, so an archive is only opened again after it
+ * changes. The memory cache holds one size per file, which is all the rows
+ * ever ask for. The disk cache is trimmed, least recently used first, once
+ * it grows past its cap, which also drops icons of changed or removed packs.
+ */
+public class PackIconLoader {
+
+    private static final String TAG = "PackIconLoader";
+    private static final String ICON_NAME = "pack_icon.png";
+    private static final String DISK_CACHE_DIR = "pack_icons";
+    // Thumbnails are a few KB each, so this still holds thousands
+    private static final long MAX_DISK_CACHE_BYTES = 16L * 1024 * 1024;
+
+    private static PackIconLoader instance;
+
+    private final File diskCacheDir;
+    private final LruCache<String, Bitmap> memoryCache;
+    // Archives known to have no icon, so they are not opened on every bind
+    private final Set<String> missingIcons = Collections.synchronizedSet(new HashSet<>());
+    private final ExecutorService executorService = Executors.newFixedThreadPool(2);
+    // Bytes in the disk cache, or -1 until it has been measured; guarded by diskCacheDir
+    private long diskCacheBytes = -1;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // Decode target reused across decodes on the same worker thread
+    private final ThreadLocal<Bitmap> scratchBitmap = new ThreadLocal<>();
+
+    private PackIconLoader(Context context) {
+        diskCacheDir = new File(context.getCacheDir(), DISK_CACHE_DIR);
+        diskCacheDir.mkdirs();
+        int cacheBytes = (int) Math.min(Runtime.getRuntime().maxMemory() / 16, Integer.MAX_VALUE);
+        memoryCache = new LruCache<String, Bitmap>(cacheBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getByteCount();
+            }
+        };
+        executorService.execute(() -> trimDiskCache(0));
+    }
+
+    public static synchronized PackIconLoader getInstance(Context context) {
+        if (instance == null) {
+            instance = new PackIconLoader(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    public interface Target {
+        /**
+         * Called on the main thread with the thumbnail, or null if the pack has no icon
+         */
+        void onIconLoaded(Bitmap icon);
+    }
+
+    /**
+     * Returns the cached thumbnail or null; never touches the disk
+     */
+    public Bitmap getCached(ResourceFile file, int sizePx) {
+        Bitmap cached = memoryCache.get(file.getVersionKey());
+        return cached != null && Math.max(cached.getWidth(), cached.getHeight()) == sizePx ? cached : null;
+    }
+
+    /**
+     * Loads the thumbnail in the background. Cancel the returned future when
+     * the row is recycled; a cancelled load never calls the target.
+     * Returns null if the result is already known.
+     */
+    public Future<?> load(ResourceFile file, int sizePx, Target target) {
+        String key = file.getVersionKey();
+        Bitmap cached = getCached(file, sizePx);
+        if (cached != null || missingIcons.contains(key)) {
+            target.onIconLoaded(cached);
+            return null;
+        }
+        final Future<?>[] self = new Future<?>[1];
+        Runnable task = () -> {
+            Bitmap icon = loadBlocking(file, sizePx, key);
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+            mainHandler.post(() -> {
+                if (self[0] == null || !self[0].isCancelled()) {
+                    target.onIconLoaded(icon);
+                }
+            });
+        };
+        self[0] = executorService.submit(task);
+        return self[0];
+    }
+
+    private Bitmap loadBlocking(ResourceFile file, int sizePx, String key) {
+        // "fit" marks thumbnails that keep the aspect ratio; older stretched ones age out of the trim
+        File diskFile = new File(diskCacheDir, Long.toHexString(StableIds.of(key + "@" + sizePx + "fit")) + ".png");
+        Bitmap icon = null;
+        // Set only once the archive was read and has no icon; read errors are retried on a later bind
+        boolean noIcon = false;
+        if (diskFile.isFile()) {
+            icon = BitmapFactory.decodeFile(diskFile.getAbsolutePath());
+            if (icon != null) {
+                // The trim goes by mtime, so a hit keeps the thumbnail
+                diskFile.setLastModified(System.currentTimeMillis());
+            }
+        }
+        if (icon == null) {
+            try {
+                byte[] png = readIcon(file.getFile());
+                noIcon = png == null;
+                if (png != null && !Thread.currentThread().isInterrupted()) {
+                    icon = decodeThumbnail(png, sizePx);
+                }
+                if (icon != null && writeDiskCache(diskFile, icon)) {
+                    trimDiskCache(diskFile.length());
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "Could not read icon of " + file.getName(), e);
+            }
+        }
+        if (icon != null) {
+            memoryCache.put(key, icon);
+        } else if (noIcon) {
+            missingIcons.add(key);
+        }
+        return icon;
+    }
+
+    /**
+     * Finds the shallowest pack_icon.png, looking into nested packs if the archive has none of its own
+     */
+    private static byte[] readIcon(File archive) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(archive, "r")) {
+            ZipCentralDirectory zip = ZipCentralDirectory.open(file);
+            ZipCentralDirectory.Entry icon = findIcon(zip);
+            if (icon != null) {
+                return readEntry(zip, icon);
+            }
+            for (ZipCentralDirectory.Entry entry : zip.getEntries()) {
+                String name = entry.getName().toLowerCase();
+                if (!name.endsWith(".mcpack") && !name.endsWith(".zip")) {
+                    continue;
+                }
+                if (entry.getMethod() == ZipCentralDirectory.METHOD_STORED) {
+                    ZipCentralDirectory nested = zip.openNested(entry);
+                    ZipCentralDirectory.Entry nestedIcon = findIcon(nested);
+                    if (nestedIcon != null) {
+                        return readEntry(nested, nestedIcon);
+                    }
+                } else {
+                    byte[] nestedIcon = readCompressedNestedIcon(zip, entry);
+                    if (nestedIcon != null) {
+                        return nestedIcon;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    private static ZipCentralDirectory.Entry findIcon(ZipCentralDirectory zip) {
+        ZipCentralDirectory.Entry best = null;
+        int bestDepth = Integer.MAX_VALUE;
+        for (ZipCentralDirectory.Entry entry : zip.getEntries()) {
+            String name = entry.getName();
+            if (name.equals(ICON_NAME) || name.endsWith("/" + ICON_NAME)) {
+                int depth = 0;
+                for (int i = 0; i < name.length(); i++) {
+                    if (name.charAt(i) == '/') {
+                        depth++;
+                    }
+                }
+                if (depth < bestDepth) {
+                    best = entry;
+                    bestDepth = depth;
+                }
+            }
+        }
+        return best;
+    }
+
+    private static byte[] readCompressedNestedIcon(ZipCentralDirectory zip, ZipCentralDirectory.Entry entry) throws IOException {
+        try (ZipInputStream nested = new ZipInputStream(zip.openStream(entry))) {
+            ZipEntry nestedEntry;
+            while ((nestedEntry = nested.getNextEntry()) != null) {
+                String name = nestedEntry.getName();
+                if (name.equals(ICON_NAME) || name.endsWith("/" + ICON_NAME)) {
+                    return readFully(nested);
+                }
+            }
+        }
+        return null;
+    }
+
+    private static byte[] readEntry(ZipCentralDirectory zip, ZipCentralDirectory.Entry entry) throws IOException {
+        try (InputStream in = zip.openStream(entry)) {
+            return readFully(in);
+        }
+    }
+
+    private Bitmap decodeThumbnail(byte[] png, int sizePx) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(png, 0, png.length, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        // Largest power of two that keeps the longer side at or above the row size
+        int longerSide = Math.max(options.outWidth, options.outHeight);
+        int sampleSize = 1;
+        while (longerSide / (sampleSize * 2) >= sizePx) {
+            sampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        options.inMutable = true;
+        options.inBitmap = scratchBitmap.get();
+
+        Bitmap decoded;
+        try {
+            decoded = BitmapFactory.decodeByteArray(png, 0, png.length, options);
+        } catch (IllegalArgumentException e) {
+            // The scratch bitmap was too small for this icon; decode into a new one
+            options.inBitmap = null;
+            decoded = BitmapFactory.decodeByteArray(png, 0, png.length, options);
+        }
+        if (decoded == null) {
+            return null;
+        }
+        scratchBitmap.set(decoded);
+
+        // The thumbnail must not share memory with the scratch bitmap
+        int width = decoded.getWidth();
+        int height = decoded.getHeight();
+        if (Math.max(width, height) == sizePx) {
+            return decoded.copy(Bitmap.Config.ARGB_8888, false);
+        }
+        // Fit the longer side to the row size so non-square icons are not stretched
+        float scale = (float) sizePx / Math.max(width, height);
+        return Bitmap.createScaledBitmap(decoded, Math.max(1, Math.round(width * scale)),
+                Math.max(1, Math.round(height * scale)), true);
+    }
+
+    private static boolean writeDiskCache(File diskFile, Bitmap icon) {
+        File temp = new File(diskFile.getPath() + ".tmp");
+        try (OutputStream out = new FileOutputStream(temp)) {
+            icon.compress(Bitmap.CompressFormat.PNG, 100, out);
+        } catch (IOException e) {
+            Log.w(TAG, "Could not write icon cache", e);
+            temp.delete();
+            return false;
+        }
+        if (!temp.renameTo(diskFile)) {
+            temp.delete();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Counts a newly written thumbnail and, once the disk cache is over its
+     * cap, deletes the least recently used ones down to three quarters of it
+     */
+    private void trimDiskCache(long addedBytes) {
+        synchronized (diskCacheDir) {
+            if (diskCacheBytes >= 0) {
+                diskCacheBytes += addedBytes;
+                if (diskCacheBytes <= MAX_DISK_CACHE_BYTES) {
+                    return;
+                }
+            }
+            // Measured again from the listing, which also catches files the system removed
+            File[] files = diskCacheDir.listFiles();
+            if (files == null) {
+                return;
+            }
+            long[] lastModified = new long[files.length];
+            Integer[] order = new Integer[files.length];
+            diskCacheBytes = 0;
+            for (int i = 0; i < files.length; i++) {
+                lastModified[i] = files[i].lastModified();
+                order[i] = i;
+                diskCacheBytes += files[i].length();
+            }
+            if (diskCacheBytes <= MAX_DISK_CACHE_BYTES) {
+                return;
+            }
+            Arrays.sort(order, (a, b) -> Long.compare(lastModified[a], lastModified[b]));
+            for (int i = 0; i < order.length && diskCacheBytes > MAX_DISK_CACHE_BYTES * 3 / 4; i++) {
+                File file = files[order[i]];
+                long length = file.length();
+                if (file.delete()) {
+                    diskCacheBytes -= length;
+                }
+            }
+        }
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int bytesRead;
+        while ((bytesRead = in.read(buffer)) != -1) {
+            out.write(buffer, 0, bytesRead);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,97 @@
+package com.axion.launcher;
+
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the English strings of a pack's texts/en_US.lang files, including
+ * those of packs nested in a .mcaddon, the same way PackManifestReader finds
+ * manifests. Only the values are kept; keys and comments are dropped.
+ */
+public class PackLangReader {
+
+    private static final String TAG = "PackLangReader";
+    private static final String LANG_NAME = "texts/en_us.lang";
+    // Huge lang files add little to search but cost time and memory
+    private static final int MAX_CHARS = 256 * 1024;
+
+    private PackLangReader() {}
+
+    /**
+     * All lang values of the archive separated by newlines, or "" if it has none
+     */
+    public static String readText(File archive) {
+        StringBuilder text = new StringBuilder();
+        try (RandomAccessFile file = new RandomAccessFile(archive, "r")) {
+            readDirectory(ZipCentralDirectory.open(file), text, true);
+        } catch (IOException e) {
+            Log.w(TAG, "Could not read lang files of " + archive.getName(), e);
+        }
+        return text.toString();
+    }
+
+    private static void readDirectory(ZipCentralDirectory zip, StringBuilder text, boolean outer) throws IOException {
+        for (ZipCentralDirectory.Entry entry : zip.getEntries()) {
+            if (text.length() >= MAX_CHARS) {
+                return;
+            }
+            if (entry.isDirectory()) {
+                continue;
+            }
+            String name = entry.getName().toLowerCase();
+            if (isLangFile(name)) {
+                try (InputStream in = zip.openStream(entry)) {
+                    appendValues(in, text);
+                }
+            } else if (outer && (name.endsWith(".mcpack") || name.endsWith(".zip"))) {
+                if (entry.getMethod() == ZipCentralDirectory.METHOD_STORED) {
+                    readDirectory(zip.openNested(entry), text, false);
+                } else {
+                    readCompressedNested(zip, entry, text);
+                }
+            }
+        }
+    }
+
+    private static void readCompressedNested(ZipCentralDirectory zip, ZipCentralDirectory.Entry entry,
+                                             StringBuilder text) throws IOException {
+        // Spooled, only the lang files are inflated rather than every entry
+        File spooled = zip.spoolNested(entry);
+        try (RandomAccessFile nested = new RandomAccessFile(spooled, "r")) {
+            readDirectory(ZipCentralDirectory.open(nested), text, false);
+        } finally {
+            spooled.delete();
+        }
+    }
+
+    /**
+     * Appends the value of each "key=value" line, without a trailing "##" comment
+     */
+    private static void appendValues(InputStream in, StringBuilder text) throws IOException {
+        // Closed by the caller along with the entry stream
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null && text.length() < MAX_CHARS) {
+            int equals = line.indexOf('=');
+            if (equals <= 0 || line.startsWith("##")) {
+                continue;
+            }
+            int end = line.indexOf("##", equals);
+            String value = (end != -1 ? line.substring(equals + 1, end) : line.substring(equals + 1)).trim();
+            if (!value.isEmpty()) {
+                text.append(value).append('\n');
+            }
+        }
+    }
+
+    private static boolean isLangFile(String lowerName) {
+        return lowerName.equals(LANG_NAME) || lowerName.endsWith("/" + LANG_NAME);
+    }
+}
@@ -0,0 +1,173 @@
+package com.axion.launcher;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Header data of a manifest.json inside a pack archive. For a .mcaddon the
+ * summary stored per file combines the manifests of all packs inside it.
+ */
+public class PackManifest {
+    private String name;
+    private String description;
+    private String uuid;
+    private int[] version;
+    private int[] minEngineVersion;
+    private String moduleType; // "resources", "data", "world_template", ...; comma-separated in summaries
+    private List<String> packUuids;
+    private List<Dependency> dependencies;
+
+    /**
+     * A pack another pack needs, as declared in its "dependencies" list
+     */
+    public static class Dependency {
+        private final String uuid;
+        private final int[] version;
+
+        public Dependency(String uuid, int[] version) {
+            this.uuid = uuid;
+            this.version = version;
+        }
+
+        public String getUuid() {
+            return uuid;
+        }
+
+        /**
+         * Lowest acceptable version of the pack, or null if any version will do
+         */
+        public int[] getVersion() {
+            return version;
+        }
+    }
+
+    public PackManifest(String name, String description, String uuid, int[] version,
+                        int[] minEngineVersion, String moduleType) {
+        this(name, description, uuid, version, minEngineVersion, moduleType,
+                uuid != null ? Collections.singletonList(uuid) : Collections.emptyList(),
+                Collections.emptyList());
+    }
+
+    public PackManifest(String name, String description, String uuid, int[] version,
+                        int[] minEngineVersion, String moduleType,
+                        List<String> packUuids, List<Dependency> dependencies) {
+        this.name = name;
+        this.description = description;
+        this.uuid = uuid;
+        this.version = version;
+        this.minEngineVersion = minEngineVersion;
+        this.moduleType = moduleType;
+        this.packUuids = packUuids;
+        this.dependencies = dependencies;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public String getUuid() {
+        return uuid;
+    }
+
+    public int[] getVersion() {
+        return version;
+    }
+
+    /**
+     * Lowest game version the pack declares support for, or null if it does not say
+     */
+    public int[] getMinEngineVersion() {
+        return minEngineVersion;
+    }
+
+    public String getModuleType() {
+        return moduleType;
+    }
+
+    /**
+     * UUIDs of every pack in the archive; a .mcaddon usually holds two
+     */
+    public List<String> getPackUuids() {
+        return packUuids;
+    }
+
+    /**
+     * Packs this archive needs that it does not contain itself
+     */
+    public List<Dependency> getDependencies() {
+        return dependencies;
+    }
+
+    /**
+     * Pack name without Minecraft's § formatting codes
+     */
+    public String getDisplayName() {
+        return stripFormatting(name);
+    }
+
+    /**
+     * Human readable pack kind, e.g. "Behavior + Resource pack"
+     */
+    public String getModuleTypeLabel() {
+        if (moduleType == null || moduleType.isEmpty()) {
+            return "";
+        }
+        StringBuilder label = new StringBuilder();
+        boolean pack = false;
+        for (String type : moduleType.split(",")) {
+            String part;
+            switch (type) {
+                case "resources":
+                    part = "Resource";
+                    pack = true;
+                    break;
+                case "data":
+                case "script":
+                case "javascript":
+                    part = "Behavior";
+                    pack = true;
+                    break;
+                case "skin_pack":
+                    part = "Skin";
+                    pack = true;
+                    break;
+                case "world_template":
+                    part = "World template";
+                    break;
+                default:
+                    continue;
+            }
+            if (label.indexOf(part) != -1) {
+                continue;
+            }
+            if (label.length() > 0) {
+                label.append(" + ");
+            }
+            label.append(part);
+        }
+        if (pack) {
+            label.append(" pack");
+        }
+        return label.toString();
+    }
+
+    static String stripFormatting(String text) {
+        if (text == null || text.indexOf('§') == -1) {
+            return text;
+        }
+        StringBuilder builder = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '§') {
+                i++; // Skip the formatting code that follows
+            } else {
+                builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,339 @@
+package com.axion.launcher;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Reads the manifest.json files of a .mcpack/.mcaddon/.mctemplate archive
+ * without extracting it.
+ *
+ * Manifests are located through the ZIP central directory and only those
+ * entries are inflated and parsed with a streaming JSON reader. Packs nested
+ * in a .mcaddon are opened in place when stored; compressed ones are
+ * streamed only up to their manifest.
+ *
+ * Results are cached per path and mtime by ResourceIndex and its database,
+ * so each archive is read once.
+ */
+public class PackManifestReader {
+
+    private static final String TAG = "PackManifestReader";
+    private static final String MANIFEST_NAME = "manifest.json";
+    // Script modules older manifests depend on by UUID; the game provides them, no pack does
+    private static final Set<String> SCRIPT_MODULE_UUIDS = new HashSet<>(Arrays.asList(
+            "b26a4d4c-afdf-4690-88f8-931846312678", // mojang-minecraft
+            "6f4b6893-1bb6-42fd-b458-7fa3d0c89616", // mojang-gametest
+            "2bd50a27-ab5f-4f40-a596-3641627c635e", // mojang-minecraft-ui
+            "53d7f2bf-bf9c-49c4-ad1f-7c803d947920", // mojang-server-admin
+            "777b1798-13a6-401c-9cba-0cf17e31a81b")); // mojang-net
+
+    private PackManifestReader() {}
+
+    /**
+     * Folds all manifests of an archive into one entry: the first header's
+     * name, description, UUID and version, the highest min_engine_version of
+     * any pack inside, the module types and UUIDs of all of them and the
+     * dependencies they do not satisfy among themselves.
+     * Returns null if the archive has no readable manifest.
+     */
+    public static PackManifest readSummary(File archive) {
+        List<PackManifest> manifests = read(archive);
+        if (manifests.isEmpty()) {
+            return null;
+        }
+        int[] highest = null;
+        Set<String> moduleTypes = new LinkedHashSet<>();
+        Set<String> packUuids = new LinkedHashSet<>();
+        for (PackManifest manifest : manifests) {
+            int[] version = manifest.getMinEngineVersion();
+            if (version != null && (highest == null || PackCompatibilityIndex.compareVersions(version, highest) > 0)) {
+                highest = version;
+            }
+            if (manifest.getModuleType() != null) {
+                moduleTypes.add(manifest.getModuleType());
+            }
+            packUuids.addAll(manifest.getPackUuids());
+        }
+
+        // A behavior pack depending on the resource pack shipped next to it needs nothing else
+        Map<String, PackManifest.Dependency> external = new LinkedHashMap<>();
+        for (PackManifest manifest : manifests) {
+            for (PackManifest.Dependency dependency : manifest.getDependencies()) {
+                if (packUuids.contains(dependency.getUuid())) {
+                    continue;
+                }
+                PackManifest.Dependency known = external.get(dependency.getUuid());
+                if (known == null || known.getVersion() == null || (dependency.getVersion() != null
+                        && PackCompatibilityIndex.compareVersions(dependency.getVersion(), known.getVersion()) > 0)) {
+                    external.put(dependency.getUuid(), dependency);
+                }
+            }
+        }
+
+        PackManifest first = manifests.get(0);
+        return new PackManifest(first.getName(), first.getDescription(), first.getUuid(), first.getVersion(),
+                highest, moduleTypes.isEmpty() ? null : String.join(",", moduleTypes),
+                new ArrayList<>(packUuids), new ArrayList<>(external.values()));
+    }
+
+    public static List<PackManifest> read(File archive) {
+        List<PackManifest> manifests = new ArrayList<>();
+        try (RandomAccessFile file = new RandomAccessFile(archive, "r")) {
+            readDirectory(ZipCentralDirectory.open(file), manifests, true);
+        } catch (IOException e) {
+            Log.w(TAG, "Could not read manifests of " + archive.getName(), e);
+        }
+        return manifests;
+    }
+
+    private static void readDirectory(ZipCentralDirectory zip, List<PackManifest> manifests, boolean outer) throws IOException {
+        for (ZipCentralDirectory.Entry entry : zip.getEntries()) {
+            if (entry.isDirectory()) {
+                continue;
+            }
+            String name = entry.getName();
+            if (isManifest(name)) {
+                try (InputStream in = zip.openStream(entry)) {
+                    addManifest(manifests, in);
+                }
+            } else if (outer && isNestedPack(name)) {
+                if (entry.getMethod() == ZipCentralDirectory.METHOD_STORED) {
+                    readDirectory(zip.openNested(entry), manifests, false);
+                } else {
+                    readCompressedNested(zip, entry, manifests);
+                }
+            }
+        }
+    }
+
+    private static void readCompressedNested(ZipCentralDirectory zip, ZipCentralDirectory.Entry entry,
+                                             List<PackManifest> manifests) throws IOException {
+        // A compressed nested pack has no random access; inflate only until its manifest
+        try (ZipInputStream nested = new ZipInputStream(zip.openStream(entry))) {
+            ZipEntry nestedEntry;
+            while ((nestedEntry = nested.getNextEntry()) != null) {
+                if (!nestedEntry.isDirectory() && isManifest(nestedEntry.getName())) {
+                    addManifest(manifests, nested);
+                    return;
+                }
+            }
+        }
+    }
+
+    private static void addManifest(List<PackManifest> manifests, InputStream in) {
+        try {
+            PackManifest manifest = parse(in);
+            if (manifest != null) {
+                manifests.add(manifest);
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "Malformed manifest.json", e);
+        }
+    }
+
+    /**
+     * Parses a manifest without building a document tree; unknown fields are skipped
+     */
+    static PackManifest parse(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            bytes.write(buffer, 0, read);
+        }
+        byte[] json = bytes.toByteArray();
+        // Some packs are saved with a byte order mark, which the JSON reader rejects
+        int start = json.length >= 3 && (json[0] & 0xff) == 0xEF && (json[1] & 0xff) == 0xBB
+                && (json[2] & 0xff) == 0xBF ? 3 : 0;
+        // Lenient mode accepts the comments many packs ship with, but not their trailing commas
+        JsonReader reader = new JsonReader(new InputStreamReader(
+                new ByteArrayInputStream(PackValidator.removeTrailingCommas(json, start)), StandardCharsets.UTF_8));
+        reader.setLenient(true);
+
+        String name = null;
+        String description = null;
+        String uuid = null;
+        int[] version = null;
+        int[] minEngineVersion = null;
+        String moduleType = null;
+        List<PackManifest.Dependency> dependencies = new ArrayList<>();
+        boolean hasHeader = false;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String field = reader.nextName();
+            if ("header".equals(field) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                hasHeader = true;
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String headerField = reader.nextName();
+                    switch (headerField) {
+                        case "name":
+                            name = nextString(reader);
+                            break;
+                        case "description":
+                            description = nextString(reader);
+                            break;
+                        case "uuid":
+                            uuid = nextString(reader);
+                            if (uuid != null) {
+                                uuid = uuid.toLowerCase();
+                            }
+                            break;
+                        case "version":
+                            version = nextVersion(reader);
+                            break;
+                        case "min_engine_version":
+                            minEngineVersion = nextVersion(reader);
+                            break;
+                        default:
+                            reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else if ("modules".equals(field) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    String type = nextModuleType(reader);
+                    if (moduleType == null) {
+                        moduleType = type;
+                    }
+                }
+                reader.endArray();
+            } else if ("dependencies".equals(field) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    PackManifest.Dependency dependency = nextDependency(reader);
+                    if (dependency != null) {
+                        dependencies.add(dependency);
+                    }
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+
+        if (!hasHeader) {
+            return null;
+        }
+        return new PackManifest(name != null ? name : "", description, uuid, version, minEngineVersion, moduleType,
+                uuid != null ? Collections.singletonList(uuid) : Collections.emptyList(), dependencies);
+    }
+
+    /**
+     * Reads a pack dependency; script modules, named like "@minecraft/server"
+     * or given by a known UUID, are part of the game, not packs, and are skipped
+     */
+    private static PackManifest.Dependency nextDependency(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return null;
+        }
+        String uuid = null;
+        int[] version = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String field = reader.nextName();
+            if ("uuid".equals(field)) {
+                uuid = nextString(reader);
+            } else if ("version".equals(field)) {
+                version = nextVersion(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (uuid == null || uuid.isEmpty() || SCRIPT_MODULE_UUIDS.contains(uuid.toLowerCase())) {
+            return null;
+        }
+        return new PackManifest.Dependency(uuid.toLowerCase(), version);
+    }
+
+    private static String nextModuleType(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return null;
+        }
+        String type = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("type".equals(reader.nextName())) {
+                type = nextString(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return type;
+    }
+
+    private static String nextString(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.STRING) {
+            return reader.nextString();
+        }
+        reader.skipValue();
+        return null;
+    }
+
+    /**
+     * Reads a version given either as [1, 20, 0] or as "1.20.0"
+     */
+    private static int[] nextVersion(JsonReader reader) throws IOException {
+        JsonToken token = reader.peek();
+        if (token == JsonToken.BEGIN_ARRAY) {
+            List<Integer> parts = new ArrayList<>(3);
+            reader.beginArray();
+            while (reader.hasNext()) {
+                if (reader.peek() == JsonToken.NUMBER) {
+                    parts.add(reader.nextInt());
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endArray();
+            int[] version = new int[parts.size()];
+            for (int i = 0; i < version.length; i++) {
+                version[i] = parts.get(i);
+            }
+            return version;
+        } else if (token == JsonToken.STRING) {
+            // Semantic versions may carry a pre-release suffix such as "1.0.0-beta"
+            String text = reader.nextString();
+            int suffix = text.indexOf('-');
+            return PackCompatibilityIndex.parseVersion(suffix != -1 ? text.substring(0, suffix) : text);
+        }
+        reader.skipValue();
+        return null;
+    }
+
+    private static boolean isManifest(String entryName) {
+        return entryName.equals(MANIFEST_NAME) || entryName.endsWith("/" + MANIFEST_NAME);
+    }
+
+    private static boolean isNestedPack(String entryName) {
+        String lower = entryName.toLowerCase();
+        return lower.endsWith(".mcpack") || lower.endsWith(".zip");
+    }
+}
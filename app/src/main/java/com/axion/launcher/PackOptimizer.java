@@ -0,0 +1,734 @@
+package com.axion.launcher;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Shrinks packs without changing what they contain: PNG image data is
+ * recompressed at the highest zlib level, JSON loses its whitespace and
+ * comments, and every entry is deflated again at the highest level.
+ *
+ * Entries are read in order on one thread and recompressed on a pool, a
+ * bounded number at a time. An entry is rewritten only if that makes it
+ * smaller; otherwise its original compressed bytes are copied. Packs nested
+ * in a .mcaddon are optimized the same way. The result replaces the pack
+ * only if it is smaller and every entry reads back to content equivalent to
+ * the original, and it keeps the pack's date so the listing order does not
+ * change.
+ */
+public class PackOptimizer {
+
+    private static final String TAG = "PackOptimizer";
+    private static final String WORK_DIR = ".optimizer";
+    // Larger entries (sounds, mostly) are copied without being looked at
+    private static final int MAX_ENTRY_SIZE = 8 * 1024 * 1024;
+    private static final int MAX_NESTED_SIZE = 64 * 1024 * 1024;
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+
+    private static PackOptimizer instance;
+
+    private final ResourceIndex resourceIndex;
+    private final ExecutorService coordinator = Executors.newSingleThreadExecutor();
+    private final ExecutorService workers;
+    // Entries being recompressed at once; bounds the bytes held in memory
+    private final int window;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    public static class Result {
+        private final ResourceFile file;
+        private final long originalSize;
+        private final long optimizedSize;
+        private final String error;
+
+        Result(ResourceFile file, long originalSize, long optimizedSize, String error) {
+            this.file = file;
+            this.originalSize = originalSize;
+            this.optimizedSize = optimizedSize;
+            this.error = error;
+        }
+
+        public ResourceFile getFile() {
+            return file;
+        }
+
+        public long getBytesSaved() {
+            return originalSize - optimizedSize;
+        }
+
+        /**
+         * Why the pack was left alone, or null
+         */
+        public String getError() {
+            return error;
+        }
+    }
+
+    public interface ProgressListener {
+        /**
+         * Called on the main thread after each pack
+         */
+        void onProgress(int done, int total);
+
+        /**
+         * Called on the main thread with one result per pack, in order
+         */
+        void onFinished(List<Result> results);
+    }
+
+    /**
+     * What an entry becomes; data is null when the original bytes are copied
+     */
+    static class EntryOutput {
+        final ZipCentralDirectory.Entry entry;
+        final int method;
+        final long crc;
+        final byte[] data;
+        final int length;
+        final long size;
+
+        EntryOutput(ZipCentralDirectory.Entry entry, int method, long crc, byte[] data, int length, long size) {
+            this.entry = entry;
+            this.method = method;
+            this.crc = crc;
+            this.data = data;
+            this.length = length;
+            this.size = size;
+        }
+
+        static EntryOutput passThrough(ZipCentralDirectory.Entry entry) {
+            return new EntryOutput(entry, entry.getMethod(), entry.getCrc(), null, 0, entry.getSize());
+        }
+    }
+
+    private PackOptimizer(Context context) {
+        resourceIndex = ResourceIndex.getInstance(context);
+        int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        workers = Executors.newFixedThreadPool(threads);
+        window = threads * 2;
+    }
+
+    public static synchronized PackOptimizer getInstance(Context context) {
+        if (instance == null) {
+            instance = new PackOptimizer(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Optimizes the packs one after another in the background
+     */
+    public void optimize(List<ResourceFile> files, ProgressListener listener) {
+        List<ResourceFile> batch = new ArrayList<>(files);
+        coordinator.execute(() -> {
+            List<Result> results = new ArrayList<>();
+            for (ResourceFile file : batch) {
+                results.add(optimizeFile(file));
+                int done = results.size();
+                mainHandler.post(() -> listener.onProgress(done, batch.size()));
+            }
+            mainHandler.post(() -> listener.onFinished(results));
+        });
+    }
+
+    /**
+     * Optimizes every pack of every section, once all of them have been scanned
+     */
+    public void optimizeAll(ProgressListener listener) {
+        resourceIndex.requestAllFiles(files -> {
+            List<ResourceFile> packs = new ArrayList<>();
+            for (ResourceFile file : files) {
+                if (file.isMinecraftFile()) {
+                    packs.add(file);
+                }
+            }
+            optimize(packs, listener);
+        });
+    }
+
+    public static long getTotalBytesSaved(List<Result> results) {
+        long total = 0;
+        for (Result result : results) {
+            total += result.getBytesSaved();
+        }
+        return total;
+    }
+
+    private Result optimizeFile(ResourceFile file) {
+        File source = file.getFile();
+        long originalSize = source.length();
+        File workDir = new File(resourceIndex.getSectionDir(file.getSection()).getParentFile(), WORK_DIR);
+        workDir.mkdirs();
+        // Same volume as the sections, so the result can be renamed into place
+        File temp = new File(workDir, source.getName());
+        try {
+            optimizeArchive(source, temp);
+            long optimizedSize = temp.length();
+            if (optimizedSize >= originalSize) {
+                return new Result(file, originalSize, originalSize, null);
+            }
+            verify(source, temp);
+            if (source.lastModified() != file.getLastModified() || source.length() != originalSize) {
+                return new Result(file, originalSize, originalSize, "Changed while being optimized");
+            }
+            temp.setLastModified(source.lastModified());
+            if (!temp.renameTo(source)) {
+                return new Result(file, originalSize, originalSize, "Could not replace the file");
+            }
+            return new Result(file, originalSize, optimizedSize, null);
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Could not optimize " + source.getName(), e);
+            return new Result(file, originalSize, originalSize, "Could not read the pack");
+        } finally {
+            temp.delete();
+        }
+    }
+
+    private void optimizeArchive(File source, File target) throws IOException {
+        try (RandomAccessFile in = new RandomAccessFile(source, "r");
+             ZipArchiveWriter writer = new ZipArchiveWriter(target)) {
+            ZipCentralDirectory zip = ZipCentralDirectory.open(in);
+            Deque<Future<EntryOutput>> pending = new ArrayDeque<>();
+            for (ZipCentralDirectory.Entry entry : zip.getEntries()) {
+                if (isNestedPack(entry)) {
+                    // Keeps entry order: everything queued before it is written first
+                    drain(pending, 0, writer, zip);
+                    addNestedPack(writer, zip, entry, target);
+                    continue;
+                }
+                if (!isCandidate(entry)) {
+                    // Queued in order, so the entries being recompressed keep going
+                    pending.add(copied(entry));
+                } else {
+                    byte[] raw = readRaw(zip, entry);
+                    pending.add(workers.submit(() -> optimizeEntry(entry, raw)));
+                }
+                drain(pending, window, writer, zip);
+            }
+            drain(pending, 0, writer, zip);
+            writer.finish();
+        }
+    }
+
+    /**
+     * An entry whose original bytes are copied, for the queue drain() empties
+     */
+    static Future<EntryOutput> copied(ZipCentralDirectory.Entry entry) {
+        return CompletableFuture.completedFuture(EntryOutput.passThrough(entry));
+    }
+
+    /**
+     * Writes finished entries in order until at most keep are still queued
+     */
+    static void drain(Deque<Future<EntryOutput>> pending, int keep, ZipArchiveWriter writer,
+                              ZipCentralDirectory zip) throws IOException {
+        while (pending.size() > keep) {
+            EntryOutput output;
+            try {
+                output = pending.removeFirst().get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted", e);
+            } catch (ExecutionException e) {
+                throw new IOException("Could not recompress an entry", e.getCause());
+            }
+            if (output.data == null) {
+                writer.addRawEntry(output.entry.getName(), zip, output.entry);
+            } else {
+                writer.addEntry(output.entry.getName(), output.entry.getFlags() & ZipArchiveWriter.FLAG_UTF8,
+                        output.method, output.entry.getDosTime(), output.crc, output.data, output.length,
+                        output.size);
+            }
+        }
+    }
+
+    /**
+     * Extracts a nested pack, optimizes it and stores the result if that is
+     * smaller than the original entry
+     */
+    private void addNestedPack(ZipArchiveWriter writer, ZipCentralDirectory zip, ZipCentralDirectory.Entry entry,
+                               File target) throws IOException {
+        File extracted = new File(target.getPath() + ".nested");
+        File optimized = new File(target.getPath() + ".nested.out");
+        try {
+            extract(zip, entry, extracted);
+            optimizeArchive(extracted, optimized);
+            if (optimized.length() < entry.getCompressedSize()) {
+                writer.addFile(entry.getName(), optimized, entry.getDosTime());
+                return;
+            }
+        } catch (IOException e) {
+            // A nested pack that cannot be read is kept exactly as it was
+            Log.w(TAG, "Could not optimize nested " + entry.getName(), e);
+        } finally {
+            extracted.delete();
+            optimized.delete();
+        }
+        writer.addRawEntry(entry.getName(), zip, entry);
+    }
+
+    /**
+     * Picks the smallest of: the original bytes, the content deflated again,
+     * or the content after PNG or JSON rewriting, stored or deflated
+     */
+    static EntryOutput optimizeEntry(ZipCentralDirectory.Entry entry, byte[] raw) {
+        byte[] content;
+        try {
+            content = decompress(entry, raw);
+        } catch (DataFormatException e) {
+            content = null;
+        }
+        CRC32 crc = new CRC32();
+        if (content != null) {
+            crc.update(content);
+        }
+        if (content == null || crc.getValue() != entry.getCrc()) {
+            // Damaged entries are left for Minecraft to judge
+            return EntryOutput.passThrough(entry);
+        }
+
+        String name = entry.getName().toLowerCase();
+        byte[] rewritten = null;
+        if (name.endsWith(".png")) {
+            rewritten = recompressPng(content);
+        } else if (name.endsWith(".json")) {
+            rewritten = minifyJson(content);
+        }
+        if (rewritten != null && rewritten.length < content.length) {
+            content = rewritten;
+            crc.reset();
+            crc.update(content);
+        }
+
+        EntryOutput best = EntryOutput.passThrough(entry);
+        int bestLength = raw.length;
+        byte[] deflated = deflate(content, Deflater.DEFAULT_STRATEGY, true);
+        if (deflated.length < bestLength) {
+            best = new EntryOutput(entry, ZipCentralDirectory.METHOD_DEFLATED, crc.getValue(), deflated,
+                    deflated.length, content.length);
+            bestLength = deflated.length;
+        }
+        if (content.length < bestLength) {
+            // Already compressed data such as PNGs often gains nothing from deflate
+            best = new EntryOutput(entry, ZipCentralDirectory.METHOD_STORED, crc.getValue(), content,
+                    content.length, content.length);
+        }
+        return best;
+    }
+
+    /**
+     * New content for an entry, deflated or stored, whichever is smaller
+     */
+    static EntryOutput replaceContent(ZipCentralDirectory.Entry entry, byte[] content) {
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        byte[] deflated = deflate(content, Deflater.DEFAULT_STRATEGY, true);
+        if (deflated.length < content.length) {
+            return new EntryOutput(entry, ZipCentralDirectory.METHOD_DEFLATED, crc.getValue(), deflated,
+                    deflated.length, content.length);
+        }
+        return new EntryOutput(entry, ZipCentralDirectory.METHOD_STORED, crc.getValue(), content,
+                content.length, content.length);
+    }
+
+    /**
+     * Rewrites a PNG with all its image data in one IDAT chunk compressed at
+     * the highest level, or returns null if it is not a PNG this can handle.
+     * The pixels, filters and every other chunk stay as they were.
+     */
+    static byte[] recompressPng(byte[] png) {
+        if (png.length < PNG_SIGNATURE.length + 12) {
+            return null;
+        }
+        for (int i = 0; i < PNG_SIGNATURE.length; i++) {
+            if (png[i] != PNG_SIGNATURE[i]) {
+                return null;
+            }
+        }
+        ByteArrayOutputStream idat = new ByteArrayOutputStream();
+        int firstIdat = -1;
+        int afterIdat = -1;
+        int offset = PNG_SIGNATURE.length;
+        while (offset + 12 <= png.length) {
+            int length = readInt(png, offset);
+            if (length < 0 || offset + 12 + length > png.length) {
+                return null;
+            }
+            boolean isIdat = png[offset + 4] == 'I' && png[offset + 5] == 'D'
+                    && png[offset + 6] == 'A' && png[offset + 7] == 'T';
+            if (isIdat) {
+                if (afterIdat != -1) {
+                    // IDAT chunks must be consecutive
+                    return null;
+                }
+                if (firstIdat == -1) {
+                    firstIdat = offset;
+                }
+                idat.write(png, offset + 8, length);
+            } else if (firstIdat != -1 && afterIdat == -1) {
+                afterIdat = offset;
+            }
+            offset += 12 + length;
+        }
+        if (firstIdat == -1) {
+            return null;
+        }
+        if (afterIdat == -1) {
+            afterIdat = offset;
+        }
+
+        byte[] imageData;
+        try {
+            imageData = inflate(idat.toByteArray(), false);
+        } catch (DataFormatException e) {
+            return null;
+        }
+        byte[] best = deflate(imageData, Deflater.DEFAULT_STRATEGY, false);
+        // Filtered scanlines often compress better with this strategy
+        byte[] filtered = deflate(imageData, Deflater.FILTERED, false);
+        if (filtered.length < best.length) {
+            best = filtered;
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(png.length);
+        out.write(png, 0, firstIdat);
+        byte[] header = new byte[8];
+        putInt(header, 0, best.length);
+        header[4] = 'I';
+        header[5] = 'D';
+        header[6] = 'A';
+        header[7] = 'T';
+        out.write(header, 0, 8);
+        out.write(best, 0, best.length);
+        CRC32 crc = new CRC32();
+        crc.update(header, 4, 4);
+        crc.update(best);
+        byte[] crcBytes = new byte[4];
+        putInt(crcBytes, 0, (int) crc.getValue());
+        out.write(crcBytes, 0, 4);
+        out.write(png, afterIdat, png.length - afterIdat);
+        return out.toByteArray();
+    }
+
+    /**
+     * Drops whitespace and comments outside strings, or returns null if the
+     * text ends inside a string or comment
+     */
+    static byte[] minifyJson(byte[] json) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(json.length);
+        int i = 0;
+        while (i < json.length) {
+            byte b = json[i];
+            if (b == '"') {
+                int end = i + 1;
+                while (end < json.length && json[end] != '"') {
+                    end += json[end] == '\\' ? 2 : 1;
+                }
+                if (end >= json.length) {
+                    return null;
+                }
+                out.write(json, i, end + 1 - i);
+                i = end + 1;
+            } else if (b == '/' && i + 1 < json.length && json[i + 1] == '/') {
+                while (i < json.length && json[i] != '\n') {
+                    i++;
+                }
+            } else if (b == '/' && i + 1 < json.length && json[i + 1] == '*') {
+                int end = i + 2;
+                while (end + 1 < json.length && !(json[end] == '*' && json[end + 1] == '/')) {
+                    end++;
+                }
+                if (end + 1 >= json.length) {
+                    return null;
+                }
+                i = end + 2;
+            } else if (b == ' ' || b == '\t' || b == '\r' || b == '\n') {
+                i++;
+            } else {
+                out.write(b);
+                i++;
+            }
+        }
+        return out.toByteArray();
+    }
+
+    static byte[] decompress(ZipCentralDirectory.Entry entry, byte[] raw) throws DataFormatException {
+        switch (entry.getMethod()) {
+            case ZipCentralDirectory.METHOD_STORED:
+                return raw;
+            case ZipCentralDirectory.METHOD_DEFLATED:
+                return inflate(raw, true);
+            default:
+                return null;
+        }
+    }
+
+    private static byte[] inflate(byte[] data, boolean nowrap) throws DataFormatException {
+        Inflater inflater = new Inflater(nowrap);
+        try {
+            // Raw inflate may need one byte past the data, as in ZipCentralDirectory
+            inflater.setInput(nowrap ? Arrays.copyOf(data, data.length + 1) : data);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, data.length * 2));
+            byte[] buffer = new byte[64 * 1024];
+            while (!inflater.finished()) {
+                int count = inflater.inflate(buffer);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new DataFormatException("Truncated data");
+                }
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } finally {
+            inflater.end();
+        }
+    }
+
+    static byte[] deflate(byte[] data, int strategy, boolean nowrap) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, nowrap);
+        try {
+            deflater.setStrategy(strategy);
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, data.length / 2));
+            byte[] buffer = new byte[64 * 1024];
+            while (!deflater.finished()) {
+                int count = deflater.deflate(buffer);
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    static byte[] readRaw(ZipCentralDirectory zip, ZipCentralDirectory.Entry entry) throws IOException {
+        byte[] raw = new byte[(int) entry.getCompressedSize()];
+        try (InputStream in = zip.openRaw(entry)) {
+            int offset = 0;
+            while (offset < raw.length) {
+                int read = in.read(raw, offset, raw.length - offset);
+                if (read == -1) {
+                    throw new IOException("Truncated entry " + entry.getName());
+                }
+                offset += read;
+            }
+        }
+        return raw;
+    }
+
+    /**
+     * Reads the optimized archive back and checks it against the original:
+     * the same entries in the same order, each one inflating to the size and
+     * CRC its header declares. Entries whose content was rewritten must still
+     * be equivalent: the same JSON once minified, the same PNG chunks and
+     * pixel data, or a nested pack that passes this check itself.
+     */
+    private static void verify(File source, File optimized) throws IOException {
+        try (RandomAccessFile original = new RandomAccessFile(source, "r");
+             RandomAccessFile result = new RandomAccessFile(optimized, "r")) {
+            ZipCentralDirectory beforeZip = ZipCentralDirectory.open(original);
+            ZipCentralDirectory afterZip = ZipCentralDirectory.open(result);
+            List<ZipCentralDirectory.Entry> before = beforeZip.getEntries();
+            List<ZipCentralDirectory.Entry> after = afterZip.getEntries();
+            if (before.size() != after.size()) {
+                throw new IOException("Entry count changed from " + before.size() + " to " + after.size());
+            }
+            for (int i = 0; i < before.size(); i++) {
+                ZipCentralDirectory.Entry expected = before.get(i);
+                ZipCentralDirectory.Entry actual = after.get(i);
+                if (!expected.getName().equals(actual.getName())) {
+                    throw new IOException("Entry " + i + " changed name");
+                }
+                if (actual.isDirectory() || (actual.getFlags() & 1) != 0) {
+                    // Encrypted entries were copied byte for byte and cannot be read
+                    continue;
+                }
+                if (actual.getCrc() == expected.getCrc() && actual.getSize() == expected.getSize()) {
+                    checkEntry(afterZip, actual);
+                } else if (isNestedPack(expected)) {
+                    verifyNested(beforeZip, expected, afterZip, actual, optimized);
+                } else if (!isEquivalent(expected.getName(), readContent(beforeZip, expected),
+                        readContent(afterZip, actual))) {
+                    throw new IOException(actual.getName() + " changed content");
+                }
+            }
+        }
+    }
+
+    private static void verifyNested(ZipCentralDirectory beforeZip, ZipCentralDirectory.Entry expected,
+                                     ZipCentralDirectory afterZip, ZipCentralDirectory.Entry actual,
+                                     File optimized) throws IOException {
+        File original = new File(optimized.getPath() + ".verify");
+        File result = new File(optimized.getPath() + ".verify.out");
+        try {
+            extract(beforeZip, expected, original);
+            extract(afterZip, actual, result);
+            if (result.length() != actual.getSize()) {
+                throw new IOException(actual.getName() + " has the wrong size");
+            }
+            verify(original, result);
+        } finally {
+            original.delete();
+            result.delete();
+        }
+    }
+
+    /**
+     * Inflates an entry without keeping it, checking its size and CRC
+     */
+    private static void checkEntry(ZipCentralDirectory zip, ZipCentralDirectory.Entry entry) throws IOException {
+        CRC32 crc = new CRC32();
+        long size = 0;
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = zip.openStream(entry)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                crc.update(buffer, 0, read);
+                size += read;
+            }
+        }
+        if (size != entry.getSize() || crc.getValue() != entry.getCrc()) {
+            throw new IOException(entry.getName() + " does not match its CRC");
+        }
+    }
+
+    /**
+     * Content of an entry whose size and CRC have been checked
+     */
+    private static byte[] readContent(ZipCentralDirectory zip, ZipCentralDirectory.Entry entry) throws IOException {
+        byte[] content;
+        try {
+            content = decompress(entry, readRaw(zip, entry));
+        } catch (DataFormatException e) {
+            throw new IOException(entry.getName() + " does not inflate", e);
+        }
+        CRC32 crc = new CRC32();
+        if (content != null) {
+            crc.update(content);
+        }
+        if (content == null || content.length != entry.getSize() || crc.getValue() != entry.getCrc()) {
+            throw new IOException(entry.getName() + " does not match its CRC");
+        }
+        return content;
+    }
+
+    /**
+     * Whether rewritten content still means what the original did
+     */
+    static boolean isEquivalent(String name, byte[] original, byte[] rewritten) {
+        String lower = name.toLowerCase();
+        if (Arrays.equals(original, rewritten)) {
+            return true;
+        }
+        if (lower.endsWith(".json")) {
+            byte[] minified = minifyJson(original);
+            return minified != null && Arrays.equals(minified, rewritten);
+        }
+        return lower.endsWith(".png") && isSamePng(original, rewritten);
+    }
+
+    /**
+     * Whether two PNGs differ only in how their image data is compressed
+     */
+    static boolean isSamePng(byte[] first, byte[] second) {
+        ByteArrayOutputStream firstChunks = new ByteArrayOutputStream();
+        ByteArrayOutputStream firstData = new ByteArrayOutputStream();
+        ByteArrayOutputStream secondChunks = new ByteArrayOutputStream();
+        ByteArrayOutputStream secondData = new ByteArrayOutputStream();
+        if (!splitPng(first, firstChunks, firstData) || !splitPng(second, secondChunks, secondData)
+                || !Arrays.equals(firstChunks.toByteArray(), secondChunks.toByteArray())) {
+            return false;
+        }
+        try {
+            return Arrays.equals(inflate(firstData.toByteArray(), false), inflate(secondData.toByteArray(), false));
+        } catch (DataFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Separates the IDAT payloads of a PNG from everything else
+     */
+    private static boolean splitPng(byte[] png, ByteArrayOutputStream chunks, ByteArrayOutputStream imageData) {
+        if (png.length < PNG_SIGNATURE.length) {
+            return false;
+        }
+        int offset = PNG_SIGNATURE.length;
+        chunks.write(png, 0, offset);
+        while (offset + 12 <= png.length) {
+            int length = readInt(png, offset);
+            if (length < 0 || offset + 12 + length > png.length) {
+                return false;
+            }
+            if (png[offset + 4] == 'I' && png[offset + 5] == 'D' && png[offset + 6] == 'A' && png[offset + 7] == 'T') {
+                imageData.write(png, offset + 8, length);
+            } else {
+                chunks.write(png, offset, 12 + length);
+            }
+            offset += 12 + length;
+        }
+        chunks.write(png, offset, png.length - offset);
+        return true;
+    }
+
+    private static void extract(ZipCentralDirectory zip, ZipCentralDirectory.Entry entry, File target)
+            throws IOException {
+        try (InputStream in = zip.openStream(entry); OutputStream out = new FileOutputStream(target)) {
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        }
+    }
+
+    private static boolean isCandidate(ZipCentralDirectory.Entry entry) {
+        // Bit 0 marks encrypted entries, which cannot be recompressed
+        return !entry.isDirectory() && (entry.getFlags() & 1) == 0
+                && entry.getCompressedSize() <= MAX_ENTRY_SIZE && entry.getSize() <= MAX_ENTRY_SIZE
+                && (entry.getMethod() == ZipCentralDirectory.METHOD_STORED
+                || entry.getMethod() == ZipCentralDirectory.METHOD_DEFLATED);
+    }
+
+    private static boolean isNestedPack(ZipCentralDirectory.Entry entry) {
+        String name = entry.getName().toLowerCase();
+        return !entry.isDirectory() && name.indexOf('/') == -1 && (entry.getFlags() & 1) == 0
+                && (name.endsWith(".mcpack") || name.endsWith(".mctemplate"))
+                && entry.getSize() <= MAX_NESTED_SIZE;
+    }
+
+    private static int readInt(byte[] buffer, int offset) {
+        return (buffer[offset] & 0xFF) << 24 | (buffer[offset + 1] & 0xFF) << 16
+                | (buffer[offset + 2] & 0xFF) << 8 | (buffer[offset + 3] & 0xFF);
+    }
+
+    private static void putInt(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) (value >>> 24);
+        buffer[offset + 1] = (byte) (value >>> 16);
+        buffer[offset + 2] = (byte) (value >>> 8);
+        buffer[offset + 3] = (byte) value;
+    }
+}
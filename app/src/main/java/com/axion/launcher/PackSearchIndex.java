@@ -0,0 +1,568 @@
+package com.axion.launcher;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Full-text search over file names, manifest headers and the English lang
+ * strings of every pack.
+ *
+ * Each term maps to a postings list of (document, weight) pairs, the weight
+ * telling which fields the term appears in. Terms are also kept in a sorted
+ * array so a query word matches every term it is a prefix of with two binary
+ * searches. Documents are added one at a time and removed in batches as
+ * sections change, each from only the postings lists it is in. Lang strings
+ * are the only part that needs the archive opened; their terms are cached in
+ * search.db so each pack is read once.
+ */
+public class PackSearchIndex {
+
+    private static final int FIELD_FILE_NAME = 1;
+    private static final int FIELD_PACK_NAME = 2;
+    private static final int FIELD_DESCRIPTION = 4;
+    private static final int FIELD_LANG = 8;
+
+    private static final int MAX_TERM_LENGTH = 32;
+    // Bounds the postings a single pack with a huge lang file can add
+    private static final int MAX_LANG_TERMS = 1000;
+    private static final int MAX_QUERY_TERMS = 8;
+    // Listeners hear about progress this often while a large section is indexed
+    private static final int NOTIFY_BATCH_SIZE = 64;
+
+    public interface Listener {
+        void onSearchIndexChanged();
+    }
+
+    public interface SearchCallback {
+        /**
+         * Called on the main thread with matching files, best match first
+         */
+        void onResults(List<ResourceFile> results);
+    }
+
+    private static PackSearchIndex instance;
+
+    // Lang terms of each pack
+    private final FileCache<String[]> langCache;
+    private final ExecutorService indexExecutor = Executors.newSingleThreadExecutor();
+    // Queries never wait behind an archive being read for the index
+    private final ExecutorService searchExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    // Guarded by this; only the index thread modifies them
+    private final Map<String, Postings> postingsByTerm = new HashMap<>();
+    private final Map<String, Document> documentsByKey = new HashMap<>();
+    private final List<Document> documentsById = new ArrayList<>();
+    private final List<Integer> freeIds = new ArrayList<>();
+    private String[] sortedTerms = new String[0];
+    // Dictionary changes not yet merged into sortedTerms
+    private final List<String> addedTerms = new ArrayList<>();
+    private boolean termsRemoved;
+
+    private static class Document {
+        final int id;
+        final String section;
+        final long lastModified;
+        final PackManifest packInfo;
+        // The postings lists the document is in, so removing it touches only those
+        final Postings[] postings;
+        volatile ResourceFile file;
+
+        Document(int id, ResourceFile file, Postings[] postings) {
+            this.id = id;
+            this.section = file.getSection();
+            this.lastModified = file.getLastModified();
+            this.packInfo = file.getPackInfo();
+            this.postings = postings;
+            this.file = file;
+        }
+    }
+
+    private static class Postings {
+        final String term;
+        int[] documents = new int[2];
+        byte[] weights = new byte[2];
+        int size;
+
+        Postings(String term) {
+            this.term = term;
+        }
+
+        void add(int document, int weight) {
+            if (size == documents.length) {
+                documents = Arrays.copyOf(documents, size * 2);
+                weights = Arrays.copyOf(weights, size * 2);
+            }
+            documents[size] = document;
+            weights[size] = (byte) weight;
+            size++;
+        }
+
+        void removeAll(boolean[] removed) {
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                if (!removed[documents[i]]) {
+                    documents[kept] = documents[i];
+                    weights[kept] = weights[i];
+                    kept++;
+                }
+            }
+            size = kept;
+        }
+    }
+
+    private PackSearchIndex(Context context) {
+        langCache = new FileCache<>(context, "search.db", 2, "lang_terms", new String[]{"terms TEXT NOT NULL"},
+                new FileCache.Codec<String[]>() {
+                    @Override
+                    public String[] read(Cursor cursor) {
+                        String terms = cursor.getString(0);
+                        return terms.isEmpty() ? new String[0] : terms.split(" ");
+                    }
+
+                    @Override
+                    public void write(String[] terms, ContentValues values) {
+                        values.put("terms", String.join(" ", terms));
+                    }
+                });
+    }
+
+    public static synchronized PackSearchIndex getInstance(Context context) {
+        if (instance == null) {
+            instance = new PackSearchIndex(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Brings the index in line with a section, reading only files that are
+     * new or changed since the last call.
+     */
+    public void indexSection(String section, List<ResourceFile> files) {
+        List<ResourceFile> snapshot = new ArrayList<>(files);
+        indexExecutor.execute(() -> {
+            Set<String> present = new HashSet<>();
+            List<ResourceFile> changed = new ArrayList<>();
+            List<String> removedPaths = new ArrayList<>();
+            synchronized (this) {
+                List<Document> dropped = new ArrayList<>();
+                for (ResourceFile file : snapshot) {
+                    present.add(file.getKey());
+                    if (!isCurrent(file, dropped)) {
+                        changed.add(file);
+                    }
+                }
+                for (Document document : documentsByKey.values()) {
+                    if (document.section.equals(section) && !present.contains(document.file.getKey())) {
+                        dropped.add(document);
+                        removedPaths.add(document.file.getKey());
+                    }
+                }
+                removeDocuments(dropped);
+            }
+            addDocuments(changed, removedPaths);
+        });
+    }
+
+    /**
+     * Applies changes to some files of a section, for sections too large
+     * to pass whole to indexSection on every change
+     */
+    public void updateFiles(String section, List<ResourceFile> changedFiles, List<String> removedKeys) {
+        List<ResourceFile> snapshot = new ArrayList<>(changedFiles);
+        List<String> removed = new ArrayList<>(removedKeys);
+        indexExecutor.execute(() -> {
+            List<ResourceFile> changed = new ArrayList<>();
+            List<String> removedPaths = new ArrayList<>();
+            synchronized (this) {
+                List<Document> dropped = new ArrayList<>();
+                for (ResourceFile file : snapshot) {
+                    if (!isCurrent(file, dropped)) {
+                        changed.add(file);
+                    }
+                }
+                for (String key : removed) {
+                    Document document = documentsByKey.get(key);
+                    if (document != null) {
+                        dropped.add(document);
+                        removedPaths.add(key);
+                    }
+                }
+                removeDocuments(dropped);
+            }
+            addDocuments(changed, removedPaths);
+        });
+    }
+
+    /**
+     * Whether the file's document is up to date; adds an outdated one to
+     * dropped. Called with the lock held.
+     */
+    private boolean isCurrent(ResourceFile file, List<Document> dropped) {
+        Document document = documentsByKey.get(file.getKey());
+        if (document != null && document.lastModified == file.getLastModified()
+                && document.packInfo == file.getPackInfo()) {
+            document.file = file;
+            return true;
+        }
+        if (document != null) {
+            dropped.add(document);
+        }
+        return false;
+    }
+
+    /**
+     * Indexes changed files, reading lang files as needed, and tells
+     * listeners as batches of them become searchable
+     */
+    private void addDocuments(List<ResourceFile> changed, List<String> removedPaths) {
+        langCache.remove(removedPaths);
+
+        int pending = removedPaths.isEmpty() ? 0 : 1;
+        for (ResourceFile file : changed) {
+            String[] langTerms = file.isMinecraftFile() ? readLangTerms(file) : new String[0];
+            Map<String, Integer> fields = collectTerms(file, langTerms);
+            synchronized (this) {
+                addDocument(file, fields);
+            }
+            if (++pending == NOTIFY_BATCH_SIZE) {
+                publish();
+                pending = 0;
+            }
+        }
+        if (pending > 0) {
+            publish();
+        }
+    }
+
+    /**
+     * Finds files of a section matching every word of the query, each word
+     * also matching longer terms it is the start of. Ranked by where the
+     * words were found: file name, then pack name, description and lang text.
+     */
+    public void search(String section, String query, SearchCallback callback) {
+        searchExecutor.execute(() -> {
+            List<ResourceFile> results = search(section, query);
+            mainHandler.post(() -> callback.onResults(results));
+        });
+    }
+
+    private List<ResourceFile> search(String section, String query) {
+        Set<String> unique = new HashSet<>();
+        List<String> tokens = new ArrayList<>();
+        tokenize(query, token -> {
+            if (tokens.size() < MAX_QUERY_TERMS && unique.add(token)) {
+                tokens.add(token);
+            }
+        });
+        if (tokens.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<Document> matches = new ArrayList<>();
+        float[] scores;
+        synchronized (this) {
+            int capacity = documentsById.size();
+            scores = new float[capacity];
+            // Number of query words a document matched so far; it must match all of them
+            int[] matched = new int[capacity];
+            float[] best = new float[capacity];
+            int[] touched = new int[capacity];
+            String[] terms = sortedTerms;
+            for (int t = 0; t < tokens.size(); t++) {
+                String token = tokens.get(t);
+                int touchedCount = 0;
+                int end = prefixEnd(terms, token);
+                for (int i = prefixStart(terms, token); i < end; i++) {
+                    Postings postings = postingsByTerm.get(terms[i]);
+                    if (postings == null) {
+                        continue;
+                    }
+                    // A whole-word match outranks a term the word only starts
+                    float factor = terms[i].length() == token.length() ? 1f : 0.5f;
+                    for (int p = 0; p < postings.size; p++) {
+                        int document = postings.documents[p];
+                        if (matched[document] != t) {
+                            continue;
+                        }
+                        float score = weightOf(postings.weights[p]) * factor;
+                        if (best[document] == 0) {
+                            touched[touchedCount++] = document;
+                        }
+                        if (score > best[document]) {
+                            best[document] = score;
+                        }
+                    }
+                }
+                for (int i = 0; i < touchedCount; i++) {
+                    int document = touched[i];
+                    scores[document] += best[document];
+                    matched[document] = t + 1;
+                    best[document] = 0;
+                }
+            }
+            for (int id = 0; id < capacity; id++) {
+                Document document = documentsById.get(id);
+                if (matched[id] == tokens.size() && document != null && document.section.equals(section)) {
+                    matches.add(document);
+                }
+            }
+        }
+
+        float[] finalScores = scores;
+        matches.sort((a, b) -> {
+            int result = Float.compare(finalScores[b.id], finalScores[a.id]);
+            return result != 0 ? result : a.file.getName().compareToIgnoreCase(b.file.getName());
+        });
+        List<ResourceFile> results = new ArrayList<>(matches.size());
+        for (Document document : matches) {
+            results.add(document.file);
+        }
+        return results;
+    }
+
+    private String[] readLangTerms(ResourceFile file) {
+        String[] cached = langCache.get(file.getKey(), file.getLastModified(), file.getSize());
+        if (cached != null) {
+            return cached;
+        }
+        Set<String> terms = new HashSet<>();
+        tokenize(PackLangReader.readText(file.getFile()), token -> {
+            // Single letters in UI strings are noise
+            if (token.length() > 1 && terms.size() < MAX_LANG_TERMS) {
+                terms.add(token);
+            }
+        });
+        String[] result = terms.toArray(new String[0]);
+        langCache.put(file.getKey(), file.getLastModified(), file.getSize(), result);
+        return result;
+    }
+
+    /**
+     * Each term of the file and the fields it appears in, as FIELD_ bits
+     */
+    private static Map<String, Integer> collectTerms(ResourceFile file, String[] langTerms) {
+        Map<String, Integer> fields = new LinkedHashMap<>();
+        String name = file.getName();
+        String stem = name.substring(0, name.length() - file.getExtension().length());
+        tokenize(stem, token -> fields.merge(token, FIELD_FILE_NAME, (a, b) -> a | b));
+        PackManifest packInfo = file.getPackInfo();
+        if (packInfo != null) {
+            tokenize(packInfo.getName(), token -> fields.merge(token, FIELD_PACK_NAME, (a, b) -> a | b));
+            tokenize(packInfo.getDescription(), token -> fields.merge(token, FIELD_DESCRIPTION, (a, b) -> a | b));
+        }
+        for (String term : langTerms) {
+            fields.merge(term, FIELD_LANG, (a, b) -> a | b);
+        }
+        return fields;
+    }
+
+    private static float weightOf(int fields) {
+        float weight = 0;
+        if ((fields & FIELD_FILE_NAME) != 0) {
+            weight += 8;
+        }
+        if ((fields & FIELD_PACK_NAME) != 0) {
+            weight += 6;
+        }
+        if ((fields & FIELD_DESCRIPTION) != 0) {
+            weight += 3;
+        }
+        if ((fields & FIELD_LANG) != 0) {
+            weight += 1;
+        }
+        return weight;
+    }
+
+    // Called with the lock held
+    private void addDocument(ResourceFile file, Map<String, Integer> fields) {
+        int id;
+        if (!freeIds.isEmpty()) {
+            id = freeIds.remove(freeIds.size() - 1);
+        } else {
+            id = documentsById.size();
+            documentsById.add(null);
+        }
+        Postings[] documentPostings = new Postings[fields.size()];
+        int count = 0;
+        for (Map.Entry<String, Integer> entry : fields.entrySet()) {
+            Postings postings = postingsByTerm.get(entry.getKey());
+            if (postings == null) {
+                postings = new Postings(entry.getKey());
+                postingsByTerm.put(entry.getKey(), postings);
+                addedTerms.add(entry.getKey());
+            }
+            postings.add(id, entry.getValue());
+            documentPostings[count++] = postings;
+        }
+        Document document = new Document(id, file, documentPostings);
+        documentsById.set(id, document);
+        documentsByKey.put(file.getKey(), document);
+    }
+
+    /**
+     * Drops documents from the postings lists they are in, each list
+     * compacted once however many of its documents go. Called with the lock
+     * held.
+     */
+    private void removeDocuments(List<Document> documents) {
+        if (documents.isEmpty()) {
+            return;
+        }
+        boolean[] removed = new boolean[documentsById.size()];
+        Set<Postings> touched = new HashSet<>();
+        for (Document document : documents) {
+            removed[document.id] = true;
+            documentsById.set(document.id, null);
+            documentsByKey.remove(document.file.getKey());
+            freeIds.add(document.id);
+            Collections.addAll(touched, document.postings);
+        }
+        for (Postings postings : touched) {
+            postings.removeAll(removed);
+            if (postings.size == 0) {
+                postingsByTerm.remove(postings.term);
+                termsRemoved = true;
+            }
+        }
+    }
+
+    /**
+     * Brings the sorted dictionary up to date, then tells listeners. Only the
+     * new terms are sorted; they are merged into the existing order in one pass.
+     */
+    private void publish() {
+        String[] added;
+        synchronized (this) {
+            added = addedTerms.toArray(new String[0]);
+            addedTerms.clear();
+        }
+        // Sorted outside the lock; only this thread changes the dictionary
+        Arrays.sort(added);
+        synchronized (this) {
+            if (added.length > 0 || termsRemoved) {
+                sortedTerms = mergeTerms(sortedTerms, added);
+                termsRemoved = false;
+            }
+        }
+        mainHandler.post(() -> {
+            for (Listener listener : listeners) {
+                listener.onSearchIndexChanged();
+            }
+        });
+    }
+
+    /**
+     * Merges two sorted term arrays, dropping terms no document has any more
+     * and terms present in both. Called with the lock held.
+     */
+    private String[] mergeTerms(String[] current, String[] added) {
+        String[] merged = new String[current.length + added.length];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < current.length || j < added.length) {
+            String term;
+            if (j == added.length || (i < current.length && current[i].compareTo(added[j]) <= 0)) {
+                term = current[i++];
+            } else {
+                term = added[j++];
+            }
+            if ((count == 0 || !merged[count - 1].equals(term)) && postingsByTerm.containsKey(term)) {
+                merged[count++] = term;
+            }
+        }
+        return count == merged.length ? merged : Arrays.copyOf(merged, count);
+    }
+
+    private static int prefixStart(String[] terms, String prefix) {
+        int low = 0;
+        int high = terms.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (terms[mid].compareTo(prefix) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static int prefixEnd(String[] terms, String prefix) {
+        int low = prefixStart(terms, prefix);
+        int high = terms.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (terms[mid].startsWith(prefix)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    interface TokenSink {
+        void accept(String token);
+    }
+
+    /**
+     * Splits text into lowercase words without accents, dropping Minecraft's
+     * "§" formatting codes
+     */
+    static void tokenize(String text, TokenSink sink) {
+        if (text == null || text.isEmpty()) {
+            return;
+        }
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFD).toLowerCase(Locale.ROOT);
+        StringBuilder token = new StringBuilder();
+        for (int i = 0; i < normalized.length(); i++) {
+            char c = normalized.charAt(i);
+            if (c == '§') {
+                i++;
+            } else if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                continue;
+            } else if (Character.isLetterOrDigit(c)) {
+                if (token.length() < MAX_TERM_LENGTH) {
+                    token.append(c);
+                }
+                continue;
+            }
+            if (token.length() > 0) {
+                sink.accept(token.toString());
+                token.setLength(0);
+            }
+        }
+        if (token.length() > 0) {
+            sink.accept(token.toString());
+        }
+    }
+}
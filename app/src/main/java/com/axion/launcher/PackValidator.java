@@ -0,0 +1,571 @@
+package com.axion.launcher;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Checks archives before they are handed to Minecraft, so a truncated
+ * download or a broken manifest is reported here instead of failing inside
+ * the game.
+ *
+ * The central directory must be intact, every entry must inflate to its
+ * recorded size and CRC, and every pack must have a manifest.json with the
+ * header and modules Minecraft requires, read with a streaming JSON reader.
+ * Packs nested in a .mcaddon are checked the same way. Files are checked in
+ * parallel on a bounded pool; results are cached per path, mtime and size,
+ * so a file that was checked once is not read again until it changes.
+ */
+public class PackValidator {
+
+    private static final String TAG = "PackValidator";
+    private static final String MANIFEST_NAME = "manifest.json";
+    // Larger manifests are not plausible and are not held in memory
+    private static final int MAX_MANIFEST_SIZE = 1024 * 1024;
+    private static final Pattern UUID_PATTERN =
+            Pattern.compile("[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}");
+
+    private static PackValidator instance;
+
+    private final ExecutorService workers =
+            Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()));
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Map<String, CachedResult> results = new ConcurrentHashMap<>();
+
+    public interface Callback {
+        /**
+         * Called on the main thread with the files that failed, in the order
+         * they were given; not called if the request was cancelled
+         */
+        void onValidated(List<Problem> problems);
+    }
+
+    public static class Problem {
+        private final ResourceFile file;
+        private final String message;
+
+        Problem(ResourceFile file, String message) {
+            this.file = file;
+            this.message = message;
+        }
+
+        public ResourceFile getFile() {
+            return file;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+
+    /**
+     * A running validation
+     */
+    public static class Request {
+        private final List<Future<?>> futures = new ArrayList<>();
+        private volatile boolean cancelled;
+
+        /**
+         * Stops reading and drops the result; call from the main thread
+         */
+        public void cancel() {
+            cancelled = true;
+            synchronized (futures) {
+                for (Future<?> future : futures) {
+                    future.cancel(false);
+                }
+            }
+        }
+    }
+
+    private static class CachedResult {
+        final long lastModified;
+        final long size;
+        // Null if the file is fine
+        final String problem;
+
+        CachedResult(long lastModified, long size, String problem) {
+            this.lastModified = lastModified;
+            this.size = size;
+            this.problem = problem;
+        }
+    }
+
+    private PackValidator() {}
+
+    public static synchronized PackValidator getInstance() {
+        if (instance == null) {
+            instance = new PackValidator();
+        }
+        return instance;
+    }
+
+    /**
+     * Checks the files in the background. Files already checked in their
+     * current state are answered from the cache.
+     */
+    public Request validate(List<ResourceFile> files, Callback callback) {
+        Request request = new Request();
+        List<ResourceFile> batch = new ArrayList<>(files);
+        String[] problems = new String[batch.size()];
+        AtomicInteger remaining = new AtomicInteger(batch.size() + 1);
+        Runnable finishOne = () -> {
+            if (remaining.decrementAndGet() == 0) {
+                mainHandler.post(() -> {
+                    if (!request.cancelled) {
+                        callback.onValidated(collectProblems(batch, problems));
+                    }
+                });
+            }
+        };
+
+        for (int i = 0; i < batch.size(); i++) {
+            ResourceFile file = batch.get(i);
+            CachedResult cached = results.get(file.getKey());
+            if (cached != null && cached.lastModified == file.getLastModified() && cached.size == file.getSize()) {
+                problems[i] = cached.problem;
+                finishOne.run();
+                continue;
+            }
+            int index = i;
+            synchronized (request.futures) {
+                request.futures.add(workers.submit(() -> {
+                    if (request.cancelled) {
+                        return;
+                    }
+                    try {
+                        String problem = checkFile(file, request);
+                        results.put(file.getKey(), new CachedResult(file.getLastModified(), file.getSize(), problem));
+                        problems[index] = problem;
+                    } catch (CancellationException e) {
+                        return;
+                    } catch (RuntimeException e) {
+                        // Not cached: the next attempt may get further
+                        Log.e(TAG, "Error checking " + file.getName(), e);
+                        problems[index] = "The file could not be checked";
+                    }
+                    finishOne.run();
+                }));
+            }
+        }
+        // Balances the extra count, so the callback fires even for an empty or fully cached batch
+        finishOne.run();
+        return request;
+    }
+
+    /**
+     * Records the outcome of a checkFile() run elsewhere, so the file is not
+     * read again when it is validated before an import
+     */
+    void remember(ResourceFile file, String problem) {
+        results.put(file.getKey(), new CachedResult(file.getLastModified(), file.getSize(), problem));
+    }
+
+    private static List<Problem> collectProblems(List<ResourceFile> files, String[] problems) {
+        List<Problem> result = new ArrayList<>();
+        for (int i = 0; i < problems.length; i++) {
+            if (problems[i] != null) {
+                result.add(new Problem(files.get(i), problems[i]));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * What is wrong with the file, or null if it is fine
+     */
+    static String checkFile(ResourceFile file, Request request) {
+        try (RandomAccessFile raf = new RandomAccessFile(file.getFile(), "r")) {
+            ZipCentralDirectory zip;
+            try {
+                zip = ZipCentralDirectory.open(raf);
+            } catch (IOException e) {
+                return "The file is incomplete or not a ZIP archive";
+            }
+            int[] manifestCount = new int[1];
+            String problem = checkArchive(zip, request, true, manifestCount);
+            if (problem == null && manifestCount[0] == 0) {
+                problem = "No manifest.json found";
+            }
+            return problem;
+        } catch (IOException e) {
+            Log.w(TAG, "Could not read " + file.getName(), e);
+            return "The file could not be read";
+        }
+    }
+
+    private static String checkArchive(ZipCentralDirectory zip, Request request, boolean outer,
+                                       int[] manifestCount) {
+        List<ZipCentralDirectory.Entry> entries = zip.getEntries();
+        if (entries.isEmpty()) {
+            return "The archive is empty";
+        }
+        byte[] buffer = new byte[64 * 1024];
+        for (ZipCentralDirectory.Entry entry : entries) {
+            if (request.cancelled) {
+                throw new CancellationException();
+            }
+            if (entry.isDirectory()) {
+                continue;
+            }
+            String name = entry.getName();
+            if ((entry.getFlags() & 1) != 0) {
+                return name + " is encrypted";
+            }
+            if (entry.getMethod() != ZipCentralDirectory.METHOD_STORED
+                    && entry.getMethod() != ZipCentralDirectory.METHOD_DEFLATED) {
+                return name + " uses a compression method Minecraft cannot read";
+            }
+
+            boolean manifest = isManifest(name);
+            String lower = name.toLowerCase();
+            boolean nested = outer && (lower.endsWith(".mcpack") || lower.endsWith(".zip"));
+            ByteArrayOutputStream manifestBytes = manifest ? new ByteArrayOutputStream() : null;
+            CRC32 crc = new CRC32();
+            long size = 0;
+            try (InputStream in = zip.openStream(entry)) {
+                if (nested && entry.getMethod() == ZipCentralDirectory.METHOD_DEFLATED) {
+                    // Checks the nested pack while inflating the outer entry, so it is read once
+                    CrcInputStream checked = new CrcInputStream(in, crc);
+                    String problem = checkCompressedNested(checked, request, name, manifestCount);
+                    if (problem != null) {
+                        return problem;
+                    }
+                    while (checked.read(buffer) != -1) {
+                        // The nested central directory still counts towards the CRC
+                    }
+                    size = checked.count;
+                } else {
+                    int read;
+                    while ((read = in.read(buffer)) != -1) {
+                        if (request.cancelled) {
+                            throw new CancellationException();
+                        }
+                        crc.update(buffer, 0, read);
+                        size += read;
+                        if (manifestBytes != null && manifestBytes.size() < MAX_MANIFEST_SIZE) {
+                            manifestBytes.write(buffer, 0, read);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                return name + " is damaged";
+            }
+            if (size != entry.getSize() || crc.getValue() != entry.getCrc()) {
+                return name + " is damaged";
+            }
+
+            if (manifest) {
+                manifestCount[0]++;
+                String problem = checkManifest(manifestBytes.toByteArray());
+                if (problem != null) {
+                    return name + ": " + problem;
+                }
+            } else if (nested && entry.getMethod() == ZipCentralDirectory.METHOD_STORED) {
+                ZipCentralDirectory nestedZip;
+                try {
+                    nestedZip = zip.openNested(entry);
+                } catch (IOException e) {
+                    return name + " is not a valid pack";
+                }
+                int[] nestedManifests = new int[1];
+                String problem = checkArchive(nestedZip, request, false, nestedManifests);
+                if (problem == null && nestedManifests[0] == 0) {
+                    problem = "has no manifest.json";
+                }
+                if (problem != null) {
+                    return name + ": " + problem;
+                }
+                manifestCount[0] += nestedManifests[0];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Checks a compressed nested pack from its stream; ZipInputStream itself
+     * verifies each entry's size and CRC as it reaches the entry's end
+     */
+    private static String checkCompressedNested(InputStream in, Request request, String name, int[] manifestCount) {
+        int manifests = 0;
+        try {
+            ZipInputStream nested = new ZipInputStream(in);
+            ZipEntry nestedEntry;
+            byte[] buffer = new byte[64 * 1024];
+            while ((nestedEntry = nested.getNextEntry()) != null) {
+                if (request.cancelled) {
+                    throw new CancellationException();
+                }
+                if (!nestedEntry.isDirectory() && isManifest(nestedEntry.getName())) {
+                    manifests++;
+                    ByteArrayOutputStream manifestBytes = new ByteArrayOutputStream();
+                    int read;
+                    while ((read = nested.read(buffer)) != -1) {
+                        if (manifestBytes.size() < MAX_MANIFEST_SIZE) {
+                            manifestBytes.write(buffer, 0, read);
+                        }
+                    }
+                    String problem = checkManifest(manifestBytes.toByteArray());
+                    if (problem != null) {
+                        return name + ": " + nestedEntry.getName() + ": " + problem;
+                    }
+                } else {
+                    while (nested.read(buffer) != -1) {
+                        if (request.cancelled) {
+                            throw new CancellationException();
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            return name + " is damaged";
+        }
+        if (manifests == 0) {
+            return name + ": has no manifest.json";
+        }
+        manifestCount[0] += manifests;
+        return null;
+    }
+
+    /**
+     * Checks the fields Minecraft refuses a pack without, reading the
+     * manifest as a stream; returns what is wrong, or null
+     */
+    static String checkManifest(byte[] json) {
+        try {
+            int start = json.length >= 3 && (json[0] & 0xff) == 0xEF && (json[1] & 0xff) == 0xBB
+                    && (json[2] & 0xff) == 0xBF ? 3 : 0;
+            byte[] cleaned = removeTrailingCommas(json, start);
+            JsonReader reader = new JsonReader(new InputStreamReader(
+                    new ByteArrayInputStream(cleaned), StandardCharsets.UTF_8));
+            // Minecraft accepts comments and trailing commas, so this must as well; lenient
+            // mode covers the comments
+            reader.setLenient(true);
+
+            boolean hasFormatVersion = false;
+            boolean hasHeader = false;
+            String headerUuid = null;
+            int moduleCount = 0;
+            if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                return "not a JSON object";
+            }
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String field = reader.nextName();
+                if ("format_version".equals(field)) {
+                    hasFormatVersion = reader.peek() == JsonToken.NUMBER || reader.peek() == JsonToken.STRING;
+                    reader.skipValue();
+                } else if ("header".equals(field)) {
+                    if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                        return "header is not an object";
+                    }
+                    hasHeader = true;
+                    String[] uuid = new String[1];
+                    String problem = checkPackObject(reader, "header", uuid, true);
+                    if (problem != null) {
+                        return problem;
+                    }
+                    headerUuid = uuid[0];
+                } else if ("modules".equals(field)) {
+                    if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+                        return "modules is not a list";
+                    }
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                            return "a module is not an object";
+                        }
+                        String[] uuid = new String[1];
+                        String problem = checkPackObject(reader, "module", uuid, false);
+                        if (problem != null) {
+                            return problem;
+                        }
+                        if (headerUuid != null && headerUuid.equalsIgnoreCase(uuid[0])) {
+                            return "a module has the same uuid as the header";
+                        }
+                        moduleCount++;
+                    }
+                    reader.endArray();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            if (!hasFormatVersion) {
+                return "format_version is missing";
+            }
+            if (!hasHeader) {
+                return "header is missing";
+            }
+            if (moduleCount == 0) {
+                return "modules are missing";
+            }
+            return null;
+        } catch (IOException | IllegalStateException | NumberFormatException e) {
+            return "not valid JSON";
+        }
+    }
+
+    /**
+     * Reads a header or module object, requiring a uuid and a version, a name
+     * for headers and a type for modules
+     */
+    private static String checkPackObject(JsonReader reader, String what, String[] uuid, boolean header)
+            throws IOException {
+        boolean hasVersion = false;
+        boolean hasNameOrType = false;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String field = reader.nextName();
+            if ("uuid".equals(field)) {
+                if (reader.peek() == JsonToken.STRING) {
+                    uuid[0] = reader.nextString();
+                } else {
+                    reader.skipValue();
+                }
+            } else if ("version".equals(field)) {
+                hasVersion = isVersion(reader);
+            } else if ((header ? "name" : "type").equals(field)) {
+                hasNameOrType = reader.peek() == JsonToken.STRING;
+                reader.skipValue();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (uuid[0] == null || !UUID_PATTERN.matcher(uuid[0]).matches()) {
+            return what + " uuid is missing or not a UUID";
+        }
+        if (!hasVersion) {
+            return what + " version is missing or not like [1, 0, 0]";
+        }
+        if (!hasNameOrType) {
+            return what + (header ? " name" : " type") + " is missing";
+        }
+        return null;
+    }
+
+    /**
+     * Whether the value is a version: three numbers, or a "1.0.0" string in format 3
+     */
+    private static boolean isVersion(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.STRING) {
+            return reader.nextString().matches("\\d+\\.\\d+\\.\\d+.*");
+        }
+        if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+            reader.skipValue();
+            return false;
+        }
+        int numbers = 0;
+        boolean valid = true;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (reader.peek() == JsonToken.NUMBER) {
+                numbers++;
+            } else {
+                valid = false;
+            }
+            reader.skipValue();
+        }
+        reader.endArray();
+        return valid && numbers == 3;
+    }
+
+    /**
+     * Copies the JSON from start without commas that directly precede a closing bracket
+     */
+    static byte[] removeTrailingCommas(byte[] json, int start) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(json.length);
+        boolean inString = false;
+        for (int i = start; i < json.length; i++) {
+            byte b = json[i];
+            if (inString) {
+                if (b == '\\') {
+                    out.write(b);
+                    i++;
+                    if (i < json.length) {
+                        out.write(json[i]);
+                    }
+                    continue;
+                }
+                inString = b != '"';
+            } else if (b == '"') {
+                inString = true;
+            } else if (b == ',') {
+                int next = i + 1;
+                while (next < json.length && (json[next] == ' ' || json[next] == '\t'
+                        || json[next] == '\r' || json[next] == '\n')) {
+                    next++;
+                }
+                if (next < json.length && (json[next] == '}' || json[next] == ']')) {
+                    continue;
+                }
+            }
+            out.write(b);
+        }
+        return out.toByteArray();
+    }
+
+    private static boolean isManifest(String entryName) {
+        return entryName.equals(MANIFEST_NAME) || entryName.endsWith("/" + MANIFEST_NAME);
+    }
+
+    /**
+     * Updates a CRC with everything read through it
+     */
+    private static class CrcInputStream extends InputStream {
+        private final InputStream in;
+        private final CRC32 crc;
+        long count;
+
+        CrcInputStream(InputStream in, CRC32 crc) {
+            this.in = in;
+            this.crc = crc;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b != -1) {
+                crc.update(b);
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = in.read(buffer, offset, length);
+            if (read > 0) {
+                crc.update(buffer, offset, read);
+                count += read;
+            }
+            return read;
+        }
+    }
+}
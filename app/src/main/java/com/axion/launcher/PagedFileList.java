@@ -0,0 +1,179 @@
+package com.axion.launcher;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.SparseArray;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Window over one section of ResourceDatabase for libraries too large to
+ * hold as one list, in one of FileOrdering's sort and filter modes. Only pages near the last requested position are kept;
+ * others are loaded on demand and dropped once the list scrolls away from
+ * them, so memory stays the same however many files the section has.
+ *
+ * All methods except the background loads run on the main thread.
+ */
+public class PagedFileList {
+
+    private static final String TAG = "PagedFileList";
+    static final int PAGE_SIZE = 100;
+    // Pages on either side of the current one that stay loaded
+    private static final int KEEP_DISTANCE = 2;
+
+    // Shared by every list so page queries never compete with each other
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    public interface Listener {
+        /**
+         * Rows in the range now have data
+         */
+        void onPageLoaded(int start, int count);
+
+        /**
+         * The row count or contents changed; every row should be rebound
+         */
+        void onReset();
+    }
+
+    private final ResourceDatabase database;
+    private final String section;
+    private final int sort;
+    private final int filter;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final SparseArray<List<ResourceFile>> pages = new SparseArray<>();
+    // Pages with a query in flight, so scrolling does not queue the same page twice
+    private final SparseArray<Boolean> loading = new SparseArray<>();
+    private Listener listener;
+    private int count;
+    // Bumped on refresh; loads started before it are discarded
+    private int generation;
+
+    PagedFileList(ResourceDatabase database, String section, int sort, int filter) {
+        this.database = database;
+        this.section = section;
+        this.sort = sort;
+        this.filter = filter;
+    }
+
+    public int getSort() {
+        return sort;
+    }
+
+    public int getFilter() {
+        return filter;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * The file at the position, or null while its page is loading
+     */
+    public ResourceFile get(int position) {
+        int pageIndex = position / PAGE_SIZE;
+        dropFarPages(pageIndex);
+        requestPage(pageIndex);
+        // Prefetch the neighbour before the user reaches it
+        int offset = position % PAGE_SIZE;
+        if (offset >= PAGE_SIZE * 3 / 4) {
+            requestPage(pageIndex + 1);
+        } else if (offset < PAGE_SIZE / 4 && pageIndex > 0) {
+            requestPage(pageIndex - 1);
+        }
+        List<ResourceFile> page = pages.get(pageIndex);
+        if (page == null || offset >= page.size()) {
+            return null;
+        }
+        return page.get(offset);
+    }
+
+    /**
+     * Re-reads the row count and the pages currently held, after the section
+     * changed. The old rows stay visible until the new ones are in.
+     */
+    public void refresh() {
+        int refreshGeneration = ++generation;
+        loading.clear();
+        int[] heldPages = new int[pages.size()];
+        for (int i = 0; i < heldPages.length; i++) {
+            heldPages[i] = pages.keyAt(i);
+        }
+        executor.execute(() -> {
+            int newCount;
+            SparseArray<List<ResourceFile>> reloaded = new SparseArray<>();
+            try {
+                newCount = database.countSection(section, filter);
+                for (int pageIndex : heldPages) {
+                    if (pageIndex * PAGE_SIZE < newCount) {
+                        reloaded.put(pageIndex, database.loadPage(section, sort, filter, pageIndex * PAGE_SIZE, PAGE_SIZE));
+                    }
+                }
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Error reading " + section, e);
+                return;
+            }
+            mainHandler.post(() -> {
+                if (refreshGeneration != generation) {
+                    return;
+                }
+                count = newCount;
+                pages.clear();
+                for (int i = 0; i < reloaded.size(); i++) {
+                    pages.put(reloaded.keyAt(i), reloaded.valueAt(i));
+                }
+                if (listener != null) {
+                    listener.onReset();
+                }
+            });
+        });
+    }
+
+    private void requestPage(int pageIndex) {
+        if (pageIndex * PAGE_SIZE >= count || pages.get(pageIndex) != null || loading.get(pageIndex) != null) {
+            return;
+        }
+        loading.put(pageIndex, Boolean.TRUE);
+        int requestGeneration = generation;
+        executor.execute(() -> {
+            List<ResourceFile> page;
+            try {
+                page = database.loadPage(section, sort, filter, pageIndex * PAGE_SIZE, PAGE_SIZE);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Error reading page " + pageIndex + " of " + section, e);
+                page = null;
+            }
+            List<ResourceFile> result = page;
+            mainHandler.post(() -> {
+                if (requestGeneration != generation) {
+                    return;
+                }
+                loading.remove(pageIndex);
+                if (result == null) {
+                    return;
+                }
+                pages.put(pageIndex, result);
+                if (listener != null) {
+                    int start = pageIndex * PAGE_SIZE;
+                    listener.onPageLoaded(start, Math.min(result.size(), count - start));
+                }
+            });
+        });
+    }
+
+    private void dropFarPages(int currentPage) {
+        for (int i = pages.size() - 1; i >= 0; i--) {
+            if (Math.abs(pages.keyAt(i) - currentPage) > KEEP_DISTANCE) {
+                pages.removeAt(i);
+            }
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package com.axion.launcher;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tells what an archive holds from its contents instead of its file name,
+ * which browsers and chat apps often mangle into .zip or worse.
+ *
+ * The ZIP central directory decides most files on its own: a level.dat
+ * marks a world, or a world template when a manifest sits next to it;
+ * nested packs or several manifests mark an add-on. A lone pack is told
+ * apart by the folders it ships (textures/ against entities/ and the like)
+ * or by manifest module types the index already read, so its manifest is
+ * inflated only when neither settles it. Results are cached per path,
+ * mtime and size; safe to call from any thread.
+ */
+public class ResourceClassifier {
+
+    private static final String TAG = "ResourceClassifier";
+    private static final String MANIFEST_NAME = "manifest.json";
+    private static final String LEVEL_NAME = "level.dat";
+
+    public static final int KIND_UNKNOWN = 0;
+    public static final int KIND_ADDON = 1;
+    public static final int KIND_RESOURCE_PACK = 2;
+    public static final int KIND_BEHAVIOR_PACK = 3;
+    public static final int KIND_SKIN_PACK = 4;
+    public static final int KIND_WORLD_TEMPLATE = 5;
+    public static final int KIND_WORLD = 6;
+
+    // Top-level folders only one kind of pack has
+    private static final Set<String> RESOURCE_FOLDERS = setOf("textures", "sounds", "models", "ui", "font",
+            "particles", "render_controllers", "attachables", "entity", "materials");
+    private static final Set<String> BEHAVIOR_FOLDERS = setOf("entities", "items", "loot_tables", "recipes",
+            "spawn_rules", "trading", "functions", "scripts", "structures", "feature_rules", "features");
+
+    private static final Classification[] CLASSIFICATIONS = {
+            new Classification(KIND_UNKNOWN, "", null, "application/octet-stream"),
+            new Classification(KIND_ADDON, ".mcaddon", "mods", "application/minecraft-addon"),
+            new Classification(KIND_RESOURCE_PACK, ".mcpack", "textures", "application/minecraft-pack"),
+            new Classification(KIND_BEHAVIOR_PACK, ".mcpack", "mods", "application/minecraft-pack"),
+            new Classification(KIND_SKIN_PACK, ".mcpack", "textures", "application/minecraft-pack"),
+            new Classification(KIND_WORLD_TEMPLATE, ".mctemplate", "maps", "application/minecraft-template"),
+            new Classification(KIND_WORLD, ".mcworld", "maps", "application/octet-stream"),
+    };
+
+    private static ResourceClassifier instance;
+
+    private final Map<String, CachedClassification> results = new ConcurrentHashMap<>();
+
+    /**
+     * What an archive is, and where and under which name it belongs
+     */
+    public static class Classification {
+        private final int kind;
+        private final String extension;
+        private final String section;
+        private final String mimeType;
+
+        Classification(int kind, String extension, String section, String mimeType) {
+            this.kind = kind;
+            this.extension = extension;
+            this.section = section;
+            this.mimeType = mimeType;
+        }
+
+        public int getKind() {
+            return kind;
+        }
+
+        /**
+         * The extension Minecraft expects, or "" if the file is not Minecraft content
+         */
+        public String getExtension() {
+            return extension;
+        }
+
+        /**
+         * "mods", "textures" or "maps"; null if the file is not Minecraft content
+         */
+        public String getSection() {
+            return section;
+        }
+
+        public String getMimeType() {
+            return mimeType;
+        }
+
+        public boolean isMinecraftContent() {
+            return kind != KIND_UNKNOWN;
+        }
+
+        /**
+         * Gives the file name the extension these contents call for, so
+         * "pack.zip" becomes "pack.mcpack" and an add-on shared as
+         * "addon.mcpack" becomes "addon.mcaddon"
+         */
+        public String fixFileName(String fileName) {
+            String current = ResourceFile.getFileExtension(fileName);
+            if (!isMinecraftContent() || current.equals(extension)) {
+                return fileName;
+            }
+            String stem = fileName;
+            if (current.equals(".zip") || current.startsWith(".mc")) {
+                stem = fileName.substring(0, fileName.length() - current.length());
+            }
+            // "world.mcworld.zip" only loses the ".zip" a browser added
+            return stem.toLowerCase().endsWith(extension) ? stem : stem + extension;
+        }
+    }
+
+    private static class CachedClassification {
+        final long lastModified;
+        final long size;
+        final Classification classification;
+
+        CachedClassification(long lastModified, long size, Classification classification) {
+            this.lastModified = lastModified;
+            this.size = size;
+            this.classification = classification;
+        }
+    }
+
+    private ResourceClassifier() {}
+
+    public static synchronized ResourceClassifier getInstance() {
+        if (instance == null) {
+            instance = new ResourceClassifier();
+        }
+        return instance;
+    }
+
+    /**
+     * Classifies an indexed file, using its manifest summary if it was read already
+     */
+    public Classification classify(ResourceFile file) {
+        PackManifest known = file.isPackInfoLoaded() ? file.getPackInfo() : null;
+        return classify(file.getFile(), file.getLastModified(), file.getSize(), known);
+    }
+
+    public Classification classify(File file) {
+        return classify(file, file.lastModified(), file.length(), null);
+    }
+
+    private Classification classify(File file, long lastModified, long size, PackManifest known) {
+        String key = file.getAbsolutePath();
+        CachedClassification cached = results.get(key);
+        if (cached != null && cached.lastModified == lastModified && cached.size == size) {
+            return cached.classification;
+        }
+        Classification classification = classifyArchive(file, known);
+        results.put(key, new CachedClassification(lastModified, size, classification));
+        return classification;
+    }
+
+    /**
+     * Reads the archive's central directory and, only if still undecided,
+     * its manifest. Files that are not ZIP archives are KIND_UNKNOWN.
+     */
+    static Classification classifyArchive(File file, PackManifest known) {
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            return CLASSIFICATIONS[classify(ZipCentralDirectory.open(in), known)];
+        } catch (IOException e) {
+            Log.d(TAG, file.getName() + " is not a readable archive: " + e.getMessage());
+            return CLASSIFICATIONS[KIND_UNKNOWN];
+        }
+    }
+
+    private static int classify(ZipCentralDirectory zip, PackManifest known) throws IOException {
+        Set<String> manifestFolders = new HashSet<>();
+        String levelFolder = null;
+        ZipCentralDirectory.Entry manifest = null;
+        boolean nestedPacks = false;
+        // Lower-cased "a/" and "a/b/" of every path, to find the folders below a pack root
+        Set<String> topFolders = new HashSet<>();
+
+        for (ZipCentralDirectory.Entry entry : zip.getEntries()) {
+            String name = entry.getName().replace('\\', '/');
+            String lower = name.toLowerCase();
+            int slash = name.lastIndexOf('/');
+            String folder = slash != -1 ? name.substring(0, slash + 1) : "";
+            String fileName = lower.substring(slash + 1);
+            int depth = countSlashes(folder);
+
+            if (entry.isDirectory()) {
+                // Folder entries are optional; the file paths below carry the same information
+                continue;
+            }
+            if (fileName.equals(MANIFEST_NAME)) {
+                manifestFolders.add(folder);
+                manifest = entry;
+            } else if (fileName.equals(LEVEL_NAME) && depth <= 1
+                    && (levelFolder == null || folder.length() < levelFolder.length())) {
+                levelFolder = folder;
+            } else if (depth == 0 && isNestedPack(fileName)) {
+                nestedPacks = true;
+            }
+            int first = lower.indexOf('/');
+            if (first != -1) {
+                topFolders.add(lower.substring(0, first + 1));
+                int second = lower.indexOf('/', first + 1);
+                if (second != -1) {
+                    topFolders.add(lower.substring(0, second + 1));
+                }
+            }
+        }
+
+        if (levelFolder != null) {
+            // Worlds may carry their own packs; only a manifest beside level.dat makes a template
+            return manifestFolders.contains(levelFolder) ? KIND_WORLD_TEMPLATE : KIND_WORLD;
+        }
+        if (nestedPacks || manifestFolders.size() > 1) {
+            return KIND_ADDON;
+        }
+        if (manifest == null) {
+            return KIND_UNKNOWN;
+        }
+        if (known != null && known.getModuleType() != null) {
+            return kindOfModules(known.getModuleType());
+        }
+        String root = manifestFolders.iterator().next().toLowerCase();
+        boolean resourceFolders = containsFolder(topFolders, root, RESOURCE_FOLDERS);
+        boolean behaviorFolders = containsFolder(topFolders, root, BEHAVIOR_FOLDERS);
+        if (resourceFolders != behaviorFolders) {
+            return resourceFolders ? KIND_RESOURCE_PACK : KIND_BEHAVIOR_PACK;
+        }
+        try (InputStream stream = zip.openStream(manifest)) {
+            PackManifest parsed = PackManifestReader.parse(stream);
+            return kindOfModules(parsed != null ? parsed.getModuleType() : null);
+        } catch (Exception e) {
+            // A pack whose manifest cannot be read is still a pack; Minecraft reports the details
+            Log.w(TAG, "Malformed manifest.json", e);
+            return KIND_RESOURCE_PACK;
+        }
+    }
+
+    /**
+     * Kind of a single pack from its comma-separated module types; resource
+     * packs are assumed when the types say nothing
+     */
+    private static int kindOfModules(String moduleTypes) {
+        if (moduleTypes == null) {
+            return KIND_RESOURCE_PACK;
+        }
+        int kind = KIND_RESOURCE_PACK;
+        for (String type : moduleTypes.split(",")) {
+            switch (type) {
+                case "world_template":
+                    return KIND_WORLD_TEMPLATE;
+                case "data":
+                case "script":
+                case "javascript":
+                case "client_data":
+                    kind = KIND_BEHAVIOR_PACK;
+                    break;
+                case "skin_pack":
+                    if (kind == KIND_RESOURCE_PACK) {
+                        kind = KIND_SKIN_PACK;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        return kind;
+    }
+
+    private static boolean containsFolder(Set<String> folders, String root, Set<String> names) {
+        for (String name : names) {
+            if (folders.contains(root + name + "/")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isNestedPack(String fileName) {
+        return fileName.endsWith(".mcpack") || fileName.endsWith(".mctemplate")
+                || fileName.endsWith(".mcworld") || fileName.endsWith(".zip");
+    }
+
+    private static int countSlashes(String path) {
+        int count = 0;
+        for (int i = 0; i < path.length(); i++) {
+            if (path.charAt(i) == '/') {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static Set<String> setOf(String... values) {
+        Set<String> set = new HashSet<>();
+        for (String value : values) {
+            set.add(value);
+        }
+        return set;
+    }
+}
@@ -0,0 +1,381 @@
+package com.axion.launcher;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * On-disk copy of the resource listing and each file's pack metadata, so the
+ * Resource Manager can render its last known state on cold start from one
+ * query and reconcile with the folders afterwards.
+ *
+ * Written only from ResourceIndex's background thread; PagedFileList reads
+ * pages from its own thread.
+ */
+public class ResourceDatabase extends SQLiteOpenHelper {
+
+    private static final String DATABASE_NAME = "resources.db";
+    private static final int DATABASE_VERSION = 5;
+
+    private static final String TABLE = "resources";
+    private static final String COL_PATH = "path";
+    private static final String COL_SECTION = "section";
+    private static final String COL_SIZE = "size";
+    private static final String COL_MTIME = "mtime";
+    private static final String COL_CONTENT_HASH = "content_hash";
+    private static final String COL_PACK_LOADED = "pack_loaded";
+    private static final String COL_PACK_NAME = "pack_name";
+    private static final String COL_PACK_DESCRIPTION = "pack_description";
+    private static final String COL_PACK_UUID = "pack_uuid";
+    private static final String COL_PACK_VERSION = "pack_version";
+    private static final String COL_MODULE_TYPE = "module_type";
+    private static final String COL_MIN_ENGINE_VERSION = "min_engine_version";
+    private static final String COL_PACK_UUIDS = "pack_uuids";
+    private static final String COL_DEPENDENCIES = "dependencies";
+    // FileOrdering's type and pack version sort keys, so every order and filter can be paged in SQL
+    private static final String COL_TYPE = "type";
+    private static final String COL_PACK_VERSION_KEY = "pack_version_key";
+    private static final String PAGE_ORDER = COL_MTIME + " DESC, " + COL_PATH;
+    // Paths of a section share its folder, so ordering by path orders by file name
+    private static final String NAME_ORDER = COL_PATH + " COLLATE LOCALIZED, " + COL_PATH;
+    // Indexed by FileOrdering's sort modes
+    private static final String[] PAGE_ORDERS = {
+            PAGE_ORDER,
+            NAME_ORDER,
+            COL_SIZE + " DESC, " + NAME_ORDER,
+            COL_TYPE + ", " + NAME_ORDER,
+            COL_PACK_VERSION_KEY + ", " + NAME_ORDER};
+
+    public ResourceDatabase(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE + " ("
+                + COL_PATH + " TEXT PRIMARY KEY, "
+                + COL_SECTION + " TEXT NOT NULL, "
+                + COL_SIZE + " INTEGER NOT NULL, "
+                + COL_MTIME + " INTEGER NOT NULL, "
+                + COL_CONTENT_HASH + " TEXT, "
+                + COL_PACK_LOADED + " INTEGER NOT NULL DEFAULT 0, "
+                + COL_PACK_NAME + " TEXT, "
+                + COL_PACK_DESCRIPTION + " TEXT, "
+                + COL_PACK_UUID + " TEXT, "
+                + COL_PACK_VERSION + " TEXT, "
+                + COL_MODULE_TYPE + " TEXT, "
+                + COL_MIN_ENGINE_VERSION + " TEXT, "
+                + COL_PACK_UUIDS + " TEXT, "
+                + COL_DEPENDENCIES + " TEXT, "
+                + COL_TYPE + " INTEGER NOT NULL, "
+                + COL_PACK_VERSION_KEY + " INTEGER NOT NULL)");
+        // Serves the paged listing without sorting the whole section
+        db.execSQL("CREATE INDEX " + TABLE + "_section_mtime ON " + TABLE + " ("
+                + COL_SECTION + ", " + COL_MTIME + " DESC, " + COL_PATH + ")");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // The table is a cache of the folders; rebuilding it only costs one rescan
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE);
+        onCreate(db);
+    }
+
+    /**
+     * Loads every stored resource grouped by section, newest first
+     */
+    public Map<String, List<ResourceFile>> loadAll() {
+        Map<String, List<ResourceFile>> bySection = new HashMap<>();
+        try (Cursor cursor = getReadableDatabase().query(TABLE, null, null, null, null, null, COL_MTIME + " DESC")) {
+            RowReader reader = new RowReader(cursor);
+            while (cursor.moveToNext()) {
+                ResourceFile file = reader.read();
+                List<ResourceFile> files = bySection.get(file.getSection());
+                if (files == null) {
+                    files = new ArrayList<>();
+                    bySection.put(file.getSection(), files);
+                }
+                files.add(file);
+            }
+        }
+        return bySection;
+    }
+
+    /**
+     * Loads the stored files of one section, newest first
+     */
+    public List<ResourceFile> loadSection(String section) {
+        List<ResourceFile> files = new ArrayList<>();
+        try (Cursor cursor = getReadableDatabase().query(TABLE, null, COL_SECTION + " = ?", new String[]{section},
+                null, null, PAGE_ORDER)) {
+            RowReader reader = new RowReader(cursor);
+            while (cursor.moveToNext()) {
+                files.add(reader.read());
+            }
+        }
+        return files;
+    }
+
+    public interface StampVisitor {
+        void visit(String path, long size, long lastModified, boolean packInfoLoaded);
+    }
+
+    /**
+     * Walks the stored files of a section reading only what reconciling
+     * them with the folder needs, without building a ResourceFile per row
+     */
+    public void forEachStamp(String section, StampVisitor visitor) {
+        String[] columns = {COL_PATH, COL_SIZE, COL_MTIME, COL_PACK_LOADED};
+        try (Cursor cursor = getReadableDatabase().query(TABLE, columns, COL_SECTION + " = ?", new String[]{section},
+                null, null, null)) {
+            while (cursor.moveToNext()) {
+                visitor.visit(cursor.getString(0), cursor.getLong(1), cursor.getLong(2), cursor.getInt(3) != 0);
+            }
+        }
+    }
+
+    public int countSection(String section) {
+        return countSection(section, FileOrdering.FILTER_ALL);
+    }
+
+    /**
+     * Number of files of a section that FileOrdering's filter accepts
+     */
+    public int countSection(String section, int filter) {
+        return (int) DatabaseUtils.queryNumEntries(getReadableDatabase(), TABLE,
+                selection(filter), selectionArgs(section, filter));
+    }
+
+    /**
+     * Reads one page of a section in one of FileOrdering's sort modes,
+     * keeping the files its filter accepts. Ties are broken by path so
+     * consecutive pages neither repeat nor skip rows.
+     */
+    public List<ResourceFile> loadPage(String section, int sort, int filter, int offset, int limit) {
+        List<ResourceFile> page = new ArrayList<>(limit);
+        try (Cursor cursor = getReadableDatabase().query(TABLE, null, selection(filter),
+                selectionArgs(section, filter), null, null, PAGE_ORDERS[sort], offset + "," + limit)) {
+            RowReader reader = new RowReader(cursor);
+            while (cursor.moveToNext()) {
+                page.add(reader.read());
+            }
+        }
+        return page;
+    }
+
+    private static String selection(int filter) {
+        return filter == FileOrdering.FILTER_ALL
+                ? COL_SECTION + " = ?" : COL_SECTION + " = ? AND " + COL_TYPE + " = ?";
+    }
+
+    private static String[] selectionArgs(String section, int filter) {
+        return filter == FileOrdering.FILTER_ALL
+                ? new String[]{section} : new String[]{section, String.valueOf(filter)};
+    }
+
+    /**
+     * Turns rows into ResourceFiles, resolving column positions once per query
+     */
+    private static class RowReader {
+        private final Cursor cursor;
+        private final int pathIndex;
+        private final int sectionIndex;
+        private final int sizeIndex;
+        private final int mtimeIndex;
+        private final int hashIndex;
+        private final int packLoadedIndex;
+        private final int packNameIndex;
+        private final int packDescriptionIndex;
+        private final int packUuidIndex;
+        private final int packVersionIndex;
+        private final int moduleTypeIndex;
+        private final int minEngineIndex;
+        private final int packUuidsIndex;
+        private final int dependenciesIndex;
+
+        RowReader(Cursor cursor) {
+            this.cursor = cursor;
+            pathIndex = cursor.getColumnIndexOrThrow(COL_PATH);
+            sectionIndex = cursor.getColumnIndexOrThrow(COL_SECTION);
+            sizeIndex = cursor.getColumnIndexOrThrow(COL_SIZE);
+            mtimeIndex = cursor.getColumnIndexOrThrow(COL_MTIME);
+            hashIndex = cursor.getColumnIndexOrThrow(COL_CONTENT_HASH);
+            packLoadedIndex = cursor.getColumnIndexOrThrow(COL_PACK_LOADED);
+            packNameIndex = cursor.getColumnIndexOrThrow(COL_PACK_NAME);
+            packDescriptionIndex = cursor.getColumnIndexOrThrow(COL_PACK_DESCRIPTION);
+            packUuidIndex = cursor.getColumnIndexOrThrow(COL_PACK_UUID);
+            packVersionIndex = cursor.getColumnIndexOrThrow(COL_PACK_VERSION);
+            moduleTypeIndex = cursor.getColumnIndexOrThrow(COL_MODULE_TYPE);
+            minEngineIndex = cursor.getColumnIndexOrThrow(COL_MIN_ENGINE_VERSION);
+            packUuidsIndex = cursor.getColumnIndexOrThrow(COL_PACK_UUIDS);
+            dependenciesIndex = cursor.getColumnIndexOrThrow(COL_DEPENDENCIES);
+        }
+
+        ResourceFile read() {
+            ResourceFile file = new ResourceFile(new File(cursor.getString(pathIndex)), cursor.getString(sectionIndex),
+                    cursor.getLong(sizeIndex), cursor.getLong(mtimeIndex));
+            if (cursor.getInt(packLoadedIndex) != 0) {
+                PackManifest packInfo = null;
+                if (!cursor.isNull(packNameIndex)) {
+                    packInfo = new PackManifest(cursor.getString(packNameIndex),
+                            cursor.getString(packDescriptionIndex),
+                            cursor.getString(packUuidIndex),
+                            parseVersionColumn(cursor.getString(packVersionIndex)),
+                            parseVersionColumn(cursor.getString(minEngineIndex)),
+                            cursor.getString(moduleTypeIndex),
+                            parseListColumn(cursor.getString(packUuidsIndex)),
+                            parseDependenciesColumn(cursor.getString(dependenciesIndex)));
+                }
+                file = file.withPackInfo(packInfo);
+            }
+            if (!cursor.isNull(hashIndex)) {
+                file = file.withContentHash(cursor.getString(hashIndex));
+            }
+            return file;
+        }
+    }
+
+    /**
+     * Writes the given rows and removes the given paths in one transaction
+     */
+    public void apply(Collection<ResourceFile> upserts, Collection<String> removedPaths) {
+        if (upserts.isEmpty() && removedPaths.isEmpty()) {
+            return;
+        }
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (ResourceFile file : upserts) {
+                db.insertWithOnConflict(TABLE, null, toValues(file), SQLiteDatabase.CONFLICT_REPLACE);
+            }
+            if (!removedPaths.isEmpty()) {
+                SQLiteStatement delete = db.compileStatement("DELETE FROM " + TABLE + " WHERE " + COL_PATH + " = ?");
+                for (String path : removedPaths) {
+                    delete.bindString(1, path);
+                    delete.executeUpdateDelete();
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Stores the pack metadata of rows already written, leaving their other columns alone
+     */
+    public void storePackInfo(Collection<ResourceFile> files) {
+        update(files, true);
+    }
+
+    /**
+     * Stores the content hashes of rows already written, leaving their other columns alone
+     */
+    public void storeContentHashes(Collection<ResourceFile> files) {
+        update(files, false);
+    }
+
+    private void update(Collection<ResourceFile> files, boolean packInfo) {
+        if (files.isEmpty()) {
+            return;
+        }
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            String[] path = new String[1];
+            for (ResourceFile file : files) {
+                ContentValues values = new ContentValues();
+                if (packInfo) {
+                    putPackInfo(values, file);
+                } else {
+                    values.put(COL_CONTENT_HASH, file.getContentHash());
+                }
+                path[0] = file.getKey();
+                db.update(TABLE, values, COL_PATH + " = ?", path);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private static ContentValues toValues(ResourceFile file) {
+        ContentValues values = new ContentValues();
+        values.put(COL_PATH, file.getKey());
+        values.put(COL_SECTION, file.getSection());
+        values.put(COL_SIZE, file.getSize());
+        values.put(COL_MTIME, file.getLastModified());
+        values.put(COL_CONTENT_HASH, file.getContentHash());
+        values.put(COL_TYPE, FileOrdering.typeOf(file));
+        putPackInfo(values, file);
+        return values;
+    }
+
+    private static void putPackInfo(ContentValues values, ResourceFile file) {
+        values.put(COL_PACK_LOADED, file.isPackInfoLoaded() ? 1 : 0);
+        PackManifest packInfo = file.getPackInfo();
+        values.put(COL_PACK_VERSION_KEY, FileOrdering.packVersionKey(packInfo));
+        if (packInfo != null) {
+            values.put(COL_PACK_NAME, packInfo.getName());
+            values.put(COL_PACK_DESCRIPTION, packInfo.getDescription());
+            values.put(COL_PACK_UUID, packInfo.getUuid());
+            values.put(COL_PACK_VERSION, PackCompatibilityIndex.formatVersion(packInfo.getVersion()));
+            values.put(COL_MODULE_TYPE, packInfo.getModuleType());
+            values.put(COL_MIN_ENGINE_VERSION, PackCompatibilityIndex.formatVersion(packInfo.getMinEngineVersion()));
+            values.put(COL_PACK_UUIDS, String.join(",", packInfo.getPackUuids()));
+            values.put(COL_DEPENDENCIES, formatDependencies(packInfo.getDependencies()));
+        }
+    }
+
+    private static int[] parseVersionColumn(String value) {
+        return value != null ? PackCompatibilityIndex.parseVersion(value) : null;
+    }
+
+    private static List<String> parseListColumn(String value) {
+        if (value == null || value.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return Arrays.asList(value.split(","));
+    }
+
+    /**
+     * Dependencies are stored as "uuid@1.0.0" items, or a bare UUID when no version is required
+     */
+    private static String formatDependencies(List<PackManifest.Dependency> dependencies) {
+        StringBuilder builder = new StringBuilder();
+        for (PackManifest.Dependency dependency : dependencies) {
+            if (builder.length() > 0) {
+                builder.append(',');
+            }
+            builder.append(dependency.getUuid());
+            if (dependency.getVersion() != null) {
+                builder.append('@').append(PackCompatibilityIndex.formatVersion(dependency.getVersion()));
+            }
+        }
+        return builder.toString();
+    }
+
+    private static List<PackManifest.Dependency> parseDependenciesColumn(String value) {
+        List<PackManifest.Dependency> dependencies = new ArrayList<>();
+        for (String item : parseListColumn(value)) {
+            int at = item.indexOf('@');
+            dependencies.add(at == -1
+                    ? new PackManifest.Dependency(item, null)
+                    : new PackManifest.Dependency(item.substring(0, at), PackCompatibilityIndex.parseVersion(item.substring(at + 1))));
+        }
+        return dependencies;
+    }
+}
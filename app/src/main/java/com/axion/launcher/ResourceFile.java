@@ -1,28 +1,116 @@
 package com.axion.launcher;
 
 import java.io.File;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.Locale;
 
 public class ResourceFile {
+    private static final String[] ZIPPED_EXTENSIONS = {".mcaddon.zip", ".mcpack.zip", ".mctemplate.zip"};
+
     private File file;
     private String name;
     private String extension;
     private long size;
     private long lastModified;
     private String section; // "mods", "textures", or "maps"
+    private PackManifest packInfo; // null if not read yet or the archive has no manifest
+    private boolean packInfoLoaded;
+    private String contentHash;
+
+    // Display values, computed when the entry is created off the main thread so rows only read them
+    private final String key;
+    private final String versionKey;
+    private final long stableId;
+    private final String formattedDate;
+    private final String formattedSize;
+    private final String details;
+    private String packInfoText;
 
     public ResourceFile(File file, String section) {
+        this(file, section, file.length(), file.lastModified());
+    }
+
+    /**
+     * Creates an entry from attributes the caller already read, without another stat
+     */
+    public ResourceFile(File file, String section, long size, long lastModified) {
         this.file = file;
         this.section = section;
         this.name = file.getName();
         this.extension = getFileExtension(file.getName());
-        this.size = file.length();
-        this.lastModified = file.lastModified();
+        this.size = size;
+        this.lastModified = lastModified;
+        this.key = file.getAbsolutePath();
+        this.versionKey = key + "@" + lastModified;
+        this.stableId = StableIds.of(key);
+        this.formattedDate = DisplayFormat.formatDate(lastModified);
+        this.formattedSize = DisplayFormat.formatSize(size);
+        this.details = "Downloaded on " + formattedDate + " • " + formattedSize;
+    }
+
+    /**
+     * Returns a copy carrying the pack metadata read from the archive
+     */
+    public ResourceFile withPackInfo(PackManifest packInfo) {
+        ResourceFile copy = copy();
+        copy.packInfo = packInfo;
+        copy.packInfoLoaded = true;
+        copy.packInfoText = buildPackInfoText(packInfo);
+        return copy;
+    }
+
+    public ResourceFile withContentHash(String contentHash) {
+        ResourceFile copy = copy();
+        copy.contentHash = contentHash;
+        return copy;
+    }
+
+    /**
+     * Entry for this file after a rename or move. The contents did not change,
+     * so pack metadata and content hash carry over instead of being read again.
+     */
+    public ResourceFile movedTo(File newFile, String newSection) {
+        ResourceFile moved = new ResourceFile(newFile, newSection);
+        moved.packInfo = packInfo;
+        moved.packInfoLoaded = packInfoLoaded;
+        moved.contentHash = contentHash;
+        moved.packInfoText = packInfoText;
+        return moved;
     }
 
-    private String getFileExtension(String fileName) {
+    private ResourceFile copy() {
+        ResourceFile copy = new ResourceFile(file, section, size, lastModified);
+        copy.packInfo = packInfo;
+        copy.packInfoLoaded = packInfoLoaded;
+        copy.contentHash = contentHash;
+        copy.packInfoText = packInfoText;
+        return copy;
+    }
+
+    private static String buildPackInfoText(PackManifest manifest) {
+        if (manifest == null || manifest.getDisplayName() == null || manifest.getDisplayName().isEmpty()) {
+            return null;
+        }
+        StringBuilder text = new StringBuilder(manifest.getDisplayName());
+        if (manifest.getVersion() != null) {
+            text.append(" v").append(PackCompatibilityIndex.formatVersion(manifest.getVersion()));
+        }
+        String typeLabel = manifest.getModuleTypeLabel();
+        if (!typeLabel.isEmpty()) {
+            text.append(" • ").append(typeLabel);
+        }
+        return text.toString();
+    }
+
+    /**
+     * Extension of a file name, lower-cased. Packs saved by browsers keep
+     * their own extension in front of ".zip", and both together count.
+     */
+    static String getFileExtension(String fileName) {
+        String lower = fileName.toLowerCase();
+        for (String zipped : ZIPPED_EXTENSIONS) {
+            if (lower.endsWith(zipped) && lower.length() > zipped.length()) {
+                return zipped;
+            }
+        }
         int lastDotIndex = fileName.lastIndexOf('.');
         if (lastDotIndex > 0) {
             return fileName.substring(lastDotIndex).toLowerCase();
@@ -54,22 +142,71 @@ public class ResourceFile {
         return section;
     }
 
+    public PackManifest getPackInfo() {
+        return packInfo;
+    }
+
+    public boolean isPackInfoLoaded() {
+        return packInfoLoaded;
+    }
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    /**
+     * Identity of this file across rescans; size and date are compared separately
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Key plus mtime; changes whenever the file is rewritten
+     */
+    public String getVersionKey() {
+        return versionKey;
+    }
+
+    public long getStableId() {
+        return stableId;
+    }
+
+    /**
+     * "Downloaded on &lt;date&gt; • &lt;size&gt;"
+     */
+    public String getDetails() {
+        return details;
+    }
+
+    /**
+     * Pack name, version and kind for the row, or null if the file has no manifest
+     */
+    public String getPackInfoText() {
+        return packInfoText;
+    }
+
+    public boolean hasSameContents(ResourceFile other) {
+        return size == other.size && lastModified == other.lastModified
+                && packInfoLoaded == other.packInfoLoaded;
+    }
+
     public String getFormattedSize() {
-        if (size < 1024) {
-            return size + " B";
-        } else if (size < 1024 * 1024) {
-            return String.format(Locale.getDefault(), "%.1f KB", size / 1024.0);
-        } else {
-            return String.format(Locale.getDefault(), "%.1f MB", size / (1024.0 * 1024.0));
-        }
+        return formattedSize;
     }
 
     public String getFormattedDate() {
-        SimpleDateFormat sdf = new SimpleDateFormat("MMM dd, yyyy", Locale.getDefault());
-        return sdf.format(new Date(lastModified));
+        return formattedDate;
     }
 
     public boolean isMinecraftFile() {
+        return isMinecraftExtension(extension);
+    }
+
+    /**
+     * Whether an extension from getFileExtension belongs to a Minecraft file
+     */
+    static boolean isMinecraftExtension(String extension) {
         return extension.equals(".mcaddon") || 
                extension.equals(".mcpack") || 
                extension.equals(".mctemplate") ||
@@ -0,0 +1,542 @@
+package com.axion.launcher;
+
+import android.content.Context;
+import android.os.FileObserver;
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Process-wide, always current listing of the resources/&lt;section&gt; folders.
+ *
+ * On first use the last known listing, including pack metadata, is loaded
+ * from ResourceDatabase with one query per section and shown right away. Each section
+ * is then reconciled with one folder scan and kept up to date from inotify
+ * events delivered by a FileObserver: only the files named in an event are
+ * re-stat'ed. Manifests are read only for packs that are new or changed, and
+ * every change is written back to the database.
+ *
+ * Fragments subscribe to a section instead of listing the folder themselves.
+ * Sections of PAGED_THRESHOLD files or more keep only each file's size and
+ * date in memory and publish just their file count; their rows are read from
+ * the database page by page and their changes are published as deltas. All
+ * section state lives on one background thread; listeners are called on the
+ * main thread.
+ */
+public class ResourceIndex {
+
+    public static final String[] SECTIONS = {"mods", "textures", "maps"};
+
+    private static final int EVENT_MASK = FileObserver.CREATE | FileObserver.CLOSE_WRITE
+            | FileObserver.DELETE | FileObserver.MOVED_FROM | FileObserver.MOVED_TO
+            | FileObserver.DELETE_SELF | FileObserver.MOVE_SELF;
+
+    // Events are coalesced so a bulk copy produces one update, not one per file
+    private static final long COALESCE_DELAY_MS = 100;
+    // Publish pack metadata in batches while manifests are being read
+    private static final int METADATA_BATCH_SIZE = 32;
+    // Sections this large are read from the database page by page instead of held as one list
+    static final int PAGED_THRESHOLD = 2000;
+
+    public interface Listener {
+        /**
+         * Called on the main thread with the section's files, newest first.
+         * The list is immutable and null for paged sections, which are read
+         * through openPagedList; complete is false while the first scan is running.
+         */
+        void onResourcesChanged(String section, @Nullable List<ResourceFile> files, int count, boolean complete);
+
+        /**
+         * Called on the main thread just before onResourcesChanged for a paged
+         * section, with the files added or changed and the keys of the files
+         * removed since the previous publish
+         */
+        void onPagedFilesChanged(String section, List<ResourceFile> changed, List<String> removedKeys);
+    }
+
+    public interface FilesCallback {
+        /**
+         * Called on the main thread with the files of a section, newest first
+         */
+        void onFiles(List<ResourceFile> files);
+    }
+
+    public interface AllFilesCallback {
+        /**
+         * Called on the index thread with the complete listing of every section
+         */
+        void onAllFiles(List<ResourceFile> files);
+    }
+
+    private static ResourceIndex instance;
+
+    private final File baseDir;
+    private final ResourceDatabase database;
+    private boolean databaseLoaded;
+    private final ScheduledExecutorService executorService = Executors.newSingleThreadScheduledExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Map<String, Section> sections = new HashMap<>();
+
+    private class Section {
+        final String name;
+        final File dir;
+        final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+        // Confined to the executor thread
+        final Map<String, Stamp> stampsByName = new HashMap<>();
+        // Full entries, kept only while the section is below PAGED_THRESHOLD
+        Map<String, ResourceFile> filesByName = new HashMap<>();
+        final Set<String> pendingNames = new HashSet<>();
+        // Changes since the last publish, collected only while the section is paged
+        final Map<String, ResourceFile> changedFiles = new LinkedHashMap<>();
+        final Set<String> removedKeys = new HashSet<>();
+        boolean flushScheduled;
+        boolean rescanPending;
+
+        // Read from the main thread
+        volatile List<ResourceFile> snapshot = Collections.emptyList();
+        volatile int count;
+        volatile boolean loaded;
+        FileObserver observer;
+
+        Section(String name) {
+            this.name = name;
+            this.dir = new File(baseDir, name);
+        }
+    }
+
+    /**
+     * What reconciling a file with the folder needs to know about it
+     */
+    private static class Stamp {
+        final long size;
+        final long lastModified;
+        final boolean packInfoLoaded;
+
+        Stamp(long size, long lastModified, boolean packInfoLoaded) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.packInfoLoaded = packInfoLoaded;
+        }
+    }
+
+    private ResourceIndex(Context context) {
+        baseDir = new File(context.getExternalFilesDir(null), "resources");
+        database = new ResourceDatabase(context);
+        for (String name : SECTIONS) {
+            sections.put(name, new Section(name));
+        }
+    }
+
+    public static synchronized ResourceIndex getInstance(Context context) {
+        if (instance == null) {
+            instance = new ResourceIndex(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Adds a listener and immediately delivers the section's current files,
+     * starting the scan and file watch on first use.
+     */
+    public void subscribe(String sectionName, Listener listener) {
+        Section section = sections.get(sectionName);
+        if (section == null) {
+            return;
+        }
+        section.listeners.add(listener);
+        if (section.observer == null) {
+            start(section);
+        }
+        if (section.loaded || section.count > 0) {
+            listener.onResourcesChanged(section.name, section.snapshot, section.count, section.loaded);
+        }
+    }
+
+    public void unsubscribe(String sectionName, Listener listener) {
+        Section section = sections.get(sectionName);
+        if (section != null) {
+            section.listeners.remove(listener);
+        }
+    }
+
+    /**
+     * Hints that a file changed, for writers that want the listing updated
+     * without waiting on the file watch. Files outside the sections are ignored.
+     */
+    public void notifyChanged(File file) {
+        File parent = file.getParentFile();
+        Section section = parent != null && baseDir.equals(parent.getParentFile())
+                ? sections.get(parent.getName()) : null;
+        if (section != null && section.observer != null) {
+            executorService.execute(() -> markPending(section, file.getName()));
+        }
+    }
+
+    /**
+     * Delivers the files of all sections once each has been scanned, starting
+     * sections nobody has opened yet. Call from the main thread.
+     */
+    public void requestAllFiles(AllFilesCallback callback) {
+        for (Section section : sections.values()) {
+            if (section.observer == null) {
+                start(section);
+            }
+        }
+        // Runs after the scans queued above on the same thread
+        executorService.execute(() -> {
+            List<ResourceFile> files = new ArrayList<>();
+            for (List<ResourceFile> sectionFiles : database.loadAll().values()) {
+                files.addAll(sectionFiles);
+            }
+            callback.onAllFiles(files);
+        });
+    }
+
+    /**
+     * Reads every file of a section from the database, for paged sections
+     * whose files are not published. Nothing keeps the list afterwards.
+     */
+    public void loadFiles(String sectionName, FilesCallback callback) {
+        executorService.execute(() -> {
+            List<ResourceFile> files = Collections.unmodifiableList(database.loadSection(sectionName));
+            mainHandler.post(() -> callback.onFiles(files));
+        });
+    }
+
+    /**
+     * Records content hashes computed for the given files. A hash is dropped if
+     * its file changed since it was hashed.
+     */
+    public void storeContentHashes(List<ResourceFile> hashed) {
+        executorService.execute(() -> {
+            List<ResourceFile> current = new ArrayList<>();
+            Set<Section> changed = new HashSet<>();
+            for (ResourceFile file : hashed) {
+                Section section = sections.get(file.getSection());
+                Stamp known = section != null ? section.stampsByName.get(file.getName()) : null;
+                if (known != null && isUnchanged(known, file)) {
+                    current.add(file);
+                    if (section.filesByName != null) {
+                        ResourceFile held = section.filesByName.get(file.getName());
+                        section.filesByName.put(file.getName(), held.withContentHash(file.getContentHash()));
+                        changed.add(section);
+                    }
+                }
+            }
+            database.storeContentHashes(current);
+            // Paged rows do not show hashes, so only held sections are published again
+            for (Section section : changed) {
+                publishSection(section);
+            }
+        });
+    }
+
+    /**
+     * Page-by-page view of a section read straight from the database in one of
+     * FileOrdering's sort and filter modes, for sections too large to bind as
+     * one list. Call refresh() on it after each change delivered to a Listener.
+     */
+    public PagedFileList openPagedList(String sectionName, int sort, int filter) {
+        PagedFileList list = new PagedFileList(database, sectionName, sort, filter);
+        list.refresh();
+        return list;
+    }
+
+    public File getSectionDir(String sectionName) {
+        return new File(baseDir, sectionName);
+    }
+
+    /**
+     * Applies the outcome of a batch of file operations in one step: every
+     * affected section is published once and the database is updated in one
+     * transaction. The file watch later sees these files as already known.
+     */
+    public void applyBatch(List<ResourceFile> removed, List<ResourceFile> added) {
+        executorService.execute(() -> {
+            loadDatabase();
+            Set<Section> changed = new HashSet<>();
+            List<String> removedPaths = new ArrayList<>();
+            for (ResourceFile file : removed) {
+                Section section = sections.get(file.getSection());
+                if (section != null && remove(section, file.getName())) {
+                    changed.add(section);
+                }
+                removedPaths.add(file.getKey());
+            }
+            for (ResourceFile file : added) {
+                Section section = sections.get(file.getSection());
+                if (section != null) {
+                    put(section, file);
+                    changed.add(section);
+                }
+            }
+            database.apply(added, removedPaths);
+            for (Section section : changed) {
+                publishSection(section);
+            }
+        });
+    }
+
+    private void start(Section section) {
+        section.dir.mkdirs();
+        section.observer = new SectionObserver(section);
+        section.observer.startWatching();
+        executorService.execute(() -> {
+            loadDatabase();
+            rescan(section);
+        });
+    }
+
+    private void loadDatabase() {
+        if (databaseLoaded) {
+            return;
+        }
+        databaseLoaded = true;
+        for (Section section : sections.values()) {
+            int count = database.countSection(section.name);
+            if (count == 0) {
+                continue;
+            }
+            if (count >= PAGED_THRESHOLD) {
+                section.filesByName = null;
+                database.forEachStamp(section.name, (path, size, lastModified, packInfoLoaded) ->
+                        section.stampsByName.put(new File(path).getName(), new Stamp(size, lastModified, packInfoLoaded)));
+                publish(section, null, count, false);
+                continue;
+            }
+            List<ResourceFile> files = database.loadSection(section.name);
+            for (ResourceFile file : files) {
+                put(section, file);
+            }
+            // Rows come back newest first, so the stored list can be shown as-is
+            publish(section, Collections.unmodifiableList(files), files.size(), false);
+        }
+    }
+
+    /**
+     * Scans the folder and applies the differences to the known listing
+     */
+    private void rescan(Section section) {
+        section.rescanPending = false;
+        section.pendingNames.clear();
+        boolean hadFiles = !section.stampsByName.isEmpty();
+        DirectoryScanner.scan(section.dir, section.name, (files, complete) -> {
+            if (!complete) {
+                // Partial scans would shrink a listing restored from the database
+                if (!hadFiles) {
+                    publish(section, files, files.size(), false);
+                }
+                return;
+            }
+            Set<String> gone = new HashSet<>(section.stampsByName.keySet());
+            List<ResourceFile> upserts = new ArrayList<>();
+            for (ResourceFile file : files) {
+                gone.remove(file.getName());
+                Stamp known = section.stampsByName.get(file.getName());
+                if (known == null || !isUnchanged(known, file)) {
+                    put(section, file);
+                    upserts.add(file);
+                }
+            }
+            List<String> removedPaths = new ArrayList<>();
+            for (String fileName : gone) {
+                remove(section, fileName);
+                removedPaths.add(new File(section.dir, fileName).getAbsolutePath());
+            }
+            database.apply(upserts, removedPaths);
+            section.loaded = true;
+            publishSection(section);
+        });
+        loadPackInfo(section);
+    }
+
+    private void markPending(Section section, String fileName) {
+        section.pendingNames.add(fileName);
+        if (!section.flushScheduled) {
+            section.flushScheduled = true;
+            executorService.schedule(() -> flush(section), COALESCE_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void flush(Section section) {
+        section.flushScheduled = false;
+        if (section.rescanPending) {
+            rescan(section);
+            return;
+        }
+        if (section.pendingNames.isEmpty()) {
+            return;
+        }
+        List<ResourceFile> upserts = new ArrayList<>();
+        List<String> removedPaths = new ArrayList<>();
+        for (String fileName : section.pendingNames) {
+            File file = new File(section.dir, fileName);
+            Stamp known = section.stampsByName.get(fileName);
+            if (file.isFile()) {
+                ResourceFile current = new ResourceFile(file, section.name);
+                if (known == null || !isUnchanged(known, current)) {
+                    put(section, current);
+                    upserts.add(current);
+                }
+            } else if (known != null) {
+                remove(section, fileName);
+                removedPaths.add(file.getAbsolutePath());
+            }
+        }
+        section.pendingNames.clear();
+        if (upserts.isEmpty() && removedPaths.isEmpty()) {
+            return;
+        }
+        database.apply(upserts, removedPaths);
+        publishSection(section);
+        loadPackInfo(section);
+    }
+
+    /**
+     * Reads manifests of packs that do not have metadata yet
+     */
+    private void loadPackInfo(Section section) {
+        List<ResourceFile> missing = new ArrayList<>();
+        for (Map.Entry<String, Stamp> entry : section.stampsByName.entrySet()) {
+            Stamp stamp = entry.getValue();
+            if (!stamp.packInfoLoaded && ResourceFile.isMinecraftExtension(
+                    ResourceFile.getFileExtension(entry.getKey()))) {
+                ResourceFile held = section.filesByName != null ? section.filesByName.get(entry.getKey()) : null;
+                missing.add(held != null ? held : new ResourceFile(new File(section.dir, entry.getKey()),
+                        section.name, stamp.size, stamp.lastModified));
+            }
+        }
+        List<ResourceFile> batch = new ArrayList<>();
+        for (ResourceFile file : missing) {
+            ResourceFile withInfo = file.withPackInfo(PackManifestReader.readSummary(file.getFile()));
+            put(section, withInfo);
+            batch.add(withInfo);
+            if (batch.size() == METADATA_BATCH_SIZE) {
+                database.storePackInfo(batch);
+                batch.clear();
+                publishSection(section);
+            }
+        }
+        if (!batch.isEmpty()) {
+            database.storePackInfo(batch);
+            publishSection(section);
+        }
+    }
+
+    private static boolean isUnchanged(Stamp known, ResourceFile current) {
+        return known.size == current.getSize() && known.lastModified == current.getLastModified();
+    }
+
+    private static void put(Section section, ResourceFile file) {
+        section.stampsByName.put(file.getName(),
+                new Stamp(file.getSize(), file.getLastModified(), file.isPackInfoLoaded()));
+        if (section.filesByName != null) {
+            section.filesByName.put(file.getName(), file);
+        } else {
+            section.changedFiles.put(file.getKey(), file);
+            section.removedKeys.remove(file.getKey());
+        }
+    }
+
+    private static boolean remove(Section section, String fileName) {
+        if (section.filesByName != null) {
+            section.filesByName.remove(fileName);
+        } else {
+            String key = new File(section.dir, fileName).getAbsolutePath();
+            section.changedFiles.remove(key);
+            section.removedKeys.add(key);
+        }
+        return section.stampsByName.remove(fileName) != null;
+    }
+
+    /**
+     * Publishes the section's files, or only their count once it is large
+     * enough to be paged; crossing the threshold drops or reloads the entries
+     */
+    private void publishSection(Section section) {
+        int count = section.stampsByName.size();
+        if (count >= PAGED_THRESHOLD) {
+            section.filesByName = null;
+            List<ResourceFile> changed = new ArrayList<>(section.changedFiles.values());
+            List<String> removedKeys = new ArrayList<>(section.removedKeys);
+            section.changedFiles.clear();
+            section.removedKeys.clear();
+            publish(section, null, count, section.loaded, changed, removedKeys);
+            return;
+        }
+        if (section.filesByName == null) {
+            section.changedFiles.clear();
+            section.removedKeys.clear();
+            section.filesByName = new HashMap<>();
+            for (ResourceFile file : database.loadSection(section.name)) {
+                section.filesByName.put(file.getName(), file);
+            }
+        }
+        List<ResourceFile> files = new ArrayList<>(section.filesByName.values());
+        Collections.sort(files, DirectoryScanner.NEWEST_FIRST);
+        publish(section, Collections.unmodifiableList(files), count, section.loaded);
+    }
+
+    private void publish(Section section, @Nullable List<ResourceFile> files, int count, boolean complete) {
+        publish(section, files, count, complete, Collections.emptyList(), Collections.emptyList());
+    }
+
+    private void publish(Section section, @Nullable List<ResourceFile> files, int count, boolean complete,
+                         List<ResourceFile> changed, List<String> removedKeys) {
+        section.snapshot = files;
+        section.count = count;
+        boolean delta = !changed.isEmpty() || !removedKeys.isEmpty();
+        mainHandler.post(() -> {
+            for (Listener listener : section.listeners) {
+                if (delta) {
+                    listener.onPagedFilesChanged(section.name, changed, removedKeys);
+                }
+                listener.onResourcesChanged(section.name, files, count, complete);
+            }
+        });
+    }
+
+    private class SectionObserver extends FileObserver {
+        private final Section section;
+
+        // The File constructor needs API 29; the path form works on every supported version
+        @SuppressWarnings("deprecation")
+        SectionObserver(Section section) {
+            super(section.dir.getAbsolutePath(), EVENT_MASK);
+            this.section = section;
+        }
+
+        @Override
+        public void onEvent(int event, @Nullable String path) {
+            int type = event & FileObserver.ALL_EVENTS;
+            if (type == FileObserver.DELETE_SELF || type == FileObserver.MOVE_SELF) {
+                // The watched folder itself went away; recreate it and start over
+                executorService.execute(() -> {
+                    section.dir.mkdirs();
+                    section.rescanPending = true;
+                    stopWatching();
+                    startWatching();
+                    flush(section);
+                });
+            } else if (path != null) {
+                executorService.execute(() -> markPending(section, path));
+            }
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.axion.launcher;
+
+import android.os.SystemClock;
+import android.view.Choreographer;
+import android.view.Display;
+import android.view.View;
+import android.view.animation.AccelerateDecelerateInterpolator;
+import android.view.animation.Interpolator;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Slide-in animation for list rows that only plays the first time an item
+ * appears. Recycled rows are reset instead of re-animated, the stagger
+ * between rows is capped, and animations are skipped while the list is
+ * scrolling and already dropping frames.
+ */
+public class RowAnimator extends RecyclerView.OnScrollListener implements Choreographer.FrameCallback {
+
+    private static final Interpolator INTERPOLATOR = new AccelerateDecelerateInterpolator();
+
+    private static final long DURATION_MS = 150;
+    private static final long STAGGER_MS = 15;
+    private static final long MAX_STAGGER_MS = 120;
+    private static final float START_TRANSLATION_X = -50f;
+
+    // Rows bound further apart than this start a new stagger batch
+    private static final long BATCH_WINDOW_MS = 50;
+    // How long to keep skipping animations after a dropped frame
+    private static final long JANK_COOLDOWN_NANOS = 250_000_000L;
+
+    private final Set<Long> animatedIds = new HashSet<>();
+    private RecyclerView recyclerView;
+    private long frameBudgetNanos = 16_666_667L;
+    private long lastFrameNanos;
+    private long skipUntilNanos;
+    private boolean monitoring;
+    private long batchStartMs;
+    private int batchIndex;
+
+    public void attach(@NonNull RecyclerView recyclerView) {
+        this.recyclerView = recyclerView;
+        Display display = recyclerView.getDisplay();
+        if (display != null && display.getRefreshRate() > 0) {
+            frameBudgetNanos = (long) (1_000_000_000L / display.getRefreshRate());
+        }
+        recyclerView.addOnScrollListener(this);
+    }
+
+    public void detach() {
+        if (recyclerView != null) {
+            recyclerView.removeOnScrollListener(this);
+            recyclerView = null;
+        }
+        stopMonitoring();
+    }
+
+    /**
+     * Lets every item animate again, e.g. after switching to another filter
+     */
+    public void reset() {
+        animatedIds.clear();
+    }
+
+    public void onBind(@NonNull View itemView, long itemId) {
+        itemView.animate().cancel();
+
+        if (!animatedIds.add(itemId) || isDroppingFrames()) {
+            itemView.setAlpha(1f);
+            itemView.setTranslationX(0f);
+            return;
+        }
+
+        long now = SystemClock.uptimeMillis();
+        if (now - batchStartMs > BATCH_WINDOW_MS) {
+            batchStartMs = now;
+            batchIndex = 0;
+        }
+        long delay = Math.min(batchIndex++ * STAGGER_MS, MAX_STAGGER_MS);
+
+        itemView.setAlpha(0f);
+        itemView.setTranslationX(START_TRANSLATION_X);
+        itemView.animate()
+                .alpha(1f)
+                .translationX(0f)
+                .setDuration(DURATION_MS)
+                .setStartDelay(delay)
+                .setInterpolator(INTERPOLATOR)
+                .start();
+    }
+
+    private boolean isDroppingFrames() {
+        return monitoring && lastFrameNanos < skipUntilNanos;
+    }
+
+    @Override
+    public void onScrollStateChanged(@NonNull RecyclerView recyclerView, int newState) {
+        if (newState == RecyclerView.SCROLL_STATE_IDLE) {
+            stopMonitoring();
+        } else if (!monitoring) {
+            monitoring = true;
+            lastFrameNanos = 0;
+            skipUntilNanos = 0;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (!monitoring) {
+            return;
+        }
+        // More than one and a half frame budgets between vsyncs means a frame was missed
+        if (lastFrameNanos != 0 && frameTimeNanos - lastFrameNanos > frameBudgetNanos * 3 / 2) {
+            skipUntilNanos = frameTimeNanos + JANK_COOLDOWN_NANOS;
+        }
+        lastFrameNanos = frameTimeNanos;
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    private void stopMonitoring() {
+        if (monitoring) {
+            monitoring = false;
+            Choreographer.getInstance().removeFrameCallback(this);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.axion.launcher;
+
+/**
+ * Turns string keys into 64-bit RecyclerView stable IDs.
+ * Uses FNV-1a so two different keys practically never share an ID.
+ */
+public final class StableIds {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private StableIds() {}
+
+    public static long of(String key) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+}
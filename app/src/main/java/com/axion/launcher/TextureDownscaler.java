@@ -0,0 +1,804 @@
+package com.axion.launcher;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+
+/**
+ * Writes a copy of a texture pack with its textures 2 or 4 times smaller,
+ * for devices that run out of memory with high resolution packs.
+ *
+ * Textures are decoded and box filtered on a work-stealing pool, and large
+ * ones are split into bands of rows that idle workers take over. A memory
+ * budget limits how many decoded textures exist at once; finished entries
+ * are written in their original order straight into the new .mcpack.
+ *
+ * A texture is only scaled by a factor that divides both of its sides, so
+ * flipbook strips keep whole square frames, and textures drawn together (an
+ * atlas, a flipbook or a texture set) all shrink by the smallest factor one
+ * of them allows. UI textures are copied as they are, since JSON UI gives
+ * their uv coordinates in texture pixels. Model and particle UVs are
+ * relative to the declared texture size and need no change. The copy gets header and module UUIDs of
+ * its own and the factor in its name, so it installs next to the original.
+ */
+public class TextureDownscaler {
+
+    private static final String TAG = "TextureDownscaler";
+    private static final String WORK_DIR = ".downscaler";
+    private static final String TEXTURES_DIR = "textures/";
+    // Output rows each band task filters; smaller textures are one task
+    private static final int BAND_ROWS = 64;
+    private static final int MAX_SIDE = 16384;
+    private static final int MAX_JSON_SIZE = 64 * 1024;
+    private static final int MAX_LANG_SIZE = 4 * 1024 * 1024;
+    // Conventional header name that the pack's lang files translate
+    private static final String NAME_KEY = "pack.name";
+    private static final Pattern LANG_NAME = Pattern.compile("(?m)^(pack\\.name=[^\\t\\r\\n]*)");
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+    private static final String UI_DIR = "textures/ui/";
+    // Atlases list every texture they stitch together; flipbooks animate terrain atlas textures
+    private static final String[][] ATLAS_FILES = {
+            {"textures/terrain_texture.json", "textures/flipbook_textures.json"},
+            {"textures/item_texture.json"},
+    };
+    private static final String TEXTURE_SET_SUFFIX = ".texture_set.json";
+    private static final int MAX_GROUP_FILE_SIZE = 4 * 1024 * 1024;
+    private static final Pattern TEXTURE_REFERENCE = Pattern.compile("\"(textures/[^\"]+)\"");
+    private static final Pattern TEXTURE_SET_LAYER = Pattern.compile(
+            "\"(color|normal|heightmap|metalness_emissive_roughness[a-z_]*)\"\\s*:\\s*\"([^\"#][^\"]*)\"");
+
+    private static TextureDownscaler instance;
+
+    private final ResourceIndex resourceIndex;
+    private final ExecutorService coordinator = Executors.newSingleThreadExecutor();
+    private final ForkJoinPool workers;
+    // Entries queued at once, on top of the memory budget below
+    private final int window;
+    // Kilobytes of decoded pixels allowed in flight
+    private final int memoryBudget;
+    private final Semaphore memory;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    public interface ProgressListener {
+        /**
+         * Called on the main thread as the textures are worked through
+         */
+        void onProgress(int done, int total);
+
+        /**
+         * Called on the main thread with the new pack, or null and the reason it failed
+         */
+        void onFinished(File output, String error);
+    }
+
+    /**
+     * Pixels of a decoded texture, read a few rows at a time
+     */
+    private interface PixelSource {
+        int getWidth();
+
+        int getHeight();
+
+        void readRows(int y, int count, int[] destination);
+    }
+
+    private TextureDownscaler(Context context) {
+        resourceIndex = ResourceIndex.getInstance(context);
+        int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        workers = new ForkJoinPool(threads);
+        window = threads * 4;
+        memoryBudget = (int) Math.min(Runtime.getRuntime().maxMemory() / 4 / 1024, Integer.MAX_VALUE);
+        memory = new Semaphore(memoryBudget);
+    }
+
+    public static synchronized TextureDownscaler getInstance(Context context) {
+        if (instance == null) {
+            instance = new TextureDownscaler(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Whether the file may be a single pack; add-ons and templates hold nested
+     * packs or worlds this does not rewrite. downscale() checks the contents.
+     */
+    public static boolean canDownscale(ResourceFile file) {
+        return file.getMinecraftExtension().equals(".mcpack");
+    }
+
+    /**
+     * Writes "<name> (Nx smaller).mcpack" next to the pack, N being 2 or 4
+     */
+    public void downscale(ResourceFile file, int factor, ProgressListener listener) {
+        coordinator.execute(() -> {
+            if (ResourceClassifier.getInstance().classify(file).getKind() != ResourceClassifier.KIND_RESOURCE_PACK) {
+                mainHandler.post(() -> listener.onFinished(null, "Only single resource packs can be downscaled"));
+                return;
+            }
+            File source = file.getFile();
+            File sectionDir = resourceIndex.getSectionDir(file.getSection());
+            File workDir = new File(sectionDir.getParentFile(), WORK_DIR);
+            workDir.mkdirs();
+            File temp = new File(workDir, source.getName());
+            try {
+                downscaleArchive(source, temp, factor, listener);
+                File output = uniqueOutput(sectionDir, file, factor);
+                if (!temp.renameTo(output)) {
+                    mainHandler.post(() -> listener.onFinished(null, "Could not save the new pack"));
+                    return;
+                }
+                mainHandler.post(() -> listener.onFinished(output, null));
+            } catch (IOException | RuntimeException e) {
+                Log.e(TAG, "Could not downscale " + source.getName(), e);
+                mainHandler.post(() -> listener.onFinished(null, "Could not read the pack"));
+            } finally {
+                temp.delete();
+            }
+        });
+    }
+
+    private void downscaleArchive(File source, File target, int factor, ProgressListener listener)
+            throws IOException {
+        try (RandomAccessFile in = new RandomAccessFile(source, "r");
+             ZipArchiveWriter writer = new ZipArchiveWriter(target)) {
+            ZipCentralDirectory zip = ZipCentralDirectory.open(in);
+            List<ZipCentralDirectory.Entry> entries = zip.getEntries();
+
+            // Every factor is settled before anything is written, since a
+            // texture late in the archive can lower the factor of its group
+            Map<String, int[]> sizes = new HashMap<>();
+            Map<String, Integer> factors = chooseFactors(zip, entries, factor, sizes);
+            int textureCount = factors.size();
+            int done = 0;
+            Deque<Future<PackOptimizer.EntryOutput>> pending = new ArrayDeque<>();
+            for (ZipCentralDirectory.Entry entry : entries) {
+                String renamed = isManifest(entry) ? renameText(zip, entry, MAX_JSON_SIZE, factor, true)
+                        : isLang(entry) ? renameText(zip, entry, MAX_LANG_SIZE, factor, false) : null;
+                // Entries that need no worker take their place in the queue, so scaling goes on around them
+                if (renamed != null) {
+                    pending.add(CompletableFuture.completedFuture(
+                            PackOptimizer.replaceContent(entry, renamed.getBytes(StandardCharsets.UTF_8))));
+                    PackOptimizer.drain(pending, window, writer, zip);
+                    continue;
+                }
+                Integer chosen = factors.get(entry.getName());
+                if (chosen == null) {
+                    pending.add(PackOptimizer.copied(entry));
+                    PackOptimizer.drain(pending, window, writer, zip);
+                    continue;
+                }
+
+                int textureFactor = chosen;
+                int[] size = sizes.get(entry.getName());
+                int cost = size == null ? 0 : decodedKilobytes(size[0], size[1], textureFactor);
+                if (textureFactor == 1) {
+                    // Unreadable, indivisible, too large to hold, or held back by its group
+                    pending.add(PackOptimizer.copied(entry));
+                } else {
+                    byte[] raw = PackOptimizer.readRaw(zip, entry);
+                    acquireMemory(cost);
+                    pending.add(workers.submit(() -> {
+                        try {
+                            return scaleEntry(entry, raw, textureFactor);
+                        } finally {
+                            memory.release(cost);
+                        }
+                    }));
+                }
+                PackOptimizer.drain(pending, window, writer, zip);
+                done++;
+                if (done * 100 / textureCount != (done - 1) * 100 / textureCount) {
+                    int progress = done;
+                    mainHandler.post(() -> listener.onProgress(progress, textureCount));
+                }
+            }
+            PackOptimizer.drain(pending, 0, writer, zip);
+            writer.finish();
+        }
+    }
+
+    /**
+     * The manifest or lang file with the copy's identity, or null to copy the entry as is
+     */
+    private static String renameText(ZipCentralDirectory zip, ZipCentralDirectory.Entry entry, int maxSize,
+                                     int factor, boolean manifest) {
+        if (entry.getSize() > maxSize || (entry.getFlags() & 1) != 0) {
+            return null;
+        }
+        String text = readText(zip, entry);
+        if (text == null) {
+            return null;
+        }
+        return manifest ? renameManifest(text, factor) : LANG_NAME.matcher(text).replaceAll("$1" + suffix(factor));
+    }
+
+    /**
+     * Gives the manifest new header and module UUIDs, derived from the old
+     * ones and the factor so downscaling again updates the same copy, and
+     * adds the factor to the pack name unless the lang files translate it.
+     * Dependencies keep pointing at the packs they name.
+     */
+    static String renameManifest(String json, int factor) {
+        StringBuilder out = new StringBuilder(json.length() + 16);
+        // Current key of each open object, "[]" for each open array
+        List<String> path = new ArrayList<>();
+        boolean expectKey = false;
+        int i = 0;
+        while (i < json.length()) {
+            char c = json.charAt(i);
+            if (c == '"') {
+                int end = i + 1;
+                while (end < json.length() && json.charAt(end) != '"') {
+                    end += json.charAt(end) == '\\' ? 2 : 1;
+                }
+                end = Math.min(end + 1, json.length());
+                String value = json.substring(i + 1, Math.max(i + 1, end - 1));
+                if (expectKey) {
+                    path.set(path.size() - 1, value);
+                    expectKey = false;
+                    out.append(json, i, end);
+                } else {
+                    out.append('"').append(renameValue(String.join("/", path), value, factor)).append('"');
+                }
+                i = end;
+                continue;
+            }
+            if (c == '/' && i + 1 < json.length() && (json.charAt(i + 1) == '/' || json.charAt(i + 1) == '*')) {
+                int end = json.charAt(i + 1) == '/' ? json.indexOf('\n', i) : json.indexOf("*/", i + 2);
+                end = end == -1 ? json.length() : json.charAt(i + 1) == '/' ? end : end + 2;
+                out.append(json, i, end);
+                i = end;
+                continue;
+            }
+            if (c == '{') {
+                path.add("");
+                expectKey = true;
+            } else if (c == '[') {
+                path.add("[]");
+            } else if ((c == '}' || c == ']') && !path.isEmpty()) {
+                path.remove(path.size() - 1);
+                expectKey = false;
+            } else if (c == ',' && !path.isEmpty() && !path.get(path.size() - 1).equals("[]")) {
+                expectKey = true;
+            }
+            out.append(c);
+            i++;
+        }
+        return out.toString();
+    }
+
+    private static String renameValue(String path, String value, int factor) {
+        switch (path) {
+            case "header/uuid":
+            case "modules/[]/uuid":
+                return UUID.nameUUIDFromBytes((value.toLowerCase() + "@" + factor + "x")
+                        .getBytes(StandardCharsets.UTF_8)).toString();
+            case "header/name":
+                return value.equals(NAME_KEY) ? value : value + suffix(factor);
+            default:
+                return value;
+        }
+    }
+
+    private static String suffix(int factor) {
+        return " (" + factor + "x smaller)";
+    }
+
+    /**
+     * The factor of every texture entry, by name: the largest that divides its
+     * sides, lowered to the smallest factor in any group it is drawn with.
+     * Textures that cannot be read or held in memory get 1. Fills in sizes.
+     */
+    private Map<String, Integer> chooseFactors(ZipCentralDirectory zip, List<ZipCentralDirectory.Entry> entries,
+                                               int factor, Map<String, int[]> sizes) {
+        Map<String, Integer> factors = new HashMap<>();
+        // Entry name of each texture, by its path from the pack root without extension
+        Map<String, String> textures = new HashMap<>();
+        List<List<String>> groups = new ArrayList<>();
+        for (int i = 0; i < ATLAS_FILES.length; i++) {
+            groups.add(new ArrayList<>());
+        }
+        for (ZipCentralDirectory.Entry entry : entries) {
+            if (isTexture(entry)) {
+                int[] size = readSize(zip, entry);
+                int textureFactor = size == null ? 1 : chooseFactor(size[0], size[1], factor);
+                if (size != null && decodedKilobytes(size[0], size[1], textureFactor) > memoryBudget) {
+                    textureFactor = 1;
+                }
+                factors.put(entry.getName(), textureFactor);
+                sizes.put(entry.getName(), size);
+                textures.put(textureKey(entry.getName()), entry.getName());
+                continue;
+            }
+            String key = entry.isDirectory() || entry.getSize() > MAX_GROUP_FILE_SIZE ? null : packPath(entry.getName());
+            int atlas = atlasIndex(key);
+            boolean textureSet = key != null && key.startsWith(TEXTURES_DIR) && key.endsWith(TEXTURE_SET_SUFFIX);
+            String json = atlas != -1 || textureSet ? readText(zip, entry) : null;
+            if (json == null) {
+                continue;
+            }
+            if (textureSet) {
+                groups.add(textureSetMembers(key, json));
+            } else {
+                Matcher reference = TEXTURE_REFERENCE.matcher(json);
+                while (reference.find()) {
+                    groups.get(atlas).add(stripImageExtension(reference.group(1).toLowerCase()));
+                }
+            }
+        }
+
+        // Groups that share a texture are drawn together too; merge them until none changes
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (List<String> group : groups) {
+                int smallest = factor;
+                for (String member : group) {
+                    String name = textures.get(member);
+                    if (name != null) {
+                        smallest = Math.min(smallest, factors.get(name));
+                    }
+                }
+                for (String member : group) {
+                    String name = textures.get(member);
+                    if (name != null && factors.get(name) > smallest) {
+                        factors.put(name, smallest);
+                        changed = true;
+                    }
+                }
+            }
+        }
+        return factors;
+    }
+
+    /**
+     * The texture set's own texture and the layers it names, which sit in the same folder
+     */
+    private static List<String> textureSetMembers(String key, String json) {
+        String stem = key.substring(0, key.length() - TEXTURE_SET_SUFFIX.length());
+        String folder = stem.substring(0, stem.lastIndexOf('/') + 1);
+        List<String> members = new ArrayList<>();
+        members.add(stem);
+        Matcher layer = TEXTURE_SET_LAYER.matcher(json);
+        while (layer.find()) {
+            members.add(folder + stripImageExtension(layer.group(2).toLowerCase()));
+        }
+        return members;
+    }
+
+    private static int atlasIndex(String key) {
+        if (key == null) {
+            return -1;
+        }
+        for (int i = 0; i < ATLAS_FILES.length; i++) {
+            for (String file : ATLAS_FILES[i]) {
+                if (key.equals(file)) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private void acquireMemory(int kilobytes) throws IOException {
+        try {
+            memory.acquire(kilobytes);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        }
+    }
+
+    /**
+     * Decodes, filters and re-encodes one texture; anything unreadable is copied unchanged
+     */
+    static PackOptimizer.EntryOutput scaleEntry(ZipCentralDirectory.Entry entry, byte[] raw, int factor) {
+        byte[] content;
+        try {
+            content = PackOptimizer.decompress(entry, raw);
+        } catch (DataFormatException e) {
+            content = null;
+        }
+        if (content == null) {
+            return PackOptimizer.EntryOutput.passThrough(entry);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        if (crc.getValue() != entry.getCrc()) {
+            return PackOptimizer.EntryOutput.passThrough(entry);
+        }
+
+        boolean png = entry.getName().toLowerCase().endsWith(".png");
+        byte[] scaled = png ? scalePng(content, factor) : scaleTga(content, factor);
+        if (scaled == null) {
+            return PackOptimizer.EntryOutput.passThrough(entry);
+        }
+        return PackOptimizer.replaceContent(entry, scaled);
+    }
+
+    private static byte[] scalePng(byte[] png, int factor) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        // Colours of translucent pixels must survive for the average to be right
+        options.inPremultiplied = false;
+        Bitmap bitmap = BitmapFactory.decodeByteArray(png, 0, png.length, options);
+        if (bitmap == null) {
+            return null;
+        }
+        try {
+            int width = bitmap.getWidth() / factor;
+            int height = bitmap.getHeight() / factor;
+            int[] pixels = boxFilter(new PixelSource() {
+                @Override
+                public int getWidth() {
+                    return bitmap.getWidth();
+                }
+
+                @Override
+                public int getHeight() {
+                    return bitmap.getHeight();
+                }
+
+                @Override
+                public void readRows(int y, int count, int[] destination) {
+                    bitmap.getPixels(destination, 0, bitmap.getWidth(), 0, y, bitmap.getWidth(), count);
+                }
+            }, factor);
+            Bitmap scaled = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            try {
+                scaled.setPremultiplied(false);
+                scaled.setPixels(pixels, 0, width, 0, 0, width, height);
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                if (!scaled.compress(Bitmap.CompressFormat.PNG, 100, out)) {
+                    return null;
+                }
+                return out.toByteArray();
+            } finally {
+                scaled.recycle();
+            }
+        } finally {
+            bitmap.recycle();
+        }
+    }
+
+    /**
+     * Scales an uncompressed or run-length encoded true colour TGA, or returns
+     * null for the other kinds, which Minecraft packs practically never use
+     */
+    static byte[] scaleTga(byte[] tga, int factor) {
+        if (tga.length < 18 || tga[1] != 0 || (tga[2] != 2 && tga[2] != 10)) {
+            return null;
+        }
+        int width = readShortLe(tga, 12);
+        int height = readShortLe(tga, 14);
+        int bitsPerPixel = tga[16] & 0xff;
+        int descriptor = tga[17] & 0xff;
+        if ((bitsPerPixel != 24 && bitsPerPixel != 32) || (descriptor & 0x10) != 0 || width == 0 || height == 0) {
+            return null;
+        }
+        int bytesPerPixel = bitsPerPixel / 8;
+        int[] pixels = new int[width * height];
+        int position = 18 + (tga[0] & 0xff);
+        int count = 0;
+        while (count < pixels.length) {
+            int run = 1;
+            boolean repeat = false;
+            if (tga[2] == 10) {
+                if (position >= tga.length) {
+                    return null;
+                }
+                int header = tga[position++] & 0xff;
+                run = (header & 0x7f) + 1;
+                repeat = (header & 0x80) != 0;
+            }
+            for (int i = 0; i < run && count < pixels.length; i++) {
+                if (position + bytesPerPixel > tga.length) {
+                    return null;
+                }
+                int b = tga[position] & 0xff;
+                int g = tga[position + 1] & 0xff;
+                int r = tga[position + 2] & 0xff;
+                int a = bytesPerPixel == 4 ? tga[position + 3] & 0xff : 0xff;
+                if (!repeat || i == run - 1) {
+                    position += bytesPerPixel;
+                }
+                int x = count % width;
+                int row = count / width;
+                // Rows are stored bottom up unless the descriptor says otherwise
+                int y = (descriptor & 0x20) != 0 ? row : height - 1 - row;
+                pixels[y * width + x] = (a << 24) | (r << 16) | (g << 8) | b;
+                count++;
+            }
+        }
+
+        int[] scaled = boxFilter(new PixelSource() {
+            @Override
+            public int getWidth() {
+                return width;
+            }
+
+            @Override
+            public int getHeight() {
+                return height;
+            }
+
+            @Override
+            public void readRows(int y, int rows, int[] destination) {
+                System.arraycopy(pixels, y * width, destination, 0, rows * width);
+            }
+        }, factor);
+
+        int scaledWidth = width / factor;
+        int scaledHeight = height / factor;
+        byte[] out = new byte[18 + scaled.length * bytesPerPixel];
+        out[2] = 2;
+        out[12] = (byte) scaledWidth;
+        out[13] = (byte) (scaledWidth >> 8);
+        out[14] = (byte) scaledHeight;
+        out[15] = (byte) (scaledHeight >> 8);
+        out[16] = (byte) bitsPerPixel;
+        // Top-down rows, with the alpha bits the source declared
+        out[17] = (byte) (0x20 | (descriptor & 0x0f));
+        int offset = 18;
+        for (int pixel : scaled) {
+            out[offset] = (byte) pixel;
+            out[offset + 1] = (byte) (pixel >> 8);
+            out[offset + 2] = (byte) (pixel >> 16);
+            if (bytesPerPixel == 4) {
+                out[offset + 3] = (byte) (pixel >>> 24);
+            }
+            offset += bytesPerPixel;
+        }
+        return out;
+    }
+
+    /**
+     * Averages each factor × factor block into one pixel. Colours are weighted
+     * by alpha so transparent pixels don't darken the edges of cutouts.
+     */
+    private static int[] boxFilter(PixelSource source, int factor) {
+        int width = source.getWidth() / factor;
+        int height = source.getHeight() / factor;
+        int[] out = new int[width * height];
+        BandTask task = new BandTask(source, factor, out, 0, height);
+        if (ForkJoinTask.inForkJoinPool()) {
+            task.invoke();
+        } else {
+            task.compute();
+        }
+        return out;
+    }
+
+    private static final class BandTask extends RecursiveAction {
+        private final PixelSource source;
+        private final int factor;
+        private final int[] out;
+        private final int from;
+        private final int to;
+
+        BandTask(PixelSource source, int factor, int[] out, int from, int to) {
+            this.source = source;
+            this.factor = factor;
+            this.out = out;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > BAND_ROWS && ForkJoinTask.inForkJoinPool()) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new BandTask(source, factor, out, from, middle),
+                        new BandTask(source, factor, out, middle, to));
+                return;
+            }
+            int sourceWidth = source.getWidth();
+            int width = sourceWidth / factor;
+            int blockPixels = factor * factor;
+            int[] rows = new int[sourceWidth * factor];
+            for (int y = from; y < to; y++) {
+                source.readRows(y * factor, factor, rows);
+                for (int x = 0; x < width; x++) {
+                    long alpha = 0;
+                    long red = 0;
+                    long green = 0;
+                    long blue = 0;
+                    for (int dy = 0; dy < factor; dy++) {
+                        int index = dy * sourceWidth + x * factor;
+                        for (int dx = 0; dx < factor; dx++) {
+                            int pixel = rows[index + dx];
+                            int a = pixel >>> 24;
+                            alpha += a;
+                            red += ((pixel >> 16) & 0xff) * a;
+                            green += ((pixel >> 8) & 0xff) * a;
+                            blue += (pixel & 0xff) * a;
+                        }
+                    }
+                    int pixel = 0;
+                    if (alpha > 0) {
+                        long half = alpha / 2;
+                        int a = (int) ((alpha + blockPixels / 2) / blockPixels);
+                        pixel = (a << 24) | (int) ((red + half) / alpha) << 16
+                                | (int) ((green + half) / alpha) << 8 | (int) ((blue + half) / alpha);
+                    }
+                    out[y * width + x] = pixel;
+                }
+            }
+        }
+    }
+
+    /**
+     * The largest of factor, factor / 2, … that divides both sides, or 1
+     */
+    static int chooseFactor(int width, int height, int factor) {
+        for (int f = factor; f > 1; f /= 2) {
+            if (width % f == 0 && height % f == 0) {
+                return f;
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * Width and height from the first bytes of a PNG or TGA, or null
+     */
+    private static int[] readSize(ZipCentralDirectory zip, ZipCentralDirectory.Entry entry) {
+        byte[] header = new byte[24];
+        try (InputStream in = zip.openStream(entry)) {
+            int offset = 0;
+            while (offset < header.length) {
+                int read = in.read(header, offset, header.length - offset);
+                if (read == -1) {
+                    break;
+                }
+                offset += read;
+            }
+            if (entry.getName().toLowerCase().endsWith(".png")) {
+                if (offset < 24) {
+                    return null;
+                }
+                for (int i = 0; i < PNG_SIGNATURE.length; i++) {
+                    if (header[i] != PNG_SIGNATURE[i]) {
+                        return null;
+                    }
+                }
+                int width = readIntBe(header, 16);
+                int height = readIntBe(header, 20);
+                // Larger sides are not valid in Minecraft and would overflow the estimates
+                return width > 0 && height > 0 && width <= MAX_SIDE && height <= MAX_SIDE
+                        ? new int[] {width, height} : null;
+            }
+            return offset >= 18 ? new int[] {readShortLe(header, 12), readShortLe(header, 14)} : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Kilobytes held while filtering: the decoded source and the scaled copy
+     * twice (pixels and encoder bitmap)
+     */
+    private static int decodedKilobytes(int width, int height, int factor) {
+        long pixels = (long) width * height;
+        long bytes = pixels * 4 + pixels / ((long) factor * factor) * 8;
+        return (int) Math.min(bytes / 1024 + 1, Integer.MAX_VALUE);
+    }
+
+    private static String readText(ZipCentralDirectory zip, ZipCentralDirectory.Entry entry) {
+        try {
+            byte[] content = PackOptimizer.decompress(entry, PackOptimizer.readRaw(zip, entry));
+            return content != null ? new String(content, StandardCharsets.UTF_8) : null;
+        } catch (IOException | DataFormatException e) {
+            return null;
+        }
+    }
+
+    private static File uniqueOutput(File dir, ResourceFile file, int factor) {
+        String name = file.getName();
+        String extension = file.getExtension();
+        String stem = name.toLowerCase().endsWith(extension) ? name.substring(0, name.length() - extension.length())
+                : name;
+        String base = stem + suffix(factor);
+        File output = new File(dir, base + ".mcpack");
+        for (int i = 2; output.exists(); i++) {
+            output = new File(dir, base + " (" + i + ").mcpack");
+        }
+        return output;
+    }
+
+    /**
+     * The pack's manifest, at the root or in the pack's own folder
+     */
+    private static boolean isManifest(ZipCentralDirectory.Entry entry) {
+        String name = entry.getName().toLowerCase();
+        return !entry.isDirectory() && (name.equals("manifest.json") || name.endsWith("/manifest.json"))
+                && name.indexOf('/') == name.lastIndexOf('/');
+    }
+
+    private static boolean isLang(ZipCentralDirectory.Entry entry) {
+        String name = entry.getName().toLowerCase();
+        return !entry.isDirectory() && name.endsWith(".lang")
+                && (name.startsWith("texts/") || name.contains("/texts/"));
+    }
+
+    private static boolean isTexture(ZipCentralDirectory.Entry entry) {
+        return (isTexturePath(entry, ".png") || isTexturePath(entry, ".tga"))
+                && !textureKey(entry.getName()).startsWith(UI_DIR)
+                && (entry.getFlags() & 1) == 0
+                && (entry.getMethod() == ZipCentralDirectory.METHOD_STORED
+                    || entry.getMethod() == ZipCentralDirectory.METHOD_DEFLATED);
+    }
+
+    /**
+     * Whether the entry lies under a textures folder, at the root or in the
+     * pack's own folder, and has the extension
+     */
+    private static boolean isTexturePath(ZipCentralDirectory.Entry entry, String extension) {
+        if (entry.isDirectory()) {
+            return false;
+        }
+        String name = entry.getName().toLowerCase();
+        return name.endsWith(extension) && (name.startsWith(TEXTURES_DIR) || name.contains("/" + TEXTURES_DIR));
+    }
+
+    /**
+     * Lower-cased path from the pack root, dropping the pack's own folder if the archive has one
+     */
+    private static String packPath(String name) {
+        String lower = name.toLowerCase();
+        if (lower.startsWith(TEXTURES_DIR)) {
+            return lower;
+        }
+        int textures = lower.indexOf("/" + TEXTURES_DIR);
+        return textures != -1 ? lower.substring(textures + 1) : lower;
+    }
+
+    /**
+     * How the pack's JSON refers to a texture: its path from the pack root without extension
+     */
+    private static String textureKey(String name) {
+        return stripImageExtension(packPath(name));
+    }
+
+    private static String stripImageExtension(String path) {
+        return path.endsWith(".png") || path.endsWith(".tga") ? path.substring(0, path.length() - 4) : path;
+    }
+
+    private static int readShortLe(byte[] buffer, int offset) {
+        return (buffer[offset] & 0xff) | (buffer[offset + 1] & 0xff) << 8;
+    }
+
+    private static int readIntBe(byte[] buffer, int offset) {
+        return (buffer[offset] & 0xff) << 24 | (buffer[offset + 1] & 0xff) << 16
+                | (buffer[offset + 2] & 0xff) << 8 | (buffer[offset + 3] & 0xff);
+    }
+}
@@ -0,0 +1,190 @@
+package com.axion.launcher;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+
+/**
+ * Estimates how much memory the textures of each pack take once Minecraft
+ * has loaded them, without decoding any of them.
+ *
+ * Only the first bytes of each PNG and TGA are inflated: the IHDR chunk or
+ * the TGA header holds the size, which is all the estimate needs. Results
+ * are cached in footprints.db, so a pack is read again only after it changes.
+ */
+public class TextureFootprintIndex extends CachedFileIndex<TextureFootprintIndex.Footprint> {
+
+    private static final String TAG = "TextureFootprintIndex";
+    private static final String TEXTURES_DIR = "textures/";
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+    // Signature, IHDR length and type, width and height; TGA headers are shorter
+    private static final int HEADER_SIZE = 24;
+
+    public static class Footprint {
+        private final long bytes;
+        private final int textureCount;
+
+        Footprint(long bytes, int textureCount) {
+            this.bytes = bytes;
+            this.textureCount = textureCount;
+        }
+
+        /**
+         * Bytes the textures take decoded as 32-bit pixels
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        public int getTextureCount() {
+            return textureCount;
+        }
+    }
+
+    private static TextureFootprintIndex instance;
+
+    private TextureFootprintIndex(Context context) {
+        super(new FileCache<>(context, "footprints.db", 1, "footprints",
+                new String[]{"bytes INTEGER NOT NULL", "textures INTEGER NOT NULL"},
+                new FileCache.Codec<Footprint>() {
+                    @Override
+                    public Footprint read(Cursor cursor) {
+                        return new Footprint(cursor.getLong(0), cursor.getInt(1));
+                    }
+
+                    @Override
+                    public void write(Footprint footprint, ContentValues values) {
+                        values.put("bytes", footprint.getBytes());
+                        values.put("textures", footprint.getTextureCount());
+                    }
+                }));
+    }
+
+    public static synchronized TextureFootprintIndex getInstance(Context context) {
+        if (instance == null) {
+            instance = new TextureFootprintIndex(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * The footprint of an indexed pack, or null if it has not been read yet or could not be
+     */
+    public Footprint getFootprint(ResourceFile file) {
+        return get(file);
+    }
+
+    @Override
+    protected boolean accepts(ResourceFile file) {
+        return file.isMinecraftFile();
+    }
+
+    @Override
+    protected Footprint read(File archive) {
+        return measure(archive);
+    }
+
+    /**
+     * Adds up the texture sizes of an archive, including packs nested in a
+     * .mcaddon, or returns null if it cannot be read
+     */
+    static Footprint measure(File archive) {
+        long[] totals = new long[2];
+        try (RandomAccessFile file = new RandomAccessFile(archive, "r")) {
+            readDirectory(ZipCentralDirectory.open(file), totals, true);
+        } catch (IOException e) {
+            Log.w(TAG, "Could not measure textures of " + archive.getName(), e);
+            return null;
+        }
+        return new Footprint(totals[0], (int) totals[1]);
+    }
+
+    private static void readDirectory(ZipCentralDirectory zip, long[] totals, boolean outer) throws IOException {
+        byte[] header = new byte[HEADER_SIZE];
+        for (ZipCentralDirectory.Entry entry : zip.getEntries()) {
+            if (entry.isDirectory()) {
+                continue;
+            }
+            String name = entry.getName().toLowerCase();
+            if (isTexture(name)) {
+                // Closing the stream stops the inflater after the header
+                try (InputStream in = zip.openStream(entry)) {
+                    add(totals, name, header, readHeader(in, header));
+                }
+            } else if (outer && (name.endsWith(".mcpack") || name.endsWith(".zip"))) {
+                if (entry.getMethod() == ZipCentralDirectory.METHOD_STORED) {
+                    readDirectory(zip.openNested(entry), totals, false);
+                } else {
+                    readCompressedNested(zip, entry, totals);
+                }
+            }
+        }
+    }
+
+    private static void readCompressedNested(ZipCentralDirectory zip, ZipCentralDirectory.Entry entry,
+                                             long[] totals) throws IOException {
+        // Streaming would inflate every entry; spooled, only the texture headers are
+        File spooled = zip.spoolNested(entry);
+        try (RandomAccessFile nested = new RandomAccessFile(spooled, "r")) {
+            readDirectory(ZipCentralDirectory.open(nested), totals, false);
+        } finally {
+            spooled.delete();
+        }
+    }
+
+    private static int readHeader(InputStream in, byte[] header) throws IOException {
+        int length = 0;
+        while (length < header.length) {
+            int read = in.read(header, length, header.length - length);
+            if (read == -1) {
+                break;
+            }
+            length += read;
+        }
+        return length;
+    }
+
+    /**
+     * Adds one texture's decoded size; headers that don't parse count as nothing
+     */
+    private static void add(long[] totals, String name, byte[] header, int length) {
+        long width;
+        long height;
+        if (name.endsWith(".png")) {
+            if (length < HEADER_SIZE) {
+                return;
+            }
+            for (int i = 0; i < PNG_SIGNATURE.length; i++) {
+                if (header[i] != PNG_SIGNATURE[i]) {
+                    return;
+                }
+            }
+            width = readIntBe(header, 16) & 0xffffffffL;
+            height = readIntBe(header, 20) & 0xffffffffL;
+        } else {
+            if (length < 18) {
+                return;
+            }
+            width = (header[12] & 0xff) | (header[13] & 0xff) << 8;
+            height = (header[14] & 0xff) | (header[15] & 0xff) << 8;
+        }
+        totals[0] += width * height * 4;
+        totals[1]++;
+    }
+
+    private static boolean isTexture(String lowerName) {
+        return (lowerName.endsWith(".png") || lowerName.endsWith(".tga"))
+                && (lowerName.startsWith(TEXTURES_DIR) || lowerName.contains("/" + TEXTURES_DIR));
+    }
+
+    private static int readIntBe(byte[] buffer, int offset) {
+        return (buffer[offset] & 0xff) << 24 | (buffer[offset + 1] & 0xff) << 16
+                | (buffer[offset + 2] & 0xff) << 8 | (buffer[offset + 3] & 0xff);
+    }
+}
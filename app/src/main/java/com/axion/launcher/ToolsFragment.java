@@ -1,19 +1,26 @@
 package com.axion.launcher;
 
 import android.os.Bundle;
+import android.text.format.Formatter;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.appcompat.app.AlertDialog;
 import androidx.fragment.app.Fragment;
 
 import com.google.android.material.button.MaterialButton;
+import com.google.android.material.dialog.MaterialAlertDialogBuilder;
+
+import java.util.List;
 
 public class ToolsFragment extends Fragment {
 
     private MaterialButton chunkbaseButton;
+    private MaterialButton duplicatesButton;
+    private MaterialButton optimizerButton;
 
     @Nullable
     @Override
@@ -26,6 +33,8 @@ public class ToolsFragment extends Fragment {
         super.onViewCreated(view, savedInstanceState);
         
         chunkbaseButton = view.findViewById(R.id.chunkbase_button);
+        duplicatesButton = view.findViewById(R.id.duplicates_button);
+        optimizerButton = view.findViewById(R.id.optimizer_button);
         
         setupToolButtons();
     }
@@ -39,5 +48,119 @@ public class ToolsFragment extends Fragment {
                 .addToBackStack(null)
                 .commit();
         });
+
+        duplicatesButton.setOnClickListener(v -> {
+            duplicatesButton.setEnabled(false);
+            DuplicateFinder.getInstance(requireContext()).find(groups -> {
+                if (getView() == null) {
+                    return;
+                }
+                duplicatesButton.setEnabled(true);
+                showDuplicates(groups);
+            });
+        });
+
+        optimizerButton.setOnClickListener(v -> new MaterialAlertDialogBuilder(requireContext())
+            .setTitle("Optimize Packs")
+            .setMessage("Every pack is recompressed in the background. Images and "
+                + "files stay exactly the same; only the space they take shrinks.")
+            .setPositiveButton("Optimize", (dialog, which) -> optimizeAll())
+            .setNegativeButton("Cancel", (dialog, which) -> dialog.dismiss())
+            .show());
+    }
+
+    private void showDuplicates(List<DuplicateFinder.DuplicateGroup> groups) {
+        if (groups.isEmpty()) {
+            new MaterialAlertDialogBuilder(requireContext())
+                .setTitle("No Duplicates")
+                .setMessage("Every resource file is stored only once.")
+                .setPositiveButton("OK", (dialog, which) -> dialog.dismiss())
+                .show();
+            return;
+        }
+
+        int copies = 0;
+        StringBuilder message = new StringBuilder();
+        for (DuplicateFinder.DuplicateGroup group : groups) {
+            copies += group.getExtraCopies().size();
+        }
+        String wasted = Formatter.formatShortFileSize(requireContext(), DuplicateFinder.getWastedBytes(groups));
+        message.append(copies).append(" extra cop").append(copies == 1 ? "y" : "ies")
+            .append(" found, using ").append(wasted).append(".\n");
+        for (DuplicateFinder.DuplicateGroup group : groups) {
+            message.append("\n• ").append(group.getKept().getName())
+                .append(" (").append(group.getExtraCopies().size() + 1).append("×)");
+        }
+        message.append("\n\nThe copy with the plainest name is kept.");
+
+        new MaterialAlertDialogBuilder(requireContext())
+            .setTitle("Duplicates Found")
+            .setMessage(message.toString())
+            .setPositiveButton("Free " + wasted, (dialog, which) -> reclaim(groups))
+            .setNegativeButton("Cancel", (dialog, which) -> dialog.dismiss())
+            .show();
+    }
+
+    private void reclaim(List<DuplicateFinder.DuplicateGroup> groups) {
+        DuplicateFinder.getInstance(requireContext()).reclaim(groups, (deletedCount, bytesFreed) -> {
+            if (getView() == null) {
+                return;
+            }
+            new MaterialAlertDialogBuilder(requireContext())
+                .setTitle("Space Reclaimed")
+                .setMessage("Deleted " + deletedCount + " duplicate file(s), freeing "
+                    + Formatter.formatShortFileSize(requireContext(), bytesFreed) + ".")
+                .setPositiveButton("OK", (dialog, which) -> dialog.dismiss())
+                .show();
+        });
+    }
+
+    private void optimizeAll() {
+        optimizerButton.setEnabled(false);
+        AlertDialog progressDialog = new MaterialAlertDialogBuilder(requireContext())
+            .setTitle("Optimizing")
+            .setMessage("Looking for packs…")
+            .setCancelable(false)
+            .show();
+
+        PackOptimizer.getInstance(requireContext()).optimizeAll(new PackOptimizer.ProgressListener() {
+            @Override
+            public void onProgress(int done, int total) {
+                progressDialog.setMessage("Optimized " + done + " of " + total + " packs…");
+            }
+
+            @Override
+            public void onFinished(List<PackOptimizer.Result> results) {
+                progressDialog.dismiss();
+                if (getView() == null) {
+                    return;
+                }
+                optimizerButton.setEnabled(true);
+                showOptimizerResults(results);
+            }
+        });
+    }
+
+    private void showOptimizerResults(List<PackOptimizer.Result> results) {
+        long saved = PackOptimizer.getTotalBytesSaved(results);
+        StringBuilder message = new StringBuilder();
+        message.append(results.size()).append(" pack").append(results.size() == 1 ? "" : "s")
+            .append(" checked, ").append(Formatter.formatShortFileSize(requireContext(), saved))
+            .append(" saved.\n");
+        for (PackOptimizer.Result result : results) {
+            if (result.getError() != null) {
+                message.append("\n• ").append(result.getFile().getName())
+                    .append(": ").append(result.getError());
+            } else if (result.getBytesSaved() > 0) {
+                message.append("\n• ").append(result.getFile().getName()).append(" (−")
+                    .append(Formatter.formatShortFileSize(requireContext(), result.getBytesSaved())).append(")");
+            }
+        }
+
+        new MaterialAlertDialogBuilder(requireContext())
+            .setTitle(saved > 0 ? "Packs Optimized" : "Nothing to Optimize")
+            .setMessage(message.toString())
+            .setPositiveButton("OK", (dialog, which) -> dialog.dismiss())
+            .show();
     }
-}
\ No newline at end of file
+}
@@ -4,10 +4,11 @@ import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.view.animation.AnimationUtils;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.google.android.material.button.MaterialButton;
@@ -19,7 +20,23 @@ public class VersionAdapter extends RecyclerView.Adapter<VersionAdapter.VersionV
     private static final String TAG = "VersionAdapter";
     private static final boolean DEBUG = false; // Set to true for debug logging
     
-    private List<MCPEVersion> versions;
+    private static final DiffUtil.ItemCallback<MCPEVersion> DIFF_CALLBACK = new DiffUtil.ItemCallback<MCPEVersion>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull MCPEVersion oldItem, @NonNull MCPEVersion newItem) {
+            return oldItem.getKey().equals(newItem.getKey());
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull MCPEVersion oldItem, @NonNull MCPEVersion newItem) {
+            return oldItem.isInstalled() == newItem.isInstalled()
+                    && oldItem.getType().equals(newItem.getType())
+                    && oldItem.getDescription().equals(newItem.getDescription());
+        }
+    };
+
+    // Diffs run on a background thread; only changed rows are rebound
+    private final AsyncListDiffer<MCPEVersion> differ = new AsyncListDiffer<>(this, DIFF_CALLBACK);
+    private final RowAnimator rowAnimator = new RowAnimator();
     private OnVersionActionListener actionListener;
 
     public interface OnVersionActionListener {
@@ -27,8 +44,9 @@ public class VersionAdapter extends RecyclerView.Adapter<VersionAdapter.VersionV
     }
 
     public VersionAdapter(List<MCPEVersion> versions, OnVersionActionListener actionListener) {
-        this.versions = versions;
         this.actionListener = actionListener;
+        setHasStableIds(true);
+        differ.submitList(versions);
     }
 
     @NonNull
@@ -41,33 +59,67 @@ public class VersionAdapter extends RecyclerView.Adapter<VersionAdapter.VersionV
 
     @Override
     public void onBindViewHolder(@NonNull VersionViewHolder holder, int position) {
-        MCPEVersion version = versions.get(position);
+        MCPEVersion version = differ.getCurrentList().get(position);
         holder.bind(version);
         
-        // Add fast staggered slide-in-left animation
-        holder.itemView.setAlpha(0f);
-        holder.itemView.setTranslationX(-50f);
-        
-        holder.itemView.animate()
-                .alpha(1f)
-                .translationX(0f)
-                .setDuration(150)
-                .setStartDelay(position * 15) // Much faster staggered delay
-                .setInterpolator(new android.view.animation.AccelerateDecelerateInterpolator())
-                .start();
+        // Slide in on first appearance only; recycled rows are shown as-is
+        rowAnimator.onBind(holder.itemView, holder.getItemId());
+    }
+
+    @Override
+    public void onAttachedToRecyclerView(@NonNull RecyclerView recyclerView) {
+        super.onAttachedToRecyclerView(recyclerView);
+        rowAnimator.attach(recyclerView);
+    }
+
+    @Override
+    public void onDetachedFromRecyclerView(@NonNull RecyclerView recyclerView) {
+        super.onDetachedFromRecyclerView(recyclerView);
+        rowAnimator.detach();
+    }
+
+    @Override
+    public void onViewRecycled(@NonNull VersionViewHolder holder) {
+        super.onViewRecycled(holder);
+        holder.itemView.animate().cancel();
     }
 
     @Override
     public int getItemCount() {
-        return versions.size();
+        return differ.getCurrentList().size();
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return StableIds.of(differ.getCurrentList().get(position).getKey());
     }
 
+    /**
+     * Submits a new list; the list must not be modified afterwards.
+     */
     public void updateVersions(List<MCPEVersion> newVersions) {
-        this.versions = newVersions;
         if (DEBUG) {
             Log.d(TAG, "Adapter: Updating with " + newVersions.size() + " versions");
         }
-        notifyDataSetChanged();
+        differ.submitList(newVersions);
+    }
+
+    /**
+     * Lets the rows of the next submitted list play their entry animation
+     */
+    public void resetAnimations() {
+        rowAnimator.reset();
+    }
+
+    /**
+     * Rebinds a version that was mutated in place, which a diff against
+     * the same instance cannot detect.
+     */
+    public void notifyVersionChanged(MCPEVersion version) {
+        int position = differ.getCurrentList().indexOf(version);
+        if (position != -1) {
+            notifyItemChanged(position);
+        }
     }
 
     class VersionViewHolder extends RecyclerView.ViewHolder {
@@ -3,10 +3,13 @@ package com.axion.launcher;
 import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.os.Bundle;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.EditText;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
@@ -26,10 +29,13 @@ public class VersionManagerFragment extends Fragment {
     private static final boolean DEBUG = false; // Set to true for debug logging
     
     private TabLayout tabLayout;
+    private EditText searchInput;
     private RecyclerView recyclerView;
     private VersionAdapter versionAdapter;
     private List<MCPEVersion> allVersions;
+    private VersionSearchIndex searchIndex;
     private String currentFilter = "release";
+    private CharSequence currentQuery = "";
 
     @Nullable
     @Override
@@ -42,9 +48,11 @@ public class VersionManagerFragment extends Fragment {
         super.onViewCreated(view, savedInstanceState);
         
         tabLayout = view.findViewById(R.id.tab_layout);
+        searchInput = view.findViewById(R.id.version_search_input);
         recyclerView = view.findViewById(R.id.versions_recycler_view);
         
         setupTabLayout();
+        setupSearch();
         setupRecyclerView();
         loadVersions();
     }
@@ -68,6 +76,9 @@ public class VersionManagerFragment extends Fragment {
                         currentFilter = "preview";
                         break;
                 }
+                if (versionAdapter != null) {
+                    versionAdapter.resetAnimations();
+                }
                 filterVersions();
             }
 
@@ -82,6 +93,22 @@ public class VersionManagerFragment extends Fragment {
         tabLayout.selectTab(tabLayout.getTabAt(0));
     }
     
+    private void setupSearch() {
+        searchInput.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {}
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {}
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                currentQuery = s;
+                filterVersions();
+            }
+        });
+    }
+    
     private void setupRecyclerView() {
         recyclerView.setLayoutManager(new LinearLayoutManager(requireContext()));
         versionAdapter = new VersionAdapter(new ArrayList<>(), this::onVersionAction);
@@ -102,7 +129,6 @@ public class VersionManagerFragment extends Fragment {
         allVersions.add(new MCPEVersion("1.20.31", "Release", "Stable version", "release", false));
         allVersions.add(new MCPEVersion("1.20.32", "Release", "Stable version", "release", false));
         allVersions.add(new MCPEVersion("1.20.40", "Release", "Stable version", "release", false));
-        allVersions.add(new MCPEVersion("1.20.40", "Release", "Stable version", "release", false));
         allVersions.add(new MCPEVersion("1.20.50", "Release", "Stable version", "release", false));
         allVersions.add(new MCPEVersion("1.20.60", "Release", "Stable version", "release", false));
         allVersions.add(new MCPEVersion("1.20.70", "Release", "Stable version", "release", false));
@@ -146,6 +172,12 @@ public class VersionManagerFragment extends Fragment {
         // Check which version is installed
         checkInstalledVersion();
         
+        // Build the search index once; every keystroke afterwards is a trie lookup
+        searchIndex = new VersionSearchIndex(allVersions);
+        
+        // Let the Resource Manager map pack engine versions onto this catalog
+        PackCompatibilityIndex.getInstance().setCatalog(allVersions);
+        
         // Debug: Log loaded versions (only in debug builds)
         if (DEBUG) {
             Log.d(TAG, "Loaded " + allVersions.size() + " versions");
@@ -266,31 +298,12 @@ public class VersionManagerFragment extends Fragment {
     }
     
     private void filterVersions() {
-        List<MCPEVersion> filteredVersions = new ArrayList<>();
-        for (MCPEVersion version : allVersions) {
-            if (version.getFilterType().equals(currentFilter)) {
-                filteredVersions.add(version);
-            }
+        if (searchIndex == null || versionAdapter == null) {
+            return;
         }
         
-        // Sort versions in descending order (latest to oldest)
-        filteredVersions.sort((v1, v2) -> {
-            String[] parts1 = v1.getVersionNumber().split("\\.");
-            String[] parts2 = v2.getVersionNumber().split("\\.");
-            
-            int maxLength = Math.max(parts1.length, parts2.length);
-            
-            for (int i = 0; i < maxLength; i++) {
-                int num1 = i < parts1.length ? Integer.parseInt(parts1[i]) : 0;
-                int num2 = i < parts2.length ? Integer.parseInt(parts2[i]) : 0;
-                
-                if (num1 != num2) {
-                    // Reverse comparison for descending order (latest first)
-                    return Integer.compare(num2, num1);
-                }
-            }
-            return 0;
-        });
+        // Results come back sorted latest first and are cached per filter and query
+        List<MCPEVersion> filteredVersions = searchIndex.search(currentFilter, currentQuery);
         
         // Debug: Log filtered and sorted versions (only in debug builds)
         if (DEBUG) {
@@ -311,7 +324,7 @@ public class VersionManagerFragment extends Fragment {
             Toast.makeText(requireContext(), "Deleting " + version.getVersionNumber(), Toast.LENGTH_SHORT).show();
             // Here you would implement actual deletion logic
             version.setInstalled(false);
-            filterVersions();
+            versionAdapter.notifyVersionChanged(version);
         } else if ("select".equals(action)) {
             // Update the selected version in the dashboard
             if (getActivity() instanceof MainActivity) {
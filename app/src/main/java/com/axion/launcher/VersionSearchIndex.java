@@ -0,0 +1,250 @@
+package com.axion.launcher;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Prefix index over the version catalog. Built once per catalog; each word
+ * of a query is a walk down a character trie whose nodes already hold the
+ * matching catalog positions, and the positions of several words are
+ * intersected in place. The resulting lists are cached per filter and query.
+ *
+ * Indexed tokens are the version number and every dot-separated tail of it
+ * ("1.21.100", "21.100", "100"), the type and the description words.
+ */
+public class VersionSearchIndex {
+
+    private static final int MAX_CACHED_QUERIES = 64;
+
+    private final List<MCPEVersion> catalog;
+    private final Node root = new Node();
+
+    private final Map<String, List<MCPEVersion>> cache =
+            new LinkedHashMap<String, List<MCPEVersion>>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, List<MCPEVersion>> eldest) {
+                    return size() > MAX_CACHED_QUERIES;
+                }
+            };
+    // Scratch for searches, guarded by this
+    private final StringBuilder keyBuilder = new StringBuilder();
+    private Node[] queryNodes = new Node[4];
+
+    public VersionSearchIndex(List<MCPEVersion> versions) {
+        // Postings are stored in catalog order, so sorting once here keeps every result sorted
+        List<MCPEVersion> sorted = new ArrayList<>(versions);
+        Collections.sort(sorted, (v1, v2) -> compareVersionsDescending(v1.getVersionNumber(), v2.getVersionNumber()));
+        catalog = Collections.unmodifiableList(sorted);
+
+        for (int i = 0; i < catalog.size(); i++) {
+            MCPEVersion version = catalog.get(i);
+            String number = version.getVersionNumber().toLowerCase(Locale.ROOT);
+            insert(number, i);
+            for (int dot = number.indexOf('.'); dot != -1; dot = number.indexOf('.', dot + 1)) {
+                insert(number.substring(dot + 1), i);
+            }
+            insertWords(version.getType(), i);
+            insertWords(version.getDescription(), i);
+        }
+        root.freeze();
+    }
+
+    public List<MCPEVersion> getCatalog() {
+        return catalog;
+    }
+
+    /**
+     * Returns versions of the given filter type matching every word of the
+     * query, each word as the start of one of their tokens, latest first.
+     * The returned list is shared and must not be modified.
+     */
+    public synchronized List<MCPEVersion> search(String filterType, CharSequence query) {
+        // The key is the only string built per keystroke
+        keyBuilder.setLength(0);
+        keyBuilder.append(filterType).append('\u0000');
+        int start = 0;
+        int end = query.length();
+        while (start < end && Character.isWhitespace(query.charAt(start))) {
+            start++;
+        }
+        while (end > start && Character.isWhitespace(query.charAt(end - 1))) {
+            end--;
+        }
+        for (int i = start; i < end; i++) {
+            keyBuilder.append(Character.toLowerCase(query.charAt(i)));
+        }
+        String cacheKey = keyBuilder.toString();
+        List<MCPEVersion> cached = cache.get(cacheKey);
+        if (cached != null) {
+            return cached;
+        }
+
+        List<MCPEVersion> results = new ArrayList<>();
+        match(query, filterType, results);
+        List<MCPEVersion> frozen = Collections.unmodifiableList(results);
+        cache.put(cacheKey, frozen);
+        return frozen;
+    }
+
+    /**
+     * Adds the entries of the filter type matching every word of the query to
+     * results. Words are split on whitespace, as type and description are
+     * when indexed. Postings are in catalog order, so the shortest list is
+     * walked and the others are binary searched.
+     */
+    private void match(CharSequence query, String filterType, List<MCPEVersion> results) {
+        int words = 0;
+        int length = query.length();
+        for (int i = 0; i < length; ) {
+            if (Character.isWhitespace(query.charAt(i))) {
+                i++;
+                continue;
+            }
+            Node node = root;
+            for (; i < length && !Character.isWhitespace(query.charAt(i)); i++) {
+                if (node != null) {
+                    node = node.child(Character.toLowerCase(query.charAt(i)));
+                }
+            }
+            if (node == null) {
+                return;
+            }
+            if (words == queryNodes.length) {
+                queryNodes = Arrays.copyOf(queryNodes, words * 2);
+            }
+            queryNodes[words++] = node;
+        }
+
+        if (words == 0) {
+            for (MCPEVersion version : catalog) {
+                if (version.getFilterType().equals(filterType)) {
+                    results.add(version);
+                }
+            }
+            return;
+        }
+
+        Node shortest = queryNodes[0];
+        for (int w = 1; w < words; w++) {
+            if (queryNodes[w].postingCount < shortest.postingCount) {
+                shortest = queryNodes[w];
+            }
+        }
+        for (int i = 0; i < shortest.postingCount; i++) {
+            int position = shortest.postings[i];
+            if (!matchesAll(position, words)) {
+                continue;
+            }
+            MCPEVersion version = catalog.get(position);
+            if (version.getFilterType().equals(filterType)) {
+                results.add(version);
+            }
+        }
+    }
+
+    private boolean matchesAll(int position, int words) {
+        for (int w = 0; w < words; w++) {
+            Node node = queryNodes[w];
+            if (Arrays.binarySearch(node.postings, 0, node.postingCount, position) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void insertWords(String text, int position) {
+        if (text == null) {
+            return;
+        }
+        for (String word : text.toLowerCase(Locale.ROOT).split("\\s+")) {
+            if (!word.isEmpty()) {
+                insert(word, position);
+            }
+        }
+    }
+
+    private void insert(String token, int position) {
+        Node node = root;
+        for (int i = 0; i < token.length(); i++) {
+            node = node.getOrAddChild(token.charAt(i));
+            node.addPosting(position);
+        }
+    }
+
+    /**
+     * Orders dotted version numbers latest first, comparing each part numerically
+     */
+    static int compareVersionsDescending(String version1, String version2) {
+        String[] parts1 = version1.split("\\.");
+        String[] parts2 = version2.split("\\.");
+        int maxLength = Math.max(parts1.length, parts2.length);
+        for (int i = 0; i < maxLength; i++) {
+            int num1 = i < parts1.length ? parsePart(parts1[i]) : 0;
+            int num2 = i < parts2.length ? parsePart(parts2[i]) : 0;
+            if (num1 != num2) {
+                return Integer.compare(num2, num1);
+            }
+        }
+        return 0;
+    }
+
+    private static int parsePart(String part) {
+        try {
+            return Integer.parseInt(part);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static final class Node {
+        private char[] keys = new char[0];
+        private Node[] children = new Node[0];
+        private int[] postings = new int[2];
+        private int postingCount;
+
+        Node child(char c) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == c) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        Node getOrAddChild(char c) {
+            Node existing = child(c);
+            if (existing != null) {
+                return existing;
+            }
+            Node node = new Node();
+            keys = Arrays.copyOf(keys, keys.length + 1);
+            children = Arrays.copyOf(children, children.length + 1);
+            keys[keys.length - 1] = c;
+            children[children.length - 1] = node;
+            return node;
+        }
+
+        void addPosting(int position) {
+            // Positions arrive in ascending order, so a repeat can only be the last entry
+            if (postingCount > 0 && postings[postingCount - 1] == position) {
+                return;
+            }
+            if (postingCount == postings.length) {
+                postings = Arrays.copyOf(postings, postingCount * 2);
+            }
+            postings[postingCount++] = position;
+        }
+
+        void freeze() {
+            postings = Arrays.copyOf(postings, postingCount);
+            for (Node child : children) {
+                child.freeze();
+            }
+        }
+    }
+}
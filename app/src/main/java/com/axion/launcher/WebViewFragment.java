@@ -1,7 +1,5 @@
 package com.axion.launcher;
 
-import android.app.DownloadManager;
-import android.content.Context;
 import android.content.Intent;
 import android.net.Uri;
 import android.os.Bundle;
@@ -25,9 +23,15 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
 
+import com.google.android.material.dialog.MaterialAlertDialogBuilder;
+import com.google.android.material.progressindicator.LinearProgressIndicator;
+
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 
-public class WebViewFragment extends Fragment {
+public class WebViewFragment extends Fragment
+        implements PackDownloader.Listener, DownloadPipeline.Listener {
 
     private static final String TAG = "WebViewFragment";
     
@@ -35,6 +39,8 @@ public class WebViewFragment extends Fragment {
     private ImageButton backButton;
     private ImageButton forwardButton;
     private ImageButton refreshButton;
+    private ImageButton downloadsButton;
+    private LinearProgressIndicator downloadProgress;
     
     private String initialUrl;
     private String title;
@@ -83,6 +89,8 @@ public class WebViewFragment extends Fragment {
         backButton = view.findViewById(R.id.back_button);
         forwardButton = view.findViewById(R.id.forward_button);
         refreshButton = view.findViewById(R.id.refresh_button);
+        downloadsButton = view.findViewById(R.id.downloads_button);
+        downloadProgress = view.findViewById(R.id.download_progress);
         
         setupWebView();
         setupNavigationControls();
@@ -217,6 +225,8 @@ public class WebViewFragment extends Fragment {
         refreshButton.setOnClickListener(v -> {
             webView.reload();
         });
+
+        downloadsButton.setOnClickListener(v -> showDownloads());
     }
 
     private void setupDownloadListener() {
@@ -224,28 +234,13 @@ public class WebViewFragment extends Fragment {
             @Override
             public void onDownloadStart(String url, String userAgent, String contentDisposition, String mimetype, long contentLength) {
                 try {
-                    DownloadManager.Request request = new DownloadManager.Request(Uri.parse(url));
-                    request.setMimeType(mimetype);
-                    
-                    // Set headers
-                    request.addRequestHeader("User-Agent", userAgent);
-                    
                     // Create custom download directory based on section
                     String downloadDir = createCustomDownloadDirectory();
                     String fileName = URLUtil.guessFileName(url, contentDisposition, mimetype);
                     
-                    // Set destination to custom directory
+                    // Downloaded in the app, then checked and listed by the pipeline
                     File downloadFile = new File(downloadDir, fileName);
-                    request.setDestinationUri(Uri.fromFile(downloadFile));
-                    
-                    // Set notification
-                    request.setNotificationVisibility(DownloadManager.Request.VISIBILITY_VISIBLE_NOTIFY_COMPLETED);
-                    request.setTitle("Downloading " + fileName);
-                    request.setDescription("Downloading to " + allowedSection + " folder...");
-                    
-                    // Start download
-                    DownloadManager dm = (DownloadManager) requireContext().getSystemService(Context.DOWNLOAD_SERVICE);
-                    dm.enqueue(request);
+                    PackDownloader.getInstance(requireContext()).enqueue(url, userAgent, downloadFile);
                     
                     Toast.makeText(requireContext(), 
                         "Download started: " + fileName + " to " + allowedSection + " folder", 
@@ -257,12 +252,148 @@ public class WebViewFragment extends Fragment {
                 }
             }
         });
+        DownloadPipeline.getInstance(requireContext()).addListener(this);
+        // Delivers the downloads already running and every change after that
+        PackDownloader.getInstance(requireContext()).subscribe(this);
+    }
+
+    @Override
+    public void onDownloadChanged(PackDownloader.Download download) {
+        if (downloadProgress == null || !isInSection(download)) {
+            return;
+        }
+        updateDownloadProgress();
+        downloadsButton.setVisibility(getSectionDownloads().isEmpty() ? View.GONE : View.VISIBLE);
+        String name = download.getDestination().getName();
+        if (download.getState() == PackDownloader.STATE_FAILED) {
+            Log.w(TAG, "Download of " + download.getUrl() + " failed: " + download.getError());
+            Toast.makeText(requireContext(), "Download of " + name + " failed: " + download.getError(),
+                Toast.LENGTH_LONG).show();
+        }
+    }
+
+    @Override
+    public void onDownloadProcessed(DownloadPipeline.Result result) {
+        if (downloadProgress == null || !allowedSection.equals(result.getRequestedSection())) {
+            return;
+        }
+        ResourceFile file = result.getFile();
+        String message;
+        if (file == null) {
+            message = "Could not save " + result.getDownloadedName() + ": " + result.getProblem();
+        } else if (result.getProblem() != null) {
+            message = file.getName() + " was saved to " + file.getSection() + ", but it may not work: "
+                + result.getProblem();
+        } else {
+            message = "Downloaded " + file.getName() + " to " + file.getSection();
+        }
+        Toast.makeText(requireContext(), message,
+            result.getProblem() != null ? Toast.LENGTH_LONG : Toast.LENGTH_SHORT).show();
+    }
+
+    /**
+     * One bar for all running downloads of this section; indeterminate while a size is unknown
+     */
+    private void updateDownloadProgress() {
+        long downloaded = 0;
+        long total = 0;
+        boolean sizeKnown = true;
+        boolean running = false;
+        for (PackDownloader.Download download : getSectionDownloads()) {
+            if (download.isFinished() || download.getState() == PackDownloader.STATE_PAUSED) {
+                continue;
+            }
+            running = true;
+            downloaded += download.getDownloadedBytes();
+            total += Math.max(0, download.getTotalBytes());
+            sizeKnown &= download.getTotalBytes() > 0;
+        }
+        if (!running) {
+            downloadProgress.setVisibility(View.GONE);
+            return;
+        }
+        if (downloadProgress.isIndeterminate() != !sizeKnown) {
+            // The mode can only change while the bar is hidden
+            downloadProgress.setVisibility(View.GONE);
+            downloadProgress.setIndeterminate(!sizeKnown);
+        }
+        if (sizeKnown) {
+            downloadProgress.setProgressCompat((int) (downloaded * 100 / total), true);
+        }
+        downloadProgress.setVisibility(View.VISIBLE);
+    }
+
+    private List<PackDownloader.Download> getSectionDownloads() {
+        List<PackDownloader.Download> downloads = new ArrayList<>();
+        for (PackDownloader.Download download : PackDownloader.getInstance(requireContext()).getDownloads()) {
+            if (isInSection(download)) {
+                downloads.add(download);
+            }
+        }
+        return downloads;
+    }
+
+    /**
+     * Lists this section's downloads; picking one offers to pause, resume or cancel it
+     */
+    private void showDownloads() {
+        List<PackDownloader.Download> downloads = getSectionDownloads();
+        if (downloads.isEmpty()) {
+            return;
+        }
+        String[] labels = new String[downloads.size()];
+        for (int i = 0; i < labels.length; i++) {
+            PackDownloader.Download download = downloads.get(i);
+            labels[i] = download.getDestination().getName() + "\n" + describe(download);
+        }
+        new MaterialAlertDialogBuilder(requireContext())
+            .setTitle("Downloads")
+            .setItems(labels, (dialog, which) -> showDownloadOptions(downloads.get(which)))
+            .setNegativeButton("Close", null)
+            .show();
+    }
+
+    private void showDownloadOptions(PackDownloader.Download download) {
+        PackDownloader downloader = PackDownloader.getInstance(requireContext());
+        boolean stopped = download.getState() == PackDownloader.STATE_PAUSED
+            || download.getState() == PackDownloader.STATE_FAILED;
+        MaterialAlertDialogBuilder builder = new MaterialAlertDialogBuilder(requireContext())
+            .setTitle(download.getDestination().getName())
+            .setMessage(describe(download))
+            .setNegativeButton("Cancel download", (dialog, which) -> downloader.cancel(download));
+        if (stopped) {
+            builder.setPositiveButton("Resume", (dialog, which) -> downloader.resume(download));
+        } else if (!download.isFinished()) {
+            builder.setPositiveButton("Pause", (dialog, which) -> downloader.pause(download));
+        }
+        builder.show();
+    }
+
+    private static String describe(PackDownloader.Download download) {
+        String size = DisplayFormat.formatSize(download.getDownloadedBytes());
+        if (download.getTotalBytes() > 0) {
+            size += " of " + DisplayFormat.formatSize(download.getTotalBytes());
+        }
+        switch (download.getState()) {
+            case PackDownloader.STATE_QUEUED:
+                return "Waiting";
+            case PackDownloader.STATE_PAUSED:
+                return "Paused • " + size;
+            case PackDownloader.STATE_FAILED:
+                return "Failed: " + download.getError();
+            default:
+                return size;
+        }
+    }
+
+    private boolean isInSection(PackDownloader.Download download) {
+        File parent = download.getDestination().getParentFile();
+        return parent != null && parent.getName().equals(allowedSection);
     }
 
     private String createCustomDownloadDirectory() {
-        // Create the base directory structure in app's private external files
-        File baseDir = new File(requireContext().getExternalFilesDir(null), "resources");
-        File sectionDir = new File(baseDir, allowedSection);
+        // Downloads wait outside the section until the pipeline has checked them
+        File sectionDir = DownloadPipeline.getInstance(requireContext()).getIncomingDir(allowedSection);
         
         // Create directories if they don't exist
         if (!sectionDir.exists()) {
@@ -337,6 +468,9 @@ public class WebViewFragment extends Fragment {
 
     @Override
     public void onDestroyView() {
+        PackDownloader.getInstance(requireContext()).unsubscribe(this);
+        DownloadPipeline.getInstance(requireContext()).removeListener(this);
+        downloadProgress = null;
         if (webView != null) {
             webView.destroy();
         }
@@ -0,0 +1,262 @@
+package com.axion.launcher;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.util.Log;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+
+/**
+ * World name, seed, game mode and last-played time of the .mcworld and
+ * .mctemplate archives in the maps section.
+ *
+ * Only level.dat is inflated, and only up to the last of those tags: it is
+ * walked with NbtReader, which skips every other tag without building it.
+ * The unpacked size of the world comes from the central directory.
+ * Results are cached in worlds.db, so a world is read again only after it
+ * changes.
+ */
+public class WorldIndex extends CachedFileIndex<WorldIndex.WorldInfo> {
+
+    private static final String TAG = "WorldIndex";
+    private static final String LEVEL_NAME = "level.dat";
+    // Storage version and payload length in front of the NBT data
+    private static final int LEVEL_HEADER_SIZE = 8;
+
+    private static final NbtReader.Options LEVEL_TAGS =
+            NbtReader.Options.of("LevelName", "RandomSeed", "GameType", "LastPlayed");
+
+    public static class WorldInfo {
+        public static final int GAME_TYPE_UNKNOWN = -1;
+
+        private final String name;
+        private final long seed;
+        private final int gameType;
+        private final long lastPlayed;
+        private final long worldSize;
+        private final String summary;
+
+        WorldInfo(String name, long seed, int gameType, long lastPlayed, long worldSize) {
+            this.name = name;
+            this.seed = seed;
+            this.gameType = gameType;
+            this.lastPlayed = lastPlayed;
+            this.worldSize = worldSize;
+            this.summary = buildSummary();
+        }
+
+        /**
+         * Name shown in the world list, or null if level.dat has none
+         */
+        public String getName() {
+            return name;
+        }
+
+        public long getSeed() {
+            return seed;
+        }
+
+        /**
+         * Bedrock game type: 0 survival, 1 creative, 2 adventure, 6 spectator
+         */
+        public int getGameType() {
+            return gameType;
+        }
+
+        /**
+         * Milliseconds since the epoch, or 0 if the world was never played
+         */
+        public long getLastPlayed() {
+            return lastPlayed;
+        }
+
+        /**
+         * Bytes the world takes once unpacked
+         */
+        public long getWorldSize() {
+            return worldSize;
+        }
+
+        /**
+         * "&lt;name&gt; • &lt;mode&gt; • Seed &lt;seed&gt; • Played &lt;date&gt; • &lt;size&gt; unpacked", for the row
+         */
+        public String getSummary() {
+            return summary;
+        }
+
+        private String buildSummary() {
+            StringBuilder text = new StringBuilder();
+            if (name != null && !name.isEmpty()) {
+                text.append(PackManifest.stripFormatting(name)).append(" • ");
+            }
+            String mode = gameTypeLabel(gameType);
+            if (mode != null) {
+                text.append(mode).append(" • ");
+            }
+            text.append("Seed ").append(seed);
+            if (lastPlayed > 0) {
+                text.append(" • Played ").append(DisplayFormat.formatDate(lastPlayed));
+            }
+            text.append(" • ").append(DisplayFormat.formatSize(worldSize)).append(" unpacked");
+            return text.toString();
+        }
+
+        private static String gameTypeLabel(int gameType) {
+            switch (gameType) {
+                case 0:
+                    return "Survival";
+                case 1:
+                    return "Creative";
+                case 2:
+                    return "Adventure";
+                case 6:
+                    return "Spectator";
+                default:
+                    return null;
+            }
+        }
+    }
+
+    private static WorldIndex instance;
+
+    private WorldIndex(Context context) {
+        super(new FileCache<>(context, "worlds.db", 1, "worlds",
+                new String[]{"name TEXT", "seed INTEGER NOT NULL", "game_type INTEGER NOT NULL",
+                        "last_played INTEGER NOT NULL", "world_size INTEGER NOT NULL"},
+                new FileCache.Codec<WorldInfo>() {
+                    @Override
+                    public WorldInfo read(Cursor cursor) {
+                        return new WorldInfo(cursor.isNull(0) ? null : cursor.getString(0), cursor.getLong(1),
+                                cursor.getInt(2), cursor.getLong(3), cursor.getLong(4));
+                    }
+
+                    @Override
+                    public void write(WorldInfo world, ContentValues values) {
+                        values.put("name", world.getName());
+                        values.put("seed", world.getSeed());
+                        values.put("game_type", world.getGameType());
+                        values.put("last_played", world.getLastPlayed());
+                        values.put("world_size", world.getWorldSize());
+                    }
+                }));
+    }
+
+    public static synchronized WorldIndex getInstance(Context context) {
+        if (instance == null) {
+            instance = new WorldIndex(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * The world details of an indexed archive, or null if it has not been read yet or could not be
+     */
+    public WorldInfo getWorld(ResourceFile file) {
+        return get(file);
+    }
+
+    @Override
+    protected boolean accepts(ResourceFile file) {
+        return isWorldFile(file);
+    }
+
+    @Override
+    protected WorldInfo read(File archive) {
+        return readWorld(archive);
+    }
+
+    static boolean isWorldFile(ResourceFile file) {
+        String extension = file.getMinecraftExtension();
+        return extension.equals(".mcworld") || extension.equals(".mctemplate");
+    }
+
+    /**
+     * Reads the world details of an archive, or returns null if it has no
+     * readable level.dat
+     */
+    static WorldInfo readWorld(File archive) {
+        try (RandomAccessFile file = new RandomAccessFile(archive, "r")) {
+            ZipCentralDirectory zip = ZipCentralDirectory.open(file);
+            ZipCentralDirectory.Entry level = null;
+            int levelDepth = Integer.MAX_VALUE;
+            long worldSize = 0;
+            for (ZipCentralDirectory.Entry entry : zip.getEntries()) {
+                worldSize += entry.getSize();
+                String name = entry.getName();
+                if (!entry.isDirectory() && (name.equals(LEVEL_NAME) || name.endsWith("/" + LEVEL_NAME))) {
+                    // The world's own level.dat is the shallowest; worlds may be wrapped in one folder
+                    int depth = name.length() - name.replace("/", "").length();
+                    if (depth <= 1 && depth < levelDepth) {
+                        level = entry;
+                        levelDepth = depth;
+                    }
+                }
+            }
+            if (level == null) {
+                return null;
+            }
+            // Closing the stream stops the inflater after the last tag we need
+            try (InputStream in = zip.openStream(level)) {
+                return readLevel(in, worldSize);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Could not read world of " + archive.getName(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Walks level.dat until the name, seed, game type and last-played time
+     * are found; other tags are skipped unread
+     */
+    static WorldInfo readLevel(InputStream in, long worldSize) throws IOException {
+        for (int skipped = 0; skipped < LEVEL_HEADER_SIZE; skipped++) {
+            if (in.read() == -1) {
+                throw new EOFException("level.dat has no header");
+            }
+        }
+        NbtReader reader = new NbtReader(in);
+        if (reader.peek() != NbtReader.TAG_COMPOUND) {
+            throw new IOException("level.dat does not start with a compound");
+        }
+        reader.beginCompound();
+
+        String name = null;
+        long seed = 0;
+        int gameType = WorldInfo.GAME_TYPE_UNKNOWN;
+        long lastPlayed = 0;
+        int found = 0;
+        while (found < LEVEL_TAGS.names.length && reader.hasNext()) {
+            int tag = reader.selectName(LEVEL_TAGS);
+            int type = reader.peek();
+            if (tag == 0 && type == NbtReader.TAG_STRING) {
+                name = reader.nextString();
+            } else if (tag > 0 && isIntegral(type)) {
+                long value = reader.nextIntegral();
+                if (tag == 1) {
+                    seed = value;
+                } else if (tag == 2) {
+                    gameType = (int) value;
+                } else {
+                    // Stored in seconds
+                    lastPlayed = value * 1000;
+                }
+            } else {
+                reader.skipValue();
+                continue;
+            }
+            found++;
+        }
+        return new WorldInfo(name, seed, gameType, lastPlayed, worldSize);
+    }
+
+    private static boolean isIntegral(int type) {
+        return type == NbtReader.TAG_BYTE || type == NbtReader.TAG_SHORT
+                || type == NbtReader.TAG_INT || type == NbtReader.TAG_LONG;
+    }
+}
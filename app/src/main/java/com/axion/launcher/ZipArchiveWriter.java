@@ -0,0 +1,232 @@
+package com.axion.launcher;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.ZipException;
+
+/**
+ * Minimal ZIP writer for entries whose data is already in final form: whole
+ * files stored as-is, raw copies of another archive's entries and data the
+ * caller compressed itself. No ZIP64, so archives stay under 4 GB and 65535
+ * entries.
+ */
+class ZipArchiveWriter implements AutoCloseable {
+    private static final int LOC_SIGNATURE = 0x04034b50;
+    private static final int CEN_SIGNATURE = 0x02014b50;
+    private static final int EOCD_SIGNATURE = 0x06054b50;
+    private static final int LOC_HEADER_SIZE = 30;
+    private static final int VERSION = 20;
+    private static final int FLAG_DATA_DESCRIPTOR = 0x08;
+    static final int FLAG_UTF8 = 0x800;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final RandomAccessFile out;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private final List<byte[]> centralRecords = new ArrayList<>();
+    private final Set<String> names = new HashSet<>();
+
+    ZipArchiveWriter(File file) throws IOException {
+        out = new RandomAccessFile(file, "rw");
+        out.setLength(0);
+    }
+
+    /**
+     * Returns the name, numbered if an entry of that name was already handed out
+     */
+    String uniqueName(String name) {
+        String unique = name;
+        int dot = name.lastIndexOf('.');
+        for (int i = 2; !names.add(unique); i++) {
+            unique = dot > 0 ? name.substring(0, dot) + " (" + i + ")" + name.substring(dot) : name + " (" + i + ")";
+        }
+        return unique;
+    }
+
+    /**
+     * Stores a whole file; its CRC is computed while copying and patched into the header
+     */
+    void addFile(String name, File file) throws IOException {
+        addFile(name, file, toDosTime(file.lastModified()));
+    }
+
+    void addFile(String name, File file, int dosTime) throws IOException {
+        String entryName = uniqueName(name);
+        long headerOffset = out.getFilePointer();
+        byte[] nameBytes = entryName.getBytes(StandardCharsets.UTF_8);
+        writeLocalHeader(FLAG_UTF8, ZipCentralDirectory.METHOD_STORED, dosTime, 0, 0, 0, nameBytes);
+
+        CRC32 crc = new CRC32();
+        long size = 0;
+        try (InputStream in = new FileInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                crc.update(buffer, 0, read);
+                out.write(buffer, 0, read);
+                size += read;
+            }
+        }
+        checkLimit(size);
+        long end = out.getFilePointer();
+        out.seek(headerOffset + 14);
+        writeInt(crc.getValue());
+        writeInt(size);
+        writeInt(size);
+        out.seek(end);
+        addCentralRecord(FLAG_UTF8, ZipCentralDirectory.METHOD_STORED, dosTime, crc.getValue(), size, size,
+                headerOffset, nameBytes);
+    }
+
+    /**
+     * Copies an entry of another archive without inflating it
+     */
+    void addRawEntry(String name, ZipCentralDirectory zip, ZipCentralDirectory.Entry entry) throws IOException {
+        names.add(name);
+        long headerOffset = out.getFilePointer();
+        // Sizes go in the header, so a data descriptor would be redundant
+        int flags = (entry.getFlags() & ~FLAG_DATA_DESCRIPTOR) | FLAG_UTF8;
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        writeLocalHeader(flags, entry.getMethod(), entry.getDosTime(), entry.getCrc(),
+                entry.getCompressedSize(), entry.getSize(), nameBytes);
+        try (InputStream in = zip.openRaw(entry)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        }
+        addCentralRecord(flags, entry.getMethod(), entry.getDosTime(), entry.getCrc(),
+                entry.getCompressedSize(), entry.getSize(), headerOffset, nameBytes);
+    }
+
+    /**
+     * Writes an entry whose data was compressed by the caller
+     *
+     * @param data compressed bytes for METHOD_DEFLATED, the content itself for METHOD_STORED
+     */
+    void addEntry(String name, int flags, int method, int dosTime, long crc, byte[] data, int length,
+                  long size) throws IOException {
+        names.add(name);
+        long headerOffset = out.getFilePointer();
+        flags &= ~FLAG_DATA_DESCRIPTOR;
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        writeLocalHeader(flags, method, dosTime, crc, length, size, nameBytes);
+        out.write(data, 0, length);
+        addCentralRecord(flags, method, dosTime, crc, length, size, headerOffset, nameBytes);
+    }
+
+    void finish() throws IOException {
+        if (centralRecords.size() > 0xFFFF) {
+            throw new ZipException("Too many entries for a ZIP without ZIP64");
+        }
+        long centralOffset = out.getFilePointer();
+        for (byte[] record : centralRecords) {
+            out.write(record);
+        }
+        long centralSize = out.getFilePointer() - centralOffset;
+        checkLimit(centralOffset + centralSize);
+        writeInt(EOCD_SIGNATURE);
+        writeShort(0);
+        writeShort(0);
+        writeShort(centralRecords.size());
+        writeShort(centralRecords.size());
+        writeInt(centralSize);
+        writeInt(centralOffset);
+        writeShort(0);
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private void writeLocalHeader(int flags, int method, int dosTime, long crc, long compressedSize,
+                                  long size, byte[] nameBytes) throws IOException {
+        checkLimit(out.getFilePointer());
+        byte[] header = new byte[LOC_HEADER_SIZE + nameBytes.length];
+        putInt(header, 0, LOC_SIGNATURE);
+        putShort(header, 4, VERSION);
+        putShort(header, 6, flags);
+        putShort(header, 8, method);
+        putInt(header, 10, dosTime);
+        putInt(header, 14, crc);
+        putInt(header, 18, compressedSize);
+        putInt(header, 22, size);
+        putShort(header, 26, nameBytes.length);
+        putShort(header, 28, 0);
+        System.arraycopy(nameBytes, 0, header, LOC_HEADER_SIZE, nameBytes.length);
+        out.write(header);
+    }
+
+    private void addCentralRecord(int flags, int method, int dosTime, long crc, long compressedSize,
+                                  long size, long headerOffset, byte[] nameBytes) {
+        byte[] record = new byte[46 + nameBytes.length];
+        putInt(record, 0, CEN_SIGNATURE);
+        putShort(record, 4, VERSION);
+        putShort(record, 6, VERSION);
+        putShort(record, 8, flags);
+        putShort(record, 10, method);
+        putInt(record, 12, dosTime);
+        putInt(record, 16, crc);
+        putInt(record, 20, compressedSize);
+        putInt(record, 24, size);
+        putShort(record, 28, nameBytes.length);
+        // Extra, comment, disk number, internal and external attributes stay zero
+        putInt(record, 42, headerOffset);
+        System.arraycopy(nameBytes, 0, record, 46, nameBytes.length);
+        centralRecords.add(record);
+    }
+
+    private void writeInt(long value) throws IOException {
+        byte[] bytes = new byte[4];
+        putInt(bytes, 0, value);
+        out.write(bytes);
+    }
+
+    private void writeShort(int value) throws IOException {
+        byte[] bytes = new byte[2];
+        putShort(bytes, 0, value);
+        out.write(bytes);
+    }
+
+    private static void checkLimit(long value) throws ZipException {
+        if (value > 0xFFFFFFFFL) {
+            throw new ZipException("Archive would need ZIP64");
+        }
+    }
+
+    private static void putShort(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) value;
+        buffer[offset + 1] = (byte) (value >>> 8);
+    }
+
+    private static void putInt(byte[] buffer, int offset, long value) {
+        buffer[offset] = (byte) value;
+        buffer[offset + 1] = (byte) (value >>> 8);
+        buffer[offset + 2] = (byte) (value >>> 16);
+        buffer[offset + 3] = (byte) (value >>> 24);
+    }
+
+    private static int toDosTime(long millis) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(millis);
+        int year = calendar.get(Calendar.YEAR);
+        if (year < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+        return (year - 1980) << 25
+                | (calendar.get(Calendar.MONTH) + 1) << 21
+                | calendar.get(Calendar.DAY_OF_MONTH) << 16
+                | calendar.get(Calendar.HOUR_OF_DAY) << 11
+                | calendar.get(Calendar.MINUTE) << 5
+                | calendar.get(Calendar.SECOND) >> 1;
+    }
+}
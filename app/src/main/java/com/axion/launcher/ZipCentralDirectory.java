@@ -0,0 +1,343 @@
+package com.axion.launcher;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Random-access view of a ZIP archive built from its central directory.
+ *
+ * Listing an archive reads only the end record and the central directory;
+ * entry data is read on demand, so callers inflate just the entries they
+ * need. An archive can also be opened at an offset inside another file,
+ * which lets a STORED pack nested in a .mcaddon be read in place; a
+ * compressed one is inflated to a temp file first.
+ * ZIP64 archives are not supported; packs never come close to 4 GB.
+ */
+public class ZipCentralDirectory {
+
+    public static final int METHOD_STORED = 0;
+    public static final int METHOD_DEFLATED = 8;
+
+    private static final int EOCD_SIGNATURE = 0x06054b50;
+    private static final int CEN_SIGNATURE = 0x02014b50;
+    private static final int LOC_SIGNATURE = 0x04034b50;
+    private static final int EOCD_SIZE = 22;
+    private static final int CEN_HEADER_SIZE = 46;
+    private static final int LOC_HEADER_SIZE = 30;
+    private static final int MAX_COMMENT_SIZE = 0xFFFF;
+
+    public static class Entry {
+        private final String name;
+        private final int flags;
+        private final int method;
+        private final long crc;
+        private final long compressedSize;
+        private final long size;
+        private final long localHeaderOffset;
+        private final int dosTime;
+
+        Entry(String name, int flags, int method, long crc, long compressedSize, long size,
+              long localHeaderOffset, int dosTime) {
+            this.name = name;
+            this.flags = flags;
+            this.method = method;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localHeaderOffset = localHeaderOffset;
+            this.dosTime = dosTime;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getFlags() {
+            return flags;
+        }
+
+        public int getMethod() {
+            return method;
+        }
+
+        public long getCrc() {
+            return crc;
+        }
+
+        public long getCompressedSize() {
+            return compressedSize;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getLocalHeaderOffset() {
+            return localHeaderOffset;
+        }
+
+        /**
+         * Modification time and date in MS-DOS format, as stored in the archive
+         */
+        public int getDosTime() {
+            return dosTime;
+        }
+
+        public boolean isDirectory() {
+            return name.endsWith("/");
+        }
+    }
+
+    private final RandomAccessFile file;
+    private final long base;
+    private final long length;
+    private final List<Entry> entries;
+
+    private ZipCentralDirectory(RandomAccessFile file, long base, long length, List<Entry> entries) {
+        this.file = file;
+        this.base = base;
+        this.length = length;
+        this.entries = entries;
+    }
+
+    /**
+     * Reads the central directory of the archive occupying the whole file
+     */
+    public static ZipCentralDirectory open(RandomAccessFile file) throws IOException {
+        return open(file, 0, file.length());
+    }
+
+    /**
+     * Reads the central directory of an archive stored at [base, base + length) of the file
+     */
+    public static ZipCentralDirectory open(RandomAccessFile file, long base, long length) throws IOException {
+        if (length < EOCD_SIZE) {
+            throw new ZipException("Too short to be a ZIP archive");
+        }
+
+        // The end record sits in the last 22 bytes plus an optional comment
+        int tailSize = (int) Math.min(length, EOCD_SIZE + MAX_COMMENT_SIZE);
+        byte[] tail = new byte[tailSize];
+        readFully(file, base + length - tailSize, tail, 0, tailSize);
+        int eocd = -1;
+        for (int i = tailSize - EOCD_SIZE; i >= 0; i--) {
+            if (readInt(tail, i) == EOCD_SIGNATURE) {
+                eocd = i;
+                break;
+            }
+        }
+        if (eocd == -1) {
+            throw new ZipException("End of central directory not found");
+        }
+
+        int entryCount = readShort(tail, eocd + 10);
+        long cenSize = readInt(tail, eocd + 12) & 0xFFFFFFFFL;
+        long cenOffset = readInt(tail, eocd + 16) & 0xFFFFFFFFL;
+        if (cenOffset + cenSize > length) {
+            throw new ZipException("Central directory out of bounds");
+        }
+
+        byte[] cen = new byte[(int) cenSize];
+        readFully(file, base + cenOffset, cen, 0, cen.length);
+        List<Entry> entries = new ArrayList<>(entryCount);
+        int pos = 0;
+        for (int i = 0; i < entryCount; i++) {
+            if (pos + CEN_HEADER_SIZE > cen.length || readInt(cen, pos) != CEN_SIGNATURE) {
+                throw new ZipException("Bad central directory entry " + i);
+            }
+            int flags = readShort(cen, pos + 8);
+            int method = readShort(cen, pos + 10);
+            int dosTime = readInt(cen, pos + 12);
+            long crc = readInt(cen, pos + 16) & 0xFFFFFFFFL;
+            long compressedSize = readInt(cen, pos + 20) & 0xFFFFFFFFL;
+            long size = readInt(cen, pos + 24) & 0xFFFFFFFFL;
+            int nameLength = readShort(cen, pos + 28);
+            int extraLength = readShort(cen, pos + 30);
+            int commentLength = readShort(cen, pos + 32);
+            long localHeaderOffset = readInt(cen, pos + 42) & 0xFFFFFFFFL;
+            if (pos + CEN_HEADER_SIZE + nameLength > cen.length) {
+                throw new ZipException("Bad central directory entry " + i);
+            }
+            String name = new String(cen, pos + CEN_HEADER_SIZE, nameLength, StandardCharsets.UTF_8);
+            entries.add(new Entry(name, flags, method, crc, compressedSize, size, localHeaderOffset, dosTime));
+            pos += CEN_HEADER_SIZE + nameLength + extraLength + commentLength;
+        }
+        return new ZipCentralDirectory(file, base, length, Collections.unmodifiableList(entries));
+    }
+
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Finds an entry by exact name, or null
+     */
+    public Entry find(String name) {
+        for (Entry entry : entries) {
+            if (entry.name.equals(name)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Offset of the entry's data within the underlying file, past its local header
+     */
+    public long getDataOffset(Entry entry) throws IOException {
+        byte[] header = new byte[LOC_HEADER_SIZE];
+        readFully(file, base + entry.localHeaderOffset, header, 0, LOC_HEADER_SIZE);
+        if (readInt(header, 0) != LOC_SIGNATURE) {
+            throw new ZipException("Bad local header for " + entry.name);
+        }
+        long offset = base + entry.localHeaderOffset + LOC_HEADER_SIZE
+                + readShort(header, 26) + readShort(header, 28);
+        if (offset + entry.compressedSize > base + length) {
+            throw new ZipException("Entry data out of bounds: " + entry.name);
+        }
+        return offset;
+    }
+
+    /**
+     * Stream of the entry's bytes exactly as stored, without inflating
+     */
+    public InputStream openRaw(Entry entry) throws IOException {
+        return new RegionInputStream(file, getDataOffset(entry), entry.compressedSize);
+    }
+
+    /**
+     * Stream of the entry's uncompressed bytes; only this entry is inflated
+     */
+    public InputStream openStream(Entry entry) throws IOException {
+        InputStream raw = openRaw(entry);
+        switch (entry.method) {
+            case METHOD_STORED:
+                return raw;
+            case METHOD_DEFLATED:
+                // Raw inflate may ask for one byte past the data; feed it a dummy zero like ZipFile does
+                InputStream padded = new SequenceInputStream(raw, new ByteArrayInputStream(new byte[1]));
+                return new InflaterInputStream(padded, new Inflater(true), 8192) {
+                    @Override
+                    public void close() throws IOException {
+                        super.close();
+                        inf.end();
+                    }
+                };
+            default:
+                raw.close();
+                throw new ZipException("Unsupported compression method " + entry.method + " for " + entry.name);
+        }
+    }
+
+    /**
+     * Opens a STORED archive entry (e.g. a .mcpack inside a .mcaddon) in place
+     */
+    public ZipCentralDirectory openNested(Entry entry) throws IOException {
+        if (entry.method != METHOD_STORED) {
+            throw new ZipException("Nested archive is compressed: " + entry.name);
+        }
+        return open(file, getDataOffset(entry), entry.compressedSize);
+    }
+
+    /**
+     * Inflates a compressed nested archive into a temp file, so it can be
+     * opened by its central directory too. The caller deletes the file.
+     */
+    public File spoolNested(Entry entry) throws IOException {
+        File spooled = File.createTempFile("nested", ".zip");
+        try (InputStream in = openStream(entry); OutputStream out = new FileOutputStream(spooled)) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            spooled.delete();
+            throw e;
+        }
+        return spooled;
+    }
+
+    private static void readFully(RandomAccessFile file, long position, byte[] buffer, int offset, int length) throws IOException {
+        synchronized (file) {
+            file.seek(position);
+            file.readFully(buffer, offset, length);
+        }
+    }
+
+    private static int readShort(byte[] buffer, int offset) {
+        return (buffer[offset] & 0xFF) | (buffer[offset + 1] & 0xFF) << 8;
+    }
+
+    private static int readInt(byte[] buffer, int offset) {
+        return (buffer[offset] & 0xFF) | (buffer[offset + 1] & 0xFF) << 8
+                | (buffer[offset + 2] & 0xFF) << 16 | (buffer[offset + 3] & 0xFF) << 24;
+    }
+
+    /**
+     * Reads a byte range of a shared RandomAccessFile
+     */
+    private static class RegionInputStream extends InputStream {
+        private final RandomAccessFile file;
+        private long position;
+        private long remaining;
+
+        RegionInputStream(RandomAccessFile file, long position, long length) {
+            this.file = file;
+            this.position = position;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int toRead = (int) Math.min(length, remaining);
+            int read;
+            synchronized (file) {
+                file.seek(position);
+                read = file.read(buffer, offset, toRead);
+            }
+            if (read == -1) {
+                throw new EOFException("Unexpected end of archive");
+            }
+            position += read;
+            remaining -= read;
+            return read;
+        }
+
+        @Override
+        public long skip(long n) {
+            long skipped = Math.max(0, Math.min(n, remaining));
+            position += skipped;
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(remaining, Integer.MAX_VALUE);
+        }
+    }
+}
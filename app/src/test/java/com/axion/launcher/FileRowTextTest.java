@@ -0,0 +1,113 @@
+package com.axion.launcher;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Checks that rebinding resource rows reads precomputed text only.
+ */
+public class FileRowTextTest {
+
+    private Locale previousLocale;
+
+    @Before
+    public void setUp() {
+        previousLocale = Locale.getDefault();
+        Locale.setDefault(Locale.US);
+    }
+
+    @After
+    public void tearDown() {
+        Locale.setDefault(previousLocale);
+    }
+
+    @Test
+    public void details_showDateAndSize() {
+        ResourceFile file = new ResourceFile(new File("/resources/mods/pack.mcpack"), "mods", 1536, 0);
+        FileRowText rowText = new FileRowText();
+
+        String details = rowText.details(file, false, 0).toString();
+
+        assertTrue(details.startsWith("Downloaded on "));
+        assertTrue(details.endsWith(" • 1.5 KB"));
+    }
+
+    @Test
+    public void details_appendWarnings() {
+        PackManifest manifest = new PackManifest("Pack", null, "uuid", new int[]{1, 0, 0},
+                new int[]{1, 21, 0}, "resources");
+        ResourceFile file = new ResourceFile(new File("/resources/mods/pack.mcpack"), "mods", 3 * 1024 * 1024, 0)
+                .withPackInfo(manifest);
+        FileRowText rowText = new FileRowText();
+
+        String details = rowText.details(file, true, 2).toString();
+
+        assertTrue(details.endsWith(" • 3.0 MB • Requires 1.21.0+ • Missing 2 dependencies"));
+        assertEquals("Pack v1.0.0 • Resource pack", file.getPackInfoText());
+    }
+
+    @Test
+    public void rebinding_allocatesNothingAfterWarmUp() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        List<ResourceFile> files = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            ResourceFile file = new ResourceFile(new File("/resources/mods/pack" + i + ".mcaddon"), "mods",
+                    1000L * i, 1_700_000_000_000L + i * 86_400_000L);
+            if (i % 2 == 0) {
+                file = file.withPackInfo(new PackManifest("Pack " + i, null, "uuid-" + i, new int[]{1, 0, i},
+                        new int[]{1, 20, 0}, "data,resources"));
+            }
+            files.add(file);
+        }
+        FileRowText rowText = new FileRowText();
+
+        // Warm-up fills the warning cache and lets the JIT compile the bind path
+        long checksum = 0;
+        for (int i = 0; i < 2_000; i++) {
+            checksum += bindAll(rowText, files);
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        long overhead = threads.getThreadAllocatedBytes(threadId) - before;
+        before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 100; i++) {
+            checksum += bindAll(rowText, files);
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before - overhead;
+
+        assertNotEquals(0, checksum);
+        assertEquals("Bytes allocated while rebinding", 0, allocated);
+    }
+
+    /**
+     * Reads everything FileAdapter's bind reads, with a mix of plain and warned rows
+     */
+    private static long bindAll(FileRowText rowText, List<ResourceFile> files) {
+        long checksum = 0;
+        for (int i = 0; i < files.size(); i++) {
+            ResourceFile file = files.get(i);
+            CharSequence details = rowText.details(file, i % 3 == 0, i % 5 == 0 ? 1 : 0);
+            String packInfo = file.getPackInfoText();
+            checksum += file.getStableId() + file.getName().length() + details.length()
+                    + (packInfo != null ? packInfo.length() : 0)
+                    + file.getVersionKey().length() + (file.isMinecraftFile() ? 1 : 0);
+        }
+        return checksum;
+    }
+}
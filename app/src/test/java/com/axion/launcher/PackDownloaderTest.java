@@ -0,0 +1,444 @@
+package com.axion.launcher;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the downloader against a local HTTP server that drops connections,
+ * ignores ranges and changes files on request.
+ */
+public class PackDownloaderTest {
+
+    private static final int MB = 1024 * 1024;
+
+    private File dir;
+    private TestServer server;
+    private final List<PackDownloader> downloaders = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("downloads").toFile();
+        server = new TestServer();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        for (PackDownloader downloader : downloaders) {
+            downloader.shutdown();
+        }
+        server.close();
+        deleteRecursively(dir);
+    }
+
+    @Test
+    public void largeFile_downloadsInParallelRangesDespiteDroppedConnections() throws Exception {
+        server.content = randomBytes(6 * MB, 1);
+        server.cutsRemaining.set(3);
+        server.cutAfterBytes = 100 * 1024;
+        // Bodies wait for a second connection, so parallel ranges overlap however the threads are scheduled
+        server.holdBodies = new CountDownLatch(2);
+        PackDownloader downloader = newDownloader();
+        List<Long> progress = Collections.synchronizedList(new ArrayList<>());
+        downloader.subscribe(download -> {
+            if (download.getState() == PackDownloader.STATE_RUNNING) {
+                progress.add(download.getDownloadedBytes());
+            }
+        });
+
+        PackDownloader.Download download = awaitFinished(downloader,
+                downloader.enqueue(server.url(), "test", new File(dir, "pack.mcpack")));
+
+        assertEquals(download.getError(), PackDownloader.STATE_COMPLETED, download.getState());
+        assertArrayEquals(server.content, Files.readAllBytes(download.getFile().toPath()));
+        assertEquals(sha256(server.content), download.getSha256());
+        assertTrue("ranges should be fetched in parallel", server.maxActive.get() > 1);
+        for (int i = 1; i < progress.size(); i++) {
+            assertTrue("progress went backwards", progress.get(i) >= progress.get(i - 1));
+        }
+        assertEquals(6 * MB, download.getDownloadedBytes());
+    }
+
+    @Test
+    public void serverWithoutRanges_startsOverAfterDroppedConnection() throws Exception {
+        server.content = randomBytes(300 * 1024, 2);
+        server.ranges = false;
+        server.cutsRemaining.set(1);
+        server.cutAfterBytes = 50 * 1024;
+        PackDownloader downloader = newDownloader();
+
+        PackDownloader.Download download = awaitFinished(downloader,
+                downloader.enqueue(server.url(), "test", new File(dir, "pack.mcpack")));
+
+        assertEquals(download.getError(), PackDownloader.STATE_COMPLETED, download.getState());
+        assertArrayEquals(server.content, Files.readAllBytes(download.getFile().toPath()));
+        assertEquals(sha256(server.content), download.getSha256());
+        assertEquals(2, server.requests.get());
+    }
+
+    @Test
+    public void unknownLength_isReadToTheEnd() throws Exception {
+        server.content = randomBytes(200 * 1024, 3);
+        server.ranges = false;
+        server.announceLength = false;
+        PackDownloader downloader = newDownloader();
+
+        PackDownloader.Download download = awaitFinished(downloader,
+                downloader.enqueue(server.url(), "test", new File(dir, "pack.mcpack")));
+
+        assertEquals(download.getError(), PackDownloader.STATE_COMPLETED, download.getState());
+        assertArrayEquals(server.content, Files.readAllBytes(download.getFile().toPath()));
+        assertEquals(200 * 1024, download.getTotalBytes());
+    }
+
+    @Test
+    public void pausedDownload_staysPausedInNewDownloaderUntilResumed() throws Exception {
+        server.content = randomBytes(6 * MB, 4);
+        server.delayPerPieceMs = 2;
+        PackDownloader first = newDownloader();
+        File destination = new File(dir, "world.mcworld");
+        PackDownloader.Download paused = first.enqueue(server.url(), "test", destination);
+        awaitBytes(paused, MB);
+        first.pause(paused);
+        awaitState(paused, PackDownloader.STATE_PAUSED);
+        long before = paused.getDownloadedBytes();
+        first.shutdown();
+        server.delayPerPieceMs = 0;
+        server.rangeStarts.clear();
+        server.ifRangeRequests.set(0);
+        int requestsBefore = server.requests.get();
+
+        PackDownloader second = newDownloader();
+        second.restorePending();
+        assertEquals(1, second.getDownloads().size());
+        PackDownloader.Download restored = second.getDownloads().get(0);
+        assertEquals(PackDownloader.STATE_PAUSED, restored.getState());
+        assertEquals(before, restored.getDownloadedBytes());
+        assertEquals(0, server.requests.get() - requestsBefore);
+        assertTrue(second.resume(restored));
+        PackDownloader.Download resumed = awaitFinished(second, restored);
+
+        assertEquals(resumed.getError(), PackDownloader.STATE_COMPLETED, resumed.getState());
+        assertArrayEquals(server.content, Files.readAllBytes(resumed.getFile().toPath()));
+        assertEquals(sha256(server.content), resumed.getSha256());
+        assertTrue(second.getDownloads().isEmpty());
+        long fetchedAgain = 0;
+        for (long[] range : server.rangeStarts) {
+            fetchedAgain += range[1] - range[0];
+        }
+        assertEquals("only the missing bytes are fetched", 6 * MB - before, fetchedAgain);
+        assertTrue(server.ifRangeRequests.get() > 0);
+    }
+
+    @Test
+    public void interruptedDownload_continuesInNewDownloader() throws Exception {
+        server.content = randomBytes(6 * MB, 10);
+        server.delayPerPieceMs = 2;
+        PackDownloader first = newDownloader();
+        PackDownloader.Download interrupted = first.enqueue(server.url(), "test", new File(dir, "pack.mcpack"));
+        awaitBytes(interrupted, MB);
+        first.shutdown();
+        awaitState(interrupted, PackDownloader.STATE_PAUSED);
+        server.delayPerPieceMs = 0;
+
+        PackDownloader second = newDownloader();
+        second.restorePending();
+        PackDownloader.Download resumed = awaitFinished(second, second.getDownloads().get(0));
+
+        assertEquals(resumed.getError(), PackDownloader.STATE_COMPLETED, resumed.getState());
+        assertArrayEquals(server.content, Files.readAllBytes(resumed.getFile().toPath()));
+    }
+
+    @Test
+    public void fileChangedOnServer_startsOver() throws Exception {
+        server.content = randomBytes(6 * MB, 5);
+        server.delayPerPieceMs = 2;
+        PackDownloader first = newDownloader();
+        PackDownloader.Download paused = first.enqueue(server.url(), "test", new File(dir, "pack.mcaddon"));
+        awaitBytes(paused, MB);
+        first.pause(paused);
+        awaitState(paused, PackDownloader.STATE_PAUSED);
+        first.shutdown();
+        server.delayPerPieceMs = 0;
+        server.content = randomBytes(6 * MB, 6);
+        server.etag = "\"v2\"";
+
+        PackDownloader second = newDownloader();
+        second.restorePending();
+        PackDownloader.Download restored = second.getDownloads().get(0);
+        assertTrue(second.resume(restored));
+        PackDownloader.Download resumed = awaitFinished(second, restored);
+
+        assertEquals(resumed.getError(), PackDownloader.STATE_COMPLETED, resumed.getState());
+        assertArrayEquals(server.content, Files.readAllBytes(resumed.getFile().toPath()));
+        assertEquals(sha256(server.content), resumed.getSha256());
+    }
+
+    @Test
+    public void checksumMismatch_failsWithoutLeavingAFile() throws Exception {
+        server.content = randomBytes(100 * 1024, 7);
+        PackDownloader downloader = newDownloader();
+        File destination = new File(dir, "pack.mcpack");
+
+        PackDownloader.Download download = awaitFinished(downloader,
+                downloader.enqueue(server.url(), "test", destination, sha256(new byte[1])));
+
+        assertEquals(PackDownloader.STATE_FAILED, download.getState());
+        assertTrue(download.getError().startsWith("Checksum mismatch"));
+        assertFalse(destination.exists());
+        assertEquals(0, workFiles());
+    }
+
+    @Test
+    public void serverErrors_areRetriedButRefusalsAreNot() throws Exception {
+        server.content = randomBytes(10 * 1024, 8);
+        server.statusRemaining.set(2);
+        server.status = 503;
+        PackDownloader downloader = newDownloader();
+
+        PackDownloader.Download download = awaitFinished(downloader,
+                downloader.enqueue(server.url(), "test", new File(dir, "a.mcpack")));
+        assertEquals(download.getError(), PackDownloader.STATE_COMPLETED, download.getState());
+        assertEquals(3, server.requests.get());
+
+        server.requests.set(0);
+        server.statusRemaining.set(100);
+        server.status = 404;
+        download = awaitFinished(downloader, downloader.enqueue(server.url(), "test", new File(dir, "b.mcpack")));
+        assertEquals(PackDownloader.STATE_FAILED, download.getState());
+        assertEquals("Server answered 404", download.getError());
+        assertEquals(1, server.requests.get());
+        assertTrue("failed downloads stay listed", downloader.getDownloads().contains(download));
+    }
+
+    @Test
+    public void takenName_getsNumberedSuffix() throws Exception {
+        server.content = randomBytes(1024, 9);
+        File destination = new File(dir, "pack.mcpack.zip");
+        Files.write(destination.toPath(), new byte[]{1});
+        PackDownloader downloader = newDownloader();
+
+        PackDownloader.Download download = awaitFinished(downloader,
+                downloader.enqueue(server.url(), "test", destination));
+
+        assertEquals("pack (2).mcpack.zip", download.getFile().getName());
+        assertEquals(1, destination.length());
+    }
+
+    private PackDownloader newDownloader() {
+        PackDownloader downloader = new PackDownloader(new File(dir, ".downloads"), Runnable::run, 2, 4);
+        downloader.retryDelayMs = 10;
+        downloaders.add(downloader);
+        return downloader;
+    }
+
+    private static PackDownloader.Download awaitFinished(PackDownloader downloader,
+                                                         PackDownloader.Download download) throws Exception {
+        CountDownLatch finished = new CountDownLatch(1);
+        PackDownloader.Listener listener = changed -> {
+            if (changed == download && changed.isFinished()) {
+                finished.countDown();
+            }
+        };
+        downloader.subscribe(listener);
+        if (!download.isFinished()) {
+            assertTrue("download did not finish", finished.await(30, TimeUnit.SECONDS));
+        }
+        downloader.unsubscribe(listener);
+        return download;
+    }
+
+    private static void awaitBytes(PackDownloader.Download download, long bytes) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 30000;
+        while (download.getDownloadedBytes() < bytes) {
+            assertTrue("download made no progress", System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    private static void awaitState(PackDownloader.Download download, int state) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 30000;
+        while (download.getState() != state) {
+            assertTrue("download did not reach state " + state, System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    private int workFiles() {
+        String[] names = new File(dir, ".downloads").list();
+        return names != null ? names.length : 0;
+    }
+
+    private static byte[] randomBytes(int length, long seed) {
+        byte[] bytes = new byte[length];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static String sha256(byte[] bytes) throws Exception {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : MessageDigest.getInstance("SHA-256").digest(bytes)) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * One-request-per-connection HTTP server with switches for the faults under test
+     */
+    private static class TestServer {
+        final ServerSocket socket = new ServerSocket(0);
+        final ExecutorService handlers = Executors.newCachedThreadPool();
+        volatile byte[] content = new byte[0];
+        volatile String etag = "\"v1\"";
+        volatile boolean ranges = true;
+        volatile boolean announceLength = true;
+        volatile int delayPerPieceMs;
+        // When set, each body is held back until this many connections have sent their headers
+        volatile CountDownLatch holdBodies;
+        // The next responses are cut after this many body bytes
+        final AtomicInteger cutsRemaining = new AtomicInteger();
+        volatile int cutAfterBytes;
+        // The next requests are answered with this status
+        final AtomicInteger statusRemaining = new AtomicInteger();
+        volatile int status;
+        final AtomicInteger requests = new AtomicInteger();
+        final AtomicInteger ifRangeRequests = new AtomicInteger();
+        final AtomicInteger active = new AtomicInteger();
+        final AtomicInteger maxActive = new AtomicInteger();
+        // Start and end of every body sent
+        final List<long[]> rangeStarts = Collections.synchronizedList(new ArrayList<>());
+
+        TestServer() throws IOException {
+            handlers.execute(() -> {
+                while (!socket.isClosed()) {
+                    try {
+                        Socket connection = socket.accept();
+                        handlers.execute(() -> handle(connection));
+                    } catch (IOException e) {
+                        return;
+                    }
+                }
+            });
+        }
+
+        String url() {
+            return "http://127.0.0.1:" + socket.getLocalPort() + "/pack";
+        }
+
+        void close() throws IOException {
+            socket.close();
+            handlers.shutdownNow();
+        }
+
+        private void handle(Socket connection) {
+            int now = active.incrementAndGet();
+            maxActive.accumulateAndGet(now, Math::max);
+            try (Socket s = connection) {
+                BufferedReader reader = new BufferedReader(
+                        new InputStreamReader(s.getInputStream(), StandardCharsets.ISO_8859_1));
+                String range = null;
+                String ifRange = null;
+                for (String line = reader.readLine(); line != null && !line.isEmpty(); line = reader.readLine()) {
+                    String lower = line.toLowerCase();
+                    if (lower.startsWith("range:")) {
+                        range = line.substring(6).trim();
+                    } else if (lower.startsWith("if-range:")) {
+                        ifRange = line.substring(9).trim();
+                    }
+                }
+                requests.incrementAndGet();
+                if (ifRange != null) {
+                    ifRangeRequests.incrementAndGet();
+                }
+                OutputStream out = s.getOutputStream();
+                if (statusRemaining.getAndDecrement() > 0) {
+                    out.write(("HTTP/1.1 " + status + " Error\r\nContent-Length: 0\r\nConnection: close\r\n\r\n")
+                            .getBytes(StandardCharsets.ISO_8859_1));
+                    return;
+                }
+
+                byte[] body = content;
+                long start = 0;
+                long end = body.length;
+                StringBuilder headers = new StringBuilder();
+                boolean partial = ranges && range != null && (ifRange == null || ifRange.equals(etag));
+                if (partial) {
+                    String[] bounds = range.substring("bytes=".length()).split("-", -1);
+                    start = Long.parseLong(bounds[0]);
+                    end = bounds[1].isEmpty() ? body.length : Long.parseLong(bounds[1]) + 1;
+                    headers.append("HTTP/1.1 206 Partial Content\r\n")
+                            .append("Content-Range: bytes ").append(start).append('-').append(end - 1)
+                            .append('/').append(body.length).append("\r\n");
+                } else {
+                    headers.append("HTTP/1.1 200 OK\r\n");
+                }
+                if (ranges) {
+                    headers.append("Accept-Ranges: bytes\r\nETag: ").append(etag).append("\r\n");
+                }
+                if (announceLength) {
+                    headers.append("Content-Length: ").append(end - start).append("\r\n");
+                }
+                headers.append("Connection: close\r\n\r\n");
+                out.write(headers.toString().getBytes(StandardCharsets.ISO_8859_1));
+                CountDownLatch hold = holdBodies;
+                if (hold != null) {
+                    out.flush();
+                    hold.countDown();
+                    hold.await(5, TimeUnit.SECONDS);
+                }
+
+                long stop = end;
+                if (cutsRemaining.getAndDecrement() > 0) {
+                    stop = Math.min(end, start + cutAfterBytes);
+                }
+                rangeStarts.add(new long[]{start, stop});
+                for (long position = start; position < stop; ) {
+                    int piece = (int) Math.min(16 * 1024, stop - position);
+                    out.write(body, (int) position, piece);
+                    position += piece;
+                    if (delayPerPieceMs > 0) {
+                        Thread.sleep(delayPerPieceMs);
+                    }
+                }
+                out.flush();
+            } catch (IOException | InterruptedException e) {
+                // The client went away, as paused downloads do
+            } finally {
+                active.decrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.axion.launcher;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the names downloaded and imported files are saved under.
+ */
+public class ResourceClassifierTest {
+
+    private static final ResourceClassifier.Classification ADDON = new ResourceClassifier.Classification(
+            ResourceClassifier.KIND_ADDON, ".mcaddon", "mods", "application/minecraft-addon");
+    private static final ResourceClassifier.Classification WORLD = new ResourceClassifier.Classification(
+            ResourceClassifier.KIND_WORLD, ".mcworld", "maps", "application/octet-stream");
+
+    @Test
+    public void fixFileName_addsMissingExtension() {
+        assertEquals("addon.mcaddon", ADDON.fixFileName("addon.zip"));
+        assertEquals("addon.mcaddon", ADDON.fixFileName("addon"));
+    }
+
+    @Test
+    public void fixFileName_replacesMismatchedMinecraftExtension() {
+        assertEquals("addon.mcaddon", ADDON.fixFileName("addon.mcpack"));
+        assertEquals("addon.mcaddon", ADDON.fixFileName("addon.mcpack.zip"));
+        assertEquals("world.mcworld", WORLD.fixFileName("world.mctemplate"));
+    }
+
+    @Test
+    public void fixFileName_keepsMatchingName() {
+        assertEquals("Addon.MCADDON", ADDON.fixFileName("Addon.MCADDON"));
+        assertEquals("world.mcworld", WORLD.fixFileName("world.mcworld.zip"));
+    }
+}
@@ -0,0 +1,78 @@
+package com.axion.launcher;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that a downscaled copy can be installed next to its original.
+ */
+public class TextureDownscalerTest {
+
+    private static final String HEADER_UUID = "0f1e2d3c-4b5a-6978-8796-a5b4c3d2e1f0";
+    private static final String MODULE_UUID = "11111111-2222-3333-4444-555555555555";
+    private static final String DEPENDENCY_UUID = "66666666-7777-8888-9999-aaaaaaaaaaaa";
+    private static final String MANIFEST = "{\n"
+            + "  \"format_version\": 2,\n"
+            + "  // Trailing comment with \"uuid\": \"not-a-value\"\n"
+            + "  \"header\": {\n"
+            + "    \"name\": \"Faithful \\\"HD\\\"\",\n"
+            + "    \"uuid\": \"" + HEADER_UUID + "\",\n"
+            + "    \"version\": [1, 0, 0]\n"
+            + "  },\n"
+            + "  \"modules\": [\n"
+            + "    {\"type\": \"resources\", \"uuid\": \"" + MODULE_UUID + "\", \"version\": [1, 0, 0]}\n"
+            + "  ],\n"
+            + "  \"dependencies\": [{\"uuid\": \"" + DEPENDENCY_UUID + "\", \"version\": [1, 0, 0]}]\n"
+            + "}\n";
+    private static final Pattern UUID_VALUE = Pattern.compile("\"uuid\":\\s*\"([0-9a-f-]{36})\"");
+
+    @Test
+    public void renameManifest_givesHeaderAndModulesNewUuids() {
+        List<String> uuids = uuids(TextureDownscaler.renameManifest(MANIFEST, 2));
+
+        assertEquals(3, uuids.size());
+        assertNotEquals(HEADER_UUID, uuids.get(0));
+        assertNotEquals(MODULE_UUID, uuids.get(1));
+        assertNotEquals(uuids.get(0), uuids.get(1));
+        assertEquals("Dependencies still name the same pack", DEPENDENCY_UUID, uuids.get(2));
+    }
+
+    @Test
+    public void renameManifest_isStablePerFactor() {
+        String twice = TextureDownscaler.renameManifest(MANIFEST, 2);
+
+        assertEquals(twice, TextureDownscaler.renameManifest(MANIFEST, 2));
+        assertNotEquals(uuids(twice).get(0), uuids(TextureDownscaler.renameManifest(MANIFEST, 4)).get(0));
+    }
+
+    @Test
+    public void renameManifest_addsFactorToName() {
+        String renamed = TextureDownscaler.renameManifest(MANIFEST, 4);
+
+        assertTrue(renamed.contains("\"name\": \"Faithful \\\"HD\\\" (4x smaller)\""));
+        assertTrue("Comments are left alone", renamed.contains("\"uuid\": \"not-a-value\""));
+    }
+
+    @Test
+    public void renameManifest_keepsTranslatedName() {
+        String renamed = TextureDownscaler.renameManifest(
+                "{\"header\": {\"name\": \"pack.name\", \"uuid\": \"" + HEADER_UUID + "\"}}", 2);
+
+        assertTrue(renamed.contains("\"name\": \"pack.name\""));
+    }
+
+    private static List<String> uuids(String json) {
+        List<String> uuids = new ArrayList<>();
+        Matcher matcher = UUID_VALUE.matcher(json);
+        while (matcher.find()) {
+            uuids.add(matcher.group(1));
+        }
+        return uuids;
+    }
+}